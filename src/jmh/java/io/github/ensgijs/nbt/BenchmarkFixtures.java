@@ -0,0 +1,52 @@
+package io.github.ensgijs.nbt;
+
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.io.RandomAccessMcaFile;
+import io.github.ensgijs.nbt.query.TagSelector;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Loads the test resources used as benchmark inputs. */
+public final class BenchmarkFixtures {
+    /** A fully generated 1.20.4 region file. */
+    public static final String REGION_FILE = "1_20_4/region/r.-3.-3.mca";
+
+    private BenchmarkFixtures() {}
+
+    /**
+     * Copies a resource into a new temp directory, keeping its parent directory name and file name
+     * because mca readers infer the chunk type and region location from them.
+     */
+    public static File copyResourceToTmp(String resource) throws IOException {
+        Path tmp = Files.createTempDirectory("nbt-jmh");
+        Path target = tmp.resolve(resource);
+        Files.createDirectories(target.getParent());
+        try (InputStream in = BenchmarkFixtures.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) throw new IOException("missing resource " + resource);
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        File file = target.toFile();
+        file.deleteOnExit();
+        return file;
+    }
+
+    /** Reads the raw data tags of up to {@code limit} chunks from the given region file resource. */
+    public static List<CompoundTag> readChunkTags(String resource, int limit) throws IOException {
+        List<CompoundTag> tags = new ArrayList<>();
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, copyResourceToTmp(resource), "r")) {
+            for (int i = 0; i < 1024 && tags.size() < limit; i++) {
+                CompoundTag tag = mca.readTag(i, TagSelector.ALL);
+                if (tag != null) tags.add(tag);
+            }
+        }
+        return tags;
+    }
+}
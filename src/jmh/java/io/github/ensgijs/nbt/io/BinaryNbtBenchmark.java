@@ -0,0 +1,87 @@
+package io.github.ensgijs.nbt.io;
+
+import io.github.ensgijs.nbt.BenchmarkFixtures;
+import io.github.ensgijs.nbt.query.TagSelector;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.Tag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Binary nbt (de)serialization of real chunk data. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BinaryNbtBenchmark {
+    private static final TagSelector SELECTOR = TagSelector.of("DataVersion", "Status", "sections.block_states.palette");
+
+    private NamedTag chunk;
+    private byte[] uncompressedBytes;
+
+    @Setup
+    public void setup() throws IOException {
+        List<CompoundTag> chunks = BenchmarkFixtures.readChunkTags(BenchmarkFixtures.REGION_FILE, 1);
+        chunk = new NamedTag("", chunks.get(0));
+        uncompressedBytes = BinaryNbtHelpers.serializeAsBytes(chunk, CompressionType.NONE);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Compressed {
+        @Param({"NONE", "GZIP", "ZLIB", "LZ4"})
+        public CompressionType compression;
+
+        private byte[] bytes;
+
+        @Setup
+        public void setup(BinaryNbtBenchmark benchmark) throws IOException {
+            bytes = BinaryNbtHelpers.serializeAsBytes(benchmark.chunk, compression);
+        }
+    }
+
+    @Benchmark
+    public NamedTag read(Compressed state) throws IOException {
+        return BinaryNbtHelpers.deserializeBytes(state.bytes, state.compression);
+    }
+
+    @Benchmark
+    public byte[] write(Compressed state) throws IOException {
+        return BinaryNbtHelpers.serializeAsBytes(chunk, state.compression);
+    }
+
+    @Benchmark
+    public NamedTag readUncompressedLazily() throws IOException {
+        return BigEndianNbtInputStream.readTagLazily(new ByteArrayInputStream(uncompressedBytes), Tag.DEFAULT_MAX_DEPTH);
+    }
+
+    @Benchmark
+    public NamedTag readUncompressedSelected() throws IOException {
+        return new BigEndianNbtInputStream(new ByteArrayInputStream(uncompressedBytes)).readTag(Tag.DEFAULT_MAX_DEPTH, SELECTOR);
+    }
+
+    @Benchmark
+    public void readUncompressedEvents(Blackhole bh) throws IOException {
+        new BigEndianNbtInputStream(new ByteArrayInputStream(uncompressedBytes)).readEvents(new NbtEventHandler() {
+            @Override
+            public void longArray(long[] values, int length) {
+                bh.consume(values);
+            }
+        }, Tag.DEFAULT_MAX_DEPTH);
+    }
+}
@@ -0,0 +1,50 @@
+package io.github.ensgijs.nbt.io;
+
+import io.github.ensgijs.nbt.BenchmarkFixtures;
+import io.github.ensgijs.nbt.tag.Tag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/** Text nbt parsing and writing of real chunk data. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TextNbtParserBenchmark {
+
+    @Param({"false", "true"})
+    public boolean prettyPrint;
+
+    private Tag<?> chunk;
+    private String text;
+
+    @Setup
+    public void setup() throws IOException {
+        chunk = BenchmarkFixtures.readChunkTags(BenchmarkFixtures.REGION_FILE, 1).get(0);
+        text = TextNbtHelpers.toTextNbt(chunk, prettyPrint);
+    }
+
+    @Benchmark
+    public Tag<?> parse() throws ParseException {
+        return new TextNbtParser(text).parse(Tag.DEFAULT_MAX_DEPTH);
+    }
+
+    @Benchmark
+    public String write() {
+        return TextNbtHelpers.toTextNbt(chunk, prettyPrint);
+    }
+}
@@ -0,0 +1,92 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.BenchmarkFixtures;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Chunk level reads and writes of a real region file. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class McaFileBenchmark {
+
+    @Param({"false", "true"})
+    public boolean lazyTagDecoding;
+
+    private File file;
+    private RandomAccessMcaFile<TerrainChunk> mca;
+    private int[] chunkIndexes;
+    private TerrainChunk[] chunks;
+    private final Random random = new Random(42);
+    private long loadFlags;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        loadFlags = LoadFlags.LOAD_ALL_DATA | (lazyTagDecoding ? LoadFlags.LAZY_TAG_DECODING : 0);
+        file = BenchmarkFixtures.copyResourceToTmp(BenchmarkFixtures.REGION_FILE);
+        mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "rw");
+        mca.setLoadFlags(loadFlags);
+        List<Integer> present = new ArrayList<>();
+        List<TerrainChunk> loaded = new ArrayList<>();
+        for (int i = 0; i < 1024; i++) {
+            TerrainChunk chunk = mca.read(i);
+            if (chunk != null) {
+                present.add(i);
+                loaded.add(chunk);
+            }
+        }
+        chunkIndexes = present.stream().mapToInt(Integer::intValue).toArray();
+        chunks = loaded.toArray(TerrainChunk[]::new);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        mca.close();
+    }
+
+    @Benchmark
+    public TerrainChunk randomAccessRead() throws IOException {
+        return mca.read(chunkIndexes[random.nextInt(chunkIndexes.length)]);
+    }
+
+    @Benchmark
+    public void randomAccessWrite() throws IOException {
+        mca.write(chunks[random.nextInt(chunks.length)]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public void chunkIteratorFullScan(Blackhole bh) throws IOException {
+        try (McaFileChunkIterator<TerrainChunk> iter = McaFileChunkIterator.iterate(file, loadFlags)) {
+            while (iter.hasNext()) {
+                bh.consume(iter.next());
+            }
+        }
+    }
+}
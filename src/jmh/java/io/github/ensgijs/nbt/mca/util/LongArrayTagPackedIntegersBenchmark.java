@@ -0,0 +1,78 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.util.LongArrayTagPackedIntegers.PackingStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Packing and unpacking a 16x16x16 section worth of values across bit widths. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LongArrayTagPackedIntegersBenchmark {
+    private static final int LENGTH = 4096;
+
+    @Param({"1", "4", "5", "8", "9", "12", "15"})
+    public int bitsPerValue;
+
+    @Param({"NO_SPLIT_VALUES_ACROSS_LONGS", "SPLIT_VALUES_ACROSS_LONGS"})
+    public PackingStrategy packingStrategy;
+
+    private int[] values;
+    private int[] scratch;
+    private LongArrayTagPackedIntegers packed;
+
+    @Setup
+    public void setup() {
+        values = new Random(42).ints(LENGTH, 0, 1 << bitsPerValue).toArray();
+        scratch = new int[LENGTH];
+        packed = LongArrayTagPackedIntegers.builder()
+                .length(LENGTH)
+                .packingStrategy(packingStrategy)
+                .minBitsPerValue(bitsPerValue)
+                .initializeForStoring((1 << bitsPerValue) - 1)
+                .build(values);
+    }
+
+    @Benchmark
+    public LongArrayTagPackedIntegers packEach() {
+        for (int i = 0; i < LENGTH; i++) {
+            packed.set(i, values[i]);
+        }
+        return packed;
+    }
+
+    @Benchmark
+    public LongArrayTagPackedIntegers packArray() {
+        packed.setFromArray(values);
+        return packed;
+    }
+
+    @Benchmark
+    public int unpackEach() {
+        int sum = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            sum += packed.get(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int[] unpackArray() {
+        return packed.toArray(scratch);
+    }
+}
@@ -0,0 +1,102 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.BenchmarkFixtures;
+import io.github.ensgijs.nbt.query.NbtPath;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.ListTag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Block state palette operations on a real chunk section. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PalettizedCuboidBenchmark {
+    private static final int SIZE = 16 * 16 * 16;
+
+    /** Index into the chunks sections list, lower sections tend to have larger palettes. */
+    @Param({"0", "4", "8"})
+    public int sectionIndex;
+
+    private PalettizedCuboid<CompoundTag> blockStates;
+    private CompoundTag[] palette;
+    private int[] setOrder;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        CompoundTag chunk = BenchmarkFixtures.readChunkTags(BenchmarkFixtures.REGION_FILE, 1).get(0);
+        ListTag<CompoundTag> sections = chunk.getCompoundList("sections");
+        CompoundTag tag = NbtPath.of("block_states").getTag(sections.get(sectionIndex));
+        blockStates = PalettizedCuboid.fromCompoundTag(tag, 16);
+        palette = blockStates.toCompoundTag().getCompoundList("palette").toArray(new CompoundTag[0]);
+        setOrder = new Random(42).ints(SIZE, 0, palette.length).toArray();
+    }
+
+    /** Leaves palette entries which are no longer referenced, as edits do, for {@link #optimizePalette}. */
+    @State(Scope.Thread)
+    public static class Dirty {
+        private PalettizedCuboid<CompoundTag> cuboid;
+
+        @Setup(Level.Invocation)
+        public void setup(PalettizedCuboidBenchmark benchmark) {
+            cuboid = benchmark.blockStates.clone();
+            CompoundTag[] palette = benchmark.palette;
+            for (int i = 0; i < SIZE; i += 7) {
+                CompoundTag unused = new CompoundTag();
+                unused.putString("Name", "minecraft:test_" + i);
+                cuboid.set(i, unused);
+                cuboid.set(i, palette[benchmark.setOrder[i]]);
+            }
+            // stop using the first palette entry so that the remaining ids must be remapped
+            for (int i = 0; i < SIZE; i++) {
+                if (cuboid.getByRef(i).equals(palette[0])) {
+                    cuboid.set(i, palette[palette.length - 1]);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int get() {
+        int hash = 0;
+        for (int i = 0; i < SIZE; i++) {
+            hash += System.identityHashCode(blockStates.getByRef(i));
+        }
+        return hash;
+    }
+
+    @Benchmark
+    public PalettizedCuboid<CompoundTag> set() {
+        for (int i = 0; i < SIZE; i++) {
+            blockStates.set(i, palette[setOrder[i]]);
+        }
+        return blockStates;
+    }
+
+    @Benchmark
+    public boolean optimizePalette(Dirty state) {
+        return state.cuboid.optimizePalette();
+    }
+
+    @Benchmark
+    public CompoundTag toCompoundTag() {
+        return blockStates.toCompoundTag();
+    }
+}
@@ -1,5 +1,6 @@
 package io.github.ensgijs.nbt.io;
 
+import io.github.ensgijs.nbt.query.TagSelector;
 import io.github.ensgijs.nbt.tag.ByteArrayTag;
 import io.github.ensgijs.nbt.tag.ByteTag;
 import io.github.ensgijs.nbt.tag.CompoundTag;
@@ -15,8 +16,11 @@ import io.github.ensgijs.nbt.tag.ShortTag;
 import io.github.ensgijs.nbt.tag.StringTag;
 import io.github.ensgijs.nbt.tag.Tag;
 import java.io.DataInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -47,8 +51,67 @@ public class BigEndianNbtInputStream extends DataInputStream implements NbtInput
 		idClassMapping.put(id, clazz);
 	}
 
+	/** When not null compound tags are read with their nested compound and list values left undecoded. */
+	private final ByteBuffer lazySource;
+	private StringCache stringCache;
+	private byte[] stringScratch;
+
 	public BigEndianNbtInputStream(InputStream in) {
 		super(in);
+		lazySource = null;
+	}
+
+	private BigEndianNbtInputStream(ByteBuffer lazySource) {
+		super(new ByteBufferInputStream(lazySource));
+		this.lazySource = lazySource;
+	}
+
+	/**
+	 * Reads a named tag from {@code in} but only decodes compound and list tags nested within compound tags
+	 * when they are first accessed, for example by {@link CompoundTag#get(String)} or an
+	 * {@link io.github.ensgijs.nbt.query.NbtPath}. Exactly the bytes of one tag are consumed from {@code in}
+	 * and held in memory until every lazy value has been decoded or the returned tag is garbage collected.
+	 * <p>The structure of the whole tag is validated (tag ids and max depth) before this method returns, but
+	 * lazily decoded values are not <em>materialized</em> until later. Accessing a value that can't be decoded
+	 * throws a {@link SilentIOException}.</p>
+	 * <p>Decoding a value modifies the compound tag holding it, so lazily read tags must not be read from
+	 * multiple threads without external synchronization.</p>
+	 */
+	public static NamedTag readTagLazily(InputStream in, int maxDepth) throws IOException {
+		CapturingInputStream capture = new CapturingInputStream(in);
+		BigEndianNbtInputStream scanner = new BigEndianNbtInputStream(capture);
+		byte id = scanner.readByte();
+		scanner.skipFully(scanner.readUnsignedShort());
+		scanner.skipPayload(id, maxDepth);
+		ByteBuffer source = ByteBuffer.wrap(capture.captured.array(), 0, capture.captured.size());
+		return new BigEndianNbtInputStream(source).readTag(maxDepth);
+	}
+
+	/** Decodes a payload which was recorded by a lazy read. */
+	static Tag<?> readPayloadLazily(ByteBuffer source, byte type, int offset, int maxDepth) throws IOException {
+		return new BigEndianNbtInputStream(source.duplicate().position(offset)).readTag(type, maxDepth);
+	}
+
+	public StringCache getStringCache() {
+		return stringCache;
+	}
+
+	/**
+	 * When set, compound keys and string values are read through the given cache so that repeated strings share
+	 * one instance and are not decoded again. Not used when reading lazily.
+	 * @param stringCache cache to use, or null to decode every string.
+	 */
+	public BigEndianNbtInputStream setStringCache(StringCache stringCache) {
+		this.stringCache = stringCache;
+		if (stringCache != null && stringScratch == null) {
+			stringScratch = new byte[StringCache.MAX_CACHED_LENGTH];
+		}
+		return this;
+	}
+
+	/** Reads a string through the string cache, if one is set. */
+	private String readCachedUTF() throws IOException {
+		return stringCache != null ? stringCache.readModifiedUtf8(this, stringScratch) : readUTF();
 	}
 
 	public NamedTag readTag(int maxDepth) throws IOException {
@@ -61,6 +124,63 @@ public class BigEndianNbtInputStream extends DataInputStream implements NbtInput
 		return readTag(id, maxDepth);
 	}
 
+	/**
+	 * Reads a named tag but only decodes the parts of it chosen by {@code selector}. Everything else is skipped
+	 * over without being decoded. Exactly the bytes of one tag are consumed from the stream.
+	 * @see TagSelector
+	 */
+	public NamedTag readTag(int maxDepth, TagSelector selector) throws IOException {
+		byte id = readByte();
+		return new NamedTag(readUTF(), readSelected(id, maxDepth, selector));
+	}
+
+	/** Like {@link #readTag(int, TagSelector)} but doesn't expect the tag to have a name. */
+	public Tag<?> readRawTag(int maxDepth, TagSelector selector) throws IOException {
+		byte id = readByte();
+		return readSelected(id, maxDepth, selector);
+	}
+
+	private Tag<?> readSelected(byte type, int maxDepth, TagSelector selector) throws IOException {
+		if (selector.selectsAll()) {
+			return readTag(type, maxDepth);
+		}
+		if (type == CompoundTag.ID) {
+			CompoundTag comp = new CompoundTag();
+			for (int id = readByte() & 0xFF; id != 0; id = readByte() & 0xFF) {
+				String key = readCachedUTF();
+				TagSelector child = selector.key(key);
+				if (child != null) {
+					comp.put(key, readSelected((byte) id, decrementMaxDepth(maxDepth), child));
+				} else {
+					skipPayload((byte) id, decrementMaxDepth(maxDepth));
+				}
+			}
+			return comp;
+		}
+		if (type == ListTag.ID) {
+			byte listType = readByte();
+			if (listType != CompoundTag.ID && listType != ListTag.ID) {
+				// there's nothing nested to select from
+				return readListTagPayload(listType, maxDepth);
+			}
+			ListTag<?> list = ListTag.createUnchecked(idClassMapping.get(listType));
+			int length = Math.max(0, readInt());
+			for (int i = 0; i < length; i++) {
+				TagSelector element = selector.index(i);
+				if (element != null) {
+					list.addUnchecked(readSelected(listType, decrementMaxDepth(maxDepth), element));
+				} else {
+					skipPayload(listType, decrementMaxDepth(maxDepth));
+					// keep the indexes of selected elements intact
+					list.addUnchecked(listType == CompoundTag.ID ? new CompoundTag(0) : ListTag.createUnchecked(EndTag.class, 0));
+				}
+			}
+			return list;
+		}
+		// primitives and arrays have nothing nested so they are read whole
+		return readTag(type, maxDepth);
+	}
+
 	private Tag<?> readTag(byte type, int maxDepth) throws IOException {
 		ExceptionBiFunction<BigEndianNbtInputStream, Integer, ? extends Tag<?>, IOException> f;
 		if ((f = readers.get(type)) == null) {
@@ -94,7 +214,7 @@ public class BigEndianNbtInputStream extends DataInputStream implements NbtInput
 	}
 
 	private static StringTag readString(BigEndianNbtInputStream in) throws IOException {
-		return new StringTag(in.readUTF());
+		return new StringTag(in.readCachedUTF());
 	}
 
 	private static ByteArrayTag readByteArray(BigEndianNbtInputStream in) throws IOException {
@@ -106,43 +226,165 @@ public class BigEndianNbtInputStream extends DataInputStream implements NbtInput
 	private static IntArrayTag readIntArray(BigEndianNbtInputStream in) throws IOException {
 		int l = in.readInt();
 		int[] data = new int[l];
-		IntArrayTag iat = new IntArrayTag(data);
-		for (int i = 0; i < l; i++) {
-			data[i] = in.readInt();
-		}
-		return iat;
+		in.arrayCodec().readInts(in, data, l);
+		return new IntArrayTag(data);
 	}
 
 	private static LongArrayTag readLongArray(BigEndianNbtInputStream in) throws IOException {
 		int l = in.readInt();
 		long[] data = new long[l];
-		LongArrayTag iat = new LongArrayTag(data);
-		for (int i = 0; i < l; i++) {
-			data[i] = in.readLong();
-		}
-		return iat;
+		in.arrayCodec().readLongs(in, data, l);
+		return new LongArrayTag(data);
+	}
+
+	private PrimitiveArrayCodec arrayCodec() {
+		return CodecPool.arrayCodec(ByteOrder.BIG_ENDIAN);
 	}
 
 	private static ListTag<?> readListTag(BigEndianNbtInputStream in, int maxDepth) throws IOException {
-		byte listType = in.readByte();
-		ListTag<?> list = ListTag.createUnchecked(idClassMapping.get(listType));
-		int length = in.readInt();
+		return in.readListTagPayload(in.readByte(), maxDepth);
+	}
+
+	private ListTag<?> readListTagPayload(byte listType, int maxDepth) throws IOException {
+		int length = readInt();
 		if (length < 0) {
 			length = 0;
 		}
+		if (length > 0) {
+			// the elements of a primitive list are one level deeper, same as when read one by one
+			decrementMaxDepth(maxDepth);
+			ListTag<?> primitiveList = readPrimitiveList(listType, length);
+			if (primitiveList != null) {
+				return primitiveList;
+			}
+		}
+		ListTag<?> list = ListTag.createUnchecked(idClassMapping.get(listType));
 		for (int i = 0; i < length; i++) {
-			list.addUnchecked(in.readTag(listType, in.decrementMaxDepth(maxDepth)));
+			list.addUnchecked(readTag(listType, decrementMaxDepth(maxDepth)));
 		}
 		return list;
 	}
 
+	/**
+	 * Reads lists of numbers into primitive arrays, the element tags are only created if they are accessed.
+	 * @return null if the list type is not numeric.
+	 */
+	private ListTag<?> readPrimitiveList(byte listType, int length) throws IOException {
+		switch (listType) {
+			case ByteTag.ID -> {
+				byte[] data = new byte[length];
+				readFully(data);
+				return ListTag.wrap(data);
+			}
+			case ShortTag.ID -> {
+				short[] data = new short[length];
+				arrayCodec().readShorts(this, data, length);
+				return ListTag.wrap(data);
+			}
+			case IntTag.ID -> {
+				int[] data = new int[length];
+				arrayCodec().readInts(this, data, length);
+				return ListTag.wrap(data);
+			}
+			case LongTag.ID -> {
+				long[] data = new long[length];
+				arrayCodec().readLongs(this, data, length);
+				return ListTag.wrap(data);
+			}
+			case FloatTag.ID -> {
+				float[] data = new float[length];
+				arrayCodec().readFloats(this, data, length);
+				return ListTag.wrap(data);
+			}
+			case DoubleTag.ID -> {
+				double[] data = new double[length];
+				arrayCodec().readDoubles(this, data, length);
+				return ListTag.wrap(data);
+			}
+			default -> {
+				return null;
+			}
+		}
+	}
+
 	private static CompoundTag readCompound(BigEndianNbtInputStream in, int maxDepth) throws IOException {
+		if (in.lazySource != null) {
+			return in.readLazyCompound(maxDepth);
+		}
 		CompoundTag comp = new CompoundTag();
 		for (int id = in.readByte() & 0xFF; id != 0; id = in.readByte() & 0xFF) {
-			String key = in.readUTF();
+			String key = in.readCachedUTF();
 			Tag<?> element = in.readTag((byte) id, in.decrementMaxDepth(maxDepth));
 			comp.put(key, element);
 		}
 		return comp;
 	}
+
+	private CompoundTag readLazyCompound(int maxDepth) throws IOException {
+		LazyTagMap map = new LazyTagMap(lazySource);
+		for (int id = readByte() & 0xFF; id != 0; id = readByte() & 0xFF) {
+			String key = readUTF();
+			int depth = decrementMaxDepth(maxDepth);
+			if (id == CompoundTag.ID || id == ListTag.ID) {
+				map.putPending(key, (byte) id, lazySource.position(), depth);
+				skipPayload((byte) id, depth);
+			} else {
+				map.put(key, readTag((byte) id, depth));
+			}
+		}
+		return CompoundTag.wrap(map);
+	}
+
+	/**
+	 * Advances past the payload of a tag of the given type without decoding it.
+	 * The same max depth rules are applied as when decoding.
+	 */
+	void skipPayload(byte type, int maxDepth) throws IOException {
+		NbtEventReader.skipPayload(this, this, type, maxDepth);
+	}
+
+	private void skipFully(long n) throws IOException {
+		NbtEventReader.skipFully(this, n);
+	}
+
+	/**
+	 * Reads a named tag, reporting its contents to {@code handler} as they are read instead of building a tag tree.
+	 * Exactly the bytes of one tag are consumed from the stream.
+	 * @see NbtEventHandler
+	 */
+	public void readEvents(NbtEventHandler handler, int maxDepth) throws IOException {
+		new NbtEventReader(this, handler, arrayCodec()).readNamedTag(maxDepth);
+	}
+
+	/** Keeps a copy of every byte read or skipped so the scanned tag can be decoded again later. */
+	private static class CapturingInputStream extends FilterInputStream {
+		final CodecPool.Buffer captured = new CodecPool.Buffer();
+		private byte[] scratch;
+
+		CapturingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if (b >= 0) captured.write(b);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = in.read(b, off, len);
+			if (n > 0) captured.write(b, off, n);
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			if (n <= 0) return 0;
+			if (scratch == null) scratch = new byte[4096];
+			int r = read(scratch, 0, (int) Math.min(n, scratch.length));
+			return Math.max(r, 0);
+		}
+	}
 }
@@ -17,6 +17,7 @@ import io.github.ensgijs.nbt.tag.Tag;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteOrder;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -118,23 +119,53 @@ public class BigEndianNbtOutputStream extends DataOutputStream implements NbtOut
 
 	private static void writeIntArray(BigEndianNbtOutputStream out, Tag<?> tag) throws IOException {
 		out.writeInt(((IntArrayTag) tag).length());
-		for (int i : ((IntArrayTag) tag).getValue()) {
-			out.writeInt(i);
-		}
+		out.arrayCodec().writeInts(out, ((IntArrayTag) tag).getValue());
 	}
 
 	private static void writeLongArray(BigEndianNbtOutputStream out, Tag<?> tag) throws IOException {
 		out.writeInt(((LongArrayTag) tag).length());
-		for (long l : ((LongArrayTag) tag).getValue()) {
-			out.writeLong(l);
-		}
+		out.arrayCodec().writeLongs(out, ((LongArrayTag) tag).getValue());
+	}
+
+	private PrimitiveArrayCodec arrayCodec() {
+		return CodecPool.arrayCodec(ByteOrder.BIG_ENDIAN);
 	}
 
 	private static void writeList(BigEndianNbtOutputStream out, Tag<?> tag, int maxDepth) throws IOException {
-		out.writeByte(idFromClass(((ListTag<?>) tag).getTypeClass()));
-		out.writeInt(((ListTag<?>) tag).size());
-		for (Tag<?> t : ((ListTag<?>) tag)) {
-			out.writeRawTag(t, out.decrementMaxDepth(maxDepth));
+		ListTag<?> list = (ListTag<?>) tag;
+		byte listType = idFromClass(list.getTypeClass());
+		out.writeByte(listType);
+		final int size = list.size();
+		out.writeInt(size);
+		if (size > 0) {
+			// the elements of a primitive list are one level deeper, same as when written one by one
+			out.decrementMaxDepth(maxDepth);
+		}
+		// numbers are written through the primitive accessors so lists backed by arrays don't create element tags
+		switch (listType) {
+			case ByteTag.ID -> {
+				for (int i = 0; i < size; i++) out.writeByte(list.getByte(i));
+			}
+			case ShortTag.ID -> {
+				for (int i = 0; i < size; i++) out.writeShort(list.getShort(i));
+			}
+			case IntTag.ID -> {
+				for (int i = 0; i < size; i++) out.writeInt(list.getInt(i));
+			}
+			case LongTag.ID -> {
+				for (int i = 0; i < size; i++) out.writeLong(list.getLong(i));
+			}
+			case FloatTag.ID -> {
+				for (int i = 0; i < size; i++) out.writeFloat(list.getFloat(i));
+			}
+			case DoubleTag.ID -> {
+				for (int i = 0; i < size; i++) out.writeDouble(list.getDouble(i));
+			}
+			default -> {
+				for (Tag<?> t : list) {
+					out.writeRawTag(t, out.decrementMaxDepth(maxDepth));
+				}
+			}
 		}
 	}
 
@@ -1,14 +1,18 @@
 package io.github.ensgijs.nbt.io;
 
+import io.github.ensgijs.nbt.query.TagSelector;
 import io.github.ensgijs.nbt.tag.Tag;
 import java.io.IOException;
 import java.io.InputStream;
 
 public class BinaryNbtDeserializer implements Deserializer<NamedTag> {
-	private CompressionType compression;
+	private CompressionCodec compression;
 	private boolean littleEndian;
+	private boolean lazy;
+	private TagSelector selector;
+	private StringCache stringCache;
 
-	public BinaryNbtDeserializer(CompressionType compression) {
+	public BinaryNbtDeserializer(CompressionCodec compression) {
 		this(compression, false);
 	}
 
@@ -16,20 +20,74 @@ public class BinaryNbtDeserializer implements Deserializer<NamedTag> {
 	 * @param compression Compressions strategy to use.
 	 * @param littleEndian Minecraft bedrock data is stored in little endian while MC Java is stored big endian.
 	 */
-	public BinaryNbtDeserializer(CompressionType compression, boolean littleEndian) {
+	public BinaryNbtDeserializer(CompressionCodec compression, boolean littleEndian) {
 		this.compression = compression;
 		this.littleEndian = littleEndian;
 	}
 
+	public boolean isLazy() {
+		return lazy;
+	}
+
+	/**
+	 * When set, compound and list tags nested in compound tags are only decoded when first accessed.
+	 * Only supported for big endian data, little endian data is always fully decoded.
+	 * @see BigEndianNbtInputStream#readTagLazily(InputStream, int)
+	 */
+	public BinaryNbtDeserializer setLazy(boolean lazy) {
+		this.lazy = lazy;
+		return this;
+	}
+
+	public TagSelector getSelector() {
+		return selector;
+	}
+
+	/**
+	 * When set, only the parts of the tag chosen by the selector are decoded, everything else is skipped.
+	 * Takes precedence over {@link #setLazy(boolean)}. Only supported for big endian data, little endian data
+	 * is always fully decoded.
+	 * @param selector selector to apply, or null to read everything.
+	 * @see BigEndianNbtInputStream#readTag(int, TagSelector)
+	 */
+	public BinaryNbtDeserializer setSelector(TagSelector selector) {
+		this.selector = selector;
+		return this;
+	}
+
+	public StringCache getStringCache() {
+		return stringCache;
+	}
+
+	/**
+	 * When set, compound keys and string values are read through the given cache so that repeated strings share
+	 * one instance. Not used when reading lazily.
+	 * @param stringCache cache to use, or null to decode every string.
+	 * @see StringCache
+	 */
+	public BinaryNbtDeserializer setStringCache(StringCache stringCache) {
+		this.stringCache = stringCache;
+		return this;
+	}
+
 	@Override
 	public NamedTag fromStream(InputStream stream) throws IOException {
 		NbtInput nbtIn;
 		InputStream input = compression.decompress(stream);
-		if (!littleEndian) {
-			nbtIn = new BigEndianNbtInputStream(input);
-		} else {
-			nbtIn = new LittleEndianNbtInputStream(input);
+		try {
+			if (!littleEndian) {
+				if (selector != null) {
+					return new BigEndianNbtInputStream(input).setStringCache(stringCache)
+							.readTag(Tag.DEFAULT_MAX_DEPTH, selector);
+				}
+				if (lazy) return BigEndianNbtInputStream.readTagLazily(input, Tag.DEFAULT_MAX_DEPTH);
+				nbtIn = new BigEndianNbtInputStream(input).setStringCache(stringCache);
+			} else {
+				nbtIn = new LittleEndianNbtInputStream(input).setStringCache(stringCache);
+			}
+			return nbtIn.readTag(Tag.DEFAULT_MAX_DEPTH);
+		} finally {
+			compression.release(input);
 		}
-		return nbtIn.readTag(Tag.DEFAULT_MAX_DEPTH);
 	}
 }
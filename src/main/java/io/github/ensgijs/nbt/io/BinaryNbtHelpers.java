@@ -20,7 +20,7 @@ public final class BinaryNbtHelpers {
 	}
 
 	// <editor-fold desc="Big Endian read/write (MC Java)">
-	public static Path write(NamedTag tag, Path file, CompressionType compression)
+	public static Path write(NamedTag tag, Path file, CompressionCodec compression)
 			throws IOException {
 		try (OutputStream fos = Files.newOutputStream(file)) {
 			new BinaryNbtSerializer(compression).toStream(tag, fos);
@@ -28,37 +28,37 @@ public final class BinaryNbtHelpers {
 		return file;
 	}
 
-	public static Path write(NamedTag tag, String file, CompressionType compression)
+	public static Path write(NamedTag tag, String file, CompressionCodec compression)
 			throws IOException {
 		return write(tag, Path.of(file), compression);
 	}
 	
-	public static Path write(Tag<?> tag, String file, CompressionType compression)
+	public static Path write(Tag<?> tag, String file, CompressionCodec compression)
 			throws IOException {
 		return write(new NamedTag(null, tag), file, compression);
 	}
 
-	public static Path write(Tag<?> tag, Path path, CompressionType compression) throws IOException {
+	public static Path write(Tag<?> tag, Path path, CompressionCodec compression) throws IOException {
 		return write(new NamedTag(null, tag), path, compression);
 	}
 
-	public static NamedTag read(Path file, CompressionType compression) throws IOException {
+	public static NamedTag read(Path file, CompressionCodec compression) throws IOException {
 		try (InputStream fis = Files.newInputStream(file)) {
 			return new BinaryNbtDeserializer(compression).fromStream(fis);
 		}
 	}
 
-	public static NamedTag read(String file, CompressionType compression) throws IOException {
+	public static NamedTag read(String file, CompressionCodec compression) throws IOException {
 		return read(Path.of(file), compression);
 	}
 	
-	public static CompoundTag readCompound(Path file, CompressionType compression) throws IOException {
+	public static CompoundTag readCompound(Path file, CompressionCodec compression) throws IOException {
 		try (InputStream fis = Files.newInputStream(file)) {
 			return (CompoundTag) new BinaryNbtDeserializer(compression).fromStream(fis).getTag();
 		}
 	}
 	
-	public static CompoundTag readCompound(String file, CompressionType compression) throws IOException {
+	public static CompoundTag readCompound(String file, CompressionCodec compression) throws IOException {
 		return readCompound(Path.of(file), compression);
 	}
 
@@ -67,7 +67,7 @@ public final class BinaryNbtHelpers {
 	 * Note that Paper's ItemStack#serializeAsBytes returns binary nbt data with
 	 * {@link CompressionType#GZIP}.
 	 */
-	public static NamedTag deserializeBytes(byte[] bytes, CompressionType compression)
+	public static NamedTag deserializeBytes(byte[] bytes, CompressionCodec compression)
 			throws IOException {
 		return new BinaryNbtDeserializer(compression).fromStream(new ByteArrayInputStream(bytes));
 	}
@@ -76,7 +76,7 @@ public final class BinaryNbtHelpers {
 	 * Note that Paper's ItemStack#serializeAsBytes returns binary nbt data with
 	 * {@link CompressionType#GZIP}.
 	 */
-	public static byte[] serializeAsBytes(Tag<?> tag, CompressionType compression)
+	public static byte[] serializeAsBytes(Tag<?> tag, CompressionCodec compression)
 			throws IOException {
 		return serializeAsBytes(new NamedTag(null, tag), compression);
 	}
@@ -85,7 +85,7 @@ public final class BinaryNbtHelpers {
 	 * Note that Paper's ItemStack#serializeAsBytes returns binary nbt data with
 	 * {@link CompressionType#GZIP}.
 	 */
-	public static byte[] serializeAsBytes(NamedTag tag, CompressionType compression)
+	public static byte[] serializeAsBytes(NamedTag tag, CompressionCodec compression)
 			throws IOException {
 		try (ByteArrayOutputStream fos = new ByteArrayOutputStream(1024)) {
 			new BinaryNbtSerializer(compression).toStream(tag, fos);
@@ -97,14 +97,14 @@ public final class BinaryNbtHelpers {
 	 * Note that Paper's ItemStack#serializeAsBytes returns binary nbt data with
 	 * {@link CompressionType#GZIP}.
 	 */
-	public static NamedTag serializeAsBytes(byte[] bytes, CompressionType compression)
+	public static NamedTag serializeAsBytes(byte[] bytes, CompressionCodec compression)
 			throws IOException {
 		return new BinaryNbtDeserializer(compression).fromStream(new ByteArrayInputStream(bytes));
 	}
 	// </editor-fold>
 
 	// <editor-fold desc="Little Endian read/write (MC Bedrock)">
-	public static Path writeLittleEndian(NamedTag tag, File file, CompressionType compression)
+	public static Path writeLittleEndian(NamedTag tag, File file, CompressionCodec compression)
 			throws IOException {
 		try (FileOutputStream fos = new FileOutputStream(file)) {
 			new BinaryNbtSerializer(compression, true).toStream(tag, fos);
@@ -112,44 +112,44 @@ public final class BinaryNbtHelpers {
 		return file.toPath();
 	}
 
-	public static Path writeLittleEndian(NamedTag tag, String file, CompressionType compression)
+	public static Path writeLittleEndian(NamedTag tag, String file, CompressionCodec compression)
 			throws IOException {
 		return writeLittleEndian(tag, new File(file), compression);
 	}
 
-	public static Path writeLittleEndian(NamedTag tag, Path path, CompressionType compression)
+	public static Path writeLittleEndian(NamedTag tag, Path path, CompressionCodec compression)
 			throws IOException {
 		return writeLittleEndian(tag, path.toFile(), compression);
 	}
 
-	public static Path writeLittleEndian(Tag<?> tag, File file, CompressionType compression)
+	public static Path writeLittleEndian(Tag<?> tag, File file, CompressionCodec compression)
 			throws IOException {
 		return writeLittleEndian(new NamedTag(null, tag), file, compression);
 	}
 
-	public static Path writeLittleEndian(Tag<?> tag, String file, CompressionType compression)
+	public static Path writeLittleEndian(Tag<?> tag, String file, CompressionCodec compression)
 			throws IOException {
 		return writeLittleEndian(new NamedTag(null, tag), new File(file), compression);
 	}
 
-	public static Path writeLittleEndian(Tag<?> tag, Path path, CompressionType compression)
+	public static Path writeLittleEndian(Tag<?> tag, Path path, CompressionCodec compression)
 			throws IOException {
 		return writeLittleEndian(new NamedTag(null, tag), path.toFile(), compression);
 	}
 
-	public static NamedTag readLittleEndian(File file, CompressionType compression)
+	public static NamedTag readLittleEndian(File file, CompressionCodec compression)
 			throws IOException {
 		try (FileInputStream fis = new FileInputStream(file)) {
 			return new BinaryNbtDeserializer(compression, true).fromStream(fis);
 		}
 	}
 
-	public static NamedTag readLittleEndian(String file, CompressionType compression)
+	public static NamedTag readLittleEndian(String file, CompressionCodec compression)
 			throws IOException {
 		return readLittleEndian(new File(file), compression);
 	}
 
-	public static NamedTag readLittleEndian(Path path, CompressionType compression)
+	public static NamedTag readLittleEndian(Path path, CompressionCodec compression)
 			throws IOException {
 		return readLittleEndian(path.toFile(), compression);
 	}
@@ -5,14 +5,14 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 public class BinaryNbtSerializer implements Serializer<NamedTag> {
-	private CompressionType compression;
+	private CompressionCodec compression;
 	private boolean littleEndian;
 
-	public BinaryNbtSerializer(CompressionType compression) {
+	public BinaryNbtSerializer(CompressionCodec compression) {
 		this(compression, false);
 	}
 
-	public BinaryNbtSerializer(CompressionType compression, boolean littleEndian) {
+	public BinaryNbtSerializer(CompressionCodec compression, boolean littleEndian) {
 		this.compression = compression;
 		this.littleEndian = littleEndian;
 	}
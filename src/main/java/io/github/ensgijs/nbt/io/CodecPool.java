@@ -0,0 +1,362 @@
+package io.github.ensgijs.nbt.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Per-thread pools of {@link Inflater}s, {@link Deflater}s and byte buffers used for (de)compressing nbt data.
+ * <p>Native zlib state is expensive to create and is only freed by the garbage collector if {@code end()} isn't
+ * called explicitly. Pooling it, and the buffers which go with it, keeps native memory use flat during bulk
+ * chunk processing. Pools are thread confined so no synchronization is needed to use them; objects pooled by
+ * a thread which dies are reclaimed by the garbage collector.</p>
+ * <p>{@link CompressionType#ZLIB} and {@link CompressionType#zlib(int)} use this pool automatically.
+ * Use {@link #stats()} to verify objects are being reused.</p>
+ */
+public final class CodecPool {
+    /** Size of the scratch buffers handed to pooled streams. */
+    static final int SCRATCH_SIZE = 8192;
+    /** Maximum number of each kind of object kept per thread, extras are discarded on release. */
+    static final int MAX_POOLED_PER_THREAD = 4;
+    /** Buffers which have grown larger than this are discarded on release rather than pooled. */
+    static final int MAX_POOLED_BUFFER_CAPACITY = 2 * 1024 * 1024;
+
+    private static final class Pools {
+        final ArrayDeque<Inflater> inflaters = new ArrayDeque<>(MAX_POOLED_PER_THREAD);
+        final ArrayDeque<Deflater> deflaters = new ArrayDeque<>(MAX_POOLED_PER_THREAD);
+        final ArrayDeque<Buffer> buffers = new ArrayDeque<>(MAX_POOLED_PER_THREAD);
+        final ArrayDeque<byte[]> scratch = new ArrayDeque<>(MAX_POOLED_PER_THREAD * 2);
+        PrimitiveArrayCodec bigEndianCodec;
+        PrimitiveArrayCodec littleEndianCodec;
+    }
+
+    private static final ThreadLocal<Pools> POOLS = ThreadLocal.withInitial(Pools::new);
+    private static final LongAdder inflatersCreated = new LongAdder();
+    private static final LongAdder inflatersAcquired = new LongAdder();
+    private static final LongAdder deflatersCreated = new LongAdder();
+    private static final LongAdder deflatersAcquired = new LongAdder();
+    private static final LongAdder buffersCreated = new LongAdder();
+    private static final LongAdder buffersAcquired = new LongAdder();
+
+    private CodecPool() {}
+
+    /** @return A reset inflater which should be handed back with {@link #release(Inflater)} when done. */
+    public static Inflater acquireInflater() {
+        inflatersAcquired.increment();
+        Inflater inflater = POOLS.get().inflaters.pollFirst();
+        if (inflater == null) {
+            inflatersCreated.increment();
+            inflater = new Inflater();
+        }
+        return inflater;
+    }
+
+    /** Resets and returns the inflater to the calling thread's pool, or ends it if the pool is full. */
+    public static void release(Inflater inflater) {
+        ArrayDeque<Inflater> pool = POOLS.get().inflaters;
+        if (pool.size() < MAX_POOLED_PER_THREAD) {
+            inflater.reset();
+            pool.addFirst(inflater);
+        } else {
+            inflater.end();
+        }
+    }
+
+    /**
+     * @param level compression level to configure the deflater with.
+     * @return A reset deflater which should be handed back with {@link #release(Deflater)} when done.
+     */
+    public static Deflater acquireDeflater(int level) {
+        deflatersAcquired.increment();
+        Deflater deflater = POOLS.get().deflaters.pollFirst();
+        if (deflater == null) {
+            deflatersCreated.increment();
+            return new Deflater(level);
+        }
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    /** Resets and returns the deflater to the calling thread's pool, or ends it if the pool is full. */
+    public static void release(Deflater deflater) {
+        ArrayDeque<Deflater> pool = POOLS.get().deflaters;
+        if (pool.size() < MAX_POOLED_PER_THREAD) {
+            deflater.reset();
+            pool.addFirst(deflater);
+        } else {
+            deflater.end();
+        }
+    }
+
+    /** @return An empty growable buffer which should be handed back with {@link #release(Buffer)} when done. */
+    public static Buffer acquireBuffer() {
+        buffersAcquired.increment();
+        Buffer buffer = POOLS.get().buffers.pollFirst();
+        if (buffer == null) {
+            buffersCreated.increment();
+            buffer = new Buffer();
+        }
+        return buffer;
+    }
+
+    /** Returns the buffer to the calling thread's pool. The buffer must not be used afterwards. */
+    public static void release(Buffer buffer) {
+        ArrayDeque<Buffer> pool = POOLS.get().buffers;
+        if (pool.size() < MAX_POOLED_PER_THREAD && buffer.capacity() <= MAX_POOLED_BUFFER_CAPACITY) {
+            buffer.reset();
+            pool.addFirst(buffer);
+        }
+    }
+
+    static byte[] acquireScratch() {
+        byte[] scratch = POOLS.get().scratch.pollFirst();
+        return scratch != null ? scratch : new byte[SCRATCH_SIZE];
+    }
+
+    static void releaseScratch(byte[] scratch) {
+        ArrayDeque<byte[]> pool = POOLS.get().scratch;
+        if (pool.size() < MAX_POOLED_PER_THREAD * 2) {
+            pool.addFirst(scratch);
+        }
+    }
+
+    /**
+     * @return The calling thread's array codec for the given byte order. Codecs only use their scratch buffer for
+     * the duration of a single call so one per thread is enough no matter how many streams the thread has open.
+     */
+    static PrimitiveArrayCodec arrayCodec(ByteOrder order) {
+        Pools pools = POOLS.get();
+        if (order == ByteOrder.BIG_ENDIAN) {
+            if (pools.bigEndianCodec == null) pools.bigEndianCodec = new PrimitiveArrayCodec(order);
+            return pools.bigEndianCodec;
+        }
+        if (pools.littleEndianCodec == null) pools.littleEndianCodec = new PrimitiveArrayCodec(order);
+        return pools.littleEndianCodec;
+    }
+
+    /** @return A snapshot of the pool counters, summed across all threads. */
+    public static Stats stats() {
+        return new Stats(
+                inflatersCreated.sum(), inflatersAcquired.sum(),
+                deflatersCreated.sum(), deflatersAcquired.sum(),
+                buffersCreated.sum(), buffersAcquired.sum());
+    }
+
+    /**
+     * A {@link ByteArrayOutputStream} which exposes its backing array so the written bytes can be consumed
+     * without the copy {@link #toByteArray()} makes.
+     */
+    public static class Buffer extends ByteArrayOutputStream {
+        public Buffer() {
+            super(SCRATCH_SIZE);
+        }
+
+        /** @return The backing array, only the first {@link #size()} bytes are valid. */
+        public synchronized byte[] array() {
+            return buf;
+        }
+
+        public synchronized int capacity() {
+            return buf.length;
+        }
+    }
+
+    /** Pool counters, all values are totals since the class was loaded. */
+    public static final class Stats {
+        private final long inflatersCreated;
+        private final long inflatersAcquired;
+        private final long deflatersCreated;
+        private final long deflatersAcquired;
+        private final long buffersCreated;
+        private final long buffersAcquired;
+
+        Stats(long inflatersCreated, long inflatersAcquired, long deflatersCreated, long deflatersAcquired,
+              long buffersCreated, long buffersAcquired) {
+            this.inflatersCreated = inflatersCreated;
+            this.inflatersAcquired = inflatersAcquired;
+            this.deflatersCreated = deflatersCreated;
+            this.deflatersAcquired = deflatersAcquired;
+            this.buffersCreated = buffersCreated;
+            this.buffersAcquired = buffersAcquired;
+        }
+
+        public long inflatersCreated() {
+            return inflatersCreated;
+        }
+
+        public long inflatersAcquired() {
+            return inflatersAcquired;
+        }
+
+        public long deflatersCreated() {
+            return deflatersCreated;
+        }
+
+        public long deflatersAcquired() {
+            return deflatersAcquired;
+        }
+
+        public long buffersCreated() {
+            return buffersCreated;
+        }
+
+        public long buffersAcquired() {
+            return buffersAcquired;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("inflaters[created %d; acquired %d]; deflaters[created %d; acquired %d]; buffers[created %d; acquired %d]",
+                    inflatersCreated, inflatersAcquired, deflatersCreated, deflatersAcquired, buffersCreated, buffersAcquired);
+        }
+    }
+
+    /**
+     * Zlib compressing stream using a pooled deflater and pooled buffers. Small writes are buffered rather than
+     * being handed to the deflater one at a time. Pooled resources are released by {@link #finish()}.
+     */
+    static class PooledDeflaterOutputStream extends DeflaterOutputStream {
+        private byte[] pending;
+        private int pendingCount;
+        private boolean released;
+
+        PooledDeflaterOutputStream(OutputStream out, int level) {
+            super(out, acquireDeflater(level), 1);
+            buf = acquireScratch();
+            pending = acquireScratch();
+        }
+
+        private void ensureNotReleased() throws IOException {
+            if (released) throw new IOException("write beyond end of stream");
+        }
+
+        private void drain() throws IOException {
+            if (pendingCount > 0) {
+                super.write(pending, 0, pendingCount);
+                pendingCount = 0;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureNotReleased();
+            if (pendingCount == pending.length) drain();
+            pending[pendingCount++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            ensureNotReleased();
+            if (len >= pending.length) {
+                drain();
+                super.write(b, off, len);
+                return;
+            }
+            if (len > pending.length - pendingCount) drain();
+            System.arraycopy(b, off, pending, pendingCount, len);
+            pendingCount += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!released) drain();
+            super.flush();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (released) return;
+            drain();
+            super.finish();
+            released = true;
+            release(def);
+            releaseScratch(buf);
+            releaseScratch(pending);
+            buf = pending = null;
+        }
+    }
+
+    /**
+     * Zlib decompressing stream using a pooled inflater and pooled buffers. Small reads are served from a
+     * buffer of decompressed data rather than inflating one byte at a time.
+     * Pooled resources are released by {@link #release()} or {@link #close()}.
+     */
+    static class PooledInflaterInputStream extends InflaterInputStream {
+        private byte[] plain;
+        private int plainPos;
+        private int plainLen;
+        private boolean released;
+
+        PooledInflaterInputStream(InputStream in) {
+            super(in, acquireInflater(), 1);
+            buf = acquireScratch();
+            plain = acquireScratch();
+        }
+
+        private void ensureNotReleased() throws IOException {
+            if (released) throw new IOException("Stream closed");
+        }
+
+        private boolean refill() throws IOException {
+            int n = super.read(plain, 0, plain.length);
+            if (n <= 0) return false;
+            plainPos = 0;
+            plainLen = n;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            ensureNotReleased();
+            if (plainPos == plainLen && !refill()) return -1;
+            return plain[plainPos++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            ensureNotReleased();
+            if (len == 0) return 0;
+            if (plainPos == plainLen) {
+                if (len >= plain.length) return super.read(b, off, len);
+                if (!refill()) return -1;
+            }
+            len = Math.min(len, plainLen - plainPos);
+            System.arraycopy(plain, plainPos, b, off, len);
+            plainPos += len;
+            return len;
+        }
+
+        @Override
+        public int available() throws IOException {
+            ensureNotReleased();
+            return plainPos < plainLen ? plainLen - plainPos : super.available();
+        }
+
+        /** Returns the pooled resources without closing the underlying stream. The stream can't be read afterwards. */
+        void release() {
+            if (released) return;
+            released = true;
+            CodecPool.release(inf);
+            releaseScratch(buf);
+            releaseScratch(plain);
+            buf = plain = null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            release();
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.ensgijs.nbt.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * A compression strategy for binary nbt data, identified by the compression id byte stored in front of each
+ * chunk in mca files.
+ * <p>All {@link CompressionType} values are registered by default. Additional codecs, such as one for the
+ * {@link #CUSTOM_ID custom} id used by some servers, can be made available to chunk deserialization with
+ * {@link #register(CompressionCodec)}.</p>
+ * @see CompressionType
+ */
+public interface CompressionCodec {
+    /** Compression id Minecraft reserves for third party compression algorithms. */
+    byte CUSTOM_ID = 127;
+
+    /** @return The compression id, must be in the range [0..127]. */
+    byte getID();
+
+    /** Wraps the given stream such that bytes written to the returned stream are compressed into {@code out}. */
+    OutputStream compress(OutputStream out) throws IOException;
+
+    /** Wraps the given stream such that bytes read from the returned stream are decompressed from {@code in}. */
+    InputStream decompress(InputStream in) throws IOException;
+
+    /**
+     * Finishes writing compressed data to the output stream without closing it.
+     * @param out stream previously returned by {@link #compress(OutputStream)}
+     * @exception IOException if an I/O error has occurred
+     */
+    default void finish(OutputStream out) throws IOException {}
+
+    /**
+     * Returns any pooled resources held by a stream previously returned by {@link #decompress(InputStream)}
+     * without closing the underlying stream. The decompressing stream must not be read afterwards.
+     */
+    default void release(InputStream in) {}
+
+    /**
+     * Makes the given codec available to {@link #getFromID(byte)}.
+     * @throws IllegalArgumentException if the codec id is outside the range [0..127] or if a different codec is
+     * already registered with the same id.
+     */
+    static void register(CompressionCodec codec) {
+        CompressionCodecRegistry.register(codec);
+    }
+
+    /**
+     * Removes a codec previously added with {@link #register(CompressionCodec)}.
+     * @return True if a codec was removed.
+     * @throws IllegalArgumentException if the id belongs to one of the built-in {@link CompressionType}'s.
+     */
+    static boolean unregister(byte id) {
+        return CompressionCodecRegistry.unregister(id);
+    }
+
+    /** @return The codec registered for the given compression id, or null if there isn't one. */
+    static CompressionCodec getFromID(byte id) {
+        return CompressionCodecRegistry.CODECS.get(id);
+    }
+
+    /** @return An unmodifiable view of all registered codecs. */
+    static Collection<CompressionCodec> registered() {
+        return Collections.unmodifiableCollection(CompressionCodecRegistry.CODECS.values());
+    }
+}
@@ -0,0 +1,32 @@
+package io.github.ensgijs.nbt.io;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Backing store for the static registry methods of {@link CompressionCodec}. */
+final class CompressionCodecRegistry {
+    static final Map<Byte, CompressionCodec> CODECS = new ConcurrentHashMap<>();
+    static {
+        for (CompressionType type : CompressionType.values()) {
+            CODECS.put(type.getID(), type);
+        }
+    }
+
+    private CompressionCodecRegistry() {}
+
+    static void register(CompressionCodec codec) {
+        final byte id = codec.getID();
+        if (id < 0)
+            throw new IllegalArgumentException("Compression id must be in the range [0..127] but was " + (id & 0xFF));
+        CompressionCodec existing = CODECS.putIfAbsent(id, codec);
+        if (existing != null && existing != codec)
+            throw new IllegalArgumentException("A compression codec is already registered with id " + id + ": " + existing);
+    }
+
+    static boolean unregister(byte id) {
+        CompressionType builtIn = CompressionType.getFromID(id);
+        if (builtIn != null)
+            throw new IllegalArgumentException("Cannot unregister built-in compression type " + builtIn);
+        return CODECS.remove(id) != null;
+    }
+}
@@ -3,17 +3,32 @@ package io.github.ensgijs.nbt.io;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
-import java.util.zip.InflaterInputStream;
 
-public enum CompressionType {
+/**
+ * The built-in compression types. These are always registered with {@link CompressionCodec#getFromID(byte)}.
+ * @see CompressionCodec
+ */
+public enum CompressionType implements CompressionCodec {
 	NONE(0, t -> t, t -> t),
 	/** Most used compression type for binary nbt data files. */
 	GZIP(1, GZIPOutputStream::new, GZIPInputStream::new),
 	/** Default compression type used by the vanilla jar to store chunks in mca files. */
-	ZLIB(2, DeflaterOutputStream::new, InflaterInputStream::new);
+	ZLIB(2, out -> new CodecPool.PooledDeflaterOutputStream(out, Deflater.DEFAULT_COMPRESSION),
+			CodecPool.PooledInflaterInputStream::new),
+	/**
+	 * Uncompressed chunk data as used by the vanilla jar for chunks in mca files. Distinct from {@link #NONE},
+	 * which is the id used by this library for uncompressed nbt files.
+	 */
+	UNCOMPRESSED(3, t -> t, t -> t),
+	/**
+	 * LZ4 block stream compression, selectable for chunks in the vanilla server since 1.20.5. Much faster to
+	 * compress and decompress than {@link #ZLIB} at the cost of larger files.
+	 */
+	LZ4(4, Lz4BlockOutputStream::new, Lz4BlockInputStream::new);
 
 	@FunctionalInterface
 	private interface IOExceptionFunction<T, R> {
@@ -32,14 +47,17 @@ public enum CompressionType {
 		this.decompressor = decompressor;
 	}
 
+	@Override
 	public byte getID() {
 		return id;
 	}
 
+	@Override
 	public OutputStream compress(OutputStream out) throws IOException {
 		return compressor.accept(out);
 	}
 
+	@Override
 	public InputStream decompress(InputStream in) throws IOException {
 		return decompressor.accept(in);
 	}
@@ -48,12 +66,64 @@ public enum CompressionType {
 	 * Finishes writing compressed data to the output stream without closing it.
 	 * @exception IOException if an I/O error has occurred
 	 */
+	@Override
 	public void finish(OutputStream out) throws IOException {
 		if (out instanceof DeflaterOutputStream) {
 			((DeflaterOutputStream) out).finish();
+		} else if (out instanceof Lz4BlockOutputStream) {
+			((Lz4BlockOutputStream) out).finish();
 		}
 	}
 
+	@Override
+	public void release(InputStream in) {
+		if (in instanceof CodecPool.PooledInflaterInputStream) {
+			((CodecPool.PooledInflaterInputStream) in).release();
+		}
+	}
+
+	/**
+	 * Creates a {@link #ZLIB} codec which compresses using the given compression level. Data written with any
+	 * level is read back using {@link #ZLIB}.
+	 * @param level compression level in the range [0..9] (see {@link Deflater#BEST_SPEED} and
+	 *              {@link Deflater#BEST_COMPRESSION}) or {@link Deflater#DEFAULT_COMPRESSION}.
+	 */
+	public static CompressionCodec zlib(int level) {
+		if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION)
+			throw new IllegalArgumentException("invalid compression level " + level);
+		return new CompressionCodec() {
+			@Override
+			public byte getID() {
+				return ZLIB.id;
+			}
+
+			@Override
+			public OutputStream compress(OutputStream out) {
+				return new CodecPool.PooledDeflaterOutputStream(out, level);
+			}
+
+			@Override
+			public InputStream decompress(InputStream in) throws IOException {
+				return ZLIB.decompress(in);
+			}
+
+			@Override
+			public void finish(OutputStream out) throws IOException {
+				ZLIB.finish(out);
+			}
+
+			@Override
+			public void release(InputStream in) {
+				ZLIB.release(in);
+			}
+
+			@Override
+			public String toString() {
+				return "ZLIB(level " + level + ")";
+			}
+		};
+	}
+
 	public static CompressionType getFromID(byte id) {
 		for (CompressionType c : CompressionType.values()) {
 			if (c.id == id) {
@@ -0,0 +1,189 @@
+package io.github.ensgijs.nbt.io;
+
+import io.github.ensgijs.nbt.tag.Tag;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Backing map for compound tags read by {@link BigEndianNbtInputStream#readTagLazily(java.io.InputStream, int)}.
+ * Values which are compound or list tags are held as the byte offset of their undecoded payload and are only
+ * decoded the first time they are accessed through {@link #get(Object)}, {@link #remove(Object)} or an
+ * entry's {@link Map.Entry#getValue()}. Operations which only need keys, such as {@link #containsKey(Object)},
+ * {@link #keySet()} and {@link #size()}, never decode anything.
+ * <p>Decoding a value replaces the placeholder in this map, so like any other compound tag backing map this
+ * class is not safe to read from multiple threads without external synchronization.</p>
+ */
+final class LazyTagMap extends AbstractMap<String, Tag<?>> {
+    private final ByteBuffer source;
+    /** Values are either a {@link Tag} or a {@link Pending} placeholder. */
+    private final LinkedHashMap<String, Object> entries = new LinkedHashMap<>(8);
+    private EntrySet entrySet;
+
+    private static final class Pending {
+        final byte type;
+        final int offset;
+        final int maxDepth;
+
+        Pending(byte type, int offset, int maxDepth) {
+            this.type = type;
+            this.offset = offset;
+            this.maxDepth = maxDepth;
+        }
+    }
+
+    /** @param source buffer holding the encoded payloads, only its content is used - never its position. */
+    LazyTagMap(ByteBuffer source) {
+        this.source = source;
+    }
+
+    void putPending(String key, byte type, int offset, int maxDepth) {
+        entries.put(key, new Pending(type, offset, maxDepth));
+    }
+
+    /** @return number of values which have not been decoded yet. */
+    int pendingCount() {
+        int count = 0;
+        for (Object v : entries.values()) {
+            if (v instanceof Pending) count++;
+        }
+        return count;
+    }
+
+    private Tag<?> decode(Object value) {
+        if (!(value instanceof Pending p)) return (Tag<?>) value;
+        try {
+            return BigEndianNbtInputStream.readPayloadLazily(source, p.type, p.offset, p.maxDepth);
+        } catch (IOException ex) {
+            throw new SilentIOException("failed to decode lazily read tag", ex);
+        }
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public Tag<?> get(Object key) {
+        Object value = entries.get(key);
+        if (value instanceof Pending) {
+            Tag<?> tag = decode(value);
+            entries.put((String) key, tag);
+            return tag;
+        }
+        return (Tag<?>) value;
+    }
+
+    @Override
+    public Tag<?> put(String key, Tag<?> value) {
+        return decode(entries.put(key, Objects.requireNonNull(value)));
+    }
+
+    @Override
+    public Tag<?> remove(Object key) {
+        return decode(entries.remove(key));
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return entries.keySet();
+    }
+
+    @Override
+    public Set<Map.Entry<String, Tag<?>>> entrySet() {
+        if (entrySet == null) entrySet = new EntrySet();
+        return entrySet;
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<String, Tag<?>>> {
+        @Override
+        public int size() {
+            return entries.size();
+        }
+
+        @Override
+        public void clear() {
+            entries.clear();
+        }
+
+        @Override
+        public Iterator<Map.Entry<String, Tag<?>>> iterator() {
+            final Iterator<Map.Entry<String, Object>> iter = entries.entrySet().iterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return iter.hasNext();
+                }
+
+                @Override
+                public Map.Entry<String, Tag<?>> next() {
+                    return new LazyEntry(iter.next());
+                }
+
+                @Override
+                public void remove() {
+                    iter.remove();
+                }
+            };
+        }
+    }
+
+    private final class LazyEntry implements Map.Entry<String, Tag<?>> {
+        private final Map.Entry<String, Object> entry;
+
+        LazyEntry(Map.Entry<String, Object> entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public String getKey() {
+            return entry.getKey();
+        }
+
+        @Override
+        public Tag<?> getValue() {
+            Object value = entry.getValue();
+            if (value instanceof Pending) {
+                Tag<?> tag = decode(value);
+                entry.setValue(tag);
+                return tag;
+            }
+            return (Tag<?>) value;
+        }
+
+        @Override
+        public Tag<?> setValue(Tag<?> value) {
+            return decode(entry.setValue(Objects.requireNonNull(value)));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Map.Entry<?, ?> e
+                    && Objects.equals(getKey(), e.getKey())
+                    && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+        }
+    }
+}
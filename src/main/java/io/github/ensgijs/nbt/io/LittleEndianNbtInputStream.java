@@ -19,6 +19,7 @@ import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
@@ -27,6 +28,8 @@ import java.util.Map;
 public class LittleEndianNbtInputStream implements DataInput, NbtInput, MaxDepthIO, Closeable {
 
 	private final DataInputStream input;
+	private StringCache stringCache;
+	private byte[] stringScratch;
 
 	private static Map<Byte, ExceptionBiFunction<LittleEndianNbtInputStream, Integer, ? extends Tag<?>, IOException>> readers = new HashMap<>();
 	private static Map<Byte, Class<?>> idClassMapping = new HashMap<>();
@@ -60,6 +63,28 @@ public class LittleEndianNbtInputStream implements DataInput, NbtInput, MaxDepth
 		input = in;
 	}
 
+	public StringCache getStringCache() {
+		return stringCache;
+	}
+
+	/**
+	 * When set, compound keys and string values are read through the given cache so that repeated strings share
+	 * one instance and are not decoded again.
+	 * @param stringCache cache to use, or null to decode every string.
+	 */
+	public LittleEndianNbtInputStream setStringCache(StringCache stringCache) {
+		this.stringCache = stringCache;
+		if (stringCache != null && stringScratch == null) {
+			stringScratch = new byte[StringCache.MAX_CACHED_LENGTH];
+		}
+		return this;
+	}
+
+	/** Reads a string through the string cache, if one is set. */
+	private String readCachedUTF() throws IOException {
+		return stringCache != null ? stringCache.readUtf8(this, stringScratch) : readUTF();
+	}
+
 	public NamedTag readTag(int maxDepth) throws IOException {
 		byte id = readByte();
 		return new NamedTag(readUTF(), readTag(id, maxDepth));
@@ -70,6 +95,14 @@ public class LittleEndianNbtInputStream implements DataInput, NbtInput, MaxDepth
 		return readTag(id, maxDepth);
 	}
 
+	/**
+	 * Reads a named tag, reporting its contents to {@code handler} as they are read instead of building a tag tree.
+	 * @see NbtEventHandler
+	 */
+	public void readEvents(NbtEventHandler handler, int maxDepth) throws IOException {
+		new NbtEventReader(this, handler, arrayCodec()).readNamedTag(maxDepth);
+	}
+
 	private Tag<?> readTag(byte type, int maxDepth) throws IOException {
 		ExceptionBiFunction<LittleEndianNbtInputStream, Integer, ? extends Tag<?>, IOException> f;
 		if ((f = readers.get(type)) == null) {
@@ -103,7 +136,7 @@ public class LittleEndianNbtInputStream implements DataInput, NbtInput, MaxDepth
 	}
 
 	private static StringTag readString(LittleEndianNbtInputStream in) throws IOException {
-		return new StringTag(in.readUTF());
+		return new StringTag(in.readCachedUTF());
 	}
 
 	private static ByteArrayTag readByteArray(LittleEndianNbtInputStream in) throws IOException {
@@ -115,21 +148,19 @@ public class LittleEndianNbtInputStream implements DataInput, NbtInput, MaxDepth
 	private static IntArrayTag readIntArray(LittleEndianNbtInputStream in) throws IOException {
 		int l = in.readInt();
 		int[] data = new int[l];
-		IntArrayTag iat = new IntArrayTag(data);
-		for (int i = 0; i < l; i++) {
-			data[i] = in.readInt();
-		}
-		return iat;
+		in.arrayCodec().readInts(in, data, l);
+		return new IntArrayTag(data);
 	}
 
 	private static LongArrayTag readLongArray(LittleEndianNbtInputStream in) throws IOException {
 		int l = in.readInt();
 		long[] data = new long[l];
-		LongArrayTag iat = new LongArrayTag(data);
-		for (int i = 0; i < l; i++) {
-			data[i] = in.readLong();
-		}
-		return iat;
+		in.arrayCodec().readLongs(in, data, l);
+		return new LongArrayTag(data);
+	}
+
+	private PrimitiveArrayCodec arrayCodec() {
+		return CodecPool.arrayCodec(ByteOrder.LITTLE_ENDIAN);
 	}
 
 	private static ListTag<?> readListTag(LittleEndianNbtInputStream in, int maxDepth) throws IOException {
@@ -148,7 +179,7 @@ public class LittleEndianNbtInputStream implements DataInput, NbtInput, MaxDepth
 	private static CompoundTag readCompound(LittleEndianNbtInputStream in, int maxDepth) throws IOException {
 		CompoundTag comp = new CompoundTag();
 		for (int id = in.readByte() & 0xFF; id != 0; id = in.readByte() & 0xFF) {
-			String key = in.readUTF();
+			String key = in.readCachedUTF();
 			Tag<?> element = in.readTag((byte) id, in.decrementMaxDepth(maxDepth));
 			comp.put(key, element);
 		}
@@ -19,6 +19,7 @@ import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
@@ -127,16 +128,16 @@ public class LittleEndianNbtOutputStream implements DataOutput, NbtOutput, MaxDe
 
 	private static void writeIntArray(LittleEndianNbtOutputStream out, Tag<?> tag) throws IOException {
 		out.writeInt(((IntArrayTag) tag).length());
-		for (int i : ((IntArrayTag) tag).getValue()) {
-			out.writeInt(i);
-		}
+		out.arrayCodec().writeInts(out, ((IntArrayTag) tag).getValue());
 	}
 
 	private static void writeLongArray(LittleEndianNbtOutputStream out, Tag<?> tag) throws IOException {
 		out.writeInt(((LongArrayTag) tag).length());
-		for (long l : ((LongArrayTag) tag).getValue()) {
-			out.writeLong(l);
-		}
+		out.arrayCodec().writeLongs(out, ((LongArrayTag) tag).getValue());
+	}
+
+	private PrimitiveArrayCodec arrayCodec() {
+		return CodecPool.arrayCodec(ByteOrder.LITTLE_ENDIAN);
 	}
 
 	private static void writeList(LittleEndianNbtOutputStream out, Tag<?> tag, int maxDepth) throws IOException {
@@ -0,0 +1,262 @@
+package io.github.ensgijs.nbt.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Pure java implementation of the LZ4 block format and of the 32bit xxHash checksum.
+ * <p>Only the raw block format is handled here, see {@link Lz4BlockOutputStream} and {@link Lz4BlockInputStream}
+ * for the stream framing Minecraft uses for LZ4 compressed chunks.</p>
+ * @see <a href="https://github.com/lz4/lz4/blob/dev/doc/lz4_Block_format.md">LZ4 Block Format Description</a>
+ * @see <a href="https://github.com/Cyan4973/xxHash/blob/dev/doc/xxhash_spec.md">xxHash Specification</a>
+ */
+public final class Lz4 {
+    static final int MIN_MATCH = 4;
+    /** The last 5 bytes of a block are always literals. */
+    static final int LAST_LITERALS = 5;
+    /** The last match must start at least 12 bytes before the end of the block. */
+    static final int MF_LIMIT = 12;
+    static final int MAX_DISTANCE = 0xFFFF;
+    static final int HASH_LOG = 12;
+    /** Size of the hash table used by {@link #compress(byte[], int, int, byte[], int, int[])}. */
+    public static final int HASH_TABLE_SIZE = 1 << HASH_LOG;
+    /** Controls how fast the compressor starts skipping ahead when it isn't finding matches. */
+    private static final int SKIP_TRIGGER = 6;
+
+    private static final int PRIME32_1 = 0x9E3779B1;
+    private static final int PRIME32_2 = 0x85EBCA77;
+    private static final int PRIME32_3 = 0xC2B2AE3D;
+    private static final int PRIME32_4 = 0x27D4EB2F;
+    private static final int PRIME32_5 = 0x165667B1;
+
+    private Lz4() {}
+
+    /** @return The maximum number of bytes compressing {@code length} bytes may produce. */
+    public static int maxCompressedLength(int length) {
+        if (length < 0) throw new IllegalArgumentException("length must be >= 0");
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses {@code src[srcOff..srcOff+srcLen)} into {@code dest} starting at {@code destOff}.
+     * @param dest must have at least {@link #maxCompressedLength(int)} bytes available after destOff.
+     * @return The number of bytes written to dest.
+     */
+    public static int compress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff) {
+        return compress(src, srcOff, srcLen, dest, destOff, new int[HASH_TABLE_SIZE]);
+    }
+
+    /**
+     * Compresses {@code src[srcOff..srcOff+srcLen)} into {@code dest} starting at {@code destOff}.
+     * @param dest must have at least {@link #maxCompressedLength(int)} bytes available after destOff.
+     * @param hashTable scratch space of length {@link #HASH_TABLE_SIZE}, its contents are overwritten.
+     * @return The number of bytes written to dest.
+     */
+    public static int compress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff, int[] hashTable) {
+        final int srcEnd = srcOff + srcLen;
+        final int matchLimit = srcEnd - LAST_LITERALS;
+        final int mfLimit = srcEnd - MF_LIMIT;
+        int dOff = destOff;
+        int anchor = srcOff;
+
+        if (srcLen > MF_LIMIT) {
+            Arrays.fill(hashTable, -1);
+            int sOff = srcOff;
+            hashTable[hash(readIntLE(src, sOff))] = sOff;
+            sOff++;
+            int searchCount = 1 << SKIP_TRIGGER;
+            while (sOff < mfLimit) {
+                final int sequence = readIntLE(src, sOff);
+                final int h = hash(sequence);
+                int ref = hashTable[h];
+                hashTable[h] = sOff;
+                if (ref < 0 || sOff - ref > MAX_DISTANCE || readIntLE(src, ref) != sequence) {
+                    sOff += searchCount++ >>> SKIP_TRIGGER;
+                    continue;
+                }
+                searchCount = 1 << SKIP_TRIGGER;
+
+                // extend the match backwards into the pending literals
+                while (sOff > anchor && ref > srcOff && src[sOff - 1] == src[ref - 1]) {
+                    sOff--;
+                    ref--;
+                }
+                int matchLen = MIN_MATCH;
+                while (sOff + matchLen < matchLimit && src[sOff + matchLen] == src[ref + matchLen]) {
+                    matchLen++;
+                }
+
+                final int tokenOff = dOff++;
+                final int literalLen = sOff - anchor;
+                dOff = writeLength(literalLen, dest, tokenOff, 4, dOff);
+                System.arraycopy(src, anchor, dest, dOff, literalLen);
+                dOff += literalLen;
+                final int offset = sOff - ref;
+                dest[dOff++] = (byte) offset;
+                dest[dOff++] = (byte) (offset >>> 8);
+                dOff = writeLength(matchLen - MIN_MATCH, dest, tokenOff, 0, dOff);
+
+                sOff += matchLen;
+                anchor = sOff;
+                if (sOff < mfLimit) {
+                    hashTable[hash(readIntLE(src, sOff - 2))] = sOff - 2;
+                }
+            }
+        }
+
+        // last literals
+        final int tokenOff = dOff++;
+        final int literalLen = srcEnd - anchor;
+        dOff = writeLength(literalLen, dest, tokenOff, 4, dOff);
+        System.arraycopy(src, anchor, dest, dOff, literalLen);
+        dOff += literalLen;
+        return dOff - destOff;
+    }
+
+    /**
+     * Decompresses a complete LZ4 block.
+     * @param destLen maximum number of bytes to write into dest.
+     * @return The number of bytes written to dest.
+     * @throws IOException if the block is malformed or would decompress to more than destLen bytes.
+     */
+    public static int decompress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff, int destLen) throws IOException {
+        final int srcEnd = srcOff + srcLen;
+        final int destEnd = destOff + destLen;
+        int sOff = srcOff;
+        int dOff = destOff;
+        while (true) {
+            if (sOff >= srcEnd)
+                throw new IOException("Malformed LZ4 block: unexpected end of input");
+            final int token = src[sOff++] & 0xFF;
+
+            int literalLen = token >>> 4;
+            if (literalLen == 0xF) {
+                int b;
+                do {
+                    if (sOff >= srcEnd || literalLen > destLen)
+                        throw new IOException("Malformed LZ4 block: bad literal length");
+                    b = src[sOff++] & 0xFF;
+                    literalLen += b;
+                } while (b == 0xFF);
+            }
+            if (literalLen > srcEnd - sOff || literalLen > destEnd - dOff)
+                throw new IOException("Malformed LZ4 block: literals overflow");
+            System.arraycopy(src, sOff, dest, dOff, literalLen);
+            sOff += literalLen;
+            dOff += literalLen;
+            if (sOff == srcEnd) break;  // the last sequence has no match part
+
+            if (srcEnd - sOff < 2)
+                throw new IOException("Malformed LZ4 block: unexpected end of input");
+            final int offset = (src[sOff] & 0xFF) | (src[sOff + 1] & 0xFF) << 8;
+            sOff += 2;
+            if (offset == 0 || offset > dOff - destOff)
+                throw new IOException("Malformed LZ4 block: bad match offset " + offset);
+
+            int matchLen = token & 0xF;
+            if (matchLen == 0xF) {
+                int b;
+                do {
+                    if (sOff >= srcEnd || matchLen > destLen)
+                        throw new IOException("Malformed LZ4 block: bad match length");
+                    b = src[sOff++] & 0xFF;
+                    matchLen += b;
+                } while (b == 0xFF);
+            }
+            matchLen += MIN_MATCH;
+            if (matchLen > destEnd - dOff)
+                throw new IOException("Malformed LZ4 block: match overflows output");
+            final int ref = dOff - offset;
+            if (offset >= matchLen) {
+                System.arraycopy(dest, ref, dest, dOff, matchLen);
+            } else {  // overlapping copy repeats the last 'offset' bytes
+                for (int i = 0; i < matchLen; i++) {
+                    dest[dOff + i] = dest[ref + i];
+                }
+            }
+            dOff += matchLen;
+        }
+        return dOff - destOff;
+    }
+
+    /** Computes the 32bit xxHash of {@code buf[off..off+len)}. */
+    public static int xxHash32(byte[] buf, int off, int len, int seed) {
+        final int end = off + len;
+        int h32;
+        if (len >= 16) {
+            final int limit = end - 16;
+            int v1 = seed + PRIME32_1 + PRIME32_2;
+            int v2 = seed + PRIME32_2;
+            int v3 = seed;
+            int v4 = seed - PRIME32_1;
+            do {
+                v1 = xxRound(v1, readIntLE(buf, off));
+                v2 = xxRound(v2, readIntLE(buf, off + 4));
+                v3 = xxRound(v3, readIntLE(buf, off + 8));
+                v4 = xxRound(v4, readIntLE(buf, off + 12));
+                off += 16;
+            } while (off <= limit);
+            h32 = Integer.rotateLeft(v1, 1) + Integer.rotateLeft(v2, 7)
+                    + Integer.rotateLeft(v3, 12) + Integer.rotateLeft(v4, 18);
+        } else {
+            h32 = seed + PRIME32_5;
+        }
+        h32 += len;
+        while (off <= end - 4) {
+            h32 += readIntLE(buf, off) * PRIME32_3;
+            h32 = Integer.rotateLeft(h32, 17) * PRIME32_4;
+            off += 4;
+        }
+        while (off < end) {
+            h32 += (buf[off] & 0xFF) * PRIME32_5;
+            h32 = Integer.rotateLeft(h32, 11) * PRIME32_1;
+            off++;
+        }
+        h32 ^= h32 >>> 15;
+        h32 *= PRIME32_2;
+        h32 ^= h32 >>> 13;
+        h32 *= PRIME32_3;
+        h32 ^= h32 >>> 16;
+        return h32;
+    }
+
+    private static int xxRound(int acc, int input) {
+        acc += input * PRIME32_2;
+        acc = Integer.rotateLeft(acc, 13);
+        return acc * PRIME32_1;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    static int readIntLE(byte[] buf, int off) {
+        return (buf[off] & 0xFF) | (buf[off + 1] & 0xFF) << 8 | (buf[off + 2] & 0xFF) << 16 | (buf[off + 3] & 0xFF) << 24;
+    }
+
+    static void writeIntLE(int value, byte[] buf, int off) {
+        buf[off] = (byte) value;
+        buf[off + 1] = (byte) (value >>> 8);
+        buf[off + 2] = (byte) (value >>> 16);
+        buf[off + 3] = (byte) (value >>> 24);
+    }
+
+    /**
+     * Stores the low 4 bits of a length in the token nibble at {@code shift} and writes any overflow bytes.
+     * @return The new dest offset.
+     */
+    private static int writeLength(int length, byte[] dest, int tokenOff, int shift, int dOff) {
+        if (length < 0xF) {
+            dest[tokenOff] = (byte) (shift == 4 ? length << 4 : (dest[tokenOff] & 0xF0) | length);
+            return dOff;
+        }
+        dest[tokenOff] = (byte) (shift == 4 ? 0xF0 : (dest[tokenOff] & 0xF0) | 0xF);
+        length -= 0xF;
+        while (length >= 0xFF) {
+            dest[dOff++] = (byte) 0xFF;
+            length -= 0xFF;
+        }
+        dest[dOff++] = (byte) length;
+        return dOff;
+    }
+}
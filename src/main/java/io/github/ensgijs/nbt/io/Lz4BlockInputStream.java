@@ -0,0 +1,135 @@
+package io.github.ensgijs.nbt.io;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+import static io.github.ensgijs.nbt.io.Lz4BlockOutputStream.*;
+
+/**
+ * Decompresses data written in the "LZ4Block" stream framing used by Minecraft for LZ4 compressed chunks
+ * (compression type 4), such as that produced by {@link Lz4BlockOutputStream} or
+ * {@code net.jpountz.lz4.LZ4BlockOutputStream}. Block checksums are verified.
+ */
+public class Lz4BlockInputStream extends FilterInputStream {
+    private final byte[] header = new byte[HEADER_LENGTH];
+    private byte[] buffer = new byte[0];
+    private byte[] compressedBuffer = new byte[0];
+    private int originalLen;
+    private int position;
+    private boolean finished;
+
+    public Lz4BlockInputStream(InputStream in) {
+        super(Objects.requireNonNull(in));
+    }
+
+    @Override
+    public int available() {
+        return originalLen - position;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (finished) return -1;
+        if (position == originalLen) {
+            refill();
+            if (finished) return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) return 0;
+        if (finished) return -1;
+        if (position == originalLen) {
+            refill();
+            if (finished) return -1;
+        }
+        len = Math.min(len, originalLen - position);
+        System.arraycopy(buffer, position, b, off, len);
+        position += len;
+        return len;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0 || finished) return 0;
+        if (position == originalLen) {
+            refill();
+            if (finished) return 0;
+        }
+        final int skipped = (int) Math.min(n, originalLen - position);
+        position += skipped;
+        return skipped;
+    }
+
+    private void refill() throws IOException {
+        readFully(header, HEADER_LENGTH);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header[i] != MAGIC[i]) throw new IOException("Stream is corrupted: bad LZ4Block magic");
+        }
+        final int token = header[MAGIC.length] & 0xFF;
+        final int compressionMethod = token & 0xF0;
+        final int compressionLevel = COMPRESSION_LEVEL_BASE + (token & 0x0F);
+        if (compressionMethod != COMPRESSION_METHOD_RAW && compressionMethod != COMPRESSION_METHOD_LZ4)
+            throw new IOException("Stream is corrupted: unknown LZ4Block compression method 0x" + Integer.toHexString(compressionMethod));
+        final int compressedLen = Lz4.readIntLE(header, MAGIC.length + 1);
+        originalLen = Lz4.readIntLE(header, MAGIC.length + 5);
+        final int check = Lz4.readIntLE(header, MAGIC.length + 9);
+        if (originalLen > 1 << compressionLevel
+                || originalLen < 0
+                || compressedLen < 0
+                || (originalLen == 0 && compressedLen != 0)
+                || (originalLen != 0 && compressedLen == 0)
+                || (compressionMethod == COMPRESSION_METHOD_RAW && originalLen != compressedLen)) {
+            throw new IOException("Stream is corrupted: invalid LZ4Block header");
+        }
+        position = 0;
+        if (originalLen == 0) {  // end of stream marker
+            if (check != 0) throw new IOException("Stream is corrupted: invalid LZ4Block end marker");
+            finished = true;
+            return;
+        }
+        if (buffer.length < originalLen) {
+            buffer = new byte[Math.max(originalLen, buffer.length * 3 / 2)];
+        }
+        if (compressionMethod == COMPRESSION_METHOD_RAW) {
+            readFully(buffer, originalLen);
+        } else {
+            if (compressedBuffer.length < compressedLen) {
+                compressedBuffer = new byte[Math.max(compressedLen, compressedBuffer.length * 3 / 2)];
+            }
+            readFully(compressedBuffer, compressedLen);
+            if (Lz4.decompress(compressedBuffer, 0, compressedLen, buffer, 0, originalLen) != originalLen)
+                throw new IOException("Stream is corrupted: LZ4Block decompressed to the wrong length");
+        }
+        if ((Lz4.xxHash32(buffer, 0, originalLen, DEFAULT_SEED) & 0xFFFFFFF) != check)
+            throw new IOException("Stream is corrupted: LZ4Block checksum mismatch");
+    }
+
+    private void readFully(byte[] b, int len) throws IOException {
+        int read = 0;
+        while (read < len) {
+            final int r = in.read(b, read, len - read);
+            if (r < 0) throw new EOFException("Stream ended prematurely");
+            read += r;
+        }
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {}
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+}
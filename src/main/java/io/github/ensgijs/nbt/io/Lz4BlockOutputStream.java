@@ -0,0 +1,126 @@
+package io.github.ensgijs.nbt.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * Compresses data using the "LZ4Block" stream framing used by Minecraft for LZ4 compressed chunks (compression
+ * type 4). The output is compatible with {@code net.jpountz.lz4.LZ4BlockInputStream} and {@link Lz4BlockInputStream}.
+ * <p>Each block has a 21 byte header: the 8 byte magic "LZ4Block", a token byte holding the compression method
+ * and block size exponent, then the little endian compressed length, decompressed length and xxHash32 checksum of
+ * the decompressed data. The stream is terminated by an empty block written by {@link #finish()}.</p>
+ */
+public class Lz4BlockOutputStream extends FilterOutputStream {
+    static final byte[] MAGIC = {'L', 'Z', '4', 'B', 'l', 'o', 'c', 'k'};
+    static final int HEADER_LENGTH = MAGIC.length + 1 + 4 + 4 + 4;
+    static final int COMPRESSION_LEVEL_BASE = 10;
+    static final int MIN_BLOCK_SIZE = 64;
+    static final int MAX_BLOCK_SIZE = 1 << (COMPRESSION_LEVEL_BASE + 0x0F);
+    static final int COMPRESSION_METHOD_RAW = 0x10;
+    static final int COMPRESSION_METHOD_LZ4 = 0x20;
+    static final int DEFAULT_SEED = 0x9747b28c;
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+    private final int compressionLevel;
+    private final byte[] buffer;
+    private final byte[] compressedBuffer;
+    private final int[] hashTable = new int[Lz4.HASH_TABLE_SIZE];
+    private int bufferedBytes;
+    private boolean finished;
+
+    public Lz4BlockOutputStream(OutputStream out) {
+        this(out, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param blockSize the maximum number of uncompressed bytes per block, must be in the range [64..32MB].
+     */
+    public Lz4BlockOutputStream(OutputStream out, int blockSize) {
+        super(Objects.requireNonNull(out));
+        if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE)
+            throw new IllegalArgumentException("blockSize must be in [" + MIN_BLOCK_SIZE + ", " + MAX_BLOCK_SIZE + "], got " + blockSize);
+        this.compressionLevel = Math.max(0, (32 - Integer.numberOfLeadingZeros(blockSize - 1)) - COMPRESSION_LEVEL_BASE);
+        this.buffer = new byte[blockSize];
+        this.compressedBuffer = new byte[HEADER_LENGTH + Lz4.maxCompressedLength(blockSize)];
+        System.arraycopy(MAGIC, 0, compressedBuffer, 0, MAGIC.length);
+    }
+
+    private void ensureNotFinished() {
+        if (finished) throw new IllegalStateException("This stream is already finished");
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureNotFinished();
+        if (bufferedBytes == buffer.length) flushBufferedData();
+        buffer[bufferedBytes++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        ensureNotFinished();
+        while (bufferedBytes + len > buffer.length) {
+            final int l = buffer.length - bufferedBytes;
+            System.arraycopy(b, off, buffer, bufferedBytes, l);
+            bufferedBytes = buffer.length;
+            flushBufferedData();
+            off += l;
+            len -= l;
+        }
+        System.arraycopy(b, off, buffer, bufferedBytes, len);
+        bufferedBytes += len;
+    }
+
+    private void flushBufferedData() throws IOException {
+        if (bufferedBytes == 0) return;
+        final int check = Lz4.xxHash32(buffer, 0, bufferedBytes, DEFAULT_SEED) & 0xFFFFFFF;
+        int compressedLength = Lz4.compress(buffer, 0, bufferedBytes, compressedBuffer, HEADER_LENGTH, hashTable);
+        final int compressionMethod;
+        if (compressedLength >= bufferedBytes) {
+            compressionMethod = COMPRESSION_METHOD_RAW;
+            compressedLength = bufferedBytes;
+            System.arraycopy(buffer, 0, compressedBuffer, HEADER_LENGTH, bufferedBytes);
+        } else {
+            compressionMethod = COMPRESSION_METHOD_LZ4;
+        }
+        writeHeader(compressionMethod, compressedLength, bufferedBytes, check);
+        out.write(compressedBuffer, 0, HEADER_LENGTH + compressedLength);
+        bufferedBytes = 0;
+    }
+
+    private void writeHeader(int compressionMethod, int compressedLength, int decompressedLength, int check) {
+        compressedBuffer[MAGIC.length] = (byte) (compressionMethod | compressionLevel);
+        Lz4.writeIntLE(compressedLength, compressedBuffer, MAGIC.length + 1);
+        Lz4.writeIntLE(decompressedLength, compressedBuffer, MAGIC.length + 5);
+        Lz4.writeIntLE(check, compressedBuffer, MAGIC.length + 9);
+    }
+
+    /** Compresses any buffered data as a (possibly short) block and flushes the underlying stream. */
+    @Override
+    public void flush() throws IOException {
+        if (!finished) flushBufferedData();
+        out.flush();
+    }
+
+    /**
+     * Writes all buffered data and the end of stream marker without closing the underlying stream.
+     * Nothing more may be written to this stream afterwards.
+     */
+    public void finish() throws IOException {
+        ensureNotFinished();
+        flushBufferedData();
+        writeHeader(COMPRESSION_METHOD_RAW, 0, 0, 0);
+        out.write(compressedBuffer, 0, HEADER_LENGTH);
+        finished = true;
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!finished) finish();
+        out.close();
+    }
+}
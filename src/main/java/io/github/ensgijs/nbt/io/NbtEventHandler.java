@@ -0,0 +1,77 @@
+package io.github.ensgijs.nbt.io;
+
+/**
+ * Receives the contents of binary nbt data as a stream of events instead of as a tag tree, see
+ * {@link BigEndianNbtInputStream#readEvents(NbtEventHandler, int)} and
+ * {@link LittleEndianNbtInputStream#readEvents(NbtEventHandler, int)}. Memory use is independent of the size of
+ * the data being read which makes this suitable for computing statistics over very large files.
+ * <p>Event order:</p>
+ * <ul>
+ *     <li>A named tag begins with {@link #name(String)} followed by the events for its value.</li>
+ *     <li>A compound produces {@link #startCompound()}, then {@link #name(String)} followed by the value events
+ *     for each entry, then {@link #endCompound()}.</li>
+ *     <li>A list produces {@link #startList(byte, int)}, the value events of each element, then
+ *     {@link #endList()}.</li>
+ *     <li>Everything else produces a single value event.</li>
+ * </ul>
+ * <p>All methods do nothing by default so implementations only need to override what they care about.</p>
+ */
+public interface NbtEventHandler {
+
+	/** Called with the name of the root tag, or of a compound entry, before the events for its value. */
+	default void name(String name) {}
+
+	/**
+	 * @return false to skip over the contents of this compound without decoding them, in which case
+	 * {@link #endCompound()} isn't called for it either.
+	 */
+	default boolean startCompound() {
+		return true;
+	}
+
+	default void endCompound() {}
+
+	/**
+	 * @param elementType tag id of the list elements
+	 * @param length number of elements
+	 * @return false to skip over the contents of this list without decoding them, in which case
+	 * {@link #endList()} isn't called for it either.
+	 */
+	default boolean startList(byte elementType, int length) {
+		return true;
+	}
+
+	default void endList() {}
+
+	default void byteValue(byte value) {}
+
+	default void shortValue(short value) {}
+
+	default void intValue(int value) {}
+
+	default void longValue(long value) {}
+
+	default void floatValue(float value) {}
+
+	default void doubleValue(double value) {}
+
+	default void stringValue(String value) {}
+
+	/**
+	 * @param values reused between calls, only the first {@code length} values are valid.
+	 *               Copy them if they need to be kept.
+	 */
+	default void byteArray(byte[] values, int length) {}
+
+	/**
+	 * @param values reused between calls, only the first {@code length} values are valid.
+	 *               Copy them if they need to be kept.
+	 */
+	default void intArray(int[] values, int length) {}
+
+	/**
+	 * @param values reused between calls, only the first {@code length} values are valid.
+	 *               Copy them if they need to be kept.
+	 */
+	default void longArray(long[] values, int length) {}
+}
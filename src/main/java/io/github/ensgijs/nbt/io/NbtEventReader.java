@@ -0,0 +1,164 @@
+package io.github.ensgijs.nbt.io;
+
+import io.github.ensgijs.nbt.tag.ByteArrayTag;
+import io.github.ensgijs.nbt.tag.ByteTag;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.DoubleTag;
+import io.github.ensgijs.nbt.tag.EndTag;
+import io.github.ensgijs.nbt.tag.FloatTag;
+import io.github.ensgijs.nbt.tag.IntArrayTag;
+import io.github.ensgijs.nbt.tag.IntTag;
+import io.github.ensgijs.nbt.tag.ListTag;
+import io.github.ensgijs.nbt.tag.LongArrayTag;
+import io.github.ensgijs.nbt.tag.LongTag;
+import io.github.ensgijs.nbt.tag.ShortTag;
+import io.github.ensgijs.nbt.tag.StringTag;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+/**
+ * Walks binary nbt data, of either endianness, producing {@link NbtEventHandler} events.
+ * Also provides the payload skipping logic shared by the binary nbt readers.
+ */
+final class NbtEventReader implements MaxDepthIO {
+	private static final byte[] NO_BYTES = new byte[0];
+	private static final int[] NO_INTS = new int[0];
+	private static final long[] NO_LONGS = new long[0];
+
+	private final DataInput in;
+	private final NbtEventHandler handler;
+	private final PrimitiveArrayCodec arrayCodec;
+	private byte[] bytes = NO_BYTES;
+	private int[] ints = NO_INTS;
+	private long[] longs = NO_LONGS;
+
+	NbtEventReader(DataInput in, NbtEventHandler handler, PrimitiveArrayCodec arrayCodec) {
+		this.in = in;
+		this.handler = handler;
+		this.arrayCodec = arrayCodec;
+	}
+
+	void readNamedTag(int maxDepth) throws IOException {
+		byte id = in.readByte();
+		handler.name(in.readUTF());
+		readPayload(id, maxDepth);
+	}
+
+	private void readPayload(byte type, int maxDepth) throws IOException {
+		switch (type) {
+			case EndTag.ID -> {}
+			case ByteTag.ID -> handler.byteValue(in.readByte());
+			case ShortTag.ID -> handler.shortValue(in.readShort());
+			case IntTag.ID -> handler.intValue(in.readInt());
+			case LongTag.ID -> handler.longValue(in.readLong());
+			case FloatTag.ID -> handler.floatValue(in.readFloat());
+			case DoubleTag.ID -> handler.doubleValue(in.readDouble());
+			case StringTag.ID -> handler.stringValue(in.readUTF());
+			case ByteArrayTag.ID -> {
+				int length = in.readInt();
+				if (bytes.length < length) bytes = new byte[length];
+				in.readFully(bytes, 0, length);
+				handler.byteArray(bytes, length);
+			}
+			case IntArrayTag.ID -> {
+				int length = in.readInt();
+				if (ints.length < length) ints = new int[length];
+				arrayCodec.readInts(in, ints, length);
+				handler.intArray(ints, length);
+			}
+			case LongArrayTag.ID -> {
+				int length = in.readInt();
+				if (longs.length < length) longs = new long[length];
+				arrayCodec.readLongs(in, longs, length);
+				handler.longArray(longs, length);
+			}
+			case ListTag.ID -> {
+				byte listType = in.readByte();
+				int length = Math.max(0, in.readInt());
+				if (!handler.startList(listType, length)) {
+					skipListElements(in, this, listType, length, maxDepth);
+					return;
+				}
+				for (int i = 0; i < length; i++) {
+					readPayload(listType, decrementMaxDepth(maxDepth));
+				}
+				handler.endList();
+			}
+			case CompoundTag.ID -> {
+				if (!handler.startCompound()) {
+					skipPayload(in, this, CompoundTag.ID, maxDepth);
+					return;
+				}
+				for (int id = in.readByte() & 0xFF; id != 0; id = in.readByte() & 0xFF) {
+					handler.name(in.readUTF());
+					readPayload((byte) id, decrementMaxDepth(maxDepth));
+				}
+				handler.endCompound();
+			}
+			default -> throw new IOException("invalid tag id \"" + type + "\"");
+		}
+	}
+
+	/**
+	 * Advances past the payload of a tag of the given type without decoding it.
+	 * The same max depth rules are applied as when decoding.
+	 */
+	static void skipPayload(DataInput in, MaxDepthIO depth, byte type, int maxDepth) throws IOException {
+		switch (type) {
+			case EndTag.ID -> {}
+			case ByteTag.ID -> skipFully(in, 1);
+			case ShortTag.ID -> skipFully(in, 2);
+			case IntTag.ID, FloatTag.ID -> skipFully(in, 4);
+			case LongTag.ID, DoubleTag.ID -> skipFully(in, 8);
+			case ByteArrayTag.ID -> skipFully(in, in.readInt());
+			case IntArrayTag.ID -> skipFully(in, in.readInt() * 4L);
+			case LongArrayTag.ID -> skipFully(in, in.readInt() * 8L);
+			case StringTag.ID -> skipFully(in, in.readUnsignedShort());
+			case ListTag.ID -> {
+				byte listType = in.readByte();
+				skipListElements(in, depth, listType, Math.max(0, in.readInt()), maxDepth);
+			}
+			case CompoundTag.ID -> {
+				for (int id = in.readByte() & 0xFF; id != 0; id = in.readByte() & 0xFF) {
+					skipFully(in, in.readUnsignedShort());
+					skipPayload(in, depth, (byte) id, depth.decrementMaxDepth(maxDepth));
+				}
+			}
+			default -> throw new IOException("invalid tag id \"" + type + "\"");
+		}
+	}
+
+	private static void skipListElements(DataInput in, MaxDepthIO depth, byte listType, int length, int maxDepth) throws IOException {
+		long fixedSize = switch (listType) {
+			case EndTag.ID -> 0;
+			case ByteTag.ID -> 1;
+			case ShortTag.ID -> 2;
+			case IntTag.ID, FloatTag.ID -> 4;
+			case LongTag.ID, DoubleTag.ID -> 8;
+			default -> -1;
+		};
+		if (fixedSize >= 0) {
+			// decoding still validates depth for each primitive element
+			if (length > 0) depth.decrementMaxDepth(maxDepth);
+			skipFully(in, fixedSize * length);
+		} else {
+			for (int i = 0; i < length; i++) {
+				skipPayload(in, depth, listType, depth.decrementMaxDepth(maxDepth));
+			}
+		}
+	}
+
+	static void skipFully(DataInput in, long n) throws IOException {
+		if (n < 0) throw new IOException("negative length " + n);
+		while (n > 0) {
+			long skipped = in.skipBytes((int) Math.min(n, Integer.MAX_VALUE));
+			if (skipped <= 0) {
+				// skipBytes may give up early without having reached the end of the stream
+				in.readByte();
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package io.github.ensgijs.nbt.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Reads and writes numeric arrays in bulk. Raw bytes are moved through a scratch buffer and converted
+ * with {@link IntBuffer} / {@link LongBuffer} views instead of decoding one element per stream call.
+ * <p>Instances hold a scratch buffer and must not be shared between threads; nbt streams use the calling
+ * thread's instance from {@link CodecPool#arrayCodec(ByteOrder)}.</p>
+ */
+final class PrimitiveArrayCodec {
+	static final int SCRATCH_SIZE = 8192;
+
+	private final byte[] scratch = new byte[SCRATCH_SIZE];
+	private final ShortBuffer shorts;
+	private final IntBuffer ints;
+	private final LongBuffer longs;
+	private final FloatBuffer floats;
+	private final DoubleBuffer doubles;
+
+	PrimitiveArrayCodec(ByteOrder order) {
+		ByteBuffer bb = ByteBuffer.wrap(scratch).order(order);
+		shorts = bb.asShortBuffer();
+		ints = bb.asIntBuffer();
+		longs = bb.asLongBuffer();
+		floats = bb.asFloatBuffer();
+		doubles = bb.asDoubleBuffer();
+	}
+
+	void readShorts(DataInput in, short[] dst, int length) throws IOException {
+		final int step = SCRATCH_SIZE / Short.BYTES;
+		for (int off = 0; off < length; off += step) {
+			int n = Math.min(step, length - off);
+			in.readFully(scratch, 0, n * Short.BYTES);
+			shorts.get(0, dst, off, n);
+		}
+	}
+
+	void readInts(DataInput in, int[] dst, int length) throws IOException {
+		final int step = SCRATCH_SIZE / Integer.BYTES;
+		for (int off = 0; off < length; off += step) {
+			int n = Math.min(step, length - off);
+			in.readFully(scratch, 0, n * Integer.BYTES);
+			ints.get(0, dst, off, n);
+		}
+	}
+
+	void readLongs(DataInput in, long[] dst, int length) throws IOException {
+		final int step = SCRATCH_SIZE / Long.BYTES;
+		for (int off = 0; off < length; off += step) {
+			int n = Math.min(step, length - off);
+			in.readFully(scratch, 0, n * Long.BYTES);
+			longs.get(0, dst, off, n);
+		}
+	}
+
+	void readFloats(DataInput in, float[] dst, int length) throws IOException {
+		final int step = SCRATCH_SIZE / Float.BYTES;
+		for (int off = 0; off < length; off += step) {
+			int n = Math.min(step, length - off);
+			in.readFully(scratch, 0, n * Float.BYTES);
+			floats.get(0, dst, off, n);
+		}
+	}
+
+	void readDoubles(DataInput in, double[] dst, int length) throws IOException {
+		final int step = SCRATCH_SIZE / Double.BYTES;
+		for (int off = 0; off < length; off += step) {
+			int n = Math.min(step, length - off);
+			in.readFully(scratch, 0, n * Double.BYTES);
+			doubles.get(0, dst, off, n);
+		}
+	}
+
+	void writeInts(DataOutput out, int[] src) throws IOException {
+		final int step = SCRATCH_SIZE / Integer.BYTES;
+		for (int off = 0; off < src.length; off += step) {
+			int n = Math.min(step, src.length - off);
+			ints.put(0, src, off, n);
+			out.write(scratch, 0, n * Integer.BYTES);
+		}
+	}
+
+	void writeLongs(DataOutput out, long[] src) throws IOException {
+		final int step = SCRATCH_SIZE / Long.BYTES;
+		for (int off = 0; off < src.length; off += step) {
+			int n = Math.min(step, src.length - off);
+			longs.put(0, src, off, n);
+			out.write(scratch, 0, n * Long.BYTES);
+		}
+	}
+}
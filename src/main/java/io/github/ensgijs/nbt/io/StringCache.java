@@ -0,0 +1,160 @@
+package io.github.ensgijs.nbt.io;
+
+import io.github.ensgijs.nbt.util.ArgValidator;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Bounded cache of strings read by the binary nbt readers. Nbt data repeats the same handful of compound keys
+ * ("Name", "Properties", "palette", "data", ...) and string values ("minecraft:stone", ...) over and over, and
+ * without a cache every occurrence is decoded into its own {@link String}. With a cache the raw bytes of a string
+ * are compared against a cached entry and, when they match, the cached instance is returned without decoding
+ * anything - reducing both decode time and the heap retained by loaded tags.
+ *
+ * <p>The cache is direct mapped: each string hashes to a single slot and a miss simply replaces whatever was in
+ * that slot, so memory use is bounded by the slot count and no eviction bookkeeping is needed. Only ASCII strings
+ * of up to {@link #MAX_CACHED_LENGTH} bytes are cached, anything else is decoded as usual.</p>
+ *
+ * <p>This class is thread safe, instances can be shared by any number of readers.</p>
+ * @see BigEndianNbtInputStream#setStringCache(StringCache)
+ * @see BinaryNbtDeserializer#setStringCache(StringCache)
+ */
+public final class StringCache {
+	/** Strings whose encoded form is longer than this many bytes are never cached. */
+	public static final int MAX_CACHED_LENGTH = 64;
+	/** Cache shared by chunks loaded with {@link io.github.ensgijs.nbt.mca.io.LoadFlags#INTERN_STRINGS}. */
+	public static final StringCache SHARED = new StringCache(4096);
+
+	private static final class Entry {
+		final byte[] bytes;
+		final String value;
+
+		Entry(byte[] bytes, String value) {
+			this.bytes = bytes;
+			this.value = value;
+		}
+	}
+
+	/** Slots are read and written without synchronization, which is safe as entries are immutable. */
+	private final Entry[] slots;
+	private final int mask;
+
+	/** @param capacity number of slots, rounded up to a power of 2. */
+	public StringCache(int capacity) {
+		ArgValidator.check(capacity > 0 && capacity <= 1 << 24, "capacity must be in range [1, 2^24]");
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) size <<= 1;
+		slots = new Entry[size];
+		mask = size - 1;
+	}
+
+	/** Number of slots. */
+	public int capacity() {
+		return slots.length;
+	}
+
+	/** Number of slots currently holding a string. */
+	public int size() {
+		int count = 0;
+		for (Entry e : slots) {
+			if (e != null) count++;
+		}
+		return count;
+	}
+
+	public void clear() {
+		Arrays.fill(slots, null);
+	}
+
+	/**
+	 * Gets the string encoded by the given bytes from the cache, adding it if it isn't already cached.
+	 * @return null if the bytes are not plain ASCII - which are the only strings this cache holds.
+	 */
+	String lookup(byte[] bytes, int length) {
+		int h = 0;
+		int bits = 0;
+		for (int i = 0; i < length; i++) {
+			byte b = bytes[i];
+			bits |= b;
+			h = 31 * h + b;
+		}
+		if ((bits & 0x80) != 0) {
+			return null;
+		}
+		final int slot = (h ^ (h >>> 16)) & mask;
+		Entry e = slots[slot];
+		if (e != null && Arrays.equals(e.bytes, 0, e.bytes.length, bytes, 0, length)) {
+			return e.value;
+		}
+		String value = new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+		slots[slot] = new Entry(Arrays.copyOf(bytes, length), value);
+		return value;
+	}
+
+	/**
+	 * Reads a modified UTF-8 string, as {@link DataInput#readUTF()} does, through this cache.
+	 * @param scratch buffer of at least {@link #MAX_CACHED_LENGTH} bytes owned by the calling reader.
+	 */
+	String readModifiedUtf8(DataInput in, byte[] scratch) throws IOException {
+		int length = in.readUnsignedShort();
+		if (length <= MAX_CACHED_LENGTH) {
+			in.readFully(scratch, 0, length);
+			String value = lookup(scratch, length);
+			return value != null ? value : decodeModifiedUtf8(scratch, length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return decodeModifiedUtf8(bytes, length);
+	}
+
+	/**
+	 * Reads a standard UTF-8 string, prefixed by its unsigned short byte length, through this cache.
+	 * @param scratch buffer of at least {@link #MAX_CACHED_LENGTH} bytes owned by the calling reader.
+	 */
+	String readUtf8(DataInput in, byte[] scratch) throws IOException {
+		int length = in.readUnsignedShort();
+		if (length <= MAX_CACHED_LENGTH) {
+			in.readFully(scratch, 0, length);
+			String value = lookup(scratch, length);
+			return value != null ? value : new String(scratch, 0, length, StandardCharsets.UTF_8);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/** Decodes modified UTF-8 exactly as {@link java.io.DataInputStream#readUTF(DataInput)} does. */
+	static String decodeModifiedUtf8(byte[] bytes, int length) throws UTFDataFormatException {
+		char[] chars = new char[length];
+		int n = 0;
+		int i = 0;
+		while (i < length) {
+			int c = bytes[i] & 0xFF;
+			if (c < 0x80) {
+				chars[n++] = (char) c;
+				i++;
+			} else if ((c & 0xE0) == 0xC0) {
+				if (i + 2 > length) throw new UTFDataFormatException("malformed input: partial character at end");
+				int c2 = bytes[i + 1];
+				if ((c2 & 0xC0) != 0x80) throw new UTFDataFormatException("malformed input around byte " + (i + 1));
+				chars[n++] = (char) (((c & 0x1F) << 6) | (c2 & 0x3F));
+				i += 2;
+			} else if ((c & 0xF0) == 0xE0) {
+				if (i + 3 > length) throw new UTFDataFormatException("malformed input: partial character at end");
+				int c2 = bytes[i + 1];
+				int c3 = bytes[i + 2];
+				if ((c2 & 0xC0) != 0x80 || (c3 & 0xC0) != 0x80)
+					throw new UTFDataFormatException("malformed input around byte " + (i + 2));
+				chars[n++] = (char) (((c & 0x0F) << 12) | ((c2 & 0x3F) << 6) | (c3 & 0x3F));
+				i += 3;
+			} else {
+				throw new UTFDataFormatException("malformed input around byte " + i);
+			}
+		}
+		return new String(chars, 0, n);
+	}
+}
@@ -2,8 +2,10 @@ package io.github.ensgijs.nbt.mca;
 
 import io.github.ensgijs.nbt.io.BinaryNbtDeserializer;
 import io.github.ensgijs.nbt.io.BinaryNbtSerializer;
-import io.github.ensgijs.nbt.io.CompressionType;
+import io.github.ensgijs.nbt.io.CodecPool;
+import io.github.ensgijs.nbt.io.CompressionCodec;
 import io.github.ensgijs.nbt.io.NamedTag;
+import io.github.ensgijs.nbt.io.StringCache;
 import io.github.ensgijs.nbt.mca.io.LoadFlags;
 import io.github.ensgijs.nbt.mca.io.MoveChunkFlags;
 import io.github.ensgijs.nbt.mca.util.*;
@@ -249,27 +251,28 @@ public abstract class ChunkBase implements VersionedDataContainer, TagWrapper<Co
 	 * @throws UnsupportedOperationException When something went wrong during writing.
 	 * @throws IOException When something went wrong during writing.
 	 */
-	public int serialize(DataOutput sink, int xPos, int zPos, CompressionType compressionType, boolean writeByteLengthPrefixInt) throws IOException {
+	public int serialize(DataOutput sink, int xPos, int zPos, CompressionCodec compressionType, boolean writeByteLengthPrefixInt) throws IOException {
 		if (partial) {
 			throw new UnsupportedOperationException("Partially loaded chunks cannot be serialized");
 		}
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(4096);
-		new BinaryNbtSerializer(compressionType).toStream(new NamedTag(null, updateHandle(xPos, zPos)), baos);
-//		try (BufferedOutputStream nbtOut = new BufferedOutputStream(compressionType.compress(baos))) {
-//			new BinaryNbtSerializer(false).toStream(new NamedTag(null, updateHandle(xPos, zPos)), nbtOut);
-//		}
-		byte[] rawData = baos.toByteArray();
-		if (writeByteLengthPrefixInt)
-			sink.writeInt(rawData.length + 1); // including the byte to store the compression type
-		sink.writeByte(compressionType.getID());
-		sink.write(rawData);
-		return rawData.length + (writeByteLengthPrefixInt ? 5 : 1);
+		CodecPool.Buffer baos = CodecPool.acquireBuffer();
+		try {
+			new BinaryNbtSerializer(compressionType).toStream(new NamedTag(null, updateHandle(xPos, zPos)), baos);
+			final int rawLength = baos.size();
+			if (writeByteLengthPrefixInt)
+				sink.writeInt(rawLength + 1); // including the byte to store the compression type
+			sink.writeByte(compressionType.getID());
+			sink.write(baos.array(), 0, rawLength);
+			return rawLength + (writeByteLengthPrefixInt ? 5 : 1);
+		} finally {
+			CodecPool.release(baos);
+		}
 	}
 
 	/**
 	 * Reads chunk data from a RandomAccessFile. The RandomAccessFile must already be at the correct position.
 	 * <p>It is expected that the byte size int has already been read and the next byte indicates the compression
-	 * used. Essentially this method is symmetrical to {@link #serialize(DataOutput, int, int, CompressionType, boolean)}
+	 * used. Essentially this method is symmetrical to {@link #serialize(DataOutput, int, int, CompressionCodec, boolean)}
 	 * when passing writeByteLengthPrefixInt=false</p>
 	 * @param raf The RandomAccessFile to read the chunk data from.
 	 * @param loadFlags A logical or of {@link LoadFlags} constants indicating what data should be loaded
@@ -285,7 +288,7 @@ public abstract class ChunkBase implements VersionedDataContainer, TagWrapper<Co
 	/**
 	 * Reads chunk data from an InputStream. The InputStream must already be at the correct position.
 	 * <p>It is expected that the byte size int has already been read and the next byte indicates the compression
-	 * used. Essentially this method is symmetrical to {@link #serialize(DataOutput, int, int, CompressionType, boolean)}
+	 * used. Essentially this method is symmetrical to {@link #serialize(DataOutput, int, int, CompressionCodec, boolean)}
 	 * when passing writeByteLengthPrefixInt=false</p>
 	 * @param inputStream The stream to read the chunk data from.
 	 * @param loadFlags A logical or of {@link LoadFlags} constants indicating what data should be loaded
@@ -298,11 +301,14 @@ public abstract class ChunkBase implements VersionedDataContainer, TagWrapper<Co
 		int compressionTypeByte = inputStream.read();
 		if (compressionTypeByte < 0)
 			throw new EOFException();
-		CompressionType compressionType = CompressionType.getFromID((byte) compressionTypeByte);
+		CompressionCodec compressionType = CompressionCodec.getFromID((byte) compressionTypeByte);
 		if (compressionType == null) {
 			throw new IOException("invalid compression type " + compressionTypeByte);
 		}
-		NamedTag tag = new BinaryNbtDeserializer(compressionType).fromStream(inputStream);
+		NamedTag tag = new BinaryNbtDeserializer(compressionType)
+				.setLazy((loadFlags & LoadFlags.LAZY_TAG_DECODING) != 0)
+				.setStringCache((loadFlags & LoadFlags.INTERN_STRINGS) != 0 ? StringCache.SHARED : null)
+				.fromStream(inputStream);
 		if (tag != null && tag.getTag() instanceof CompoundTag) {
 			data = (CompoundTag) tag.getTag();
 			this.lastMCAUpdate = lastMCAUpdateTimestamp >= 0 ? lastMCAUpdateTimestamp : (int)(System.currentTimeMillis() / 1000);
@@ -304,8 +304,8 @@ public abstract class EntitiesChunkBase<ET extends Entity> extends ChunkBase imp
         final NbtPath memoryPosPath = NbtPath.of("value.pos");
         for (CompoundTag entityTag : entityTags) {
             ListTag<DoubleTag> posTag = entityTag.getListTag("Pos").asDoubleTagList();
-            double x = posTag.get(0).asDouble();
-            double z = posTag.get(2).asDouble();
+            double x = posTag.getDouble(0);
+            double z = posTag.getDouble(2);
             if (!cbr.containsBlock(x, z)) {
                 posTag.set(0, new DoubleTag(cbr.relocateX(x)));
                 posTag.set(2, new DoubleTag(cbr.relocateZ(z)));
@@ -1,14 +1,20 @@
 package io.github.ensgijs.nbt.mca;
 
 
+import io.github.ensgijs.nbt.io.CodecPool;
+import io.github.ensgijs.nbt.io.CompressionCodec;
 import io.github.ensgijs.nbt.io.CompressionType;
+import io.github.ensgijs.nbt.mca.io.ExternalChunkFile;
 import io.github.ensgijs.nbt.mca.io.LoadFlags;
 import io.github.ensgijs.nbt.mca.io.McaFileHelpers;
 import io.github.ensgijs.nbt.mca.util.ChunkIterator;
 import io.github.ensgijs.nbt.util.ArgValidator;
 import io.github.ensgijs.nbt.util.IntPointXZ;
 
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.lang.reflect.Array;
 import java.util.NoSuchElementException;
@@ -191,8 +197,22 @@ public abstract class McaFileBase<T extends ChunkBase> implements Iterable<T> {
 	 * @param loadFlags A logical or of {@link LoadFlags} constants indicating what data should be loaded
 	 * @throws IOException If something went wrong during deserialization.
 	 */
-	@SuppressWarnings("unchecked")
 	public void deserialize(RandomAccessFile raf, long loadFlags) throws IOException {
+		deserialize(raf, loadFlags, null);
+	}
+
+	/**
+	 * Reads an .mca file from a {@code RandomAccessFile} into this object.
+	 * This method does not perform any cleanups on the data.
+	 * @param raf The {@code RandomAccessFile} to read from.
+	 * @param loadFlags A logical or of {@link LoadFlags} constants indicating what data should be loaded
+	 * @param externalChunkDirectory Directory holding the external files of chunks too large to be stored in
+	 *                               the mca file, usually the directory containing the mca file. May be null if
+	 *                               the mca file is known not to reference any, see {@link ExternalChunkFile}.
+	 * @throws IOException If something went wrong during deserialization.
+	 */
+	@SuppressWarnings("unchecked")
+	public void deserialize(RandomAccessFile raf, long loadFlags, File externalChunkDirectory) throws IOException {
 		chunks = (T[]) Array.newInstance(chunkClass(), 1024);
 		minDataVersion = Integer.MAX_VALUE;
 		maxDataVersion = Integer.MIN_VALUE;
@@ -213,8 +233,19 @@ public abstract class McaFileBase<T extends ChunkBase> implements Iterable<T> {
 			raf.seek(4096 + (i * 4));
 			int timestamp = raf.readInt();
 			raf.seek(4096L * offset + 4); //+4: skip data size
-			T chunk = deserializeChunk(raf, loadFlags, timestamp,
-					getRelativeChunkXZ(i).add(chunkOffsetXZ));
+			final IntPointXZ chunkAbsXZ = getRelativeChunkXZ(i).add(chunkOffsetXZ);
+			final int compressionTypeByte = raf.read();
+			T chunk;
+			if (ExternalChunkFile.isExternal(compressionTypeByte)) {
+				chunk = createChunk();
+				try (InputStream in = ExternalChunkFile.open(
+						externalChunkDirectory, chunkAbsXZ.getX(), chunkAbsXZ.getZ(), compressionTypeByte)) {
+					chunk.deserialize(in, loadFlags, timestamp, chunkAbsXZ.getX(), chunkAbsXZ.getZ());
+				}
+			} else {
+				raf.seek(4096L * offset + 4);
+				chunk = deserializeChunk(raf, loadFlags, timestamp, chunkAbsXZ);
+			}
 			chunks[i] = chunk;
 			if (chunk != null && chunk.hasDataVersion()) {
 				if (chunk.getDataVersion() < minDataVersion) {
@@ -231,9 +262,9 @@ public abstract class McaFileBase<T extends ChunkBase> implements Iterable<T> {
 	}
 
 	/**
-	 * Calls {@link McaFileBase#serialize(RandomAccessFile, CompressionType, boolean)} with GZIP chunk compression and
+	 * Calls {@link McaFileBase#serialize(RandomAccessFile, CompressionCodec, boolean)} with GZIP chunk compression and
 	 * without updating any timestamps.
-	 * @see McaFileBase#serialize(RandomAccessFile, CompressionType, boolean)
+	 * @see McaFileBase#serialize(RandomAccessFile, CompressionCodec, boolean)
 	 * @param raf The {@code RandomAccessFile} to write to.
 	 * @return The amount of chunks written to the file.
 	 * @throws IOException If something went wrong during serialization.
@@ -243,26 +274,43 @@ public abstract class McaFileBase<T extends ChunkBase> implements Iterable<T> {
 	}
 
 	/**
-	 * Calls {@link McaFileBase#serialize(RandomAccessFile, CompressionType, boolean)} without updating any timestamps.
-	 * @see McaFileBase#serialize(RandomAccessFile, CompressionType, boolean)
+	 * Calls {@link McaFileBase#serialize(RandomAccessFile, CompressionCodec, boolean)} without updating any timestamps.
+	 * @see McaFileBase#serialize(RandomAccessFile, CompressionCodec, boolean)
 	 * @param raf The {@code RandomAccessFile} to write to.
 	 * @return The amount of chunks written to the file.
 	 * @throws IOException If something went wrong during serialization.
 	 */
-	public int serialize(RandomAccessFile raf, CompressionType chunkCompressionType) throws IOException {
+	public int serialize(RandomAccessFile raf, CompressionCodec chunkCompressionType) throws IOException {
 		return serialize(raf, chunkCompressionType, false);
 	}
 
+	/**
+	 * Calls {@link McaFileBase#serialize(RandomAccessFile, CompressionCodec, boolean, File)} without an external
+	 * chunk directory, writing a chunk too large to be stored in the mca file fails with an {@link IOException}.
+	 * @see McaFileBase#serialize(RandomAccessFile, CompressionCodec, boolean, File)
+	 * @param raf The {@code RandomAccessFile} to write to.
+	 * @param changeLastUpdate Whether it should update all timestamps that show
+	 *                         when this file was last updated.
+	 * @return The amount of chunks written to the file.
+	 * @throws IOException If something went wrong during serialization.
+	 */
+	public int serialize(RandomAccessFile raf, CompressionCodec chunkCompressionType, boolean changeLastUpdate) throws IOException {
+		return serialize(raf, chunkCompressionType, changeLastUpdate, null);
+	}
+
 	/**
 	 * Serializes this object to an .mca file.
 	 * This method does not perform any cleanups on the data.
 	 * @param raf The {@code RandomAccessFile} to write to.
 	 * @param changeLastUpdate Whether it should update all timestamps that show
 	 *                         when this file was last updated.
+	 * @param externalChunkDirectory Directory to write the external files of chunks too large to be stored in
+	 *                               the mca file to, usually the directory containing the mca file. May be null,
+	 *                               in which case writing such a chunk fails, see {@link ExternalChunkFile}.
 	 * @return The amount of chunks written to the file.
 	 * @throws IOException If something went wrong during serialization.
 	 */
-	public int serialize(RandomAccessFile raf, CompressionType chunkCompressionType, boolean changeLastUpdate) throws IOException {
+	public int serialize(RandomAccessFile raf, CompressionCodec chunkCompressionType, boolean changeLastUpdate, File externalChunkDirectory) throws IOException {
 		ArgValidator.requireValue(raf, "raf");
 		int globalOffset = 2;
 		int lastWritten = 0;
@@ -286,13 +334,32 @@ public abstract class McaFileBase<T extends ChunkBase> implements Iterable<T> {
 				if (chunk == null) {
 					continue;
 				}
-				raf.seek(4096L * globalOffset);
-				lastWritten = chunk.serialize(raf, chunkXOffset + cx, chunkZOffset + cz, chunkCompressionType, true);
+				final int chunkX = chunkXOffset + cx;
+				final int chunkZ = chunkZOffset + cz;
+				CodecPool.Buffer buffer = CodecPool.acquireBuffer();
+				try {
+					// buffer holds the compression type byte followed by the compressed chunk data
+					final int length = chunk.serialize(new DataOutputStream(buffer), chunkX, chunkZ, chunkCompressionType, false);
+					raf.seek(4096L * globalOffset);
+					if (sectorCount(length + 4) > ExternalChunkFile.MAX_SECTORS) {
+						ExternalChunkFile.write(externalChunkDirectory, chunkX, chunkZ, buffer.array(), 1, length - 1);
+						// stub record: byte length of 1 and the flagged compression type byte
+						raf.writeInt(1);
+						raf.writeByte(buffer.array()[0] | ExternalChunkFile.EXTERNAL_FLAG);
+						lastWritten = 5;
+					} else {
+						raf.writeInt(length);
+						raf.write(buffer.array(), 0, length);
+						lastWritten = length + 4;
+					}
+				} finally {
+					CodecPool.release(buffer);
+				}
 
 				chunksWritten++;
 
 				// compute the count of 4kb sectors the chunk data occupies
-				int sectors = (lastWritten >> 12) + (lastWritten % 4096 == 0 ? 0 : 1);
+				int sectors = sectorCount(lastWritten);
 
 				raf.seek(index * 4L);
 				raf.writeByte(globalOffset >>> 16);
@@ -316,6 +383,10 @@ public abstract class McaFileBase<T extends ChunkBase> implements Iterable<T> {
 		return chunksWritten;
 	}
 
+	private static int sectorCount(int bytes) {
+		return (bytes >> 12) + (bytes % 4096 == 0 ? 0 : 1);
+	}
+
 	/**
 	 * Set a specific Chunk at a specific index. The index must be in range of 0 - 1023.
 	 * Take care as the given chunk is NOT copied by this call.
@@ -2,6 +2,7 @@ package io.github.ensgijs.nbt.mca;
 
 import io.github.ensgijs.nbt.io.TextNbtParser;
 import io.github.ensgijs.nbt.tag.*;
+import io.github.ensgijs.nbt.mca.util.PaletteInterner;
 import io.github.ensgijs.nbt.mca.util.PalettizedCuboid;
 
 import static io.github.ensgijs.nbt.mca.DataVersion.*;
@@ -95,6 +96,10 @@ public abstract class TerrainSectionBase extends SectionBase<TerrainSectionBase>
             ByteArrayTag skyLight = data.getByteArrayTag("SkyLight");
             if (skyLight != null) this.skyLight = skyLight.getValue();
         }
+        if ((loadFlags & INTERN_PALETTES) != 0) {
+            if (blockStates != null) blockStates.intern(PaletteInterner.BLOCK_STATES);
+            if (biomes != null) biomes.intern(PaletteInterner.BIOMES);
+        }
     }
 
     public TerrainSectionBase(int dataVersion) {
@@ -0,0 +1,154 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.util.IntPointXZ;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Helpers for oversized chunks which Minecraft stores outside the region file. A chunk record may not span more
+ * than {@link #MAX_SECTORS} sectors (~1MB), a chunk whose compressed data is larger than that is instead written
+ * to a file named {@code c.X.Z.mcc} (X and Z being the absolute chunk coordinates) next to the region file. The
+ * record left in the region file is a one sector stub holding only a byte length of 1 and the compression type
+ * byte with {@link #EXTERNAL_FLAG} set. The external file holds the compressed chunk data and nothing else - no
+ * length or compression type prefix.
+ */
+public final class ExternalChunkFile {
+    /** Set in the compression type byte of a chunk record whose data is stored in an external file. */
+    public static final int EXTERNAL_FLAG = 0x80;
+    /** Maximum number of sectors a chunk record stored in the region file itself may occupy. */
+    public static final int MAX_SECTORS = 255;
+
+    private ExternalChunkFile() {}
+
+    /** @return true if the given compression type byte flags the chunk data as stored in an external file. */
+    public static boolean isExternal(int compressionTypeByte) {
+        return (compressionTypeByte & EXTERNAL_FLAG) != 0;
+    }
+
+    /** @return The external file for the given absolute chunk XZ in the given region directory. */
+    public static File of(File directory, int chunkX, int chunkZ) {
+        return new File(directory, "c." + chunkX + "." + chunkZ + ".mcc");
+    }
+
+    /**
+     * @return The file a journaled {@link RandomAccessMcaFile} writes the new external data of the given absolute
+     * chunk XZ to, until committed. Ignored by readers which don't know of the commit.
+     * @see #install(File, int, int)
+     */
+    static File pendingOf(File directory, int chunkX, int chunkZ) {
+        return new File(directory, "c." + chunkX + "." + chunkZ + ".mcc.pending");
+    }
+
+    /** @return The external file for the given absolute chunk XZ, failing if the region directory is unknown. */
+    static File require(File directory, int chunkX, int chunkZ) throws IOException {
+        if (directory == null)
+            throw new IOException("Chunk " + new IntPointXZ(chunkX, chunkZ)
+                    + " requires an external chunk file but the region file directory is unknown");
+        return of(directory, chunkX, chunkZ);
+    }
+
+    /**
+     * Opens the external data of a chunk as a stream which yields the compression type byte, with
+     * {@link #EXTERNAL_FLAG} cleared, followed by the compressed chunk data. That is exactly what
+     * {@link io.github.ensgijs.nbt.mca.ChunkBase#deserialize(InputStream, long, int, int, int)} expects to consume.
+     * <p>The caller is responsible for closing the returned stream.</p>
+     * @param directory Directory holding the region file.
+     * @param compressionTypeByte The compression type byte read from the chunk record in the region file.
+     */
+    public static InputStream open(File directory, int chunkX, int chunkZ, int compressionTypeByte) throws IOException {
+        return open(openChannel(require(directory, chunkX, chunkZ)), compressionTypeByte);
+    }
+
+    /** @return The given external file opened for reading. */
+    static FileChannel openChannel(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    /**
+     * Takes ownership of the given channel, which is closed along with the returned stream.
+     * @see #open(File, int, int, int)
+     */
+    static InputStream open(FileChannel channel, int compressionTypeByte) {
+        return new SequenceInputStream(
+                new ByteArrayInputStream(new byte[] {(byte) (compressionTypeByte & ~EXTERNAL_FLAG)}),
+                new BufferedInputStream(Channels.newInputStream(channel)));
+    }
+
+    /**
+     * Reads the compression type byte, with {@link #EXTERNAL_FLAG} cleared, followed by the compressed chunk data
+     * of the given open external file. The channel is read from its start and left open.
+     * @see #open(File, int, int, int)
+     */
+    static byte[] readRaw(FileChannel channel, int compressionTypeByte) throws IOException {
+        final long size = channel.size();
+        if (size > Integer.MAX_VALUE - 16)
+            throw new IOException("External chunk file is too large: " + size + " bytes");
+        final ByteBuffer buffer = ByteBuffer.allocate((int) size + 1);
+        buffer.put((byte) (compressionTypeByte & ~EXTERNAL_FLAG));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position() - 1) < 0)
+                throw new EOFException();
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Writes, replacing any existing file, the compressed chunk data held by the given array range to the external
+     * file of the given chunk. The data must not include the compression type byte.
+     * @param directory Directory holding the region file.
+     * @see #write(File, byte[], int, int)
+     */
+    public static void write(File directory, int chunkX, int chunkZ, byte[] data, int offset, int length) throws IOException {
+        write(require(directory, chunkX, chunkZ), data, offset, length);
+    }
+
+    /**
+     * Writes, replacing any existing file, the compressed chunk data held by the given array range. The data is
+     * written to a temporary file which then replaces the target, so a crash never leaves a partially written file.
+     */
+    static void write(File file, byte[] data, int offset, int length) throws IOException {
+        final File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(data, offset, length);
+            out.getFD().sync();
+        }
+        move(tmp, file);
+    }
+
+    /**
+     * Replaces the external file of the given chunk with its {@link #pendingOf(File, int, int) pending} file.
+     * @return false if there is no pending file, such as when it was already installed.
+     */
+    static boolean install(File directory, int chunkX, int chunkZ) throws IOException {
+        final File file = require(directory, chunkX, chunkZ);
+        final File pending = pendingOf(directory, chunkX, chunkZ);
+        if (!pending.exists()) return false;
+        move(pending, file);
+        return true;
+    }
+
+    private static void move(File from, File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** Deletes the external file of the given chunk, if there is one. */
+    static boolean delete(File directory, int chunkX, int chunkZ) throws IOException {
+        return directory != null && Files.deleteIfExists(of(directory, chunkX, chunkZ).toPath());
+    }
+
+    /** Deletes the {@link #pendingOf(File, int, int) pending} external file of the given chunk, if there is one. */
+    static boolean deletePending(File directory, int chunkX, int chunkZ) throws IOException {
+        return directory != null && Files.deleteIfExists(pendingOf(directory, chunkX, chunkZ).toPath());
+    }
+}
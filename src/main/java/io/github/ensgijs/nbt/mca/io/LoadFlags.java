@@ -1,7 +1,10 @@
 package io.github.ensgijs.nbt.mca.io;
 
+import io.github.ensgijs.nbt.io.StringCache;
 import io.github.ensgijs.nbt.mca.TerrainSectionBase;
 import io.github.ensgijs.nbt.mca.ChunkBase;
+import io.github.ensgijs.nbt.mca.util.PaletteInterner;
+import io.github.ensgijs.nbt.mca.util.PalettizedCuboid;
 
 /**
  * Bitfield flags used to control mca data loading. Use logical OR to combine values such as
@@ -44,6 +47,32 @@ public final class LoadFlags {
 	// high byte reserved for behavioral flags that follow
 	public static final long LOAD_ALL_DATA = 0x0000_FFFF_FFFF_FFFFL;
 
+	/**
+	 * When set, chunk data is read through {@link StringCache#SHARED} so that compound keys and short string values,
+	 * such as block names, share a single instance across every chunk loaded with this flag and are not decoded
+	 * again each time they occur. Has no effect together with {@link #LAZY_TAG_DECODING}.
+	 */
+	public static final long INTERN_STRINGS         = 0x0800_0000_0000_0000L;
+
+	/**
+	 * When set, {@link TerrainSectionBase} interns its block state and biome palettes into
+	 * {@link PaletteInterner#BLOCK_STATES} and {@link PaletteInterner#BIOMES} so that equal palette entries are
+	 * shared by every section loaded with this flag. Greatly reduces heap use when many chunks are kept in memory.
+	 * <p>Palette entries in the chunk data tag are replaced by the shared instances too, so if you did not also set
+	 * {@link #RELEASE_CHUNK_DATA_TAG} do not modify palette entries found in {@link ChunkBase#getHandle()}.</p>
+	 * @see PalettizedCuboid#intern(PaletteInterner)
+	 */
+	public static final long INTERN_PALETTES        = 0x1000_0000_0000_0000L;
+
+	/**
+	 * When set, compound and list tags in the chunk data are only decoded when something first accesses them,
+	 * such as {@link ChunkBase#initReferences} or a getter. Combine with flags such as {@link #HEIGHTMAPS} to avoid
+	 * decoding section palettes, tile entities, etc. which are never looked at.
+	 * <p>Lazily decoded tags are modified when first read, so they must not be read from multiple threads
+	 * without external synchronization.</p>
+	 */
+	public static final long LAZY_TAG_DECODING      = 0x2000_0000_0000_0000L;
+
 	/**
 	 * When set {@link ChunkBase#data} will be nulled out after {@link ChunkBase#initReferences} has completed.
 	 * This will allow garbage collection the chance to free memory you're only interested in biome data for example.
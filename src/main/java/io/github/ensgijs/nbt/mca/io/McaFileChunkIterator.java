@@ -30,6 +30,7 @@ public class McaFileChunkIterator<T extends ChunkBase> implements ChunkIterator<
     private final List<ChunkMetaInfo> chunkMetaInfos;
     private final Iterator<ChunkMetaInfo> iter;
     private final IntPointXZ regionXZ;
+    private File externalChunkDirectory;
     private ChunkMetaInfo current;
 
     /**
@@ -52,12 +53,7 @@ public class McaFileChunkIterator<T extends ChunkBase> implements ChunkIterator<
     @SuppressWarnings("unchecked")
     public static <T extends ChunkBase> McaFileChunkIterator<T> iterate(File file, long loadFlags) throws IOException {
         Supplier<T> chunkCreator = (Supplier<T>) DEFAULT_CHUNK_CREATORS.get(file.getParentFile().getName());
-        return new McaFileChunkIterator<>(
-                chunkCreator,
-                McaFileHelpers.regionXZFromFileName(file.getName()),
-                new BufferedInputStream(new FileInputStream(file)),
-                loadFlags
-        );
+        return iterate(file, loadFlags, chunkCreator);
     }
 
     public static <T extends ChunkBase> McaFileChunkIterator<T> iterate(File file, long loadFlags, Supplier<T> chunkCreator) throws IOException {
@@ -66,7 +62,7 @@ public class McaFileChunkIterator<T extends ChunkBase> implements ChunkIterator<
                 McaFileHelpers.regionXZFromFileName(file.getName()),
                 new BufferedInputStream(new FileInputStream(file)),
                 loadFlags
-        );
+        ).setExternalChunkDirectory(file.getAbsoluteFile().getParentFile());
     }
 
 
@@ -136,6 +132,25 @@ public class McaFileChunkIterator<T extends ChunkBase> implements ChunkIterator<
         return regionXZ;
     }
 
+    /**
+     * Directory holding the external files ({@code c.X.Z.mcc}) of chunks too large to be stored in the mca file.
+     * Set automatically when iterating a {@link File}.
+     * @see ExternalChunkFile
+     */
+    public File getExternalChunkDirectory() {
+        return externalChunkDirectory;
+    }
+
+    /**
+     * Sets the directory holding the external files ({@code c.X.Z.mcc}) of chunks too large to be stored in the
+     * mca file. Without it reading such a chunk fails.
+     * @see ExternalChunkFile
+     */
+    public McaFileChunkIterator<T> setExternalChunkDirectory(File externalChunkDirectory) {
+        this.externalChunkDirectory = externalChunkDirectory;
+        return this;
+    }
+
     @Override
     public boolean hasNext() {
         return iter.hasNext();
@@ -149,7 +164,19 @@ public class McaFileChunkIterator<T extends ChunkBase> implements ChunkIterator<
             in.skipTo(4096L * current.offset + 4);  //+4 skip chunk byte count
             in.setSoftEof(4096L * (current.offset + current.sectors));
             T currentChunk = chunkCreator.get();
-            currentChunk.deserialize(in, loadFlags, current.timestamp, currentAbsoluteX(), currentAbsoluteZ());
+            PushbackInputStream chunkIn = new PushbackInputStream(in, 1);
+            int compressionTypeByte = chunkIn.read();
+            if (compressionTypeByte < 0)
+                throw new EOFException();
+            if (ExternalChunkFile.isExternal(compressionTypeByte)) {
+                try (InputStream externalIn = ExternalChunkFile.open(
+                        externalChunkDirectory, currentAbsoluteX(), currentAbsoluteZ(), compressionTypeByte)) {
+                    currentChunk.deserialize(externalIn, loadFlags, current.timestamp, currentAbsoluteX(), currentAbsoluteZ());
+                }
+            } else {
+                chunkIn.unread(compressionTypeByte);
+                currentChunk.deserialize(chunkIn, loadFlags, current.timestamp, currentAbsoluteX(), currentAbsoluteZ());
+            }
             return currentChunk;
         } catch (IOException ex) {
             throw new RuntimeException("Error processing " + current, ex);
@@ -101,7 +101,7 @@ public final class McaFileHelpers {
 		IntPointXZ xz = regionXZFromFileName(file.getName());
 		McaRegionFile mcaFile = new McaRegionFile(xz.getX(), xz.getZ());
 		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-			mcaFile.deserialize(raf, loadFlags);
+			mcaFile.deserialize(raf, loadFlags, file.getAbsoluteFile().getParentFile());
 			return mcaFile;
 		}
 	}
@@ -134,7 +134,7 @@ public final class McaFileHelpers {
 		IntPointXZ xz = regionXZFromFileName(file.getName());
 		McaPoiFile mcaFile = new McaPoiFile(xz.getX(), xz.getZ());
 		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-			mcaFile.deserialize(raf, loadFlags);
+			mcaFile.deserialize(raf, loadFlags, file.getAbsoluteFile().getParentFile());
 			return mcaFile;
 		}
 	}
@@ -167,7 +167,7 @@ public final class McaFileHelpers {
 		IntPointXZ xz = regionXZFromFileName(file.getName());
 		McaEntitiesFile mcaFile = new McaEntitiesFile(xz.getX(), xz.getZ());
 		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-			mcaFile.deserialize(raf, loadFlags);
+			mcaFile.deserialize(raf, loadFlags, file.getAbsoluteFile().getParentFile());
 			return mcaFile;
 		}
 	}
@@ -238,7 +238,7 @@ public final class McaFileHelpers {
 	public static <T extends McaFileBase<?>> T readAuto(File file, long loadFlags) throws IOException {
 		T mcaFile = autoMCAFile(file);
 		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-			mcaFile.deserialize(raf, loadFlags);
+			mcaFile.deserialize(raf, loadFlags, file.getAbsoluteFile().getParentFile());
 			return mcaFile;
 		}
 	}
@@ -326,7 +326,7 @@ public final class McaFileHelpers {
 		}
 		int chunks;
 		try (RandomAccessFile raf = new RandomAccessFile(to, "rw")) {
-			chunks = mcaFile.serialize(raf, CompressionType.ZLIB, changeLastUpdate);
+			chunks = mcaFile.serialize(raf, CompressionType.ZLIB, changeLastUpdate, file.getAbsoluteFile().getParentFile());
 		}
 
 		// TODO(bug): This logic is flawed - why would we ever want an empty region file?
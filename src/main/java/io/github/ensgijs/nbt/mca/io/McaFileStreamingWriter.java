@@ -1,8 +1,11 @@
 package io.github.ensgijs.nbt.mca.io;
 
+import io.github.ensgijs.nbt.io.CodecPool;
+import io.github.ensgijs.nbt.io.CompressionCodec;
 import io.github.ensgijs.nbt.io.CompressionType;
 import io.github.ensgijs.nbt.mca.ChunkBase;
 import io.github.ensgijs.nbt.util.ArgValidator;
+import io.github.ensgijs.nbt.util.IntPointXZ;
 import io.github.ensgijs.nbt.util.Stopwatch;
 
 import java.io.*;
@@ -10,24 +13,45 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Provides a streaming data sink for writing a region file. Chunks can be written in any order.
  * Attempting to write a chunk (XZ) that has already been written will throw {@link IOException}.
  * <p>You must remember to call {@link McaFileStreamingWriter#close()}! Close writes the file
  * index and without this index the region will appear to contain no chunk data.</p>
+ * <p>When an executor is set, see {@link #setExecutor(ExecutorService)}, chunk serialization and compression run
+ * on the executor and {@link #write(ChunkBase)} returns as soon as the work has been handed off. Encoded chunks
+ * are appended to the file by the thread calling {@code write}, {@link #flush()} and {@link #close()}, in the
+ * order they were written - so the resulting file is identical to one written without an executor.</p>
+ * <p>Chunks too large to be stored in a region file are written to an external chunk file,
+ * see {@link #setExternalChunkDirectory(File)}.</p>
  * @see McaFileHelpers
  * @see McaFileChunkIterator
  */
 public class McaFileStreamingWriter implements Closeable {
+    /** Default for {@link #setMaxInFlightChunks(int)}. */
+    public static final int DEFAULT_MAX_IN_FLIGHT_CHUNKS = 64;
     private static final byte[] ZERO_FILL_BUFFER = new byte[4096];
     private final int[] chunkSectors = new int[1024];
     private final int[] chunkTimestamps = new int[1024];
     private final RandomAccessFile raf;
+    private File externalChunkDirectory;
     private final Stopwatch fileInitializationStopwatch = Stopwatch.createUnstarted();
     private final Stopwatch totalWriteStopwatch = Stopwatch.createUnstarted();
     private final Stopwatch chunkSerializationStopwatch = Stopwatch.createUnstarted();
     private final Stopwatch fileCloseStopwatch = Stopwatch.createUnstarted();
+    /** Indexes of chunks written or in flight. */
+    private final BitSet chunksSubmitted = new BitSet(1024);
+    /** Chunks being encoded on the executor, in the order they were written. */
+    private final ArrayDeque<PendingChunk> pending = new ArrayDeque<>();
+    private CompressionCodec compression = CompressionType.ZLIB;
+    private ExecutorService executor;
+    private int maxInFlightChunks = DEFAULT_MAX_IN_FLIGHT_CHUNKS;
     private int chunksWritten = 0;
     private boolean fileInitialized = false;
     private boolean fileFinalized = false;
@@ -38,6 +62,7 @@ public class McaFileStreamingWriter implements Closeable {
     }
     public McaFileStreamingWriter(File file) throws IOException {
         this(new RandomAccessFile(file, "rw"));
+        this.externalChunkDirectory = file.getAbsoluteFile().getParentFile();
     }
     public McaFileStreamingWriter(String file) throws IOException {
         this(new File(file));
@@ -46,8 +71,88 @@ public class McaFileStreamingWriter implements Closeable {
         this(path.toFile());
     }
 
-    public void write(ChunkBase chunk) throws IOException {
-        ArgValidator.requireValue(chunk);
+    /** Compression used for chunks written from now on. Defaults to {@link CompressionType#ZLIB}. */
+    public CompressionCodec getCompression() {
+        return compression;
+    }
+
+    /** Compression used for chunks written from now on. Defaults to {@link CompressionType#ZLIB}. */
+    public McaFileStreamingWriter setCompression(CompressionCodec compression) {
+        this.compression = ArgValidator.requireValue(compression, "compression");
+        return this;
+    }
+
+    /**
+     * Directory the external files ({@code c.X.Z.mcc}) of chunks too large to be stored in the region file are
+     * written to. This is the directory containing the region file when it was opened from a {@link File}.
+     * @see ExternalChunkFile
+     */
+    public File getExternalChunkDirectory() {
+        return externalChunkDirectory;
+    }
+
+    /**
+     * Sets the directory the external files ({@code c.X.Z.mcc}) of chunks too large to be stored in the region
+     * file are written to. Only needs to be set when writing to a {@link RandomAccessFile}, without it writing such
+     * a chunk fails with an {@link IOException}.
+     * <p>Note that this writer does not delete external files left behind by chunks which are no longer oversized,
+     * they are not referenced by the region file and are simply ignored by readers.</p>
+     * @see ExternalChunkFile
+     */
+    public McaFileStreamingWriter setExternalChunkDirectory(File externalChunkDirectory) {
+        this.externalChunkDirectory = externalChunkDirectory;
+        return this;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor to serialize and compress chunks on, which lets {@link #write(ChunkBase)} return before
+     * the chunk has been encoded. If null (default) chunks are encoded by the thread calling {@code write}.
+     * The executor is NOT shut down by this writer.
+     * <p>While pipelined, a chunk passed to {@link #write(ChunkBase)} must not be modified until it has been
+     * appended to the file, which is guaranteed after {@link #flush()} or {@link #close()}.</p>
+     */
+    public McaFileStreamingWriter setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    public int getMaxInFlightChunks() {
+        return maxInFlightChunks;
+    }
+
+    /**
+     * Maximum number of chunks which may be waiting on the executor before {@link #write(ChunkBase)} blocks until
+     * the oldest has been appended. Bounds the memory held by encoded but not yet written chunks.
+     * Defaults to {@link #DEFAULT_MAX_IN_FLIGHT_CHUNKS}.
+     */
+    public McaFileStreamingWriter setMaxInFlightChunks(int maxInFlightChunks) {
+        ArgValidator.check(maxInFlightChunks > 0, "maxInFlightChunks must be GT 0");
+        this.maxInFlightChunks = maxInFlightChunks;
+        return this;
+    }
+
+    private static final class PendingChunk {
+        final int index;
+        final int timestamp;
+        final IntPointXZ chunkXZ;
+        /** Pooled buffer the chunk is encoded into, owned by the thread calling {@link #write(ChunkBase)}. */
+        final CodecPool.Buffer buffer;
+        final Future<?> data;
+
+        PendingChunk(int index, int timestamp, IntPointXZ chunkXZ, CodecPool.Buffer buffer, Future<?> data) {
+            this.index = index;
+            this.timestamp = timestamp;
+            this.chunkXZ = chunkXZ;
+            this.buffer = buffer;
+            this.data = data;
+        }
+    }
+
+    private void initializeFile() throws IOException {
         if (!fileInitialized) {
             try (Stopwatch.LapToken lap = fileInitializationStopwatch.startLap()) {
                 raf.setLength(0);
@@ -58,42 +163,161 @@ public class McaFileStreamingWriter implements Closeable {
                 fileInitialized = true;
             }
         }
+    }
+
+    public void write(ChunkBase chunk) throws IOException {
+        ArgValidator.requireValue(chunk);
+        if (fileFinalized)
+            throw new IOException("Writer is closed");
+        initializeFile();
         try (Stopwatch.LapToken lap1 = totalWriteStopwatch.startLap()) {
             if (chunk.getChunkX() == ChunkBase.NO_CHUNK_COORD_SENTINEL || chunk.getChunkZ() == ChunkBase.NO_CHUNK_COORD_SENTINEL) {
                 throw new IllegalArgumentException("Chunk XZ must be set!");
             }
             final int index = chunk.getIndex();
-            if (chunkSectors[index] != 0)
+            if (chunksSubmitted.get(index))
                 throw new IOException("Chunk " + chunk.getChunkXZ() + " (index: " + index + ") has already been written!");
 
-            if (raf.getFilePointer() % 4096 != 0)
-                throw new IllegalStateException();
-            final int startSector = (int) (raf.getFilePointer() >> 12);
+            if (executor == null) {
+                final CodecPool.Buffer buffer = CodecPool.acquireBuffer();
+                try {
+                    try (Stopwatch.LapToken lap2 = chunkSerializationStopwatch.startLap()) {
+                        chunk.serialize(new DataOutputStream(buffer), chunk.getChunkX(), chunk.getChunkZ(), compression, true);
+                    }
+                    chunksSubmitted.set(index);
+                    appendEncoded(index, chunk.getLastMCAUpdate(), chunk.getChunkXZ(), buffer);
+                } finally {
+                    CodecPool.release(buffer);
+                }
+                return;
+            }
+
+            final CompressionCodec compression = this.compression;
+            // acquired and released by this thread so the buffers cycle through its pool rather than the executor's
+            final CodecPool.Buffer buffer = CodecPool.acquireBuffer();
+            final Future<?> data;
+            try {
+                data = executor.submit(() -> {
+                    chunk.serialize(new DataOutputStream(buffer), chunk.getChunkX(), chunk.getChunkZ(), compression, true);
+                    return null;
+                });
+            } catch (RuntimeException ex) {
+                CodecPool.release(buffer);
+                throw ex;
+            }
+            chunksSubmitted.set(index);
+            pending.add(new PendingChunk(index, chunk.getLastMCAUpdate(), chunk.getChunkXZ(), buffer, data));
+            // append whatever is already done, and block on the oldest chunk if too many are in flight
+            while (!pending.isEmpty() && (pending.size() > maxInFlightChunks || pending.peek().data.isDone())) {
+                appendPending(pending.poll());
+            }
+        }
+    }
 
-            int bytesWritten;
-            try (Stopwatch.LapToken lap2 = chunkSerializationStopwatch.startLap()) {
-                bytesWritten = chunk.serialize(raf, chunk.getChunkX(), chunk.getChunkZ(), CompressionType.ZLIB, true);
+    /**
+     * Waits for every chunk given to {@link #write(ChunkBase)} to be encoded and appends them to the file.
+     * Does nothing when no executor is set, as chunks are then written immediately.
+     */
+    public void flush() throws IOException {
+        try (Stopwatch.LapToken lap = totalWriteStopwatch.startLap()) {
+            while (!pending.isEmpty()) {
+                appendPending(pending.poll());
             }
+        }
+    }
 
-            // compute the count of 4kb sectors the chunk data occupies
-            int sectors = (bytesWritten >> 12) + (bytesWritten % 4096 == 0 ? 0 : 1);
-            if (sectors > 255) throw new IOException("Chunk " + chunk.getChunkXZ() + " to large! 1MB maximum");
-            long roundedEof = ((long) (startSector + sectors) << 12);
-            while (roundedEof > raf.getFilePointer()) {
-                int gap = (int) Math.min(roundedEof - raf.getFilePointer(), ZERO_FILL_BUFFER.length);
-                raf.write(ZERO_FILL_BUFFER, 0, gap);
+    private void appendPending(PendingChunk chunk) throws IOException {
+        try {
+            try (Stopwatch.LapToken lap = chunkSerializationStopwatch.startLap()) {
+                chunk.data.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for chunk " + chunk.chunkXZ + " to be encoded");
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof IOException ioEx) throw ioEx;
+                if (cause instanceof RuntimeException rtEx) throw rtEx;
+                if (cause instanceof Error err) throw err;
+                throw new IOException("Failed to encode chunk " + chunk.chunkXZ, cause);
             }
-            if (raf.getFilePointer() % 4096 != 0)
-                throw new IllegalStateException();
-            chunkSectors[index] = (startSector << 8) | sectors;
-            chunkTimestamps[index] = chunk.getLastMCAUpdate();
-            chunksWritten++;
+            appendEncoded(chunk.index, chunk.timestamp, chunk.chunkXZ, chunk.buffer);
+        } finally {
+            // if interrupted the encoder may still be writing to the buffer
+            if (chunk.data.isDone()) CodecPool.release(chunk.buffer);
         }
     }
 
+    /**
+     * Appends an encoded chunk record - byte length int, compression type byte and compressed data - to the file.
+     * A chunk too large to be stored in the region file is written straight to its external file instead.
+     */
+    private void appendEncoded(int index, int timestamp, IntPointXZ chunkXZ, CodecPool.Buffer buffer) throws IOException {
+        final byte[] data = buffer.array();
+        final int length = buffer.size();
+        final int startSector = currentSector();
+        if (sectorCount(length) > ExternalChunkFile.MAX_SECTORS) {
+            // data starts with the int byte length and compression type byte which the external file omits
+            ExternalChunkFile.write(
+                    ExternalChunkFile.require(externalChunkDirectory, chunkXZ.getX(), chunkXZ.getZ()),
+                    data, 5, length - 5);
+            finishChunk(index, timestamp, startSector, writeExternalStub(data[4]));
+            return;
+        }
+        raf.write(data, 0, length);
+        finishChunk(index, timestamp, startSector, length);
+    }
+
+    private static int sectorCount(int bytes) {
+        return (bytes >> 12) + (bytes % 4096 == 0 ? 0 : 1);
+    }
+
+    /**
+     * Writes, at the current file position, the record left in the region file for a chunk whose data is stored
+     * in an external file.
+     * @return Bytes written.
+     */
+    private int writeExternalStub(byte compressionTypeByte) throws IOException {
+        raf.writeInt(1);
+        raf.write(compressionTypeByte | ExternalChunkFile.EXTERNAL_FLAG);
+        return 5;
+    }
+
+    private int currentSector() throws IOException {
+        if (raf.getFilePointer() % 4096 != 0)
+            throw new IllegalStateException();
+        return (int) (raf.getFilePointer() >> 12);
+    }
+
+    /** Pads the chunk just written out to a whole number of sectors and records it in the file index. */
+    private void finishChunk(int index, int timestamp, int startSector, int bytesWritten) throws IOException {
+        // compute the count of 4kb sectors the chunk data occupies
+        final int sectors = sectorCount(bytesWritten);
+        long roundedEof = ((long) (startSector + sectors) << 12);
+        while (roundedEof > raf.getFilePointer()) {
+            int gap = (int) Math.min(roundedEof - raf.getFilePointer(), ZERO_FILL_BUFFER.length);
+            raf.write(ZERO_FILL_BUFFER, 0, gap);
+        }
+        if (raf.getFilePointer() % 4096 != 0)
+            throw new IllegalStateException();
+        chunkSectors[index] = (startSector << 8) | sectors;
+        chunkTimestamps[index] = timestamp;
+        chunksWritten++;
+    }
+
     @Override
     public void close() throws IOException {
         if (fileFinalized) return;
+        Exception failure = null;
+        try {
+            flush();
+        } catch (IOException | RuntimeException ex) {
+            // still write the index so that the chunks which were appended are readable
+            failure = ex;
+            for (PendingChunk chunk : pending) {
+                chunk.data.cancel(true);
+            }
+            pending.clear();
+        }
         try (Stopwatch.LapToken lap = fileCloseStopwatch.startLap()) {
             raf.seek(0);
             ByteBuffer byteBuffer = ByteBuffer.allocate(4096);
@@ -107,6 +331,8 @@ public class McaFileStreamingWriter implements Closeable {
             raf.close();
             fileFinalized = true;
         }
+        if (failure instanceof IOException ioEx) throw ioEx;
+        if (failure != null) throw (RuntimeException) failure;
     }
 
     @Override
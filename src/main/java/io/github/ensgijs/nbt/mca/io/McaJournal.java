@@ -0,0 +1,121 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.zip.CRC32;
+
+/**
+ * Sidecar write-ahead log used by {@link RandomAccessMcaFile#setJournaled(boolean) journaled}
+ * {@link RandomAccessMcaFile}s. A journal holds the mca header entries (chunk sectors and timestamp) of a batch
+ * of changes and is written, and forced to disk, before any of them are applied to the mca file header. Once it
+ * is on disk the batch is committed - if the process dies while the header is being written the journal is
+ * replayed the next time the file is opened. A journal which didn't make it to disk intact fails its checksum and
+ * is discarded, leaving the previous, still consistent, header in effect.
+ * <p>A journal also lists the chunks whose new external chunk file was written under its pending name, see
+ * {@link ExternalChunkFile#pendingOf(File, int, int)}, and is to replace the current one once committed.</p>
+ *
+ * <p>Format, big endian: int {@link #MAGIC}, int entry count, entries of (int chunk index, int packed chunk
+ * sectors, int timestamp), int pending external chunk count, int chunk indexes, followed by the CRC32 of all
+ * preceding bytes as a long.</p>
+ */
+final class McaJournal {
+    static final int MAGIC = 0x4D43414A;  // "MCAJ"
+    private static final int ENTRY_BYTES = 12;
+    /** Size of a journal without any entries. */
+    private static final int EMPTY_BYTES = 20;
+
+    /**
+     * @param entries Header entries as consecutive (chunk index, packed chunk sectors, timestamp) triples.
+     * @param pendingExternalChunks Indexes of the chunks whose pending external chunk file is to be installed.
+     */
+    record Contents(int[] entries, int[] pendingExternalChunks) {}
+
+    private McaJournal() {}
+
+    /**
+     * Writes, replacing any existing journal, the header entries of the given chunks and the given pending
+     * external chunks and forces them to disk.
+     */
+    static void write(File file, BitSet chunkIndexes, int[] chunkSectors, int[] chunkTimestamps,
+                      BitSet pendingExternalChunks) throws IOException {
+        final int count = chunkIndexes.cardinality();
+        final int externalCount = pendingExternalChunks.cardinality();
+        final ByteBuffer buffer = ByteBuffer.allocate(EMPTY_BYTES + count * ENTRY_BYTES + externalCount * 4);
+        buffer.putInt(MAGIC);
+        buffer.putInt(count);
+        for (int i = chunkIndexes.nextSetBit(0); i >= 0; i = chunkIndexes.nextSetBit(i + 1)) {
+            buffer.putInt(i);
+            buffer.putInt(chunkSectors[i]);
+            buffer.putInt(chunkTimestamps[i]);
+        }
+        buffer.putInt(externalCount);
+        for (int i = pendingExternalChunks.nextSetBit(0); i >= 0; i = pendingExternalChunks.nextSetBit(i + 1)) {
+            buffer.putInt(i);
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putLong(crc.getValue());
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Reads a journal.
+     * @return The journal contents, or null if there is no journal or it is incomplete or corrupt.
+     */
+    static Contents read(File file) throws IOException {
+        final ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < EMPTY_BYTES || size > EMPTY_BYTES + 1024L * ENTRY_BYTES + 1024L * 4)
+                return null;
+            buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0)
+                    return null;
+            }
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+        buffer.flip();
+        if (buffer.getInt(0) != MAGIC)
+            return null;
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.limit() - 8);
+        if (crc.getValue() != buffer.getLong(buffer.limit() - 8))
+            return null;
+        buffer.position(4);
+        final int count = buffer.getInt();
+        if (count < 0 || count > 1024 || buffer.remaining() < count * ENTRY_BYTES + 12)
+            return null;
+        final int[] entries = new int[count * 3];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = buffer.getInt();
+        }
+        final int externalCount = buffer.getInt();
+        if (externalCount < 0 || buffer.remaining() != externalCount * 4 + 8)
+            return null;
+        final int[] pendingExternalChunks = new int[externalCount];
+        for (int i = 0; i < externalCount; i++) {
+            pendingExternalChunks[i] = buffer.getInt();
+            if (pendingExternalChunks[i] < 0 || pendingExternalChunks[i] >= 1024)
+                return null;
+        }
+        for (int i = 0; i < entries.length; i += 3) {
+            if (entries[i] < 0 || entries[i] >= 1024)
+                return null;
+        }
+        return new Contents(entries, pendingExternalChunks);
+    }
+}
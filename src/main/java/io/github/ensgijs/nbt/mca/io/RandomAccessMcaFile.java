@@ -1,6 +1,10 @@
 package io.github.ensgijs.nbt.mca.io;
 
+import io.github.ensgijs.nbt.io.BinaryNbtDeserializer;
 import io.github.ensgijs.nbt.io.BinaryNbtSerializer;
+import io.github.ensgijs.nbt.io.ByteBufferInputStream;
+import io.github.ensgijs.nbt.io.CodecPool;
+import io.github.ensgijs.nbt.io.CompressionCodec;
 import io.github.ensgijs.nbt.io.CompressionType;
 import io.github.ensgijs.nbt.io.NamedTag;
 import io.github.ensgijs.nbt.io.SilentIOException;
@@ -8,6 +12,9 @@ import io.github.ensgijs.nbt.mca.*;
 import io.github.ensgijs.nbt.mca.util.ChunkIterator;
 import io.github.ensgijs.nbt.util.IntPointXZ;
 import io.github.ensgijs.nbt.mca.util.RegionBoundingRectangle;
+import io.github.ensgijs.nbt.query.TagSelector;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.Tag;
 import io.github.ensgijs.nbt.util.ArgValidator;
 import io.github.ensgijs.nbt.util.Stopwatch;
 
@@ -15,8 +22,15 @@ import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Provides random access read and write operations for working with MCA files.
@@ -34,6 +48,12 @@ import java.util.*;
  * have been corrupted. An mca file corrupted in this way could be recovered by skipping the file header (8kb)
  * and scanning the file sections directly - this library does not provide such a recovery mechanism at this time.</p>
  *
+ * <p>Reads are thread-safe: any number of threads may read chunks from the same instance concurrently. Reads
+ * use positional {@link FileChannel} I/O (or the memory mapping, see {@link #setMemoryMapped(boolean)}) and never
+ * move the file pointer. Writes, removals, {@link #optimizeFile()}, {@link #flush()} and {@link #close()} are
+ * serialized and wait for in progress reads to finish. Note that interrupting a thread blocked in a read closes
+ * the underlying channel, as with any interruptible channel, after which all further I/O will fail.</p>
+ *
  * <p>Suggested usage pattern to ensure the file is always closed.</p>
  * <pre>{@code
  *      try(RandomAccessMcaFile<?> ra = new RandomAccessMcaFile(file)){
@@ -52,16 +72,38 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
     private final IntPointXZ regionXZ;
     private final IntPointXZ regionChunkOffsetXZ;
     private int chunksWritten;
-    private int chunksRead;
+    private final AtomicInteger chunksRead = new AtomicInteger();
     protected final RandomAccessFile raf;
+    /** Directory holding the external files of oversized chunks, null if unknown. */
+    private File externalChunkDirectory;
+    /** Sidecar write-ahead log used when {@link #journaled}, null if unknown. */
+    private File journalFile;
+    /** Header entries changed since the last journal commit. */
+    private final BitSet uncommittedEntries = new BitSet(1024);
+    /** Sectors still referenced by the header on disk which may only be reused after the next journal commit. */
+    private final List<SectorManager.SectorBlock> uncommittedReleases = new ArrayList<>();
+    /** Chunks whose external chunk file is to be deleted after the next journal commit. */
+    private final List<IntPointXZ> uncommittedExternalDeletes = new ArrayList<>();
+    /**
+     * Chunks whose current external data is held by their pending external chunk file, which is installed by the
+     * next journal commit - or by the next writer when recovered from a journal in read-only mode.
+     */
+    private final BitSet pendingExternalChunks = new BitSet(1024);
+    private volatile MappedByteBuffer mappedFile;
     protected final SectorManager sectorManager = new SectorManager();
-    protected boolean fileInitialized = false;
-    protected boolean fileFinalized = false;
+    /** Guards file I/O - held shared while reading chunk data and exclusively for everything else. */
+    protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+    protected volatile boolean fileInitialized = false;
+    protected volatile boolean fileFinalized = false;
 
     protected long loadFlags = LoadFlags.LOAD_ALL_DATA;
     protected boolean autoOptimizeOnClose = false;
     protected boolean autoUpdateHandelOnWrite = true;
     protected boolean alwaysUpdateChunkLastUpdatedTimestamp = true;
+    protected int growthSlackSectors = 0;
+    protected boolean journaled = false;
+    protected volatile boolean memoryMapped = false;
+    protected CompressionCodec compression = CompressionType.ZLIB;
     // TODO: use this flag to short-circuit file write operations if they are not necessary.
     //   Currently this flag is only ever set, never cleared.
     protected boolean isDirty = false;  // set true if any chunks were written or removed
@@ -103,6 +145,8 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
      */
     public RandomAccessMcaFile(Class<T> chunkClass, File file, String mode) throws IOException {
         this(chunkClass, new RandomAccessFile(file, mode), McaFileHelpers.regionXZFromFileName(file.getName()), mode);
+        this.externalChunkDirectory = file.getAbsoluteFile().getParentFile();
+        this.journalFile = new File(file.getPath() + ".journal");
     }
 
     /**
@@ -141,6 +185,122 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
         return regionXZ;
     }
 
+    /**
+     * Directory holding the external files ({@code c.X.Z.mcc}) of chunks too large to be stored in the mca file.
+     * This is the directory containing the mca file when it was opened from a {@link File} or {@link Path}.
+     * @see ExternalChunkFile
+     */
+    public File getExternalChunkDirectory() {
+        return externalChunkDirectory;
+    }
+
+    /**
+     * Sets the directory holding the external files ({@code c.X.Z.mcc}) of chunks too large to be stored in the
+     * mca file. Only needs to be set when opened from a {@link RandomAccessFile}, without it reading or writing
+     * such a chunk fails with an {@link IOException}.
+     * @see ExternalChunkFile
+     */
+    public RandomAccessMcaFile<T> setExternalChunkDirectory(File externalChunkDirectory) {
+        this.externalChunkDirectory = externalChunkDirectory;
+        return this;
+    }
+
+    /**
+     * True if changes are committed to the file through a write-ahead journal.
+     * @see #setJournaled(boolean)
+     */
+    public boolean isJournaled() {
+        return journaled;
+    }
+
+    /**
+     * Enables crash-safe writes. Normally chunk data is written in place over the sectors it occupied and the
+     * header tables are written by {@link #flush()} - if the process dies in between the header may point at
+     * overwritten or relocated chunk data. When journaled:
+     * <ul>
+     *     <li>chunk data is always written to free sectors, never over the sectors the header on disk refers to,
+     *     and sectors given up by written, removed or moved chunks are only reused after the next commit;</li>
+     *     <li>the data of oversized chunks is written to a pending external chunk file which only replaces the
+     *     current one, and external chunk files of chunks which no longer need one are only deleted, once
+     *     committed;</li>
+     *     <li>header changes are batched and committed by {@link #flush()}, and so {@link #close()}: the new
+     *     chunk data is forced to disk, then the changed header entries are written to the journal file (see
+     *     {@link #getJournalFile()}) and forced to disk, then applied to the header and forced to disk, then
+     *     pending external chunk files are installed, after which the journal is deleted;</li>
+     *     <li>a journal left behind by a crash is replayed, or discarded if it was only partially written, when
+     *     the file is next opened - that is when the header tables are first read.</li>
+     * </ul>
+     * <p>The file on disk therefore always holds either the state as of the previous or the last commit. Call
+     * {@link #flush()} after each batch of writes you need to be durable - the file grows by the size of every
+     * chunk rewritten in between commits. {@link #setGrowthSlackSectors(int) Growth slack} is not applied and
+     * {@link #optimizeFile()} and {@link #optimizeFileIncrementally(int)} move chunks without ever overwriting
+     * sectors in use, committing after every move.</p>
+     * <p>Changing this setting flushes any pending changes.</p>
+     * @throws IllegalStateException if enabled in read-only mode or the journal file is unknown.
+     * @see #setJournalFile(File)
+     */
+    public RandomAccessMcaFile<T> setJournaled(boolean journaled) throws IOException {
+        if (journaled == this.journaled) return this;
+        if (journaled && isReadOnly)
+            throw new IllegalStateException("Journaling is not supported in read-only mode.");
+        if (journaled && journalFile == null)
+            throw new IllegalStateException("The journal file is unknown, see setJournalFile.");
+        lock.writeLock().lock();
+        try {
+            if (fileInitialized && !fileFinalized) {
+                flush();
+            }
+            this.journaled = journaled;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Sidecar write-ahead log file used when {@link #setJournaled(boolean) journaled}. When opened from a
+     * {@link File} or {@link Path} this is the mca file name with ".journal" appended.
+     */
+    public File getJournalFile() {
+        return journalFile;
+    }
+
+    /**
+     * Sets the sidecar write-ahead log file used when {@link #setJournaled(boolean) journaled}. Only needs to be set
+     * when opened from a {@link RandomAccessFile}, and must be set before the header tables are first read for a
+     * journal left behind by a crash to be recovered.
+     */
+    public RandomAccessMcaFile<T> setJournalFile(File journalFile) {
+        if (journaled && journalFile == null)
+            throw new IllegalStateException("The journal file is required while journaled.");
+        this.journalFile = journalFile;
+        return this;
+    }
+
+    /**
+     * Number of extra sectors reserved for a chunk which grew too large for the sectors it occupied.
+     * @see #setGrowthSlackSectors(int)
+     */
+    public int getGrowthSlackSectors() {
+        return growthSlackSectors;
+    }
+
+    /**
+     * Sets the number of extra sectors to reserve for a chunk which grew too large for the sectors it occupied.
+     * Chunks which are rewritten frequently tend to keep growing, and reserving some room for them to grow into
+     * means they don't need to be relocated, leaving a hole behind, every time they outgrow their sectors. When a
+     * chunk shrinks up to this many of its now unused sectors are kept for it as well.
+     * <p>Defaults to 0 - chunks occupy exactly the sectors they need. Slack sectors are recorded in the file header
+     * as part of the chunk, so {@link #optimizeFile()} does not reclaim them.</p>
+     * @param growthSlackSectors value in range [0, 255]
+     */
+    public RandomAccessMcaFile<T> setGrowthSlackSectors(int growthSlackSectors) {
+        ArgValidator.check(growthSlackSectors >= 0 && growthSlackSectors <= 255,
+                "growthSlackSectors must be in range [0, 255]");
+        this.growthSlackSectors = growthSlackSectors;
+        return this;
+    }
+
     /** LoadFlags which are passed to the chunk deserialization method. */
     public long getLoadFlags() {
         return loadFlags;
@@ -214,6 +374,50 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
         return this;
     }
 
+    /**
+     * Compression used by {@link #write} for chunks written from now on. Defaults to {@link CompressionType#ZLIB}.
+     * Chunks are always read using the compression they were stored with.
+     */
+    public CompressionCodec getCompression() {
+        return compression;
+    }
+
+    /**
+     * Compression used by {@link #write} for chunks written from now on. Defaults to {@link CompressionType#ZLIB}.
+     * Chunks are always read using the compression they were stored with.
+     * @see CompressionType#zlib(int)
+     */
+    public RandomAccessMcaFile<T> setCompression(CompressionCodec compression) {
+        this.compression = ArgValidator.requireValue(compression, "compression");
+        return this;
+    }
+
+    /**
+     * When set the mca file is mapped into memory and chunk data is decoded directly from the mapping instead
+     * of being read through {@link RandomAccessFile} - saving several syscalls per chunk read. This is most
+     * beneficial for random chunk lookups.
+     * <p>Only supported in read-only mode.</p>
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * When set the mca file is mapped into memory and chunk data is decoded directly from the mapping instead
+     * of being read through {@link RandomAccessFile} - saving several syscalls per chunk read. This is most
+     * beneficial for random chunk lookups.
+     * <p>Only supported in read-only mode. The mapping is created lazily on the next read and is released
+     * (by the garbage collector) after {@link #close()}.</p>
+     * @throws IllegalStateException if set while not in read-only mode.
+     */
+    public RandomAccessMcaFile<T> setMemoryMapped(boolean memoryMapped) {
+        if (memoryMapped && !isReadOnly)
+            throw new IllegalStateException("Memory mapping is only supported in read-only mode.");
+        this.memoryMapped = memoryMapped;
+        if (!memoryMapped) mappedFile = null;
+        return this;
+    }
+
     /**
      * @return A diagnostic information string.
      * @see #chunkSectorTableToString()
@@ -223,7 +427,7 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
         return String.format(
                 "region %s; %s; %s; initialized %s; finalized %s; chunks[written %d; read %d]; " +
                         "timing[init %s; read %s; serialize %s; write %s; optimize %s; flush %s]; " +
-                        "settings[flags %s; auto-optimize %s; auto-update-handel %s; always-update-timestamp %s]; " +
+                        "settings[flags %s; auto-optimize %s; auto-update-handel %s; always-update-timestamp %s; memory-mapped %s; compression %s]; " +
                         "sector-manager[%s]",
                 regionXZ,
                 regionBounds.asChunkBounds(),
@@ -231,7 +435,7 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
                 fileInitialized,
                 fileFinalized,
                 chunksWritten,
-                chunksRead,
+                chunksRead.get(),
                 fileInitialized ? fileInitializationStopwatch : "n/a",
                 fileInitialized ? totalReadStopwatch : "n/a",
                 fileInitialized ? chunkSerializationStopwatch : "n/a",
@@ -242,6 +446,8 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
                 isAutoOptimizeOnClose(),
                 isAutoOptimizeOnClose(),
                 isAlwaysUpdateChunkLastUpdatedTimestamp(),
+                isMemoryMapped(),
+                compression,
                 sectorManager);
     }
 
@@ -313,11 +519,21 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
     /** Causes the mca file header tables to be read if they have not yet been read. */
     protected void ensureFileInitialized() throws IOException {
         if (fileFinalized) throw new IOException("File closed!");
-        if (!fileInitialized) {
+        if (fileInitialized) return;
+        lock.writeLock().lock();
+        try {
+            if (fileFinalized) throw new IOException("File closed!");
+            if (fileInitialized) return;
             try (Stopwatch.LapToken lap = fileInitializationStopwatch.startLap()) {
                 raf.seek(0);
                 final byte[] buffer = new byte[4096];
-                if (raf.length() >= 4096 * 2) {  // existing file
+                final boolean existingFile = raf.length() >= 4096 * 2;
+                if (raf.length() >= 4096 * 2 && mappedFile() != null) {
+                    // tables are contiguous - chunkSectors followed by chunkTimestamps
+                    IntBuffer ib = mappedFile.asIntBuffer();
+                    ib.get(chunkSectors);
+                    ib.get(chunkTimestamps);
+                } else if (raf.length() >= 4096 * 2) {  // existing file
                     ByteBuffer bb = ByteBuffer.wrap(buffer);
                     raf.read(buffer);
                     bb.position(0);
@@ -331,9 +547,14 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
                     raf.write(buffer);
                     raf.write(buffer);
                 }
+                if (journalFile != null && journalFile.exists()) {
+                    recoverJournal(existingFile);
+                }
                 sectorManager.sync(chunkSectors);
                 fileInitialized = true;
             }
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
@@ -344,17 +565,23 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
      */
     @Override
     public void close() throws IOException {
-        if (fileFinalized) return;
+        lock.writeLock().lock();
         try {
-            if (!isReadOnly && fileInitialized) {
-                if (isAutoOptimizeOnClose())
-                    optimizeFile();
-                flush();
+            if (fileFinalized) return;
+            try {
+                if (!isReadOnly && fileInitialized) {
+                    if (isAutoOptimizeOnClose())
+                        optimizeFile();
+                    flush();
+                }
+            } finally {
+                raf.close();
+                mappedFile = null;
+                sectorManager.clear();
+                fileFinalized = true;
             }
         } finally {
-            raf.close();
-            sectorManager.freeSectors.clear();
-            fileFinalized = true;
+            lock.writeLock().unlock();
         }
     }
 
@@ -365,18 +592,120 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
     public void flush() throws IOException {
         if (!fileInitialized || isReadOnly)
             return;
-        if (fileFinalized)
-            throw new IOException("File closed!");
+        lock.writeLock().lock();
         try (Stopwatch.LapToken lap = fileFlushStopwatch.startLap()) {
-            raf.seek(0);
-            ByteBuffer byteBuffer = ByteBuffer.allocate(4096);
-            byteBuffer.order(ByteOrder.BIG_ENDIAN);
-            IntBuffer intBuffer = byteBuffer.asIntBuffer();
-            intBuffer.put(chunkSectors);
-            raf.write(byteBuffer.array());
-            intBuffer.clear();
-            intBuffer.put(chunkTimestamps);
-            raf.write(byteBuffer.array());
+            if (fileFinalized)
+                throw new IOException("File closed!");
+            if (journaled) {
+                commitJournal();
+            } else {
+                writeHeaderTables();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void writeHeaderTables() throws IOException {
+        raf.seek(0);
+        ByteBuffer byteBuffer = ByteBuffer.allocate(4096);
+        byteBuffer.order(ByteOrder.BIG_ENDIAN);
+        IntBuffer intBuffer = byteBuffer.asIntBuffer();
+        intBuffer.put(chunkSectors);
+        raf.write(byteBuffer.array());
+        intBuffer.clear();
+        intBuffer.put(chunkTimestamps);
+        raf.write(byteBuffer.array());
+    }
+
+    /**
+     * Commits the header changes made since the last commit, see {@link #setJournaled(boolean)}, then makes the
+     * sectors they gave up available for reuse. Caller must hold the write lock.
+     */
+    private void commitJournal() throws IOException {
+        final boolean journalWritten = !uncommittedEntries.isEmpty();
+        if (journalWritten) {
+            final FileChannel channel = raf.getChannel();
+            // the new chunk data must be on disk before anything on disk refers to it
+            channel.force(false);
+            McaJournal.write(journalFile, uncommittedEntries, chunkSectors, chunkTimestamps, pendingExternalChunks);
+            writeHeaderTables();
+            channel.force(false);
+            uncommittedEntries.clear();
+        }
+        for (SectorManager.SectorBlock sb : uncommittedReleases) {
+            sectorManager.release(sb);
+        }
+        uncommittedReleases.clear();
+        // before installing, a chunk may have stopped being external and then become external again
+        for (IntPointXZ xz : uncommittedExternalDeletes) {
+            ExternalChunkFile.delete(externalChunkDirectory, xz.getX(), xz.getZ());
+        }
+        uncommittedExternalDeletes.clear();
+        // the journal is only deleted once installed, recovery installs whatever a crash left pending
+        installPendingExternalChunks();
+        if (journalWritten) {
+            Files.delete(journalFile.toPath());
+        }
+    }
+
+    private void installPendingExternalChunks() throws IOException {
+        for (int i = pendingExternalChunks.nextSetBit(0); i >= 0; i = pendingExternalChunks.nextSetBit(i + 1)) {
+            IntPointXZ chunkXZ = McaRegionFile.getRelativeChunkXZ(i).add(regionChunkOffsetXZ);
+            ExternalChunkFile.install(externalChunkDirectory, chunkXZ.getX(), chunkXZ.getZ());
+        }
+        pendingExternalChunks.clear();
+    }
+
+    /**
+     * Applies the header entries held by a journal left behind by a crash to the in memory header tables and, if
+     * writable, to the file - or discards the journal if it was only partially written.
+     * @param existingFile false if the mca file didn't exist or was empty, in which case the journal is stale.
+     */
+    private void recoverJournal(boolean existingFile) throws IOException {
+        final McaJournal.Contents journal = existingFile ? McaJournal.read(journalFile) : null;
+        if (journal != null) {
+            final int[] entries = journal.entries();
+            for (int i = 0; i < entries.length; i += 3) {
+                chunkSectors[entries[i]] = entries[i + 1];
+                chunkTimestamps[entries[i]] = entries[i + 2];
+            }
+            for (int index : journal.pendingExternalChunks()) {
+                pendingExternalChunks.set(index);
+            }
+        }
+        if (!isReadOnly) {
+            if (journal != null) {
+                writeHeaderTables();
+                raf.getChannel().force(false);
+                installPendingExternalChunks();
+            } else if (externalChunkDirectory != null) {
+                // pending external chunk files written for the discarded changes
+                for (int i = 0; i < 1024; i++) {
+                    IntPointXZ chunkXZ = McaRegionFile.getRelativeChunkXZ(i).add(regionChunkOffsetXZ);
+                    ExternalChunkFile.deletePending(externalChunkDirectory, chunkXZ.getX(), chunkXZ.getZ());
+                }
+            }
+            Files.deleteIfExists(journalFile.toPath());
+        }
+    }
+
+    /** Releases sectors given up by a chunk - after the next commit if {@link #journaled}. */
+    private void releaseSectors(SectorManager.SectorBlock sectorBlock) {
+        if (sectorBlock.size == 0) return;
+        if (journaled) {
+            uncommittedReleases.add(new SectorManager.SectorBlock(sectorBlock));
+        } else {
+            sectorManager.release(sectorBlock);
+        }
+    }
+
+    /** Deletes the external file of the given chunk - after the next commit if {@link #journaled}. */
+    private void deleteExternalChunkFile(int chunkX, int chunkZ) throws IOException {
+        if (journaled) {
+            uncommittedExternalDeletes.add(new IntPointXZ(chunkX, chunkZ));
+        } else {
+            ExternalChunkFile.delete(externalChunkDirectory, chunkX, chunkZ);
         }
     }
 
@@ -391,18 +720,186 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
      * introduce unused space.</p>
      * @return Number of unused bytes that were removed from the file. The file is now this much smaller.
      * @see #setAutoOptimizeOnClose(boolean)
+     * @see #optimizeFileIncrementally(int)
      */
     public int optimizeFile() throws IOException {
         ensureFileInitialized();
         if (isReadOnly)
             throw new IOException("File was opened in read-only mode.");
         int bytesRemoved = 0;
+        if (journaled) {
+            // the one pass optimization moves chunks over sectors still in use
+            final long oldLength = raf.length();
+            while (compactionStep(Integer.MAX_VALUE) > 0);
+            return (int) (oldLength - raf.length());
+        }
+        lock.writeLock().lock();
         try (Stopwatch.LapToken lap = fileOptimizationStopwatch.startLap()) {
             bytesRemoved = sectorManager.optimizeFile(raf, chunkSectors);
+        } finally {
+            lock.writeLock().unlock();
         }
         return bytesRemoved;
     }
 
+    /**
+     * Compacts the chunk data in the mca file a few chunks at a time - unlike {@link #optimizeFile()}, which moves
+     * every chunk that needs moving in one go, this method stops once {@code maxSectorsToMove} sectors have been
+     * moved. Calling it repeatedly, say while a long-running service is otherwise idle, eventually fully compacts
+     * the file.
+     * <p>Chunks are moved one at a time and the lock is released between moves, so reads and writes by other
+     * threads are only ever held up by a single chunk move. The header entry of a moved chunk is written
+     * immediately, so the file on disk stays consistent between moves without a call to {@link #flush()}.</p>
+     * <p>The last chunk in the file is moved into the best fitting hole before it whenever possible, which shrinks
+     * the file. When no hole can hold it, the chunk following the first hole is slid down into it instead.</p>
+     * @param maxSectorsToMove Upper bound on the number of sectors moved. At least one chunk is always moved if
+     *                         the file isn't fully compacted, even if it is larger than this.
+     * @return Number of sectors moved. Zero once the file is fully compacted.
+     * @see #getFragmentationRatio()
+     */
+    public int optimizeFileIncrementally(int maxSectorsToMove) throws IOException {
+        ArgValidator.check(maxSectorsToMove > 0, "maxSectorsToMove must be GT 0");
+        ensureFileInitialized();
+        if (isReadOnly)
+            throw new IOException("File was opened in read-only mode.");
+        int moved = 0;
+        int step;
+        do {
+            step = compactionStep(moved == 0 ? Integer.MAX_VALUE : maxSectorsToMove - moved);
+            moved += step;
+        } while (step > 0 && moved < maxSectorsToMove);
+        return moved;
+    }
+
+    /**
+     * Compacts the chunk data in the mca file, as {@link #optimizeFileIncrementally(int)} does, until either the
+     * file is fully compacted or the time budget is used up. The budget is checked between chunk moves so it may
+     * be exceeded by the time it takes to move one chunk.
+     * @return Number of sectors moved. Zero once the file is fully compacted.
+     * @see #getFragmentationRatio()
+     */
+    public int optimizeFileFor(long timeBudget, TimeUnit unit) throws IOException {
+        ArgValidator.requireValue(unit, "unit");
+        ensureFileInitialized();
+        if (isReadOnly)
+            throw new IOException("File was opened in read-only mode.");
+        final long deadline = System.nanoTime() + unit.toNanos(timeBudget);
+        int moved = 0;
+        int step;
+        do {
+            step = compactionStep(Integer.MAX_VALUE);
+            moved += step;
+        } while (step > 0 && System.nanoTime() - deadline < 0);
+        return moved;
+    }
+
+    /**
+     * Moves a single chunk to fill a hole in the file, see {@link #optimizeFileIncrementally(int)}, and truncates
+     * any unused sectors from the end of the file.
+     * @return Number of sectors moved, zero if the file is fully compacted or moving the next chunk would move
+     * more than {@code maxSectorsToMove} sectors.
+     */
+    private int compactionStep(int maxSectorsToMove) throws IOException {
+        lock.writeLock().lock();
+        try (Stopwatch.LapToken lap = fileOptimizationStopwatch.startLap()) {
+            if (fileFinalized) throw new IOException("File closed!");
+            if (journaled) {
+                // makes every sector given up so far available
+                commitJournal();
+            }
+            int moved = 0;
+            final SectorManager.SectorBlock hole = sectorManager.firstFree();
+            if (hole != null) {
+                int lastIndex = -1;
+                int followingIndex = -1;
+                for (int i = 0; i < 1024; i++) {
+                    if ((chunkSectors[i] & 0xFF) == 0) continue;
+                    final int start = chunkSectors[i] >>> 8;
+                    if (lastIndex < 0 || start > chunkSectors[lastIndex] >>> 8) lastIndex = i;
+                    if (start == hole.end()) followingIndex = i;
+                }
+                final SectorManager.SectorBlock last = SectorManager.SectorBlock.unpack(chunkSectors[lastIndex]);
+                if (last.size <= maxSectorsToMove) {
+                    SectorManager.SectorBlock to = sectorManager.allocateBefore(last.size, last.start);
+                    if (to != null) {
+                        moveChunkSectors(lastIndex, to);
+                        releaseSectors(last);
+                        moved = last.size;
+                    }
+                }
+                if (moved == 0 && followingIndex >= 0) {
+                    final SectorManager.SectorBlock following =
+                            SectorManager.SectorBlock.unpack(chunkSectors[followingIndex]);
+                    if (following.size <= maxSectorsToMove) {
+                        if (journaled && following.size > hole.size) {
+                            // sliding it down would overwrite the chunk's current sectors - move it out of the way
+                            // instead, its sectors then merge with the hole and a following step moves it back down
+                            moveChunkSectors(followingIndex, sectorManager.allocate(following.size));
+                            releaseSectors(following);
+                        } else {
+                            // the chunk's sectors merge with the hole, after which the chunk can take the start of it
+                            sectorManager.release(following);
+                            SectorManager.SectorBlock to = sectorManager.allocateAt(hole.start, following.size);
+                            if (to == null)
+                                throw new IllegalStateException();
+                            moveChunkSectors(followingIndex, to);
+                        }
+                        moved = following.size;
+                    }
+                }
+            }
+            if (journaled && moved > 0) {
+                commitJournal();
+            }
+            if (raf.length() > sectorManager.appendAtSector * 4096L) {
+                sectorManager.truncate(raf);
+            }
+            return moved;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copies the sectors of the specified chunk to {@code to}, which has already been allocated, then updates and
+     * writes its header entry. The two ranges may overlap. Releasing the old sectors is up to the caller.
+     */
+    private void moveChunkSectors(int chunkIndex, SectorManager.SectorBlock to) throws IOException {
+        final SectorManager.SectorBlock from = SectorManager.SectorBlock.unpack(chunkSectors[chunkIndex]);
+        final byte[] buffer = new byte[from.size * 4096];
+        from.seekTo(raf);
+        raf.readFully(buffer);
+        to.seekTo(raf);
+        raf.write(buffer);
+        chunkSectors[chunkIndex] = to.pack();
+        if (journaled) {
+            uncommittedEntries.set(chunkIndex);
+        } else {
+            raf.seek(chunkIndex * 4L);
+            raf.writeInt(chunkSectors[chunkIndex]);
+        }
+        isDirty = true;
+    }
+
+    /**
+     * Fraction of the file's chunk data sectors which are unused, in range [0, 1). Unused sectors are those in
+     * holes left behind by chunks which were moved or removed plus any at the end of the file which are no longer
+     * needed. Useful to decide when to call {@link #optimizeFile()} or {@link #optimizeFileIncrementally(int)}.
+     */
+    public double getFragmentationRatio() throws IOException {
+        ensureFileInitialized();
+        lock.readLock().lock();
+        try {
+            if (fileFinalized) throw new IOException("File closed!");
+            final long fileSectors = Math.max((raf.length() + 4095) / 4096, sectorManager.appendAtSector);
+            if (fileSectors <= 2) return 0;
+            final long unused = sectorManager.freeSectorCount() + (fileSectors - sectorManager.appendAtSector);
+            return (double) unused / (fileSectors - 2);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     /**
      * Marks the specified chunk for removal and makes its file sectors available for saving other chunks into.
      * <p>Does not actually erase the chunk data in the mca file during this call - this is a very lightweight call.</p>
@@ -413,14 +910,30 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
     public boolean removeChunk(int chunkIndex) throws IOException {
         if (isReadOnly)
             throw new IOException("File was opened in read-only mode.");
-        if (hasChunk(chunkIndex)) {
-            isDirty = true;
-            sectorManager.release(SectorManager.SectorBlock.unpack(chunkSectors[chunkIndex]));
-            chunkSectors[chunkIndex] = 0;
-            chunkTimestamps[chunkIndex] = 0;
-            return true;
+        ensureFileInitialized();
+        lock.writeLock().lock();
+        try {
+            if (hasChunk(chunkIndex)) {
+                isDirty = true;
+                if (isExternalRecord(chunkIndex)) {
+                    IntPointXZ chunkXZ = McaRegionFile.getRelativeChunkXZ(chunkIndex).add(regionChunkOffsetXZ);
+                    deleteExternalChunkFile(chunkXZ.getX(), chunkXZ.getZ());
+                    if (pendingExternalChunks.get(chunkIndex)) {
+                        // never committed, nothing on disk refers to it
+                        ExternalChunkFile.deletePending(externalChunkDirectory, chunkXZ.getX(), chunkXZ.getZ());
+                        pendingExternalChunks.clear(chunkIndex);
+                    }
+                }
+                releaseSectors(SectorManager.SectorBlock.unpack(chunkSectors[chunkIndex]));
+                chunkSectors[chunkIndex] = 0;
+                chunkTimestamps[chunkIndex] = 0;
+                if (journaled) uncommittedEntries.set(chunkIndex);
+                return true;
+            }
+            return false;
+        } finally {
+            lock.writeLock().unlock();
         }
-        return false;
     }
 
     /**
@@ -544,33 +1057,210 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
         if (chunkIndex < 0 || chunkIndex >= 1024)
             throw new IndexOutOfBoundsException();
         ensureFileInitialized();
-        try (var lap = totalReadStopwatch.startLap()) {
-            int sectorOffset = chunkSectors[chunkIndex] >>> 8;
-            int sectorSize = chunkSectors[chunkIndex] & 0xFF;
+        final long startNanos = System.nanoTime();
+        try {
+            final ChunkData chunkData = readChunkData(chunkIndex);
+            if (chunkData == null) return null;
+
+            try (InputStream in = openChunkData(chunkData)) {
+                T chunk;
+                try {
+                    chunk = chunkClass.getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException ex) {
+                    // TODO should wrap with a custom chunk creation exception...
+                    // given that this error is something exclusively under the control of the library user I'm OK(ish) with this hacky wrap and throw
+                    throw new RuntimeException(ex);
+                }
+                IntPointXZ chunkXZ = McaRegionFile.getRelativeChunkXZ(chunkIndex).add(regionChunkOffsetXZ);
+                chunksRead.incrementAndGet();
+                chunk.deserialize(in, loadFlags, chunkData.timestamp(), chunkXZ.getX(), chunkXZ.getZ());
+                return chunk;
+            }
+        } finally {
+            totalReadStopwatch.addElapsedNanos(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Reads only the parts of the specified chunk's nbt data chosen by {@code selector}, skipping over the rest
+     * without decoding it. Useful for scanning a region for a few fields without paying for a full chunk load.
+     * @return The selected chunk data if the chunk exists, else null.
+     * @see TagSelector
+     */
+    public CompoundTag readTag(int chunkIndex, TagSelector selector) throws IOException {
+        if (chunkIndex < 0 || chunkIndex >= 1024)
+            throw new IndexOutOfBoundsException();
+        ArgValidator.requireValue(selector, "selector");
+        ensureFileInitialized();
+        final long startNanos = System.nanoTime();
+        try {
+            final ChunkData chunkData = readChunkData(chunkIndex);
+            if (chunkData == null) return null;
+            Tag<?> tag;
+            try (InputStream in = openChunkData(chunkData)) {
+                final int compressionTypeByte = in.read();
+                final CompressionCodec compression = CompressionCodec.getFromID((byte) compressionTypeByte);
+                if (compression == null)
+                    throw new IOException("invalid compression type " + compressionTypeByte);
+                chunksRead.incrementAndGet();
+                tag = new BinaryNbtDeserializer(compression).setSelector(selector).fromStream(in).getTag();
+            }
+            if (!(tag instanceof CompoundTag))
+                throw new IOException("invalid data tag: " + (tag == null ? "null" : tag.getClass().getName()));
+            return (CompoundTag) tag;
+        } finally {
+            totalReadStopwatch.addElapsedNanos(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Reads the still compressed data of the specified chunk, if it exists, without deserializing it.
+     * <p>The first byte of the returned array is the compression type id and the remainder is the compressed
+     * nbt payload - exactly what {@link ChunkBase#deserialize(InputStream, long, int, int, int)} expects to consume.
+     * This allows the comparatively expensive decompression and nbt parsing to be handed off to another thread
+     * while this one continues reading.</p>
+     * @return The raw chunk data if the chunk exists, else null.
+     */
+    public byte[] readRaw(int chunkIndex) throws IOException {
+        if (chunkIndex < 0 || chunkIndex >= 1024)
+            throw new IndexOutOfBoundsException();
+        ensureFileInitialized();
+        final long startNanos = System.nanoTime();
+        try {
+            byte[] bytes;
+            try (ChunkData chunkData = readChunkData(chunkIndex)) {
+                if (chunkData == null) return null;
+                final ByteBuffer data = chunkData.data();
+                if (chunkData.external() != null) {
+                    bytes = ExternalChunkFile.readRaw(chunkData.external(), data.get(data.position()));
+                } else {
+                    bytes = new byte[data.remaining()];
+                    data.get(bytes);
+                }
+            }
+            chunksRead.incrementAndGet();
+            return bytes;
+        } finally {
+            totalReadStopwatch.addElapsedNanos(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * @param chunkData Chunk data as returned by {@link #readChunkData(int)}, closed along with the returned stream.
+     * @return A stream over the compression type byte and compressed chunk data, which is read from the external
+     * chunk file if the chunk is stored in one.
+     */
+    private InputStream openChunkData(ChunkData chunkData) {
+        final ByteBuffer data = chunkData.data();
+        if (chunkData.external() != null) {
+            return ExternalChunkFile.open(chunkData.external(), data.get(data.position()));
+        }
+        return new ByteBufferInputStream(data);
+    }
+
+    /** @return The file holding the external data of the given chunk. */
+    private File externalFile(int chunkIndex, IntPointXZ chunkXZ) throws IOException {
+        if (pendingExternalChunks.get(chunkIndex)) {
+            final File pending = ExternalChunkFile.pendingOf(externalChunkDirectory, chunkXZ.getX(), chunkXZ.getZ());
+            // unless a commit was interrupted after installing it, which read-only recovery can't finish
+            if (pending.exists()) return pending;
+        }
+        return ExternalChunkFile.require(externalChunkDirectory, chunkXZ.getX(), chunkXZ.getZ());
+    }
+
+    /**
+     * Checks if the specified chunk record is a stub pointing to an external chunk file. Such stubs always
+     * occupy exactly one sector.
+     */
+    private boolean isExternalRecord(int chunkIndex) throws IOException {
+        if ((chunkSectors[chunkIndex] & 0xFF) != 1) return false;
+        final ByteBuffer b = ByteBuffer.allocate(1);
+        final long position = (chunkSectors[chunkIndex] >>> 8) * 4096L + 4;
+        return raf.getChannel().read(b, position) == 1 && ExternalChunkFile.isExternal(b.get(0));
+    }
+
+    /**
+     * Maps the file into memory if {@link #isMemoryMapped()} is set and it hasn't been mapped yet.
+     * @return The mapped file or null if not memory mapped.
+     */
+    private MappedByteBuffer mappedFile() throws IOException {
+        MappedByteBuffer mapped = mappedFile;
+        if (mapped != null || !memoryMapped) return mapped;
+        synchronized (this) {
+            if (mappedFile == null && memoryMapped) {
+                final long length = raf.length();
+                // a well-formed mca file can't get anywhere near this large (1024 chunks * 1MB max)
+                if (length > Integer.MAX_VALUE)
+                    throw new CorruptMcaFileException("File is too large to memory map: " + length + " bytes");
+                mappedFile = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            }
+            return mappedFile;
+        }
+    }
+
+    /**
+     * Chunk record as read by {@link #readChunkData(int)}.
+     * @param data Positioned at the compression type byte of the chunk and limited to the end of the chunk payload.
+     * @param timestamp The chunk timestamp read along with, and so consistent with, the data.
+     * @param external The external chunk file holding the chunk data, opened along with the record so a concurrent
+     *                 write can't delete it first. Null if the chunk data is stored in the mca file.
+     */
+    private record ChunkData(ByteBuffer data, int timestamp, FileChannel external) implements Closeable {
+        @Override
+        public void close() throws IOException {
+            if (external != null) external.close();
+        }
+    }
+
+    /**
+     * Reads the data of the specified chunk without moving the file pointer. Safe to call concurrently.
+     * @return The chunk data, or null if the chunk doesn't exist.
+     */
+    private ChunkData readChunkData(int chunkIndex) throws IOException {
+        final MappedByteBuffer mapped = mappedFile();
+        lock.readLock().lock();
+        try {
+            if (fileFinalized) throw new IOException("File closed!");
+            final int sectorOffset = chunkSectors[chunkIndex] >>> 8;
+            final int sectorSize = chunkSectors[chunkIndex] & 0xFF;
             if (sectorSize == 0) return null;
-            if (raf.length() < (sectorOffset + sectorSize) * 4096L) {
-                throw new EOFException();
+            final ByteBuffer sectors;
+            if (mapped != null) {
+                if (mapped.capacity() < (sectorOffset + sectorSize) * 4096L) {
+                    throw new EOFException();
+                }
+                sectors = mapped.slice(sectorOffset * 4096, sectorSize * 4096);
+            } else {
+                // read all the sectors in one go - costs at most 4KB of extra reading but saves a syscall
+                sectors = ByteBuffer.allocate(sectorSize * 4096);
+                final FileChannel channel = raf.getChannel();
+                final long position = sectorOffset * 4096L;
+                while (sectors.hasRemaining()) {
+                    if (channel.read(sectors, position + sectors.position()) < 0)
+                        throw new EOFException();
+                }
+                sectors.flip();
             }
-            raf.seek(sectorOffset * 4096L);  // +2 for the file header
-            int chunkByteSize = raf.readInt();
+            int chunkByteSize = sectors.getInt(0);
             if (chunkByteSize > (sectorSize * 4096) - 4) {
                 throw new CorruptMcaFileException(String.format(
                         "MCA file header sector size %d (%d bytes) for chunk %04d (at 0x%X) is too small to hold %d bytes!",
                         sectorSize, sectorSize * 4096, chunkIndex, sectorOffset * 4096L, chunkByteSize));
             }
-
-            T chunk;
-            try {
-                chunk = chunkClass.getDeclaredConstructor().newInstance();
-            } catch (ReflectiveOperationException ex) {
-                // TODO should wrap with a custom chunk creation exception...
-                // given that this error is something exclusively under the control of the library user I'm OK(ish) with this hacky wrap and throw
-                throw new RuntimeException(ex);
+            if (chunkByteSize <= 0) {
+                throw new CorruptMcaFileException(String.format(
+                        "Chunk %04d (at 0x%X) has an invalid byte size of %d!",
+                        chunkIndex, sectorOffset * 4096L, chunkByteSize));
             }
-            IntPointXZ chunkXZ = McaRegionFile.getRelativeChunkXZ(chunkIndex).add(regionChunkOffsetXZ);
-            chunksRead ++;
-            chunk.deserialize(raf, loadFlags, chunkTimestamps[chunkIndex], chunkXZ.getX(), chunkXZ.getZ());
-            return chunk;
+            final ByteBuffer data = sectors.slice(4, chunkByteSize);
+            FileChannel external = null;
+            if (ExternalChunkFile.isExternal(data.get(0))) {
+                IntPointXZ chunkXZ = McaRegionFile.getRelativeChunkXZ(chunkIndex).add(regionChunkOffsetXZ);
+                external = ExternalChunkFile.openChannel(externalFile(chunkIndex, chunkXZ));
+            }
+            return new ChunkData(data, chunkTimestamps[chunkIndex], external);
+        } finally {
+            lock.readLock().unlock();
         }
     }
 
@@ -624,6 +1314,8 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
 
     /**
      * Writes the given chunk.
+     * <p>A chunk whose compressed data exceeds the 1MB a chunk may occupy in an mca file is written to an external
+     * chunk file instead, see {@link #setExternalChunkDirectory(File)}.</p>
      * @param chunk not null and chunk must exist within bounds of this region file.
      * @see #removeChunk
      */
@@ -646,51 +1338,97 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
             chunk.setLastMCAUpdate((int) (System.currentTimeMillis() / 1000));
         }
 
-        try (Stopwatch.LapToken lap1 = totalWriteStopwatch.startLap()) {
-            final int index = chunk.getIndex();
-            final int oldSectorOffset = chunkSectors[index] >>> 8;
-            final int oldSectorSize = chunkSectors[index] & 0xFF;
-            ByteArrayOutputStream baos;
-            SectorManager.SectorBlock writeToSector;
-            int totalBytes;
-            final int newSectorSize;
-            chunksWritten ++;
-
-            try (Stopwatch.LapToken lap2 = chunkSerializationStopwatch.startLap()) {
-                baos = new ByteArrayOutputStream(Math.min(2, oldSectorSize) * 4096);
-                new BinaryNbtSerializer(CompressionType.ZLIB).toStream(
-                        new NamedTag(null, isAutoUpdateHandelOnWrite() ? chunk.updateHandle() : chunk.getHandle()), baos);
-            }
+        final long startNanos = System.nanoTime();
+        final int index = chunk.getIndex();
+        final CompressionCodec compression = this.compression;
+        final CodecPool.Buffer baos = CodecPool.acquireBuffer();
+        try {
+            // encode and compress before taking the lock so concurrent readers are only blocked for the actual write
+            final long serializationStartNanos = System.nanoTime();
+            new BinaryNbtSerializer(compression).toStream(
+                    new NamedTag(null, isAutoUpdateHandelOnWrite() ? chunk.updateHandle() : chunk.getHandle()), baos);
+            chunkSerializationStopwatch.addElapsedNanos(System.nanoTime() - serializationStartNanos);
             // Note 'totalBytes' is count 4 larger than the value written at the chunk sector offset because it includes the byte size data too
-            totalBytes = baos.size() + 4 /*size*/ + 1 /*compression sig*/;
-            newSectorSize = (totalBytes >> 12) + (totalBytes % 4096 == 0 ? 0 : 1);
-            if (newSectorSize > 255) throw new IOException("Chunk " + chunk.getChunkXZ() + " to large! 1MB maximum");
-
-            if (oldSectorSize == 0) {  // chunk has never been written to file
-                writeToSector = sectorManager.allocate(newSectorSize);
-            } else if (newSectorSize == oldSectorSize) {  // new chunk data fits in the old slot like a glove
-                writeToSector = new SectorManager.SectorBlock(oldSectorOffset, newSectorSize);
-            } else if (newSectorSize < oldSectorSize) {  // new chunk data still fits but there's extra room now
-                writeToSector = new SectorManager.SectorBlock(oldSectorOffset, newSectorSize);
-                sectorManager.release(oldSectorOffset + newSectorSize, oldSectorSize - newSectorSize);
-            } else {  // new chunk data is too large to fit in the old slot so alloc a new one
-                writeToSector = sectorManager.allocate(newSectorSize);
-                sectorManager.release(oldSectorOffset, oldSectorSize);
-            }
-            writeToSector.seekTo(raf);
-            raf.writeInt(totalBytes - 4);  // don't count the int we are writing here in the byte size
-            raf.write(CompressionType.ZLIB.getID());
-            raf.write(baos.toByteArray());
-            chunkSectors[index] = writeToSector.pack();
-            chunkTimestamps[index] = chunk.getLastMCAUpdate();
-
-            long roundedEos = writeToSector.end() * 4096L;
-            while (roundedEos > raf.getFilePointer()) {
-                int gap = (int) Math.min(roundedEos - raf.getFilePointer(), ZERO_FILL_BUFFER.length);
-                raf.write(ZERO_FILL_BUFFER, 0, gap);
+            int totalBytes = baos.size() + 4 /*size*/ + 1 /*compression sig*/;
+            int newSectorSize = (totalBytes >> 12) + (totalBytes % 4096 == 0 ? 0 : 1);
+            final boolean external = newSectorSize > ExternalChunkFile.MAX_SECTORS;
+
+            lock.writeLock().lock();
+            try {
+                if (fileFinalized) throw new IOException("File closed!");
+                final int oldSectorOffset = chunkSectors[index] >>> 8;
+                final int oldSectorSize = chunkSectors[index] & 0xFF;
+                SectorManager.SectorBlock writeToSector;
+                chunksWritten ++;
+                final boolean wasExternal = isExternalRecord(index);
+                if (external) {
+                    // too large for the mca file - store the data externally and leave a one sector stub behind
+                    File externalFile = ExternalChunkFile.require(externalChunkDirectory, chunk.getChunkX(), chunk.getChunkZ());
+                    if (journaled) {
+                        // the header on disk may still refer to the current external file, replaced on commit
+                        externalFile = ExternalChunkFile.pendingOf(externalChunkDirectory, chunk.getChunkX(), chunk.getChunkZ());
+                    }
+                    ExternalChunkFile.write(externalFile, baos.array(), 0, baos.size());
+                    if (journaled) pendingExternalChunks.set(index);
+                    totalBytes = 4 /*size*/ + 1 /*compression sig*/;
+                    newSectorSize = 1;
+                } else if (pendingExternalChunks.get(index)) {
+                    // never committed, nothing on disk refers to it
+                    ExternalChunkFile.deletePending(externalChunkDirectory, chunk.getChunkX(), chunk.getChunkZ());
+                    pendingExternalChunks.clear(index);
+                }
+
+                // external chunk stubs must occupy exactly one sector
+                final int slack = external ? 0 : growthSlackSectors;
+                if (oldSectorSize == 0 || journaled) {  // never written to file, or must not be overwritten
+                    writeToSector = sectorManager.allocate(newSectorSize);
+                    releaseSectors(new SectorManager.SectorBlock(oldSectorOffset, oldSectorSize));
+                } else if (newSectorSize <= oldSectorSize) {  // new chunk data still fits in the old slot
+                    // keep up to 'slack' of any extra room for the chunk to grow back into
+                    final int keepSectors = Math.min(oldSectorSize, newSectorSize + slack);
+                    writeToSector = new SectorManager.SectorBlock(oldSectorOffset, keepSectors);
+                    sectorManager.release(oldSectorOffset + keepSectors, oldSectorSize - keepSectors);
+                } else {  // new chunk data is too large to fit in the old slot - grow it in place or alloc a new one
+                    final int reserveSectors = Math.min(ExternalChunkFile.MAX_SECTORS, newSectorSize + slack);
+                    writeToSector = new SectorManager.SectorBlock(oldSectorOffset, oldSectorSize);
+                    if (!sectorManager.extend(writeToSector, reserveSectors)
+                            && !sectorManager.extend(writeToSector, newSectorSize)) {
+                        writeToSector = sectorManager.allocate(reserveSectors);
+                        sectorManager.release(oldSectorOffset, oldSectorSize);
+                    }
+                }
+                writeToSector.seekTo(raf);
+                raf.writeInt(totalBytes - 4);  // don't count the int we are writing here in the byte size
+                if (external) {
+                    raf.write(compression.getID() | ExternalChunkFile.EXTERNAL_FLAG);
+                } else {
+                    raf.write(compression.getID());
+                    raf.write(baos.array(), 0, baos.size());
+                }
+                chunkSectors[index] = writeToSector.pack();
+                chunkTimestamps[index] = chunk.getLastMCAUpdate();
+                if (journaled) uncommittedEntries.set(index);
+
+                long roundedEos = (writeToSector.start + newSectorSize) * 4096L;
+                while (roundedEos > raf.getFilePointer()) {
+                    int gap = (int) Math.min(roundedEos - raf.getFilePointer(), ZERO_FILL_BUFFER.length);
+                    raf.write(ZERO_FILL_BUFFER, 0, gap);
+                }
+                if (raf.getFilePointer() % 4096 != 0)
+                    throw new IllegalStateException();
+                // any slack sectors don't need to be zeroed, readers only look at the chunk byte length, but they do
+                // need to exist
+                if (raf.length() < writeToSector.end() * 4096L)
+                    raf.setLength(writeToSector.end() * 4096L);
+                if (wasExternal && !external) {
+                    deleteExternalChunkFile(chunk.getChunkX(), chunk.getChunkZ());
+                }
+            } finally {
+                lock.writeLock().unlock();
             }
-            if (raf.getFilePointer() % 4096 != 0)
-                throw new IllegalStateException();
+        } finally {
+            CodecPool.release(baos);
+            totalWriteStopwatch.addElapsedNanos(System.nanoTime() - startNanos);
         }
     }
 
@@ -786,12 +1524,55 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
                 raf.seek(start * 4096L);
             }
         }
-        final LinkedList<SectorBlock> freeSectors = new LinkedList<>();
+        /** Free blocks keyed by start sector - used to coalesce neighboring blocks on release. */
+        private final TreeMap<Integer, SectorBlock> freeByStart = new TreeMap<>();
+        /** The same free blocks ordered by size then start - used to find the best fit on allocation. */
+        private final TreeSet<SectorBlock> freeBySize = new TreeSet<>(
+                Comparator.<SectorBlock>comparingInt(b -> b.size).thenComparingInt(b -> b.start));
         int appendAtSector = 2;
 
+        /** @return A snapshot of the free blocks in ascending start order. */
+        List<SectorBlock> freeSectors() {
+            List<SectorBlock> list = new ArrayList<>(freeByStart.size());
+            for (SectorBlock sb : freeByStart.values()) {
+                list.add(new SectorBlock(sb));
+            }
+            return list;
+        }
+
+        /** @return Number of free blocks. */
+        int freeBlockCount() {
+            return freeByStart.size();
+        }
+
+        /** @return Total number of free sectors, not counting those past {@link #appendAtSector}. */
+        int freeSectorCount() {
+            int sum = 0;
+            for (SectorBlock sb : freeByStart.values()) {
+                sum += sb.size;
+            }
+            return sum;
+        }
+
+        /** Forgets all free blocks. */
+        void clear() {
+            freeByStart.clear();
+            freeBySize.clear();
+        }
+
+        private void addFree(SectorBlock sb) {
+            freeByStart.put(sb.start, sb);
+            freeBySize.add(sb);
+        }
+
+        private void removeFree(SectorBlock sb) {
+            freeByStart.remove(sb.start);
+            freeBySize.remove(sb);
+        }
+
         void sync(int[] sectorTable) throws CorruptMcaFileException {
             if (sectorTable.length != 1024) throw new IllegalArgumentException();
-            freeSectors.clear();
+            clear();
             appendAtSector = 2;
             List<SectorBlock> usedSectorBlocks = new ArrayList<>(1024);
             for (int i = 0; i < 1024; i++) {
@@ -807,81 +1588,147 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
                 usedSectorBlocks.sort(Comparator.comparingInt(a -> a.start));
                 SectorBlock previous = usedSectorBlocks.get(0);
                 if (previous.start > 2) {
-                    freeSectors.add(new SectorBlock(2, previous.start - 2));
+                    addFree(new SectorBlock(2, previous.start - 2));
                 }
                 for (int i = 1; i < usedSectorBlocks.size(); i++) {
                     SectorBlock current = usedSectorBlocks.get(i);
-                    if (previous.end() != current.start) {
-                        freeSectors.add(new SectorBlock(previous.end(), current.start - previous.end()));
+                    if (previous.end() < current.start) {
+                        addFree(new SectorBlock(previous.end(), current.start - previous.end()));
+                    }
+                    if (current.end() > previous.end()) {
+                        previous = current;
                     }
-                    previous = current;
                 }
                 appendAtSector = Math.max(appendAtSector, previous.end());
             }
         }
 
+        /**
+         * Allocates the smallest free block which can hold the requested number of sectors, taking from its start,
+         * or appends to the end of the file if there is none. Picking the tightest fit leaves the large free blocks
+         * intact for large chunks and keeps the number of small unusable leftovers down.
+         */
         SectorBlock allocate(int requestedSectorSize) {
-            // does not attempt to find a best-fit, simply the first fit.
-            ListIterator<SectorBlock> iter = freeSectors.listIterator();
-            SectorBlock found = null;
-            while (iter.hasNext()) {
-                SectorBlock sb = iter.next();
-                if (sb.size == requestedSectorSize) {
-                    found = sb;
-                    iter.remove();
-                    break;
-                } else if (sb.size > requestedSectorSize) {
-                    found = new SectorBlock(sb.start, requestedSectorSize);
-                    sb.size -= requestedSectorSize;
-                    sb.start += requestedSectorSize;
-                    break;
+            SectorBlock sb = freeBySize.ceiling(new SectorBlock(-1, requestedSectorSize));
+            if (sb == null) {
+                SectorBlock found = new SectorBlock(appendAtSector, requestedSectorSize);
+                appendAtSector += requestedSectorSize;
+                return found;
+            }
+            return take(sb, requestedSectorSize);
+        }
+
+        /**
+         * Like {@link #allocate(int)} but only considers free blocks starting before {@code limit} and never
+         * appends to the end of the file.
+         * @return The allocated block or null if no free block before {@code limit} is large enough.
+         */
+        SectorBlock allocateBefore(int requestedSectorSize, int limit) {
+            for (SectorBlock sb : freeBySize.tailSet(new SectorBlock(-1, requestedSectorSize))) {
+                if (sb.start < limit) {
+                    return take(sb, requestedSectorSize);
                 }
             }
-            if (found == null) {
-                found = new SectorBlock(appendAtSector, requestedSectorSize);
+            return null;
+        }
+
+        /**
+         * Allocates the given number of sectors at exactly the given start sector.
+         * @return The allocated block or null if those sectors are not free.
+         */
+        SectorBlock allocateAt(int start, int requestedSectorSize) {
+            SectorBlock sb = freeByStart.get(start);
+            if (sb != null) {
+                return sb.size >= requestedSectorSize ? take(sb, requestedSectorSize) : null;
+            }
+            if (start == appendAtSector) {
                 appendAtSector += requestedSectorSize;
+                return new SectorBlock(start, requestedSectorSize);
             }
+            return null;
+        }
+
+        /** @return The first free block, or null if there are none. */
+        SectorBlock firstFree() {
+            Map.Entry<Integer, SectorBlock> first = freeByStart.firstEntry();
+            return first != null ? new SectorBlock(first.getValue()) : null;
+        }
+
+        private SectorBlock take(SectorBlock sb, int requestedSectorSize) {
+            removeFree(sb);
+            if (sb.size == requestedSectorSize) {
+                return sb;
+            }
+            SectorBlock found = new SectorBlock(sb.start, requestedSectorSize);
+            sb.start += requestedSectorSize;
+            sb.size -= requestedSectorSize;
+            addFree(sb);
             return found;
         }
 
+        /**
+         * Attempts to grow the given allocated block in place to {@code newSize} sectors, which is possible when
+         * it is followed by enough free sectors or by the end of the file.
+         * @return true if the block was grown, in which case {@code block.size} has been updated.
+         */
+        boolean extend(SectorBlock block, int newSize) {
+            final int needed = newSize - block.size;
+            if (needed <= 0) return true;
+            if (block.end() == appendAtSector) {
+                appendAtSector += needed;
+                block.size = newSize;
+                return true;
+            }
+            SectorBlock next = freeByStart.get(block.end());
+            if (next == null || next.size < needed) return false;
+            removeFree(next);
+            if (next.size > needed) {
+                next.start += needed;
+                next.size -= needed;
+                if (next.end() == appendAtSector) {
+                    appendAtSector = next.start;
+                } else {
+                    addFree(next);
+                }
+            }
+            block.size = newSize;
+            return true;
+        }
+
         void release(int start, int size) {
             release(new SectorBlock(start, size));
         }
 
+        /** Marks the given block as free, coalescing it with any free neighbors. */
         public void release(SectorBlock sectorBlock) {
             if (sectorBlock.size == 0) return;
-            ListIterator<SectorBlock> iter = freeSectors.listIterator();
-            boolean released = false;
-            while (iter.hasNext()) {
-                SectorBlock sb = iter.next();
-                if (sb.merge(sectorBlock)) {
-                    released = true;
-                    break;
-                }
-                if (sectorBlock.end() < sb.start) {
-                    iter.previous();
-                    iter.add(new SectorBlock(sectorBlock));
-                    released = true;
-                    break;
-                }
+            SectorBlock merged = new SectorBlock(sectorBlock);
+            Map.Entry<Integer, SectorBlock> before = freeByStart.floorEntry(merged.start);
+            if (before != null && before.getValue().end() >= merged.start) {
+                removeFree(before.getValue());
+                merged.merge(before.getValue());
             }
-            if (!released) {
-                freeSectors.addLast(new SectorBlock(sectorBlock));
+            // a block being released could, in theory, span more than one free block
+            Map.Entry<Integer, SectorBlock> after;
+            while ((after = freeByStart.ceilingEntry(merged.start)) != null && after.getKey() <= merged.end()) {
+                removeFree(after.getValue());
+                merged.merge(after.getValue());
             }
-            if (freeSectors.getLast().end() == appendAtSector) {
-                SectorBlock sb = freeSectors.removeLast();
-                appendAtSector = sb.start;
+            if (merged.end() >= appendAtSector) {
+                appendAtSector = merged.start;
+            } else {
+                addFree(merged);
             }
         }
 
         /** @return Number of unused bytes that were removed from the file. The file is now this much smaller. */
         public int optimizeFile(RandomAccessFile raf, int[] chunkSectors) throws IOException {
-            if (freeSectors.isEmpty()) {
+            if (freeByStart.isEmpty()) {
                 return truncate(raf);
             }
             List<SectorBlock> sectorsToMove = new ArrayList<>(1024);
             SectorBlock[] sectors = new SectorBlock[1024];
-            final int firstFreeSector = freeSectors.getFirst().start;
+            final int firstFreeSector = freeByStart.firstKey();
             int largestChunkInSectors = 0;
             for (int i = 0; i < 1024; i++) {
                 SectorBlock sectorBlock = SectorBlock.unpack(chunkSectors[i]);
@@ -928,7 +1775,7 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
             }
 
             // sync sector manager state
-            freeSectors.clear();
+            clear();
             appendAtSector = sectorsToMove.get(sectorsToMove.size() - 1).end();
             return truncate(raf);
         }
@@ -948,14 +1795,14 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
             StringBuilder sb = new StringBuilder("eof-sector ");
             sb.append(String.format("0x%X", appendAtSector));
             sb.append("; free-sectors");
-            if (!freeSectors.isEmpty()) {
-                sb.append("(count ").append(freeSectors.size());
-                sb.append("; sum ").append(freeSectors.stream().mapToInt(s -> s.size).sum());
+            if (!freeByStart.isEmpty()) {
+                sb.append("(count ").append(freeByStart.size());
+                sb.append("; sum ").append(freeSectorCount());
                 sb.append(')');
             }
             sb.append('[');
             boolean first = true;
-            for (SectorBlock fs : freeSectors) {
+            for (SectorBlock fs : freeByStart.values()) {
                 if (!first) sb.append(", ");
                 else first = false;
                 sb.append(fs);
@@ -347,6 +347,21 @@ public class BlockStateTag implements TagWrapper<CompoundTag> {
         }
     }
 
+    /**
+     * Makes this block state immutable, see {@link io.github.ensgijs.nbt.tag.Tag#freeze()}. Frozen block states
+     * cache their hash code which makes {@link #equals(Object)} and {@link #hashCode()} cheap.
+     * @return this
+     */
+    public BlockStateTag freeze() {
+        root.freeze();
+        properties.freeze();
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return root.isFrozen();
+    }
+
     @Override
     public int hashCode() {
         return name.hashCode() * 31 ^ properties.hashCode();
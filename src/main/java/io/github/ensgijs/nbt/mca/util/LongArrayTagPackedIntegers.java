@@ -11,6 +11,8 @@ import java.util.Arrays;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.IntConsumer;
 import java.util.function.IntPredicate;
 
 import static io.github.ensgijs.nbt.mca.DataVersion.JAVA_1_16_20W17A;
@@ -77,12 +79,21 @@ public class LongArrayTagPackedIntegers implements TagWrapper<LongArrayTag>, Ite
             .register(UNKNOWN.next().id(), PackingStrategy.SPLIT_VALUES_ACROSS_LONGS)
             .register(JAVA_1_16_20W17A.id(), PackingStrategy.NO_SPLIT_VALUES_ACROSS_LONGS);
 
-    // <editor-fold desc="RemapFunction, PackingStrategy, Builder" defaultstate="collapsed">
+    /** Number of values decoded at a time by the primitive traversal methods. */
+    private static final int BULK_CHUNK_SIZE = 512;
+
+    // <editor-fold desc="RemapFunction, IndexedIntConsumer, PackingStrategy, Builder" defaultstate="collapsed">
     @FunctionalInterface
     public interface RemapFunction {
         int remap(int value);
     }
 
+    /** Receives each index along with the value stored there, without boxing. */
+    @FunctionalInterface
+    public interface IndexedIntConsumer {
+        void accept(int index, int value);
+    }
+
     public enum PackingStrategy {
         /**
          * Values are never split across longs resulting in unused bits in every backing long if 64 is not
@@ -599,29 +610,56 @@ public class LongArrayTagPackedIntegers implements TagWrapper<LongArrayTag>, Ite
 
     /** Counts the number of occurrences of the given value. */
     public int count(int value) {
-        value -= valueOffset;
-        if (value < 0 || value > currentMaxPackableValue)
+        if (value - valueOffset < 0 || value - valueOffset > currentMaxPackableValue)
             return 0;
-        int count = 0;
-        for (int i = 0; i < length; i++) {
-            if (value == getRaw(i)) {
-                count ++;
-            }
-        }
-        return count;
+        return count(v -> v == value);
     }
 
     /** Counts the number of times the given tester returns true while being passed the entire set of values. */
     public int count(IntPredicate tester) {
         int count = 0;
-        for (int i = 0; i < length; i++) {
-            if (tester.test(get(i))) {
-                count ++;
+        final int[] buffer = new int[Math.min(length, BULK_CHUNK_SIZE)];
+        for (int from = 0; from < length; from += buffer.length) {
+            final int n = Math.min(buffer.length, length - from);
+            unpackRaw(packedBits, bitsPerValue, packingStrategy, from, from + n, buffer, 0, valueOffset);
+            for (int i = 0; i < n; i++) {
+                if (tester.test(buffer[i])) {
+                    count ++;
+                }
             }
         }
         return count;
     }
 
+    /**
+     * Passes every value, in index order, to the given action without boxing. Values are decoded in bulk, so
+     * this is much cheaper than {@link #iterator()} or calling {@link #get(int)} for each index.
+     */
+    public void forEachInt(IntConsumer action) {
+        ArgValidator.requireValue(action);
+        final int[] buffer = new int[Math.min(length, BULK_CHUNK_SIZE)];
+        for (int from = 0; from < length; from += buffer.length) {
+            final int n = Math.min(buffer.length, length - from);
+            unpackRaw(packedBits, bitsPerValue, packingStrategy, from, from + n, buffer, 0, valueOffset);
+            for (int i = 0; i < n; i++) {
+                action.accept(buffer[i]);
+            }
+        }
+    }
+
+    /** Passes every index and its value, in index order, to the given action without boxing. */
+    public void forEachInt(IndexedIntConsumer action) {
+        ArgValidator.requireValue(action);
+        final int[] buffer = new int[Math.min(length, BULK_CHUNK_SIZE)];
+        for (int from = 0; from < length; from += buffer.length) {
+            final int n = Math.min(buffer.length, length - from);
+            unpackRaw(packedBits, bitsPerValue, packingStrategy, from, from + n, buffer, 0, valueOffset);
+            for (int i = 0; i < n; i++) {
+                action.accept(from + i, buffer[i]);
+            }
+        }
+    }
+
     /**
      * Returns whether all elements of this packed array match the provided value.
      * May not evaluate the predicate on all elements if not necessary for
@@ -705,47 +743,125 @@ public class LongArrayTagPackedIntegers implements TagWrapper<LongArrayTag>, Ite
         return packedBitsTag;
     }
 
-    /** Creates a new int[] and populates it by calling {@link #get(int)} successively. */
-    public int[] toArray() {
-        int[] values = new int[length];
-        for (int i = 0; i < length; i++) {
-            values[i] = get(i);
+    /**
+     * Remaps every value through the given table and compacts the long array in a single pass. This is equivalent to,
+     * but much cheaper than, calling {@link #remap(RemapFunction)} followed by {@link #compact()}.
+     * <p>The table is indexed by, and yields, values with {@link #getValueOffset()} removed - that is a stored value
+     * {@code v} becomes {@code remapTable[v - valueOffset] + valueOffset}. Negative entries mark values which are
+     * not expected to be present. The resulting bits per value is the minimum needed to hold the largest table entry
+     * and obeys {@link #getMinBitsPerValue()}.</p>
+     * @param remapTable remapping table, must contain a non-negative entry for every value present.
+     * @return tag containing long[]
+     * @throws IllegalArgumentException if a value present has no entry in the table.
+     */
+    public LongArrayTag remapAndCompact(int[] remapTable) {
+        ArgValidator.requireValue(remapTable);
+        int maxValue = 0;
+        for (int v : remapTable) {
+            if (v > maxValue) maxValue = v;
         }
-        return values;
+        repack(Math.max(minBitsPerValue, calculateBitsRequired(maxValue)), packingStrategy, remapTable);
+        return packedBitsTag;
+    }
+
+    /** Creates a new int[] and populates it with all values, see {@link #unpackAll(int[])}. */
+    public int[] toArray() {
+        return unpackAll(new int[length]);
     }
 
     /**
-     * Populates the given array by calling {@link #get(int)} successively.
+     * Populates the given array with all values, see {@link #unpackAll(int[])}.
      * @param array must be exactly {@link #length} in size.
      * @return the same array that was passed as an argument.
      */
     public int[] toArray(int[] array) {
         ArgValidator.check(array.length == length,
                 String.format("Expected array to be of length %d but it was %d", length, array.length));
-        for (int i = 0; i < length; i++) {
-            array[i] = get(i);
-        }
-        return array;
+        return unpackAll(array);
     }
 
     /**
-     * Populates the given array from startIndex by calling {@link #get(int)} successively.
+     * Populates the given array from startIndex with all values, see {@link #unpackAll(int[])}.
      * @param array receives values from startIndex to startIndex + capacity - 1
      * @param startIndex the index to start copying values into.
      * @return the same array that was passed as an argument.
      */
     public int[] toArray(int[] array, int startIndex) {
         ArgValidator.check(startIndex >= 0 && (startIndex + length) <= array.length);
-        for (int i = 0; i < length; i++) {
-            array[i + startIndex] = get(i);
-        }
+        unpackRange(0, length, array, startIndex);
         return array;
     }
 
+    /**
+     * Decodes every value into dst in one sequential pass over the long array. This is the fast way to read
+     * everything, calling {@link #get(int)} for each index is several times slower.
+     * @param dst must be at least {@link #length} in size.
+     * @return the same array that was passed as an argument.
+     */
+    public int[] unpackAll(int[] dst) {
+        unpackRange(0, length, dst, 0);
+        return dst;
+    }
+
+    /**
+     * Decodes the values at [fromIndex, toIndex) into dst starting at dstOffset in one sequential pass.
+     * @param fromIndex first index to decode, inclusive.
+     * @param toIndex last index to decode, exclusive.
+     * @param dst receives toIndex - fromIndex values.
+     * @param dstOffset index in dst to receive the value at fromIndex.
+     * @throws IndexOutOfBoundsException if the range is not within [0, {@link #length}].
+     */
+    public void unpackRange(int fromIndex, int toIndex, int[] dst, int dstOffset) {
+        Objects.checkFromToIndex(fromIndex, toIndex, length);
+        ArgValidator.requireValue(dst, "dst");
+        ArgValidator.check(dstOffset >= 0 && dstOffset + (toIndex - fromIndex) <= dst.length,
+                "dst is too small to receive the requested range");
+        unpackRaw(packedBits, bitsPerValue, packingStrategy, fromIndex, toIndex, dst, dstOffset, valueOffset);
+    }
+
+    /**
+     * Encodes every value from src in one sequential pass over the long array. Unlike {@link #setFromArray(int[])}
+     * this never shrinks the long array, it only grows it if src contains a value larger than
+     * {@link #getCurrentMaxPackableValue()}.
+     * @param src must be at least {@link #length} in size.
+     * @throws IllegalArgumentException if any value is LT {@link #getValueOffset()}.
+     */
+    public void packAll(int[] src) {
+        packRange(0, length, src, 0);
+    }
+
+    /**
+     * Encodes src starting at srcOffset into the values at [fromIndex, toIndex) in one sequential pass.
+     * Grows the long array first if src contains a value larger than {@link #getCurrentMaxPackableValue()}.
+     * @param fromIndex first index to encode, inclusive.
+     * @param toIndex last index to encode, exclusive.
+     * @param src provides toIndex - fromIndex values.
+     * @param srcOffset index in src of the value for fromIndex.
+     * @throws IndexOutOfBoundsException if the range is not within [0, {@link #length}].
+     * @throws IllegalArgumentException if any value is LT {@link #getValueOffset()}.
+     */
+    public void packRange(int fromIndex, int toIndex, int[] src, int srcOffset) {
+        Objects.checkFromToIndex(fromIndex, toIndex, length);
+        ArgValidator.requireValue(src, "src");
+        ArgValidator.check(srcOffset >= 0 && srcOffset + (toIndex - fromIndex) <= src.length,
+                "src is too small to provide the requested range");
+        int maxRaw = 0;
+        for (int i = srcOffset, end = srcOffset + (toIndex - fromIndex); i < end; i++) {
+            int raw = src[i] - valueOffset;
+            if (raw < 0)
+                throw new IllegalArgumentException("value must be GE " + valueOffset);
+            maxRaw = Math.max(maxRaw, raw);
+        }
+        if (maxRaw > currentMaxPackableValue) {
+            resize(calculateBitsRequired(maxRaw), packingStrategy);
+        }
+        packRaw(packedBits, bitsPerValue, packingStrategy, fromIndex, toIndex, src, srcOffset, valueOffset);
+    }
+
     /**
      * Resizes the long[] to exactly hold the range of values given, respecting {@link #getMinBitsPerValue()},
-     * checks that all values are in the allowed range (GE {@link #getValueOffset()}), then calls {@link #set}
-     * successively for each value.
+     * checks that all values are in the allowed range (GE {@link #getValueOffset()}), then packs all values in
+     * one sequential pass.
      * <p>There is never a need to call {@link #compact()} immediately following this call.</p>
      * @param values must be exactly {@link #length} in size.
      * @throws IllegalArgumentException if any value is LT {@link #getValueOffset()}.
@@ -758,8 +874,8 @@ public class LongArrayTagPackedIntegers implements TagWrapper<LongArrayTag>, Ite
 
     /**
      * Resizes the long[] to exactly hold the range of values given, respecting {@link #getMinBitsPerValue()},
-     * checks that all values are in the allowed range (GE {@link #getValueOffset()}), then calls {@link #set}
-     * successively for each value.
+     * checks that all values are in the allowed range (GE {@link #getValueOffset()}), then packs all values in
+     * one sequential pass.
      * <p>There is never a need to call {@link #compact()} immediately following this call.</p>
      * @param values must be at least {@link #length} in size.
      * @param startIndex the index to start copying values from.
@@ -777,9 +893,7 @@ public class LongArrayTagPackedIntegers implements TagWrapper<LongArrayTag>, Ite
             maxVal = Math.max(maxVal, v);
         }
         reallocateCapacity(Math.max(minBitsPerValue, calculateBitsRequired(maxVal - valueOffset)));
-        for (int i = 0; i < length; i++) {
-            set(i, values[i + startIndex]);
-        }
+        packRaw(packedBits, bitsPerValue, packingStrategy, 0, length, values, startIndex, valueOffset);
     }
 
     @Override
@@ -907,46 +1021,131 @@ public class LongArrayTagPackedIntegers implements TagWrapper<LongArrayTag>, Ite
         newBitsPerValue = Math.max(minBitsPerValue, newBitsPerValue);
         if (newBitsPerValue == bitsPerValue && newPackingStrategy == packingStrategy)
             return;
+        repack(newBitsPerValue, newPackingStrategy, null);
+    }
 
+    /**
+     * Rewrites every value into a new long array using the given bits per value and packing strategy.
+     * @param remapTable if not null, each raw value is replaced by the table entry at its index as it is repacked.
+     */
+    private void repack(final int newBitsPerValue, final PackingStrategy newPackingStrategy, final int[] remapTable) {
         final int newMaxValidValue = (int) Math.pow(2, newBitsPerValue) - 1;
-        if (newPackingStrategy == PackingStrategy.NO_SPLIT_VALUES_ACROSS_LONGS) {
-            final int newLength = (int) Math.ceil(length / (double) (64 / newBitsPerValue));
-            final long[] newLongs = new long[newLength];
-            final int newNoSplitIndicesPerLong = 64 / newBitsPerValue;
-
-            for (int i = 0; i < length; i++) {
-                int value = getRaw(i);
-                if (value > newMaxValidValue) {
-                    throw new IllegalArgumentException(
-                            "newBitsPerValue is too small to hold existing value " + value + valueOffset);
-                }
-                setNoSplitIndices(i, value, newNoSplitIndicesPerLong, newBitsPerValue, newLongs);
+        final int[] values = new int[length];
+        unpackRaw(packedBits, bitsPerValue, packingStrategy, 0, length, values, 0, 0);
+        for (int i = 0; i < length; i++) {
+            int value = remapTable == null ? values[i] : (values[i] = remapRaw(values[i], remapTable));
+            if (value > newMaxValidValue) {
+                throw new IllegalArgumentException(
+                        "newBitsPerValue is too small to hold existing value " + value + valueOffset);
             }
-            noSplitIndicesPerLong = newNoSplitIndicesPerLong;
+        }
+        final long[] newLongs;
+        if (newPackingStrategy == PackingStrategy.NO_SPLIT_VALUES_ACROSS_LONGS) {
+            newLongs = new long[(int) Math.ceil(length / (double) (64 / newBitsPerValue))];
+            noSplitIndicesPerLong = 64 / newBitsPerValue;
             splitIndicesPerLong = 0;
-            packedBits = newLongs;
         } else {
-            final int newLength = (int) Math.ceil((newBitsPerValue * length) / 64d);
-            final long[] newLongs = new long[newLength];
-            final double newSplitIndicesPerLong = 64D / newBitsPerValue;
-            for (int i = 0; i < length; i++) {
-                int value = getRaw(i);
-                if (value > newMaxValidValue) {
-                    throw new IllegalArgumentException(
-                            "newBitsPerValue is too small to hold existing value " + value + valueOffset);
-                }
-                setSplitIndices(i, value, newSplitIndicesPerLong, newBitsPerValue, newLongs);
-            }
+            newLongs = new long[(int) Math.ceil((newBitsPerValue * length) / 64d)];
             noSplitIndicesPerLong = 0;
-            splitIndicesPerLong = newSplitIndicesPerLong;
-            packedBits = newLongs;
+            splitIndicesPerLong = 64D / newBitsPerValue;
         }
+        packRaw(newLongs, newBitsPerValue, newPackingStrategy, 0, length, values, 0, 0);
+        packedBits = newLongs;
         bitsPerValue = newBitsPerValue;
         packingStrategy = newPackingStrategy;
         packedBitsTag.setValue(packedBits);
         currentMaxPackableValue = (1 << newBitsPerValue) - 1;
     }
 
+    private int remapRaw(int rawValue, int[] remapTable) {
+        int remapped = rawValue < remapTable.length ? remapTable[rawValue] : -1;
+        if (remapped < 0)
+            throw new IllegalArgumentException("remap table has no entry for value " + (rawValue + valueOffset));
+        return remapped;
+    }
+
+    /**
+     * Decodes the values at [fromIndex, toIndex) into dst starting at dstOffset, adding valueOffset to each.
+     * Walks the longs sequentially so there is no per-value division or branching on the packing strategy.
+     */
+    static void unpackRaw(long[] longs, int bitsPerValue, PackingStrategy packingStrategy,
+                          int fromIndex, int toIndex, int[] dst, int dstOffset, int valueOffset) {
+        if (fromIndex >= toIndex) return;
+        final long mask = (1L << bitsPerValue) - 1;
+        if (packingStrategy == PackingStrategy.NO_SPLIT_VALUES_ACROSS_LONGS) {
+            final int perLong = 64 / bitsPerValue;
+            int longIndex = fromIndex / perLong;
+            int slot = fromIndex % perLong;
+            long word = longs[longIndex] >>> (slot * bitsPerValue);
+            for (int i = fromIndex; i < toIndex; i++, slot++) {
+                if (slot == perLong) {
+                    word = longs[++longIndex];
+                    slot = 0;
+                }
+                dst[dstOffset++] = (int) (word & mask) + valueOffset;
+                word >>>= bitsPerValue;
+            }
+        } else {
+            final long startBit = (long) fromIndex * bitsPerValue;
+            int longIndex = (int) (startBit >>> 6);
+            int bit = (int) (startBit & 63);
+            for (int i = fromIndex; i < toIndex; i++) {
+                long value = longs[longIndex] >>> bit;
+                bit += bitsPerValue;
+                if (bit >= 64) {
+                    bit -= 64;
+                    longIndex++;
+                    if (bit > 0) {
+                        value |= longs[longIndex] << (bitsPerValue - bit);
+                    }
+                }
+                dst[dstOffset++] = (int) (value & mask) + valueOffset;
+            }
+        }
+    }
+
+    /**
+     * Encodes src starting at srcOffset into the values at [fromIndex, toIndex), subtracting valueOffset from each.
+     * Values outside of the range are left untouched. Values must already be known to fit in bitsPerValue.
+     */
+    static void packRaw(long[] longs, int bitsPerValue, PackingStrategy packingStrategy,
+                        int fromIndex, int toIndex, int[] src, int srcOffset, int valueOffset) {
+        if (fromIndex >= toIndex) return;
+        final long mask = (1L << bitsPerValue) - 1;
+        if (packingStrategy == PackingStrategy.NO_SPLIT_VALUES_ACROSS_LONGS) {
+            final int perLong = 64 / bitsPerValue;
+            int longIndex = fromIndex / perLong;
+            int shift = (fromIndex % perLong) * bitsPerValue;
+            long word = longs[longIndex];
+            for (int i = fromIndex; i < toIndex; i++) {
+                if (shift == perLong * bitsPerValue) {
+                    longs[longIndex++] = word;
+                    word = longs[longIndex];
+                    shift = 0;
+                }
+                word = (word & ~(mask << shift)) | ((src[srcOffset++] - valueOffset) & mask) << shift;
+                shift += bitsPerValue;
+            }
+            longs[longIndex] = word;
+        } else {
+            final long startBit = (long) fromIndex * bitsPerValue;
+            int longIndex = (int) (startBit >>> 6);
+            int bit = (int) (startBit & 63);
+            for (int i = fromIndex; i < toIndex; i++) {
+                final long value = (src[srcOffset++] - valueOffset) & mask;
+                longs[longIndex] = (longs[longIndex] & ~(mask << bit)) | (value << bit);
+                bit += bitsPerValue;
+                if (bit >= 64) {
+                    bit -= 64;
+                    longIndex++;
+                    if (bit > 0) {
+                        longs[longIndex] = (longs[longIndex] & (-1L << bit)) | (value >>> (bitsPerValue - bit));
+                    }
+                }
+            }
+        }
+    }
+
     /** replace i to j bits in n with j - i bits of m */
     static long updateBits(long n, long m, int i, int j) {
         // updateBits(longs[longIndex], value, startBit, startBit + bits)
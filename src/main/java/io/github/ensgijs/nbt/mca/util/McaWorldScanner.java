@@ -0,0 +1,388 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.ChunkBase;
+import io.github.ensgijs.nbt.mca.io.LoadFlags;
+import io.github.ensgijs.nbt.mca.io.McaFileChunkIterator;
+import io.github.ensgijs.nbt.mca.io.McaFileHelpers;
+import io.github.ensgijs.nbt.mca.io.RandomAccessMcaFile;
+import io.github.ensgijs.nbt.util.ArgValidator;
+import io.github.ensgijs.nbt.util.IntPointXZ;
+import io.github.ensgijs.nbt.util.Stopwatch;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Visits every chunk of a world in parallel. Region files are read on worker threads using
+ * {@link RandomAccessMcaFile} and chunk decompression + deserialization is fanned out as separate tasks so that a
+ * handful of large region files doesn't leave the rest of the pool idle.
+ *
+ * <p>Memory use is bounded by {@link #setMaxInFlightBytes(long)} - the number of compressed chunk bytes which have
+ * been read from disk but whose visit has not yet completed. When that budget is exhausted the region reading thread
+ * decodes and visits the chunk itself instead of queueing it, so at most one additional chunk per worker thread
+ * can be held beyond the budget.</p>
+ *
+ * <p>The given {@link ChunkVisitor} is called concurrently from multiple threads and must be thread safe. Chunks
+ * are visited in no particular order.</p>
+ *
+ * <p>Example usage</p>
+ * <pre>{@code
+ *      McaWorldScanner.ScanStats stats = new McaWorldScanner(worldDir)
+ *              .setMcaTypes("region")
+ *              .setLoadFlags(LoadFlags.HEIGHTMAPS | LoadFlags.RELEASE_CHUNK_DATA_TAG)
+ *              .scan((TerrainChunk chunk) -> { ... });
+ *      System.out.println(stats);
+ * }</pre>
+ * @see McaWorld
+ */
+public class McaWorldScanner {
+    /** Default for {@link #setMaxInFlightBytes(long)} - 64MB. */
+    public static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 64L * 1024 * 1024;
+
+    private final String worldRootDir;
+    private List<String> mcaTypes = List.of("region");
+    private long loadFlags = LoadFlags.LOAD_ALL_DATA;
+    private long maxInFlightBytes = DEFAULT_MAX_IN_FLIGHT_BYTES;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private ExecutorService executor;
+
+    /**
+     * Called once for every chunk found in the scanned world.
+     * Implementations are called concurrently from multiple threads and must be thread safe.
+     */
+    @FunctionalInterface
+    public interface ChunkVisitor<T extends ChunkBase> {
+        void visit(T chunk) throws IOException;
+    }
+
+    /**
+     * @param worldRootDir A directory which contains region/poi/entities folders as immediate children.
+     */
+    public McaWorldScanner(String worldRootDir) throws FileNotFoundException {
+        if (!new File(ArgValidator.requireValue(worldRootDir, "worldRootDir")).isDirectory()) {
+            throw new FileNotFoundException("World root directory does not exist! " + worldRootDir);
+        }
+        this.worldRootDir = worldRootDir;
+    }
+
+    public McaWorldScanner(File worldRootDir) throws FileNotFoundException {
+        this(worldRootDir.getAbsolutePath());
+    }
+
+    public McaWorldScanner(Path worldRootDir) throws FileNotFoundException {
+        this(worldRootDir.toAbsolutePath().toString());
+    }
+
+    public String worldRootDir() {
+        return worldRootDir;
+    }
+
+    public List<String> getMcaTypes() {
+        return mcaTypes;
+    }
+
+    /**
+     * Sets which mca types (sub folders of the world root) to scan. Default is "region" only.
+     * <p>Chunk instances are created using {@link McaFileChunkIterator#DEFAULT_CHUNK_CREATORS} - by default
+     * "region", "poi", and "entities" are supported.</p>
+     */
+    public McaWorldScanner setMcaTypes(String... mcaTypes) {
+        ArgValidator.check(mcaTypes != null && mcaTypes.length > 0, "at least one mca type must be given");
+        this.mcaTypes = List.of(mcaTypes);
+        return this;
+    }
+
+    /** LoadFlags which are passed to the chunk deserialization method. */
+    public long getLoadFlags() {
+        return loadFlags;
+    }
+
+    /** LoadFlags which are passed to the chunk deserialization method. */
+    public McaWorldScanner setLoadFlags(long loadFlags) {
+        this.loadFlags = loadFlags;
+        return this;
+    }
+
+    /**
+     * Upper bound on the count of compressed chunk bytes which have been read from disk but not yet visited.
+     * Note that decompressed chunks are typically 5-10x larger than their compressed size.
+     */
+    public long getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    /**
+     * Upper bound on the count of compressed chunk bytes which have been read from disk but not yet visited.
+     * Note that decompressed chunks are typically 5-10x larger than their compressed size.
+     */
+    public McaWorldScanner setMaxInFlightBytes(long maxInFlightBytes) {
+        ArgValidator.check(maxInFlightBytes > 0, "maxInFlightBytes must be GT 0");
+        this.maxInFlightBytes = maxInFlightBytes;
+        return this;
+    }
+
+    /**
+     * Parallelism of the {@link ForkJoinPool} created for each scan. Ignored if an executor
+     * has been provided by {@link #setExecutor(ExecutorService)}.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Parallelism of the {@link ForkJoinPool} created for each scan. Ignored if an executor
+     * has been provided by {@link #setExecutor(ExecutorService)}.
+     */
+    public McaWorldScanner setParallelism(int parallelism) {
+        ArgValidator.check(parallelism > 0, "parallelism must be GT 0");
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor to run region reads and chunk visits on, such as a shared {@link ForkJoinPool} or, on
+     * Java 21+, {@code Executors.newVirtualThreadPerTaskExecutor()}. The executor is NOT shut down by the scanner.
+     * If null (default) a new {@link ForkJoinPool} with {@link #getParallelism()} threads is created for, and shut
+     * down after, each scan.
+     */
+    public McaWorldScanner setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Lists the mca files which would be scanned, grouped by mca type in the order given to
+     * {@link #setMcaTypes(String...)} and sorted by file name within each type.
+     */
+    public List<File> listMcaFiles() {
+        List<File> files = new ArrayList<>();
+        for (String mcaType : mcaTypes) {
+            File[] found = Path.of(worldRootDir, mcaType).toFile()
+                    .listFiles(f -> f.isFile() && f.length() > 0 && McaFileHelpers.isValidMcaFileName(f));
+            if (found != null) {
+                Arrays.sort(found, Comparator.comparing(File::getName));
+                files.addAll(Arrays.asList(found));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Visits every chunk in every mca file of the configured {@link #setMcaTypes(String...) mca types}. Blocks until
+     * all chunks have been visited or until the first error is encountered.
+     * @param visitor Called, concurrently, for each chunk.
+     * @param <T> The chunk type produced by the configured chunk creators - if scanning multiple mca types this
+     *           should be {@link ChunkBase}.
+     * @return Scan statistics.
+     * @throws IOException The first IO error encountered while reading, decoding, or visiting a chunk. Any
+     * {@link RuntimeException} thrown by the visitor is rethrown as-is.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends ChunkBase> ScanStats scan(ChunkVisitor<T> visitor) throws IOException {
+        ArgValidator.requireValue(visitor, "visitor");
+        final Map<String, Supplier<? extends ChunkBase>> chunkCreators = new HashMap<>();
+        for (String mcaType : mcaTypes) {
+            Supplier<? extends ChunkBase> creator = McaFileChunkIterator.DEFAULT_CHUNK_CREATORS.get(mcaType);
+            if (creator == null) {
+                throw new IllegalArgumentException("No chunk creator registered for mca type " + mcaType);
+            }
+            chunkCreators.put(mcaType, creator);
+        }
+
+        final ScanState state = new ScanState((ChunkVisitor<ChunkBase>) visitor);
+        final ExecutorService exec = executor != null ? executor : new ForkJoinPool(parallelism);
+        try (Stopwatch.LapToken lap = state.stopwatch.startLap()) {
+            for (File file : listMcaFiles()) {
+                Supplier<? extends ChunkBase> creator = chunkCreators.get(file.getParentFile().getName());
+                state.submit(exec, () -> scanRegion(state, exec, file, creator));
+            }
+            state.awaitCompletion();
+        } finally {
+            if (exec != executor) {
+                exec.shutdownNow();
+            }
+        }
+        state.rethrowFailure();
+        return state.toStats();
+    }
+
+    private void scanRegion(ScanState state, ExecutorService exec, File file, Supplier<? extends ChunkBase> creator) throws IOException {
+        try (RandomAccessMcaFile<ChunkBase> ramf = new RandomAccessMcaFile<>(ChunkBase.class, file, "r")) {
+            for (int i = 0; i < 1024 && !state.isFailed(); i++) {
+                if (!ramf.hasChunk(i)) continue;
+                final byte[] data = ramf.readRaw(i);
+                final int timestamp = ramf.getChunkTimestamp(i);
+                final IntPointXZ chunkXZ = ramf.indexToAbsoluteXZ(i);
+                state.bytesRead.addAndGet(data.length);
+                final ExceptionRunnable decodeAndVisit = () -> {
+                    ChunkBase chunk = creator.get();
+                    chunk.deserialize(new ByteArrayInputStream(data), loadFlags, timestamp, chunkXZ.getX(), chunkXZ.getZ());
+                    state.visitor.visit(chunk);
+                    state.chunksVisited.incrementAndGet();
+                };
+                // Cap a single acquire at the budget so an oversized chunk can't wait forever.
+                final int permits = Math.min(data.length, state.maxInFlightPermits);
+                if (state.inFlightBytes.tryAcquire(permits)) {
+                    state.submit(exec, () -> {
+                        try {
+                            decodeAndVisit.run();
+                        } finally {
+                            state.inFlightBytes.release(permits);
+                        }
+                    });
+                } else {
+                    // Over budget - do the work on this thread. This throttles reading and, unlike blocking
+                    // on the semaphore, can never deadlock a pool whose threads are all busy reading.
+                    decodeAndVisit.run();
+                }
+            }
+        }
+        state.regionsScanned.incrementAndGet();
+    }
+
+    @FunctionalInterface
+    private interface ExceptionRunnable {
+        void run() throws IOException;
+    }
+
+    private class ScanState {
+        final ChunkVisitor<ChunkBase> visitor;
+        final int maxInFlightPermits = (int) Math.min(Integer.MAX_VALUE, maxInFlightBytes);
+        final Semaphore inFlightBytes = new Semaphore(maxInFlightPermits);
+        final AtomicLong regionsScanned = new AtomicLong();
+        final AtomicLong chunksVisited = new AtomicLong();
+        final AtomicLong bytesRead = new AtomicLong();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Stopwatch stopwatch = Stopwatch.createUnstarted();
+        private long pendingTasks = 0;
+
+        ScanState(ChunkVisitor<ChunkBase> visitor) {
+            this.visitor = visitor;
+        }
+
+        boolean isFailed() {
+            return failure.get() != null;
+        }
+
+        void submit(ExecutorService exec, ExceptionRunnable task) {
+            synchronized (this) {
+                pendingTasks++;
+            }
+            try {
+                exec.execute(() -> {
+                    try {
+                        if (!isFailed())
+                            task.run();
+                    } catch (Throwable ex) {
+                        failure.compareAndSet(null, ex);
+                    } finally {
+                        taskDone();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                failure.compareAndSet(null, ex);
+                taskDone();
+            }
+        }
+
+        synchronized void taskDone() {
+            if (--pendingTasks == 0) {
+                notifyAll();
+            }
+        }
+
+        synchronized void awaitCompletion() {
+            try {
+                while (pendingTasks > 0) {
+                    wait(TimeUnit.SECONDS.toMillis(1));
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, ex);
+            }
+        }
+
+        void rethrowFailure() throws IOException {
+            Throwable ex = failure.get();
+            if (ex == null) return;
+            if (ex instanceof IOException ioEx) throw ioEx;
+            if (ex instanceof RuntimeException rtEx) throw rtEx;
+            if (ex instanceof Error err) throw err;
+            throw new IOException("World scan failed", ex);
+        }
+
+        ScanStats toStats() {
+            return new ScanStats(regionsScanned.get(), chunksVisited.get(), bytesRead.get(), stopwatch);
+        }
+    }
+
+    /**
+     * Results of a {@link #scan(ChunkVisitor)}. Byte counts are of the compressed chunk data as stored on disk.
+     */
+    public static class ScanStats {
+        private final long regionsScanned;
+        private final long chunksVisited;
+        private final long bytesRead;
+        private final Stopwatch elapsed;
+
+        ScanStats(long regionsScanned, long chunksVisited, long bytesRead, Stopwatch elapsed) {
+            this.regionsScanned = regionsScanned;
+            this.chunksVisited = chunksVisited;
+            this.bytesRead = bytesRead;
+            this.elapsed = Stopwatch.createUnstarted().add(elapsed);
+        }
+
+        public long regionsScanned() {
+            return regionsScanned;
+        }
+
+        public long chunksVisited() {
+            return chunksVisited;
+        }
+
+        public long bytesRead() {
+            return bytesRead;
+        }
+
+        /** Gets a copy of the stopwatch populated with the total scan wall time. */
+        public Stopwatch elapsed() {
+            return Stopwatch.createUnstarted().add(elapsed);
+        }
+
+        public double chunksPerSecond() {
+            return perSecond(chunksVisited);
+        }
+
+        public double bytesPerSecond() {
+            return perSecond(bytesRead);
+        }
+
+        private double perSecond(long value) {
+            long nanos = elapsed.elapsed(TimeUnit.NANOSECONDS);
+            return nanos > 0 ? value * 1e9 / nanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("regions %d; chunks %d; bytes %,d; elapsed %s; rate[%.1f chunks/s; %.2f MB/s]",
+                    regionsScanned, chunksVisited, bytesRead, elapsed,
+                    chunksPerSecond(), bytesPerSecond() / (1024 * 1024));
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.ChunkBase;
+import io.github.ensgijs.nbt.mca.TerrainChunkBase;
+import io.github.ensgijs.nbt.mca.TerrainSectionBase;
+import io.github.ensgijs.nbt.mca.io.McaFileChunkIterator;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.StringTag;
+import io.github.ensgijs.nbt.tag.Tag;
+import io.github.ensgijs.nbt.util.ArgValidator;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+/**
+ * Counts palette values (block states, biomes, ...) across any number of sections, chunks, regions or whole worlds.
+ *
+ * <p>Counting is done per {@link PalettizedCuboid} with {@link PalettizedCuboid#paletteIdHistogram()}, a single
+ * pass over the packed palette ids, then joined to the palette - so the key mapping function is called once per
+ * palette entry rather than once per block.</p>
+ *
+ * <p>Instances are not thread safe. For parallel work give each thread its own instance, see {@link #newEmpty()},
+ * and {@link #merge(PaletteCensus)} the results - {@link #scan(McaWorldScanner)} does exactly this.</p>
+ *
+ * <p>Example usage</p>
+ * <pre>{@code
+ *      PaletteCensus<CompoundTag, String> census = PaletteCensus.blockNames();
+ *      census.scan(new McaWorldScanner(worldDir).setLoadFlags(LoadFlags.BLOCK_STATES | LoadFlags.RELEASE_CHUNK_DATA_TAG));
+ *      System.out.println(census.get("minecraft:diamond_ore"));
+ * }</pre>
+ *
+ * @param <E> palette entry type.
+ * @param <K> key type counts are grouped by.
+ */
+public class PaletteCensus<E extends Tag<?>, K> {
+    private final Function<TerrainSectionBase, PalettizedCuboid<E>> cuboidGetter;
+    private final Function<? super E, ? extends K> keyMapper;
+    /** long[1] counters so adding to an existing key doesn't box. */
+    private final Map<K, long[]> counts = new HashMap<>();
+    private long total;
+
+    /**
+     * @param cuboidGetter gets the cuboid to count from a section, such as {@code TerrainSectionBase::getBiomes}.
+     *                     May return null for sections which lack the data.
+     * @param keyMapper maps palette entries to the key to count them under. Called with the palette entry itself,
+     *                  not a copy, so it must not modify the entry and should not return it (or anything else which
+     *                  is mutable and shared with the cuboid).
+     */
+    public PaletteCensus(Function<TerrainSectionBase, PalettizedCuboid<E>> cuboidGetter, Function<? super E, ? extends K> keyMapper) {
+        this.cuboidGetter = ArgValidator.requireValue(cuboidGetter, "cuboidGetter");
+        this.keyMapper = ArgValidator.requireValue(keyMapper, "keyMapper");
+    }
+
+    /** Counts blocks by name (ex. "minecraft:stone"), ignoring block state properties. */
+    public static PaletteCensus<CompoundTag, String> blockNames() {
+        return new PaletteCensus<>(TerrainSectionBase::getBlockStates, e -> e.getString("Name"));
+    }
+
+    /** Counts blocks by their full block state, keys are copies of the block state tags. */
+    public static PaletteCensus<CompoundTag, CompoundTag> blockStates() {
+        return new PaletteCensus<>(TerrainSectionBase::getBlockStates, CompoundTag::clone);
+    }
+
+    /** Counts biomes by name (ex. "minecraft:plains"). Note that there are 64 biome entries per section. */
+    public static PaletteCensus<StringTag, String> biomes() {
+        return new PaletteCensus<>(TerrainSectionBase::getBiomes, StringTag::getValue);
+    }
+
+    /** Creates a new, empty, census which counts the same things, in the same way, as this one. */
+    public PaletteCensus<E, K> newEmpty() {
+        return new PaletteCensus<>(cuboidGetter, keyMapper);
+    }
+
+    /** Adds the given count to the given key. */
+    public PaletteCensus<E, K> add(K key, long count) {
+        counts.computeIfAbsent(key, k -> new long[1])[0] += count;
+        total += count;
+        return this;
+    }
+
+    /** Counts every position of the given cuboid, a null cuboid is ignored. */
+    public PaletteCensus<E, K> add(PalettizedCuboid<E> cuboid) {
+        if (cuboid == null) return this;
+        final int[] idCounts = cuboid.paletteIdHistogram();
+        for (int id = 0; id < idCounts.length; id++) {
+            if (idCounts[id] > 0) {
+                add(keyMapper.apply(cuboid.palette.get(id)), idCounts[id]);
+            }
+        }
+        return this;
+    }
+
+    /** Counts the cuboid of the given section, a null section is ignored. */
+    public PaletteCensus<E, K> add(TerrainSectionBase section) {
+        if (section == null) return this;
+        return add(cuboidGetter.apply(section));
+    }
+
+    /** Counts every section of the given chunk, a null chunk is ignored. */
+    public PaletteCensus<E, K> add(TerrainChunkBase<?> chunk) {
+        if (chunk == null) return this;
+        for (TerrainSectionBase section : chunk) {
+            add(section);
+        }
+        return this;
+    }
+
+    /**
+     * Counts every chunk from the given iterator, such as a {@link McaFileChunkIterator} over a region file or a
+     * {@link ChunkIterator}. Null chunks are skipped.
+     */
+    public PaletteCensus<E, K> addAll(Iterator<? extends TerrainChunkBase<?>> chunks) {
+        while (chunks.hasNext()) {
+            add(chunks.next());
+        }
+        return this;
+    }
+
+    /**
+     * Counts every terrain chunk visited by the given scanner. Each scanning thread counts into its own census
+     * which are merged into this one once the scan completes, so counting itself requires no synchronization.
+     * @return scan statistics.
+     */
+    public McaWorldScanner.ScanStats scan(McaWorldScanner scanner) throws IOException {
+        final Queue<PaletteCensus<E, K>> perThread = new ConcurrentLinkedQueue<>();
+        final ThreadLocal<PaletteCensus<E, K>> local = ThreadLocal.withInitial(() -> {
+            PaletteCensus<E, K> census = newEmpty();
+            perThread.add(census);
+            return census;
+        });
+        McaWorldScanner.ScanStats stats = scanner.scan((ChunkBase chunk) -> {
+            if (chunk instanceof TerrainChunkBase<?> terrainChunk) {
+                local.get().add(terrainChunk);
+            }
+        });
+        for (PaletteCensus<E, K> census : perThread) {
+            merge(census);
+        }
+        return stats;
+    }
+
+    /** Adds all counts from the given census to this one. */
+    public PaletteCensus<E, K> merge(PaletteCensus<?, K> other) {
+        for (Map.Entry<K, long[]> entry : other.counts.entrySet()) {
+            add(entry.getKey(), entry.getValue()[0]);
+        }
+        return this;
+    }
+
+    /** Count for the given key, 0 if the key has not been seen. */
+    public long get(K key) {
+        long[] count = counts.get(key);
+        return count != null ? count[0] : 0;
+    }
+
+    /** Sum of all counts. */
+    public long total() {
+        return total;
+    }
+
+    /** Number of distinct keys. */
+    public int size() {
+        return counts.size();
+    }
+
+    public Set<K> keySet() {
+        return Collections.unmodifiableSet(counts.keySet());
+    }
+
+    /** Creates a copy of the counts ordered from most to least common. */
+    public Map<K, Long> toMap() {
+        List<Map.Entry<K, long[]>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        Map<K, Long> map = new LinkedHashMap<>();
+        for (Map.Entry<K, long[]> entry : entries) {
+            map.put(entry.getKey(), entry.getValue()[0]);
+        }
+        return map;
+    }
+
+    /** One "key: count" line per key, ordered from most to least common. */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        toMap().forEach((k, v) -> sb.append(k).append(": ").append(v).append('\n'));
+        return sb.toString();
+    }
+}
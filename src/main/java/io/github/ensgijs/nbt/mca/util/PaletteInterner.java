@@ -0,0 +1,62 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.io.LoadFlags;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.StringTag;
+import io.github.ensgijs.nbt.tag.Tag;
+import io.github.ensgijs.nbt.util.ArgValidator;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of canonical palette entry instances. Interning the palettes of many {@link PalettizedCuboid}s makes
+ * equal entries (such as {@code {Name:"minecraft:stone"}}) share a single instance instead of every section
+ * holding its own copy, which greatly reduces heap use when many chunks are held in memory.
+ *
+ * <p>Interned entries are shared, so they are {@link Tag#freeze() frozen} - any attempt to modify one throws an
+ * {@link UnsupportedOperationException}, and their hash codes are cached which makes them cheap map keys.
+ * {@link PalettizedCuboid} replaces its shared entries with private copies before handing out any palette entry
+ * by reference, see {@link PalettizedCuboid#intern(PaletteInterner)}.</p>
+ *
+ * <p>The registries {@link #BLOCK_STATES} and {@link #BIOMES} are used when loading chunks with
+ * {@link LoadFlags#INTERN_PALETTES}, create your own instances to scope interning to, say, a single world.
+ * Registries only ever grow, but the number of distinct block states and biomes is small.</p>
+ *
+ * <p>This class is thread safe.</p>
+ */
+public class PaletteInterner<E extends Tag<?>> {
+    /** Block state registry used by {@link LoadFlags#INTERN_PALETTES}. */
+    public static final PaletteInterner<CompoundTag> BLOCK_STATES = new PaletteInterner<>();
+    /** Biome registry used by {@link LoadFlags#INTERN_PALETTES}. */
+    public static final PaletteInterner<StringTag> BIOMES = new PaletteInterner<>();
+
+    private final ConcurrentHashMap<E, E> canonical = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the canonical instance equal to the given value. If there is none the given value is frozen and
+     * becomes the canonical instance.
+     */
+    public E intern(E value) {
+        ArgValidator.requireValue(value, "value");
+        E existing = canonical.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        value.freeze();
+        existing = canonical.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+
+    /** Number of canonical instances held. */
+    public int size() {
+        return canonical.size();
+    }
+
+    /**
+     * Forgets all canonical instances. Cuboids which were already interned continue to share the instances they
+     * have, this only affects future calls to {@link #intern(Tag)}.
+     */
+    public void clear() {
+        canonical.clear();
+    }
+}
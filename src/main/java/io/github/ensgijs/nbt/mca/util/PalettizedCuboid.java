@@ -1,10 +1,12 @@
 package io.github.ensgijs.nbt.mca.util;
 
 import io.github.ensgijs.nbt.io.TextNbtHelpers;
+import io.github.ensgijs.nbt.mca.io.LoadFlags;
 import io.github.ensgijs.nbt.tag.*;
 import io.github.ensgijs.nbt.util.IntPointXYZ;
 
 import java.util.*;
+import java.util.function.IntConsumer;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -100,6 +102,23 @@ public class PalettizedCuboid<E extends Tag<?>> implements TagWrapper<CompoundTa
     protected final CompoundTag paletteContainerTag;
     protected final ListTag<E> palette;
     protected final LongArrayTagPackedIntegers packedData;
+    /**
+     * Reverse palette lookup so writes don't have to scan the palette. Only valid while
+     * {@link #paletteLookupModCount} equals {@link #paletteModCount}, otherwise it is rebuilt on next use.
+     * Invalidated whenever palette entries are handed out by reference as they may then be modified in place,
+     * leaving them filed under a stale hash.
+     * @see #paletteIndexOf(Tag)
+     */
+    private transient Map<E, Integer> paletteLookup;
+    private transient int paletteLookupModCount;
+    /**
+     * Value of {@link #paletteModCount} when the palette was last known to be optimized (freshly loaded counts),
+     * lets {@link #optimizePalette()} skip untouched cuboids. Subclasses which modify {@link #palette} or
+     * {@link #packedData} directly must increment {@link #paletteModCount}.
+     */
+    private transient int optimizedModCount = -1;
+    /** True if palette entries may be canonical instances shared with other cuboids, see {@link #intern}. */
+    private transient boolean paletteShared;
 
     @SuppressWarnings("unchecked")
     protected static <T extends Tag<?>> T nilSentinelFor(Class<T> clazz) {
@@ -145,6 +164,9 @@ public class PalettizedCuboid<E extends Tag<?>> implements TagWrapper<CompoundTa
             this.palette.add((E) e.clone());
         }
         this.packedData = other.packedData.clone();
+        if (other.optimizedModCount == other.paletteModCount) {
+            optimizedModCount = paletteModCount;
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -187,6 +209,7 @@ public class PalettizedCuboid<E extends Tag<?>> implements TagWrapper<CompoundTa
         } else {
             this.packedData = builder.build();
         }
+        optimizedModCount = paletteModCount;
     }
 
     /**
@@ -286,35 +309,116 @@ public class PalettizedCuboid<E extends Tag<?>> implements TagWrapper<CompoundTa
 
     /**
      * Counts the number of data entries which match the given filter.
+     * <p>The filter is evaluated once per palette entry, not once per position.</p>
      */
     public int countIf(Predicate<E> filter) {
-        Collection<Integer> counting = new HashSet<>();
+        final boolean[] matches = matchPalette(filter, "Palette element modified during countIf filter call! Consider using replaceIf() instead.");
+        if (matches == null) {
+            return 0;
+        }
+        return packedData.count(id -> matches[id]);
+    }
+
+    /**
+     * Evaluates the given filter once for each palette entry.
+     * @return array indexed by palette id which is true where the palette entry matched. Palette ids which are
+     * not in use never match.
+     * @see #forEachPaletteId(IntConsumer)
+     */
+    public boolean[] testPalette(Predicate<E> filter) {
+        final boolean[] matches = matchPalette(filter, "Palette element passed to filter modified unexpectedly!");
+        return matches != null ? matches : new boolean[palette.size()];
+    }
+
+    /**
+     * Calls the given action with the index of every position whose value matches the filter, in index order.
+     * <p>The filter is evaluated once per palette entry, not once per position.</p>
+     * @see #xyzOf(int)
+     */
+    public void forEachMatching(Predicate<E> filter, IntConsumer indexAction) {
+        requireValue(indexAction, "indexAction");
+        final boolean[] matches = matchPalette(filter, "Palette element passed to filter modified unexpectedly!");
+        if (matches != null) {
+            packedData.forEachInt((index, id) -> {
+                if (matches[id]) indexAction.accept(index);
+            });
+        }
+    }
+
+    /**
+     * Calls the given action with the palette id of every position, in index order, without boxing.
+     * Resolve ids with {@link #testPalette(Predicate)} or by indexing into a palette snapshot.
+     */
+    public void forEachPaletteId(IntConsumer action) {
+        packedData.forEachInt(action);
+    }
+
+    /** Calls the given action with the index and palette id of every position, in index order, without boxing. */
+    public void forEachPaletteId(LongArrayTagPackedIntegers.IndexedIntConsumer action) {
+        packedData.forEachInt(action);
+    }
+
+    /**
+     * Counts positions by palette id in a single pass over the packed data, without consulting the palette.
+     * @return array indexed by palette id holding the number of positions which use that palette entry. Unused
+     * palette entries have a count of 0.
+     * @see #histogram()
+     */
+    public int[] paletteIdHistogram() {
+        final int[] counts = new int[palette.size()];
+        packedData.forEachInt(id -> {
+            if (id >= counts.length) {
+                throw new PaletteCorruptedException("data contained an out of bounds palette id " + id + " palette size " + counts.length);
+            }
+            counts[id]++;
+        });
+        return counts;
+    }
+
+    /**
+     * Counts the number of positions holding each distinct value. This is computed from
+     * {@link #paletteIdHistogram()} so it costs one pass over the packed ids plus one map entry per palette entry.
+     * <p>Keys are copies of the palette entries, modifying them has no effect on this cuboid.</p>
+     * @return map of value to count, values with a count of 0 are not included.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<E, Integer> histogram() {
+        final int[] counts = paletteIdHistogram();
+        final Map<E, Integer> histogram = new HashMap<>();
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] > 0) {
+                histogram.merge((E) palette.get(id).clone(), counts[id], Integer::sum);
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * @return array indexed by palette id which is true where the palette entry matched, or null if nothing matched.
+     */
+    private boolean[] matchPalette(Predicate<E> filter, String corruptedMessage) {
+        requireValue(filter, "filter");
         final int expectPaletteModCount = paletteModCount;
-        for (int i = 0; i < palette.size(); i++) {
+        final var nilValue = nilSentinelFor(paletteEntryClass);
+        final boolean[] matches = new boolean[palette.size()];
+        boolean any = false;
+        for (int i = 0; i < matches.length; i++) {
             E paletteValue = palette.get(i);
-            if (paletteValue == null) {
+            if (paletteValue == null || paletteValue == nilValue) {
                 continue;
             }
             final int hash = paletteValue.hashCode();
             if (filter.test(paletteValue)) {
-                counting.add(i);
+                any = matches[i] = true;
             }
             if (paletteValue.hashCode() != hash) {
-                throw new PaletteCorruptedException("Palette element modified during countIf filter call! Consider using replaceIf() instead.");
+                throw new PaletteCorruptedException(corruptedMessage);
+            }
+            if (expectPaletteModCount != paletteModCount) {
+                throw new ConcurrentModificationException();
             }
         }
-        if (expectPaletteModCount != paletteModCount) {
-            throw new ConcurrentModificationException();
-        }
-        if (counting.isEmpty()) {
-            return 0;
-        }
-        if (counting.size() == 1) {
-            counting = Collections.singleton(counting.iterator().next());
-        } else if (counting.size() < 5) {
-            counting = new ArrayList<>(counting);
-        }
-        return packedData.count(counting::contains);
+        return any ? matches : null;
     }
 
     /**
@@ -338,6 +442,7 @@ public class PalettizedCuboid<E extends Tag<?>> implements TagWrapper<CompoundTa
      */
     @SuppressWarnings("unchecked")
     public E[] toArrayByRef() {
+        handOutPaletteByRef();
         E[] a = (E[]) java.lang.reflect.Array.newInstance(paletteEntryClass, packedData.length);
         for (int i = 0; i < packedData.length; i++) {
             a[i] = palette.get(packedData.get(i));
@@ -353,7 +458,7 @@ public class PalettizedCuboid<E extends Tag<?>> implements TagWrapper<CompoundTa
         if (replacing.isEmpty()) {
             return false;
         }
-        int replacementPaletteIndex = palette.indexOf(replacement);
+        int replacementPaletteIndex = paletteIndexOf(replacement);
         boolean addReplacementToPaletteIfDataModified;
         if (replacementPaletteIndex < 0) {
             replacementPaletteIndex = palette.size();
@@ -385,6 +490,7 @@ public class PalettizedCuboid<E extends Tag<?>> implements TagWrapper<CompoundTa
             }
         }
         if (modified) {
+            paletteModCount ++;  // again, invalidates the palette lookup used above
             final var nilValue = nilSentinelFor(paletteEntryClass);
             for (int i : replacing) {
                 palette.set(i, nilValue);  // paletteModCount incremented at top of method
@@ -405,7 +511,7 @@ public class PalettizedCuboid<E extends Tag<?>> implements TagWrapper<CompoundTa
             return false;
         }
         // Don't pass a singleton list/set type - they are immutable and will cause errors.
-        return replace(new ArrayList<>(Collections.singletonList(palette.indexOf(oldValue))), newValue);
+        return replace(new ArrayList<>(Collections.singletonList(paletteIndexOf(oldValue))), newValue);
     }
 
     public final boolean replaceAll(E[] a, E replacement) {
@@ -419,7 +525,7 @@ public class PalettizedCuboid<E extends Tag<?>> implements TagWrapper<CompoundTa
         }
         Set<Integer> replacing = new HashSet<>();
         for (E e : c) {
-            int i = palette.indexOf(e);
+            int i = paletteIndexOf(e);
             if (i >= 0) {
                 replacing.add(i);
             }
@@ -429,24 +535,15 @@ public class PalettizedCuboid<E extends Tag<?>> implements TagWrapper<CompoundTa
 
     public boolean replaceIf(Predicate<E> filter, E replacement) {
         requireValue(replacement, "replacement");
-        final int expectPaletteModCount = paletteModCount;
+        final boolean[] matches = matchPalette(filter, "Palette element passed to filter modified unexpectedly!");
+        if (matches == null) {
+            return false;
+        }
         Set<Integer> replacing = new HashSet<>();
-        final var nilValue = nilSentinelFor(paletteEntryClass);
-        for (int i = 0; i < palette.size(); i++) {
-            E paletteValue = palette.get(i);
-            if (paletteValue == nilValue) {
-                continue;
-            }
-            final int hash = paletteValue.hashCode();
-            if (filter.test(paletteValue)) {
+        for (int i = 0; i < matches.length; i++) {
+            if (matches[i]) {
                 replacing.add(i);
             }
-            if (paletteValue.hashCode() != hash) {
-                throw new PaletteCorruptedException("Palette element passed to filter modified unexpectedly!");
-            }
-            if (expectPaletteModCount != paletteModCount) {
-                throw new ConcurrentModificationException();
-            }
         }
         return replace(replacing, replacement);
     }
@@ -477,6 +574,7 @@ public class PalettizedCuboid<E extends Tag<?>> implements TagWrapper<CompoundTa
         requireValue(fillWith, "fillWith");
         paletteModCount ++;
         palette.clear();
+        paletteShared = false;
         palette.add((E) fillWith.clone());
         packedData.clear(true);
     }
@@ -563,6 +661,7 @@ public class PalettizedCuboid<E extends Tag<?>> implements TagWrapper<CompoundTa
      *         (index &lt; 0 || index &gt;= size())
      */
     public E getByRef(int index) {
+        handOutPaletteByRef();
         return palette.get(packedData.get(index));
     }
 
@@ -589,21 +688,43 @@ public class PalettizedCuboid<E extends Tag<?>> implements TagWrapper<CompoundTa
      * @param element element to be stored at the specified position
      * @throws IndexOutOfBoundsException if the index is out of range (index &lt; 0 || index &gt;= size())
      */
-    @SuppressWarnings("unchecked")
     public void set(int index, E element) {
         requireValue(element, "element");
         if (index < 0 || index >= packedData.length) {
             throw new IndexOutOfBoundsException();
         }
-        paletteModCount ++;
-        int paletteIndex = palette.indexOf(element);
-        if (paletteIndex < 0) {
-            paletteIndex = palette.size();
-            palette.add((E) element.clone());  // paletteModCount incremented at top of method
-        }
+        int paletteIndex = paletteIndexOfOrAdd(element);
+        incrementPaletteModCount();
         packedData.set(index, paletteIndex);
     }
 
+    /**
+     * Replaces the elements at all the specified positions in this cuboid with the specified element.
+     * The palette entry for the element is resolved only once, making this the fastest way to write the same
+     * value to many scattered positions.
+     *
+     * @param indices indices of the elements to replace. All are validated before any are modified.
+     * @param element element to be stored at the specified positions
+     * @throws IndexOutOfBoundsException if any index is out of range (index &lt; 0 || index &gt;= size())
+     */
+    public void setAll(int[] indices, E element) {
+        requireValue(indices, "indices");
+        requireValue(element, "element");
+        for (int index : indices) {
+            if (index < 0 || index >= packedData.length) {
+                throw new IndexOutOfBoundsException(index);
+            }
+        }
+        if (indices.length == 0) {
+            return;
+        }
+        int paletteIndex = paletteIndexOfOrAdd(element);
+        incrementPaletteModCount();
+        for (int index : indices) {
+            packedData.set(index, paletteIndex);
+        }
+    }
+
     /**
      * Replaces the element at the specified position in this cuboid with
      * the specified element.
@@ -633,7 +754,6 @@ public class PalettizedCuboid<E extends Tag<?>> implements TagWrapper<CompoundTa
      * @param y2 inclusive bound
      * @param z2 inclusive bound
      */
-    @SuppressWarnings("unchecked")
     public void set(int x1, int y1, int z1, E element, int x2, int y2, int z2 ) {
         requireValue(element, "element");
         checkBounds(x1, y1, z1);
@@ -646,12 +766,8 @@ public class PalettizedCuboid<E extends Tag<?>> implements TagWrapper<CompoundTa
             return;
         }
 
-        int paletteIndex = palette.indexOf(element);
-        if (paletteIndex < 0) {
-            paletteModCount ++;
-            paletteIndex = palette.size();
-            palette.add((E) element.clone());
-        }
+        int paletteIndex = paletteIndexOfOrAdd(element);
+        incrementPaletteModCount();
 
         // detect and optimize XZ plain fills
         if (x1 == 0 && z1 == 0 && x2 == cubeInfo.edgeLength && z2 == cubeInfo.edgeLength) {
@@ -683,6 +799,122 @@ public class PalettizedCuboid<E extends Tag<?>> implements TagWrapper<CompoundTa
         set(xyz1.getX(), xyz1.getY(), xyz1.getZ(), element, xyz2.getX(), xyz2.getY(), xyz2.getZ());
     }
 
+    /**
+     * Finds the index of the given value in the palette using the reverse palette lookup, rebuilding it
+     * first if the palette has been modified since it was last built.
+     * <p>Never returns the index of an empty value sentinel left behind by a replace operation.</p>
+     * @return palette index or -1 if the value isn't in the palette
+     */
+    protected int paletteIndexOf(E value) {
+        if (paletteLookup == null || paletteLookupModCount != paletteModCount) {
+            rebuildPaletteLookup();
+        }
+        Integer paletteIndex = paletteLookup.get(value);
+        if (paletteIndex == null) {
+            return -1;
+        }
+        if (paletteIndex < palette.size() && palette.get(paletteIndex).equals(value)) {
+            return paletteIndex;
+        }
+        // the palette was modified without going through this class, such as via the handle tag
+        rebuildPaletteLookup();
+        paletteIndex = paletteLookup.get(value);
+        return paletteIndex != null ? paletteIndex : -1;
+    }
+
+    private void rebuildPaletteLookup() {
+        if (paletteLookup == null) {
+            paletteLookup = new HashMap<>();
+        } else {
+            paletteLookup.clear();
+        }
+        final E nilValue = nilSentinelFor(paletteEntryClass);
+        // iterate backwards so the first occurrence of duplicated values wins, same as List#indexOf
+        for (int i = palette.size() - 1; i >= 0; i--) {
+            E paletteValue = palette.get(i);
+            if (paletteValue != nilValue) {
+                paletteLookup.put(paletteValue, i);
+            }
+        }
+        paletteLookupModCount = paletteModCount;
+    }
+
+    /**
+     * Finds the palette index of the given value, adding a clone of it to the end of the palette if it isn't
+     * there already.
+     */
+    @SuppressWarnings("unchecked")
+    private int paletteIndexOfOrAdd(E element) {
+        int paletteIndex = paletteIndexOf(element);
+        if (paletteIndex < 0) {
+            paletteIndex = palette.size();
+            E clone = (E) element.clone();
+            palette.add(clone);
+            incrementPaletteModCount();
+            paletteLookup.put(clone, paletteIndex);
+        }
+        return paletteIndex;
+    }
+
+    /** Increments {@link #paletteModCount} while keeping the palette lookup valid if it currently is. */
+    private void incrementPaletteModCount() {
+        boolean lookupValid = paletteLookupModCount == paletteModCount;
+        paletteModCount ++;
+        if (lookupValid) {
+            paletteLookupModCount = paletteModCount;
+        }
+    }
+
+    /**
+     * Replaces every palette entry with the canonical instance from the given registry so that equal entries are
+     * shared across all cuboids interned with it.
+     * <p>Shared entries are copy-on-write: before any palette entry is handed out by reference, such as by
+     * {@link #getByRef(int)}, {@link #toArrayByRef()} or {@link #iterator()}, all shared entries are first replaced
+     * with private copies. {@link #get(int)} and friends return copies and never trigger this. The tag returned by
+     * {@link #toCompoundTag()} and {@link #getHandle()} however DOES contain the shared entries, which are
+     * {@link Tag#freeze() frozen} - {@link CompoundTag#clone()} it before modifying any palette entries.</p>
+     * @return this
+     * @see LoadFlags#INTERN_PALETTES
+     */
+    public PalettizedCuboid<E> intern(PaletteInterner<E> interner) {
+        requireValue(interner, "interner");
+        final var nilValue = nilSentinelFor(paletteEntryClass);
+        for (int i = 0; i < palette.size(); i++) {
+            E value = palette.get(i);
+            if (value != nilValue) {
+                palette.set(i, interner.intern(value));
+            }
+        }
+        paletteShared = true;
+        paletteLookup = null;  // drop references to the replaced instances
+        return this;
+    }
+
+    /**
+     * Prepares for handing out palette entries by reference, which the caller may modify in place - making them
+     * private copies and invalidating the palette lookup.
+     */
+    private void handOutPaletteByRef() {
+        unsharePalette();
+        // keeps the map for reuse, unlike dropping it
+        paletteLookupModCount = paletteModCount - 1;
+    }
+
+    /** Replaces shared palette entries with private copies, see {@link #intern}. */
+    @SuppressWarnings("unchecked")
+    private void unsharePalette() {
+        if (!paletteShared) return;
+        final var nilValue = nilSentinelFor(paletteEntryClass);
+        for (int i = 0; i < palette.size(); i++) {
+            E value = palette.get(i);
+            if (value != nilValue) {
+                palette.set(i, (E) value.clone());
+            }
+        }
+        paletteShared = false;
+        paletteLookup = null;
+    }
+
     protected void checkBounds(int x, int y, int z) {
         if (x < 0 || y < 0 || z < 0 || x >= cubeInfo.edgeLength || y >= cubeInfo.edgeLength || z >= cubeInfo.edgeLength) {
             throw new IndexOutOfBoundsException();
@@ -691,53 +923,56 @@ public class PalettizedCuboid<E extends Tag<?>> implements TagWrapper<CompoundTa
 
     /**
      * Removes empty value sentinels from the palette and remaps value references as-needed.
+     * <p>Does nothing if the palette and data have not been modified since they were loaded or last optimized.</p>
      * @return true if any modifications were made
      */
     protected boolean optimizePalette() {
-        paletteModCount ++;
-        // 1. identify unused palette id's & remove them from palette
-        Set<Integer> seenIds = new HashSet<>();
-        for (int id : packedData) {
-            seenIds.add(id);
-        }
-        int maxId = seenIds.stream().mapToInt(v -> v).max().getAsInt();
-        if (maxId >= palette.size()) {
-//            String dataStr = Arrays.stream(data)
-//                    .mapToObj(String::valueOf)
-//                    .collect(Collectors.joining(", "));
-            throw new IllegalStateException("data[" + /*dataStr +*/ "] contained an out of bounds palette id " + maxId + " palette size " + palette.size());
+        if (optimizedModCount == paletteModCount) {
+            return false;
         }
-        final E nilValue = nilSentinelFor(paletteEntryClass);
-        for (int i = 0; i < palette.size(); i++) {
-            if (!seenIds.contains(i)) {
-                palette.set(i, nilValue);  // paletteModCount at top of function
+        paletteModCount ++;
+        // 1. identify used palette id's - seenIds[id] is 1 if used, 0 otherwise
+        final int paletteSize = palette.size();
+        final int[] remapTable = new int[paletteSize];
+        packedData.forEachInt(id -> {
+            if (id >= paletteSize) {
+                throw new IllegalStateException("data[] contained an out of bounds palette id " + id + " palette size " + paletteSize);
             }
-        }
+            remapTable[id] = 1;
+        });
 
-        // 2. calculate palette defragmentation
+        // 2. calculate palette defragmentation, unused id's map to -1
         int cursor = 0;
-        Map<Integer, Integer> remapping = new HashMap<>();
-        for (int i = 0; i < palette.size(); i++) {
-            if (palette.get(i) != nilValue) {
-                if (i != cursor) {
-                    remapping.put(i, cursor);
-                }
-                cursor++;
+        boolean remapNeeded = false;
+        for (int i = 0; i < paletteSize; i++) {
+            if (remapTable[i] != 0) {
+                remapNeeded |= i != cursor;
+                remapTable[i] = cursor++;
+            } else {
+                remapTable[i] = -1;
             }
         }
 
-        // 3. remove nilValue's from palette
-        palette.removeAll(Collections.singletonList(nilValue));  // paletteModCount at top of function
+        // 3. remove unused entries (including empty value sentinels) from palette
+        if (cursor != paletteSize) {
+            for (int i = 0; i < paletteSize; i++) {
+                if (remapTable[i] >= 0 && remapTable[i] != i) {
+                    palette.set(remapTable[i], palette.get(i));  // paletteModCount at top of function
+                }
+            }
+            for (int i = paletteSize - 1; i >= cursor; i--) {
+                palette.remove(i);  // paletteModCount at top of function
+            }
+        }
 
         // 4. perform id remapping
-        if (remapping.isEmpty()) {
-            packedData.compact();
-            return false;
+        if (remapNeeded) {
+            packedData.remapAndCompact(remapTable);
         } else {
-            packedData.remap(remapping);
             packedData.compact();
-            return true;
         }
+        optimizedModCount = paletteModCount;
+        return remapNeeded;
     }
 
     @Override
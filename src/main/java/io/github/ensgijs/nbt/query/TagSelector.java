@@ -0,0 +1,140 @@
+package io.github.ensgijs.nbt.query;
+
+import io.github.ensgijs.nbt.query.evaluator.Evaluator;
+import io.github.ensgijs.nbt.query.evaluator.IndexEvaluator;
+import io.github.ensgijs.nbt.query.evaluator.NameEvaluator;
+import io.github.ensgijs.nbt.util.ArgValidator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Describes which parts of an nbt structure should be read. Used by
+ * {@link io.github.ensgijs.nbt.io.BigEndianNbtInputStream#readTag(int, TagSelector)} to skip over everything else
+ * without decoding it.
+ * <p>A selector is built from one or more {@link NbtPath}'s, each selecting the whole subtree at its location.
+ * Compound tags along the way keep only the selected keys. List elements selected by index are read, other
+ * elements are replaced with empty placeholders so that indexes still line up. Unlike {@link NbtPath}
+ * evaluation, a name applied to a list selects that name within every element of the list, so
+ * {@code "sections.biomes"} reads the biomes of every section and nothing else from them.</p>
+ * <p>Example: {@code TagSelector.of("DataVersion", "Status", "sections.block_states.palette")}</p>
+ */
+public final class TagSelector {
+    /** Selects everything. */
+    public static final TagSelector ALL = new TagSelector(true);
+
+    private boolean all;
+    private final Map<String, TagSelector> keys = new HashMap<>();
+    private final Map<Integer, TagSelector> indices = new HashMap<>();
+    /** Applied to list elements which aren't selected by index, null if there are no key selections. */
+    private TagSelector everyElement;
+
+    private TagSelector(boolean all) {
+        this.all = all;
+    }
+
+    /**
+     * @param paths {@link NbtPath} selector strings.
+     * @see NbtPath#of(String)
+     */
+    public static TagSelector of(String... paths) {
+        ArgValidator.requireValue(paths, "paths");
+        return of(Arrays.stream(paths).map(NbtPath::of).toArray(NbtPath[]::new));
+    }
+
+    public static TagSelector of(NbtPath... paths) {
+        ArgValidator.requireValue(paths, "paths");
+        TagSelector root = new TagSelector(false);
+        for (NbtPath path : paths) {
+            ArgValidator.requireValue(path, "path");
+            TagSelector node = root;
+            for (Evaluator evaluator : path.evalChain) {
+                if (node.all) break;
+                if (evaluator instanceof NameEvaluator name) {
+                    node = node.keys.computeIfAbsent(name.key(), k -> new TagSelector(false));
+                } else if (evaluator instanceof IndexEvaluator index) {
+                    node = node.indices.computeIfAbsent(index.index(), k -> new TagSelector(false));
+                } else {
+                    throw new IllegalArgumentException("unsupported path component " + evaluator + " in " + path);
+                }
+            }
+            node.selectAll();
+        }
+        root.mergeKeysIntoIndices();
+        return root;
+    }
+
+    private void selectAll() {
+        all = true;
+        keys.clear();
+        indices.clear();
+    }
+
+    /** Names applied to a list apply to every element, including those which are also selected by index. */
+    private void mergeKeysIntoIndices() {
+        if (!keys.isEmpty()) {
+            for (TagSelector index : indices.values()) {
+                index.mergeFrom(keys);
+            }
+            everyElement = new TagSelector(false);
+            everyElement.keys.putAll(keys);
+        }
+        keys.values().forEach(TagSelector::mergeKeysIntoIndices);
+        indices.values().forEach(TagSelector::mergeKeysIntoIndices);
+    }
+
+    private void mergeFrom(Map<String, TagSelector> other) {
+        if (all) return;
+        for (Map.Entry<String, TagSelector> e : other.entrySet()) {
+            TagSelector mine = keys.computeIfAbsent(e.getKey(), k -> new TagSelector(false));
+            mine.mergeFrom(e.getValue());
+        }
+    }
+
+    private void mergeFrom(TagSelector other) {
+        if (all) return;
+        if (other.all) {
+            selectAll();
+            return;
+        }
+        mergeFrom(other.keys);
+        for (Map.Entry<Integer, TagSelector> e : other.indices.entrySet()) {
+            indices.computeIfAbsent(e.getKey(), k -> new TagSelector(false)).mergeFrom(e.getValue());
+        }
+    }
+
+    /** @return true if the entire tag at this location is selected. */
+    public boolean selectsAll() {
+        return all;
+    }
+
+    /**
+     * @return selector to apply to the value of the given compound key, or null if it isn't selected.
+     */
+    public TagSelector key(String key) {
+        return all ? ALL : keys.get(key);
+    }
+
+    /**
+     * @return selector to apply to the list element at the given index, or null if it isn't selected.
+     */
+    public TagSelector index(int index) {
+        if (all) return ALL;
+        TagSelector selector = indices.get(index);
+        if (selector != null) return selector;
+        return everyElement;
+    }
+
+    @Override
+    public String toString() {
+        if (all) return "*";
+        List<String> parts = new ArrayList<>();
+        new TreeMap<>(keys).forEach((k, v) -> parts.add(k + ":" + v));
+        new TreeMap<>(indices).forEach((k, v) -> parts.add("[" + k + "]:" + v));
+        return parts.isEmpty() ? "{}" : "{" + String.join(",", parts) + "}";
+    }
+}
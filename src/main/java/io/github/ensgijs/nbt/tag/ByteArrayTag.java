@@ -24,13 +24,13 @@ public class ByteArrayTag extends ArrayTag<byte[]> implements Comparable<ByteArr
 	/** {@inheritDoc} */
 	@Override
 	public boolean equals(Object other) {
-		return super.equals(other) && Arrays.equals(getValue(), ((ByteArrayTag) other).getValue());
+		return super.equals(other) && !isKnownUnequal(other) && Arrays.equals(getValue(), ((ByteArrayTag) other).getValue());
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(getValue());
+		return isFrozen() ? frozenHashCode() : Arrays.hashCode(getValue());
 	}
 
 	/** {@inheritDoc} */
@@ -0,0 +1,318 @@
+package io.github.ensgijs.nbt.tag;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Insertion ordered backing map for {@link CompoundTag}s. Chunk data is made up largely of tiny compounds
+ * (block state entries, tile ticks, item stacks, ...) for which a {@link LinkedHashMap} - with its table and an
+ * entry object per mapping - costs several times more memory than the mappings themselves. This map instead
+ * holds up to {@link #MAX_COMPACT_SIZE} mappings in a pair of parallel arrays which are searched linearly, and
+ * transparently switches to a {@link LinkedHashMap} once it grows beyond that. It never switches back, except
+ * when {@link #clear() cleared}.
+ * <p>Like {@link LinkedHashMap}, replacing the value of an existing key does not change its position and
+ * iterators are fail-fast. Null keys and values are not permitted.</p>
+ */
+final class CompactTagMap extends AbstractMap<String, Tag<?>> {
+	/** Maximum number of mappings held in the compact representation. */
+	static final int MAX_COMPACT_SIZE = 8;
+	private static final String[] EMPTY_KEYS = new String[0];
+	private static final Tag<?>[] EMPTY_VALUES = new Tag<?>[0];
+
+	private String[] keys;
+	private Tag<?>[] values;
+	private int size;
+	/** Non-null once this map has outgrown the compact representation. */
+	private LinkedHashMap<String, Tag<?>> large;
+	private int modCount;
+	private EntrySet entrySet;
+
+	CompactTagMap() {
+		keys = EMPTY_KEYS;
+		values = EMPTY_VALUES;
+	}
+
+	/** @param expectedSize number of mappings to allocate room for, clamped to {@link #MAX_COMPACT_SIZE}. */
+	CompactTagMap(int expectedSize) {
+		if (expectedSize <= 0) {
+			keys = EMPTY_KEYS;
+			values = EMPTY_VALUES;
+		} else {
+			expectedSize = Math.min(expectedSize, MAX_COMPACT_SIZE);
+			keys = new String[expectedSize];
+			values = new Tag<?>[expectedSize];
+		}
+	}
+
+	/** @return true if this map has switched to its {@link LinkedHashMap} representation. */
+	boolean isLarge() {
+		return large != null;
+	}
+
+	private int indexOf(Object key) {
+		if (key != null) {
+			for (int i = 0; i < size; i++) {
+				if (key.equals(keys[i])) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int size() {
+		return large != null ? large.size() : size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return large != null ? large.containsKey(key) : indexOf(key) >= 0;
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		if (large != null) return large.containsValue(value);
+		if (value != null) {
+			for (int i = 0; i < size; i++) {
+				if (value.equals(values[i])) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Tag<?> get(Object key) {
+		if (large != null) return large.get(key);
+		int i = indexOf(key);
+		return i >= 0 ? values[i] : null;
+	}
+
+	@Override
+	public Tag<?> put(String key, Tag<?> value) {
+		Objects.requireNonNull(key);
+		Objects.requireNonNull(value);
+		if (large != null) {
+			modCount++;
+			return large.put(key, value);
+		}
+		int i = indexOf(key);
+		if (i >= 0) {
+			Tag<?> old = values[i];
+			values[i] = value;
+			return old;
+		}
+		modCount++;
+		if (size == keys.length) {
+			if (size == MAX_COMPACT_SIZE) {
+				large = new LinkedHashMap<>((int) Math.ceil((MAX_COMPACT_SIZE * 2) / 0.75f));
+				for (int j = 0; j < size; j++) {
+					large.put(keys[j], values[j]);
+				}
+				keys = EMPTY_KEYS;
+				values = EMPTY_VALUES;
+				size = 0;
+				large.put(key, value);
+				return null;
+			}
+			int newLength = Math.min(Math.max(2, size * 2), MAX_COMPACT_SIZE);
+			keys = Arrays.copyOf(keys, newLength);
+			values = Arrays.copyOf(values, newLength);
+		}
+		keys[size] = key;
+		values[size] = value;
+		size++;
+		return null;
+	}
+
+	@Override
+	public Tag<?> remove(Object key) {
+		if (large != null) {
+			if (!large.containsKey(key)) return null;
+			modCount++;
+			return large.remove(key);
+		}
+		int i = indexOf(key);
+		if (i < 0) return null;
+		Tag<?> old = values[i];
+		removeAt(i);
+		return old;
+	}
+
+	private void removeAt(int i) {
+		modCount++;
+		int tail = size - i - 1;
+		if (tail > 0) {
+			System.arraycopy(keys, i + 1, keys, i, tail);
+			System.arraycopy(values, i + 1, values, i, tail);
+		}
+		size--;
+		keys[size] = null;
+		values[size] = null;
+	}
+
+	@Override
+	public void clear() {
+		modCount++;
+		large = null;
+		if (size > 0) {
+			Arrays.fill(keys, 0, size, null);
+			Arrays.fill(values, 0, size, null);
+			size = 0;
+		}
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super String, ? super Tag<?>> action) {
+		if (large != null) {
+			large.forEach(action);
+			return;
+		}
+		final int expectedModCount = modCount;
+		for (int i = 0; i < size; i++) {
+			action.accept(keys[i], values[i]);
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
+	}
+
+	@Override
+	public Set<Map.Entry<String, Tag<?>>> entrySet() {
+		if (entrySet == null) entrySet = new EntrySet();
+		return entrySet;
+	}
+
+	private final class EntrySet extends AbstractSet<Map.Entry<String, Tag<?>>> {
+		@Override
+		public int size() {
+			return CompactTagMap.this.size();
+		}
+
+		@Override
+		public void clear() {
+			CompactTagMap.this.clear();
+		}
+
+		@Override
+		public Iterator<Map.Entry<String, Tag<?>>> iterator() {
+			return large != null ? new LargeIterator() : new CompactIterator();
+		}
+	}
+
+	/** Wraps the {@link LinkedHashMap} iterator so that removals are seen by this maps mod count. */
+	private final class LargeIterator implements Iterator<Map.Entry<String, Tag<?>>> {
+		private final Iterator<Map.Entry<String, Tag<?>>> iter = large.entrySet().iterator();
+
+		@Override
+		public boolean hasNext() {
+			return iter.hasNext();
+		}
+
+		@Override
+		public Map.Entry<String, Tag<?>> next() {
+			return iter.next();
+		}
+
+		@Override
+		public void remove() {
+			iter.remove();
+			modCount++;
+		}
+	}
+
+	private final class CompactIterator implements Iterator<Map.Entry<String, Tag<?>>> {
+		private int next;
+		private int last = -1;
+		private int expectedModCount = modCount;
+
+		@Override
+		public boolean hasNext() {
+			return next < size;
+		}
+
+		@Override
+		public Map.Entry<String, Tag<?>> next() {
+			if (modCount != expectedModCount) throw new ConcurrentModificationException();
+			if (next >= size) throw new NoSuchElementException();
+			last = next++;
+			return new CompactEntry(keys[last], values[last]);
+		}
+
+		@Override
+		public void remove() {
+			if (last < 0) throw new IllegalStateException();
+			if (modCount != expectedModCount) throw new ConcurrentModificationException();
+			removeAt(last);
+			next = last;
+			last = -1;
+			expectedModCount = modCount;
+		}
+	}
+
+	/** Entry which writes through to the map for as long as its key is still mapped. */
+	private final class CompactEntry implements Map.Entry<String, Tag<?>> {
+		private final String key;
+		private Tag<?> value;
+
+		CompactEntry(String key, Tag<?> value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public String getKey() {
+			return key;
+		}
+
+		@Override
+		public Tag<?> getValue() {
+			return value;
+		}
+
+		@Override
+		public Tag<?> setValue(Tag<?> value) {
+			Objects.requireNonNull(value);
+			if (large != null) {
+				large.replace(key, value);
+			} else {
+				int i = indexOf(key);
+				if (i >= 0) values[i] = value;
+			}
+			Tag<?> old = this.value;
+			this.value = value;
+			return old;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Map.Entry<?, ?> e && key.equals(e.getKey()) && value.equals(e.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return key.hashCode() ^ value.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + value;
+		}
+	}
+}
@@ -21,8 +21,15 @@ public class CompoundTag extends Tag<Map<String, Tag<?>>>
 		super(createEmptyValue());
 	}
 
+	/**
+	 * @param initialCapacity number of entries to allocate room for. Compounds with up to
+	 *                        {@link CompactTagMap#MAX_COMPACT_SIZE} entries are backed by a compact map which
+	 *                        switches to a hash map once it grows beyond that.
+	 */
 	public CompoundTag(int initialCapacity) {
-		super(new LinkedHashMap<>(initialCapacity));
+		super(initialCapacity <= CompactTagMap.MAX_COMPACT_SIZE
+				? new CompactTagMap(initialCapacity)
+				: new LinkedHashMap<>((int) Math.ceil(initialCapacity / 0.75f)));
 	}
 
 	/**
@@ -32,6 +39,16 @@ public class CompoundTag extends Tag<Map<String, Tag<?>>>
 		super(data);
 	}
 
+	/**
+	 * Creates a compound tag backed by the given map rather than a copy of it. Intended for alternate map
+	 * implementations, such as the lazily decoding map used by
+	 * {@link io.github.ensgijs.nbt.io.BigEndianNbtInputStream#readTagLazily}.
+	 * @param data passed by ref - must not contain null keys or values.
+	 */
+	public static CompoundTag wrap(Map<String, Tag<?>> data) {
+		return new CompoundTag(Objects.requireNonNull(data));
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public byte getID() {
@@ -39,7 +56,7 @@ public class CompoundTag extends Tag<Map<String, Tag<?>>>
 	}
 
 	private static Map<String, Tag<?>> createEmptyValue() {
-		return new LinkedHashMap<>(8);
+		return new CompactTagMap();
 	}
 
 	public int size() {
@@ -337,10 +354,9 @@ public class CompoundTag extends Tag<Map<String, Tag<?>>>
 	public float[] getFloatTagListAsArray(String key) {
 		ListTag<FloatTag> t = getListTagAutoCast(key);
 		if (t == null) return null;
-		List<FloatTag> floatTagList = t.getValue();
-		float[] floats = new float[floatTagList.size()];
+		float[] floats = new float[t.size()];
 		for (int i = 0; i < floats.length; i++) {
-			floats[i] = floatTagList.get(i).asFloat();
+			floats[i] = t.getFloat(i);
 		}
 		return floats;
 	}
@@ -353,10 +369,9 @@ public class CompoundTag extends Tag<Map<String, Tag<?>>>
 	public double[] getDoubleTagListAsArray(String key) {
 		ListTag<DoubleTag> t = getListTagAutoCast(key);
 		if (t == null) return null;
-		List<DoubleTag> doubleTagList = t.getValue();
-		double[] doubles = new double[doubleTagList.size()];
+		double[] doubles = new double[t.size()];
 		for (int i = 0; i < doubles.length; i++) {
-			doubles[i] = doubleTagList.get(i).asDouble();
+			doubles[i] = t.getDouble(i);
 		}
 		return doubles;
 	}
@@ -553,13 +568,22 @@ public class CompoundTag extends Tag<Map<String, Tag<?>>>
 		return sb.toString();
 	}
 
+	/** Freezes every child tag and makes this tags map unmodifiable. */
+	@Override
+	protected void freezeValue() {
+		for (Tag<?> child : getValue().values()) {
+			child.freeze();
+		}
+		setValue(Collections.unmodifiableMap(getValue()));
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public boolean equals(Object other) {
 		if (this == other) {
 			return true;
 		}
-		if (!super.equals(other) || size() != ((CompoundTag) other).size()) {
+		if (isKnownUnequal(other) || !super.equals(other) || size() != ((CompoundTag) other).size()) {
 			return false;
 		}
 		for (Map.Entry<String, Tag<?>> e : getValue().entrySet()) {
@@ -605,8 +629,7 @@ public class CompoundTag extends Tag<Map<String, Tag<?>>>
 	/** {@inheritDoc} */
 	@Override
 	public CompoundTag clone() {
-		// Choose initial capacity based on default load factor (0.75) so all entries fit in map without resizing
-		CompoundTag copy = new CompoundTag((int) Math.ceil(getValue().size() / 0.75f));
+		CompoundTag copy = new CompoundTag(getValue().size());
 		for (Map.Entry<String, Tag<?>> e : getValue().entrySet()) {
 			copy.put(e.getKey(), e.getValue().clone());
 		}
@@ -22,6 +22,11 @@ public class ListTag<E extends Tag<?>> extends Tag<List<E>> implements List<E>,
 		super(createEmptyValue(initialCapacity));
 	}
 
+	private ListTag(List<E> list, Class<?> typeClass) {
+		super(list);
+		this.typeClass = typeClass;
+	}
+
 	/**
 	 * Creates a new ListTag that uses the given list.
 	 * @param usingList List instance to use to back this ListTag. Values are NOT cloned.
@@ -57,6 +62,7 @@ public class ListTag<E extends Tag<?>> extends Tag<List<E>> implements List<E>,
 
 	protected Collection<? extends E> assignTypeClassIfNeeded(Collection<? extends E> c) {
 		if (this.typeClass == null || this.typeClass == EndTag.class) {
+			checkNotFrozen();
 			Class<?> tagType = !c.isEmpty() ? c.iterator().next().getClass() : EndTag.class;
 			if (!Tag.class.isAssignableFrom(tagType))
 				throw new IllegalArgumentException("Type must extend Tag");
@@ -256,6 +262,7 @@ public class ListTag<E extends Tag<?>> extends Tag<List<E>> implements List<E>,
 	 */
 	@Override
 	public boolean add(E element) {
+		checkNotFrozen();
 		Objects.requireNonNull(element);
 		if (getTypeClass() == EndTag.class) {
 			typeClass = checkTypeClass(element.getClass());
@@ -280,6 +287,7 @@ public class ListTag<E extends Tag<?>> extends Tag<List<E>> implements List<E>,
 	 */
 	@Override
 	public void add(int index, E element) {
+		checkNotFrozen();
 		Objects.requireNonNull(element);
 		if (getTypeClass() == EndTag.class) {
 			typeClass = checkTypeClass(element.getClass());
@@ -433,7 +441,7 @@ public class ListTag<E extends Tag<?>> extends Tag<List<E>> implements List<E>,
 	@SuppressWarnings("unchecked")
 	public <T extends Tag<?>> ListTag<ListTag<T>> asListTagList() {
 		checkTypeClass(ListTag.class);
-		typeClass = ListTag.class;
+		if (!isFrozen()) typeClass = ListTag.class;
 		return (ListTag<ListTag<T>>) this;
 	}
 
@@ -489,6 +497,74 @@ public class ListTag<E extends Tag<?>> extends Tag<List<E>> implements List<E>,
 		return tag;
 	}
 
+	/**
+	 * Creates a list backed by the given array rather than a copy of it. Element tags are only created when they
+	 * are accessed as tags, the primitive accessors such as {@link #getInt(int)} read the array directly.
+	 * @param values passed by ref
+	 */
+	public static ListTag<ByteTag> wrap(byte[] values) {
+		return new ListTag<>(PrimitiveTagList.of(values), ByteTag.class);
+	}
+
+	/** @see #wrap(byte[]) */
+	public static ListTag<ShortTag> wrap(short[] values) {
+		return new ListTag<>(PrimitiveTagList.of(values), ShortTag.class);
+	}
+
+	/** @see #wrap(byte[]) */
+	public static ListTag<IntTag> wrap(int[] values) {
+		return new ListTag<>(PrimitiveTagList.of(values), IntTag.class);
+	}
+
+	/** @see #wrap(byte[]) */
+	public static ListTag<LongTag> wrap(long[] values) {
+		return new ListTag<>(PrimitiveTagList.of(values), LongTag.class);
+	}
+
+	/** @see #wrap(byte[]) */
+	public static ListTag<FloatTag> wrap(float[] values) {
+		return new ListTag<>(PrimitiveTagList.of(values), FloatTag.class);
+	}
+
+	/** @see #wrap(byte[]) */
+	public static ListTag<DoubleTag> wrap(double[] values) {
+		return new ListTag<>(PrimitiveTagList.of(values), DoubleTag.class);
+	}
+
+	/**
+	 * Gets the value of the numeric element at the given index. Lists created by {@link #wrap(long[])},
+	 * or read from binary nbt, answer this without creating the element tag.
+	 * @throws ClassCastException if this is not a list of {@link NumberTag}s.
+	 */
+	public long getLong(int index) {
+		return getValue() instanceof PrimitiveTagList<E> p ? p.getLong(index) : ((NumberTag<?>) get(index)).asLong();
+	}
+
+	/** @see #getLong(int) */
+	public int getInt(int index) {
+		return getValue() instanceof PrimitiveTagList<E> p ? p.getInt(index) : ((NumberTag<?>) get(index)).asInt();
+	}
+
+	/** @see #getLong(int) */
+	public short getShort(int index) {
+		return (short) getInt(index);
+	}
+
+	/** @see #getLong(int) */
+	public byte getByte(int index) {
+		return (byte) getInt(index);
+	}
+
+	/** @see #getLong(int) */
+	public double getDouble(int index) {
+		return getValue() instanceof PrimitiveTagList<E> p ? p.getDouble(index) : ((NumberTag<?>) get(index)).asDouble();
+	}
+
+	/** @see #getLong(int) */
+	public float getFloat(int index) {
+		return getValue() instanceof PrimitiveTagList<E> p ? p.getFloat(index) : ((NumberTag<?>) get(index)).asFloat();
+	}
+
 	public static ListTag<StringTag> ofStrings(List<String> values) {
 		var tag = new ListTag<>(StringTag.class);
 		for (var v : values) {
@@ -508,16 +584,28 @@ public class ListTag<E extends Tag<?>> extends Tag<List<E>> implements List<E>,
 		return sb.toString();
 	}
 
+	/** Freezes every element and makes this tags list unmodifiable. */
+	@Override
+	protected void freezeValue() {
+		for (E e : getValue()) {
+			e.freeze();
+		}
+		setValue(Collections.unmodifiableList(getValue()));
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public boolean equals(Object other) {
 		if (this == other) {
 			return true;
 		}
-		if (!super.equals(other) || size() != ((ListTag<?>) other).size() || getTypeClass() != ((ListTag<?>) other)
+		if (isKnownUnequal(other) || !super.equals(other) || size() != ((ListTag<?>) other).size() || getTypeClass() != ((ListTag<?>) other)
 				.getTypeClass()) {
 			return false;
 		}
+		if (getValue() instanceof PrimitiveTagList && ((ListTag<?>) other).getValue() instanceof PrimitiveTagList) {
+			return getValue().equals(((ListTag<?>) other).getValue());
+		}
 		for (int i = 0; i < size(); i++) {
 			if (!get(i).equals(((ListTag<?>) other).get(i))) {
 				return false;
@@ -529,6 +617,7 @@ public class ListTag<E extends Tag<?>> extends Tag<List<E>> implements List<E>,
 	/** {@inheritDoc} */
 	@Override
 	public int hashCode() {
+		if (isFrozen()) return frozenHashCode();
 		return Objects.hash(getTypeClass().hashCode(), getValue().hashCode());
 	}
 
@@ -548,6 +637,9 @@ public class ListTag<E extends Tag<?>> extends Tag<List<E>> implements List<E>,
 	@SuppressWarnings("unchecked")
 	@Override
 	public ListTag<E> clone() {
+		if (getValue() instanceof PrimitiveTagList<E> p) {
+			return new ListTag<>(p.copy(), typeClass);
+		}
 		ListTag<E> copy = new ListTag<>(this.size());
 		// assure type safety for clone
 		copy.typeClass = typeClass;
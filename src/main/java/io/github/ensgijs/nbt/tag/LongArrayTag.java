@@ -25,13 +25,13 @@ public class LongArrayTag extends ArrayTag<long[]> implements Comparable<LongArr
 	/** {@inheritDoc} */
 	@Override
 	public boolean equals(Object other) {
-		return super.equals(other) && Arrays.equals(getValue(), ((LongArrayTag) other).getValue());
+		return super.equals(other) && !isKnownUnequal(other) && Arrays.equals(getValue(), ((LongArrayTag) other).getValue());
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(getValue());
+		return isFrozen() ? frozenHashCode() : Arrays.hashCode(getValue());
 	}
 
 	/** {@inheritDoc} */
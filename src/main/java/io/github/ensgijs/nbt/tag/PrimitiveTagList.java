@@ -0,0 +1,270 @@
+package io.github.ensgijs.nbt.tag;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Backing list for {@link ListTag}s of numeric tags created by the {@code ListTag.wrap(...)} factories. Values
+ * are held in a primitive array and element tags are only created the first time they are accessed as tags,
+ * such as through {@link #get(int)} or iteration. Once created an element tag is the authority for its value,
+ * so modifying it through {@link Tag#setValue(Object)} is seen by the primitive accessors as well.
+ * <p>The first structural modification (add, remove, clear) copies the elements into an {@link ArrayList}
+ * which this list then delegates to.</p>
+ */
+final class PrimitiveTagList<E extends Tag<?>> extends AbstractList<E> implements RandomAccess {
+	private final byte type;
+	/** One of byte[], short[], int[], long[], float[] or double[] as given by {@link #type}. */
+	private final Object array;
+	private final int length;
+	/** Element tags which have been created so far, allocated on first use. */
+	private Tag<?>[] materialized;
+	/** Non-null once this list has been structurally modified. */
+	private ArrayList<E> inflated;
+
+	private PrimitiveTagList(byte type, Object array, int length) {
+		this.type = type;
+		this.array = array;
+		this.length = length;
+	}
+
+	static PrimitiveTagList<ByteTag> of(byte[] values) {
+		return new PrimitiveTagList<>(ByteTag.ID, values, values.length);
+	}
+
+	static PrimitiveTagList<ShortTag> of(short[] values) {
+		return new PrimitiveTagList<>(ShortTag.ID, values, values.length);
+	}
+
+	static PrimitiveTagList<IntTag> of(int[] values) {
+		return new PrimitiveTagList<>(IntTag.ID, values, values.length);
+	}
+
+	static PrimitiveTagList<LongTag> of(long[] values) {
+		return new PrimitiveTagList<>(LongTag.ID, values, values.length);
+	}
+
+	static PrimitiveTagList<FloatTag> of(float[] values) {
+		return new PrimitiveTagList<>(FloatTag.ID, values, values.length);
+	}
+
+	static PrimitiveTagList<DoubleTag> of(double[] values) {
+		return new PrimitiveTagList<>(DoubleTag.ID, values, values.length);
+	}
+
+	/** @return number of element tags which have been created, for testing. */
+	int materializedCount() {
+		if (inflated != null) return inflated.size();
+		if (materialized == null) return 0;
+		int count = 0;
+		for (Tag<?> t : materialized) {
+			if (t != null) count++;
+		}
+		return count;
+	}
+
+	/** @return true if no element tag has been created and the primitive array holds every value. */
+	private boolean isPristine() {
+		return inflated == null && materialized == null;
+	}
+
+	@Override
+	public int size() {
+		return inflated != null ? inflated.size() : length;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public E get(int index) {
+		if (inflated != null) return inflated.get(index);
+		Objects.checkIndex(index, length);
+		if (materialized == null) {
+			materialized = new Tag<?>[length];
+		}
+		Tag<?> tag = materialized[index];
+		if (tag == null) {
+			materialized[index] = tag = createTag(index);
+		}
+		return (E) tag;
+	}
+
+	private Tag<?> createTag(int index) {
+		return switch (type) {
+			case ByteTag.ID -> new ByteTag(((byte[]) array)[index]);
+			case ShortTag.ID -> new ShortTag(((short[]) array)[index]);
+			case IntTag.ID -> new IntTag(((int[]) array)[index]);
+			case LongTag.ID -> new LongTag(((long[]) array)[index]);
+			case FloatTag.ID -> new FloatTag(((float[]) array)[index]);
+			case DoubleTag.ID -> new DoubleTag(((double[]) array)[index]);
+			default -> throw new IllegalStateException("unsupported type " + type);
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public E set(int index, E element) {
+		Objects.requireNonNull(element);
+		if (inflated != null) return inflated.set(index, element);
+		E old = get(index);
+		materialized[index] = element;
+		return old;
+	}
+
+	@Override
+	public void add(int index, E element) {
+		inflate().add(index, element);
+		modCount++;
+	}
+
+	@Override
+	public E remove(int index) {
+		E old = inflate().remove(index);
+		modCount++;
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		inflate().clear();
+		modCount++;
+	}
+
+	private ArrayList<E> inflate() {
+		if (inflated == null) {
+			ArrayList<E> list = new ArrayList<>(length + 1);
+			for (int i = 0; i < length; i++) {
+				list.add(get(i));
+			}
+			inflated = list;
+			materialized = null;
+		}
+		return inflated;
+	}
+
+	/** @return the number tag at the given index if it has been created, otherwise null. */
+	private NumberTag<?> tagIfCreated(int index) {
+		if (inflated != null) return (NumberTag<?>) inflated.get(index);
+		Objects.checkIndex(index, length);
+		return materialized != null ? (NumberTag<?>) materialized[index] : null;
+	}
+
+	long getLong(int index) {
+		NumberTag<?> tag = tagIfCreated(index);
+		if (tag != null) return tag.asLong();
+		return switch (type) {
+			case ByteTag.ID -> ((byte[]) array)[index];
+			case ShortTag.ID -> ((short[]) array)[index];
+			case IntTag.ID -> ((int[]) array)[index];
+			case LongTag.ID -> ((long[]) array)[index];
+			case FloatTag.ID -> (long) ((float[]) array)[index];
+			default -> (long) ((double[]) array)[index];
+		};
+	}
+
+	double getDouble(int index) {
+		NumberTag<?> tag = tagIfCreated(index);
+		if (tag != null) return tag.asDouble();
+		return switch (type) {
+			case FloatTag.ID -> ((float[]) array)[index];
+			case DoubleTag.ID -> ((double[]) array)[index];
+			default -> getLong(index);
+		};
+	}
+
+	float getFloat(int index) {
+		NumberTag<?> tag = tagIfCreated(index);
+		if (tag != null) return tag.asFloat();
+		return switch (type) {
+			case FloatTag.ID -> ((float[]) array)[index];
+			case DoubleTag.ID -> (float) ((double[]) array)[index];
+			default -> (float) getLong(index);
+		};
+	}
+
+	int getInt(int index) {
+		NumberTag<?> tag = tagIfCreated(index);
+		if (tag != null) return tag.asInt();
+		return switch (type) {
+			case FloatTag.ID -> (int) ((float[]) array)[index];
+			case DoubleTag.ID -> (int) ((double[]) array)[index];
+			default -> (int) getLong(index);
+		};
+	}
+
+	/** Copies this list keeping its primitive representation, element tags which were created are cloned. */
+	@SuppressWarnings("unchecked")
+	List<E> copy() {
+		if (inflated != null) {
+			ArrayList<E> list = new ArrayList<>(inflated.size());
+			for (E e : inflated) {
+				list.add((E) e.clone());
+			}
+			return list;
+		}
+		PrimitiveTagList<E> copy = new PrimitiveTagList<>(type, copyArray(), length);
+		if (materialized != null) {
+			copy.materialized = new Tag<?>[length];
+			for (int i = 0; i < length; i++) {
+				if (materialized[i] != null) {
+					copy.materialized[i] = materialized[i].clone();
+				}
+			}
+		}
+		return copy;
+	}
+
+	private Object copyArray() {
+		return switch (type) {
+			case ByteTag.ID -> ((byte[]) array).clone();
+			case ShortTag.ID -> ((short[]) array).clone();
+			case IntTag.ID -> ((int[]) array).clone();
+			case LongTag.ID -> ((long[]) array).clone();
+			case FloatTag.ID -> ((float[]) array).clone();
+			default -> ((double[]) array).clone();
+		};
+	}
+
+	/** Hashes exactly as {@link List#hashCode()} would but without creating element tags. */
+	@Override
+	public int hashCode() {
+		if (inflated != null) return inflated.hashCode();
+		int h = 1;
+		for (int i = 0; i < length; i++) {
+			Tag<?> tag = materialized != null ? materialized[i] : null;
+			int eh;
+			if (tag != null) {
+				eh = tag.hashCode();
+			} else {
+				eh = switch (type) {
+					case ByteTag.ID -> Byte.hashCode(((byte[]) array)[i]);
+					case ShortTag.ID -> Short.hashCode(((short[]) array)[i]);
+					case IntTag.ID -> Integer.hashCode(((int[]) array)[i]);
+					case LongTag.ID -> Long.hashCode(((long[]) array)[i]);
+					case FloatTag.ID -> Float.hashCode(((float[]) array)[i]);
+					default -> Double.hashCode(((double[]) array)[i]);
+				};
+			}
+			h = 31 * h + eh;
+		}
+		return h;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof PrimitiveTagList<?> other && other.type == type && isPristine() && other.isPristine()) {
+			// same semantics as the element tags equals, which compare boxed values
+			return switch (type) {
+				case ByteTag.ID -> Arrays.equals((byte[]) array, (byte[]) other.array);
+				case ShortTag.ID -> Arrays.equals((short[]) array, (short[]) other.array);
+				case IntTag.ID -> Arrays.equals((int[]) array, (int[]) other.array);
+				case LongTag.ID -> Arrays.equals((long[]) array, (long[]) other.array);
+				case FloatTag.ID -> Arrays.equals((float[]) array, (float[]) other.array);
+				default -> Arrays.equals((double[]) array, (double[]) other.array);
+			};
+		}
+		return super.equals(o);
+	}
+}
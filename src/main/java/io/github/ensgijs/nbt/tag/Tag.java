@@ -40,6 +40,8 @@ public abstract class Tag<T> implements Cloneable {
 	public static final int DEFAULT_MAX_DEPTH = 512;
 
 	private T value;
+	private transient boolean frozen;
+	private transient int frozenHash;
 
 	/**
 	 * Initializes this Tag with some value. If the value is {@code null}, it will
@@ -68,9 +70,65 @@ public abstract class Tag<T> implements Cloneable {
 	 * @throws NullPointerException If the value is null
 	 */
 	protected void setValue(T value) {
+		checkNotFrozen();
 		this.value = checkValue(value);
 	}
 
+	/**
+	 * Makes this tag, and every tag nested within it, immutable and caches its hash code. Frozen tags are cheap to
+	 * use as map keys and two frozen tags with different hash codes are known to be unequal without comparing
+	 * their contents - which makes them ideal for shared values such as palette entries.
+	 * <p>Any attempt to modify a frozen tag throws an {@link UnsupportedOperationException}. The exception to this
+	 * are array tags, whose arrays cannot be protected and must simply not be modified once frozen.</p>
+	 * <p>Freezing cannot be undone, but {@link #clone()} always returns a mutable copy.</p>
+	 * @return this
+	 */
+	public Tag<T> freeze() {
+		if (!frozen) {
+			freezeValue();
+			frozenHash = hashCode();
+			frozen = true;
+		}
+		return this;
+	}
+
+	/** True if this tag has been made immutable by {@link #freeze()}. */
+	public final boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * Called by {@link #freeze()} before the hash code is cached. Container tags override this to freeze their
+	 * children and to make their value unmodifiable.
+	 */
+	protected void freezeValue() {}
+
+	/**
+	 * @throws UnsupportedOperationException if this tag is frozen.
+	 */
+	protected final void checkNotFrozen() {
+		if (frozen) {
+			throw new UnsupportedOperationException("tag is frozen");
+		}
+	}
+
+	/**
+	 * Hash code cached by {@link #freeze()}, only meaningful if {@link #isFrozen()}. Subclasses which override
+	 * {@link #hashCode()} should return this when frozen.
+	 */
+	protected final int frozenHashCode() {
+		return frozenHash;
+	}
+
+	/**
+	 * Fast inequality check for use by {@link #equals(Object)} implementations.
+	 * @return true if both this and other are frozen tags with different cached hash codes - which means they
+	 * cannot be equal.
+	 */
+	protected final boolean isKnownUnequal(Object other) {
+		return frozen && other instanceof Tag<?> t && t.frozen && frozenHash != t.frozenHash;
+	}
+
 	/**
 	 * Checks if the value {@code value} is {@code null}.
 	 * @param value The value to check
@@ -139,7 +197,7 @@ public abstract class Tag<T> implements Cloneable {
 	 */
 	@Override
 	public int hashCode() {
-		return value.hashCode();
+		return frozen ? frozenHash : value.hashCode();
 	}
 
 	/**
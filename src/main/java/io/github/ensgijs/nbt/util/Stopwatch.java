@@ -61,6 +61,18 @@ public final class Stopwatch {
         return out;
     }
 
+    /**
+     * Adds the given number of nanoseconds to the elapsed time without starting or stopping this stopwatch.
+     * <p>Unlike {@link #startLap()} this may be used to accumulate the time of overlapping work, such as work
+     * performed concurrently by multiple threads.</p>
+     *
+     * @return this {@code Stopwatch} instance
+     */
+    public synchronized Stopwatch addElapsedNanos(long nanos) {
+        elapsedNanos += nanos;
+        return this;
+    }
+
     /**
      * Returns {@code true} if {@link #start()} has been called on this stopwatch, and {@link #stop()}
      * has not been called since the last call to {@code start()}.
@@ -0,0 +1,191 @@
+package io.github.ensgijs.nbt.io;
+
+import io.github.ensgijs.nbt.NbtTestCase;
+import io.github.ensgijs.nbt.query.NbtPath;
+import io.github.ensgijs.nbt.query.TagSelector;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.DoubleTag;
+import io.github.ensgijs.nbt.tag.EndTag;
+import io.github.ensgijs.nbt.tag.ListTag;
+import io.github.ensgijs.nbt.tag.Tag;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.util.Arrays;
+
+public class BigEndianNbtInputStreamTest extends NbtTestCase {
+
+    private static CompoundTag sampleTag() {
+        CompoundTag tag = new CompoundTag();
+        tag.putInt("DataVersion", 3700);
+        tag.putString("Status", "minecraft:full");
+        CompoundTag heightmaps = tag.getOrCreateCompoundTag("Heightmaps");
+        heightmaps.putLongArray("WORLD_SURFACE", new long[] {1, 2, 3});
+        ListTag<CompoundTag> sections = new ListTag<>(CompoundTag.class);
+        for (int y = -4; y < 4; y++) {
+            CompoundTag section = new CompoundTag();
+            section.putByte("Y", (byte) y);
+            section.getOrCreateCompoundTag("block_states").putLongArray("data", new long[] {y, y * 2L});
+            section.putFloatArrayAsTagList("floats", 1f, 2f, y);
+            sections.add(section);
+        }
+        tag.put("sections", sections);
+        ListTag<ListTag<?>> nested = new ListTag<>(ListTag.class);
+        nested.add(ListTag.createUnchecked(CompoundTag.class));
+        nested.add(sections.clone());
+        tag.put("nested", nested);
+        return tag;
+    }
+
+    private static byte[] serialize(CompoundTag tag) throws IOException {
+        return BinaryNbtHelpers.serializeAsBytes(new NamedTag("root", tag), CompressionType.NONE);
+    }
+
+    public void testReadTagLazily_equalsEagerRead() throws IOException {
+        final CompoundTag tag = sampleTag();
+        byte[] bytes = serialize(tag);
+        NamedTag lazy = BigEndianNbtInputStream.readTagLazily(new ByteArrayInputStream(bytes), Tag.DEFAULT_MAX_DEPTH);
+        assertEquals("root", lazy.getName());
+        assertEquals(tag, lazy.getTag());
+        assertEquals(tag.hashCode(), lazy.getTag().hashCode());
+        assertEquals(tag.toString(), lazy.getTag().toString());
+        assertTrue(Arrays.equals(bytes, serialize((CompoundTag) lazy.getTag())));
+    }
+
+    public void testReadTagLazily_consumesExactlyOneTag() throws IOException {
+        byte[] bytes = serialize(sampleTag());
+        byte[] withTrailer = Arrays.copyOf(bytes, bytes.length + 3);
+        ByteArrayInputStream in = new ByteArrayInputStream(withTrailer);
+        BigEndianNbtInputStream.readTagLazily(in, Tag.DEFAULT_MAX_DEPTH);
+        assertEquals(3, in.available());
+
+        assertThrowsException(() -> BigEndianNbtInputStream.readTagLazily(
+                new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1)), Tag.DEFAULT_MAX_DEPTH), EOFException.class);
+    }
+
+    public void testReadTagLazily_nestedValuesDecodedOnAccess() throws IOException {
+        CompoundTag tag = new CompoundTag();
+        tag.putInt("x", 7);
+        tag.getOrCreateCompoundTag("nested").putString("bad", "abc");
+        byte[] bytes = serialize(tag);
+        // corrupt the modified utf-8 string "abc" inside the nested compound, only decoding it will notice
+        int i = bytes.length - 1 /*end root*/ - 1 /*end nested*/ - 3;
+        assertEquals('a', bytes[i]);
+        bytes[i] = (byte) 0xFF;
+
+        CompoundTag lazy = (CompoundTag) BigEndianNbtInputStream.readTagLazily(
+                new ByteArrayInputStream(bytes), Tag.DEFAULT_MAX_DEPTH).getTag();
+        assertEquals(2, lazy.size());
+        assertTrue(lazy.containsKey("nested"));
+        assertEquals(7, lazy.getInt("x"));
+        assertThrowsRuntimeException(() -> lazy.getCompoundTag("nested"), SilentIOException.class);
+        assertThrowsRuntimeException(() -> NbtPath.of("nested.bad").getString(lazy), SilentIOException.class);
+
+        assertThrowsException(() -> new BigEndianNbtInputStream(new ByteArrayInputStream(bytes)).readTag(Tag.DEFAULT_MAX_DEPTH),
+                UTFDataFormatException.class);
+    }
+
+    public void testReadTagLazily_modifications() throws IOException {
+        final CompoundTag tag = sampleTag();
+        CompoundTag lazy = (CompoundTag) BigEndianNbtInputStream.readTagLazily(
+                new ByteArrayInputStream(serialize(tag)), Tag.DEFAULT_MAX_DEPTH).getTag();
+        assertEquals(tag.get("Heightmaps"), lazy.remove("Heightmaps"));
+        assertEquals(tag.get("sections"), lazy.put("sections", new CompoundTag()));
+        assertEquals(new CompoundTag(), lazy.getCompoundTag("sections"));
+        assertEquals(NbtPath.of("nested[1][2].block_states.data").getTag(tag),
+                NbtPath.of("nested[1][2].block_states.data").getTag(lazy));
+        assertEquals(4, lazy.size());
+        assertEquals(lazy, lazy.clone());
+    }
+
+    public void testReadTagLazily_maxDepthIsEnforcedUpFront() throws IOException {
+        byte[] bytes = serialize(sampleTag());
+        assertThrowsException(() -> BigEndianNbtInputStream.readTagLazily(new ByteArrayInputStream(bytes), 4),
+                MaxDepthReachedException.class);
+        assertThrowsException(() -> new BigEndianNbtInputStream(new ByteArrayInputStream(bytes)).readTag(4),
+                MaxDepthReachedException.class);
+        assertThrowsNoException(() -> BigEndianNbtInputStream.readTagLazily(new ByteArrayInputStream(bytes), 5));
+        assertThrowsNoException(() -> new BigEndianNbtInputStream(new ByteArrayInputStream(bytes)).readTag(5));
+    }
+
+    public void testReadTagSelected() throws IOException {
+        final CompoundTag tag = sampleTag();
+        byte[] bytes = serialize(tag);
+        byte[] withTrailer = Arrays.copyOf(bytes, bytes.length + 2);
+        ByteArrayInputStream bais = new ByteArrayInputStream(withTrailer);
+        NamedTag selected = new BigEndianNbtInputStream(bais).readTag(Tag.DEFAULT_MAX_DEPTH,
+                TagSelector.of("DataVersion", "Heightmaps.OCEAN_FLOOR", "sections.Y", "sections[2].block_states", "nested[1][3]"));
+        assertEquals(2, bais.available());
+        assertEquals("root", selected.getName());
+
+        CompoundTag expected = new CompoundTag();
+        expected.putInt("DataVersion", 3700);
+        expected.put("Heightmaps", new CompoundTag());
+        ListTag<CompoundTag> sections = new ListTag<>(CompoundTag.class);
+        for (CompoundTag section : tag.getCompoundList("sections")) {
+            CompoundTag s = new CompoundTag();
+            s.put("Y", section.get("Y"));
+            sections.add(s);
+        }
+        sections.get(2).put("block_states", tag.getCompoundList("sections").get(2).get("block_states"));
+        expected.put("sections", sections);
+        ListTag<ListTag<?>> nested = new ListTag<>(ListTag.class);
+        nested.add(ListTag.createUnchecked(EndTag.class));
+        ListTag<CompoundTag> nested1 = new ListTag<>(CompoundTag.class);
+        for (int i = 0; i < 8; i++) {
+            nested1.add(i == 3 ? tag.getCompoundList("sections").get(3) : new CompoundTag());
+        }
+        nested.add(nested1);
+        expected.put("nested", nested);
+        assertEquals(expected, selected.getTag());
+        assertEquals(NbtPath.of("nested[1][3].floats").getTag(tag), NbtPath.of("nested[1][3].floats").getTag(selected.getTag()));
+    }
+
+    public void testReadTagSelected_all() throws IOException {
+        final CompoundTag tag = sampleTag();
+        byte[] bytes = serialize(tag);
+        assertEquals(tag, new BigEndianNbtInputStream(new ByteArrayInputStream(bytes)).readTag(Tag.DEFAULT_MAX_DEPTH, TagSelector.ALL).getTag());
+        assertEquals(tag, new BigEndianNbtInputStream(new ByteArrayInputStream(bytes)).readTag(Tag.DEFAULT_MAX_DEPTH, TagSelector.of("")).getTag());
+        assertEquals(new CompoundTag(), new BigEndianNbtInputStream(new ByteArrayInputStream(bytes))
+                .readTag(Tag.DEFAULT_MAX_DEPTH, TagSelector.of("missing")).getTag());
+        // max depth still applies to skipped data
+        assertThrowsException(() -> new BigEndianNbtInputStream(new ByteArrayInputStream(bytes))
+                .readTag(4, TagSelector.of("DataVersion")), MaxDepthReachedException.class);
+    }
+
+    public void testNumericListsRoundTrip() throws IOException {
+        CompoundTag tag = new CompoundTag();
+        tag.putDoubleArrayAsTagList("Pos", 1.5, 64, -2.25);
+        tag.putFloatArrayAsTagList("Rotation", 90f, -12.5f);
+        tag.put("bytes", ListTag.ofBytes(Arrays.asList((byte) 1, (byte) -2)));
+        tag.put("shorts", ListTag.ofShorts(Arrays.asList((short) 300, (short) -2)));
+        tag.put("ints", ListTag.ofInts(Arrays.asList(70000, -2)));
+        tag.put("longs", ListTag.ofLongs(Arrays.asList(1L << 40, -2L)));
+        tag.put("empty", ListTag.ofDoubles(Arrays.asList()));
+        byte[] bytes = serialize(tag);
+        CompoundTag read = (CompoundTag) new BigEndianNbtInputStream(new ByteArrayInputStream(bytes))
+                .readTag(Tag.DEFAULT_MAX_DEPTH).getTag();
+        assertTrue(Arrays.equals(new double[] {1.5, 64, -2.25}, read.getDoubleTagListAsArray("Pos")));
+        assertTrue(Arrays.equals(new float[] {90f, -12.5f}, read.getFloatTagListAsArray("Rotation")));
+        assertEquals(tag, read);
+        assertEquals(tag.hashCode(), read.hashCode());
+        assertTrue(Arrays.equals(bytes, serialize(read)));
+        assertEquals(DoubleTag.class, read.getListTag("empty").getTypeClass());
+    }
+
+    public void testNumericLists_maxDepthIsEnforced() throws IOException {
+        CompoundTag tag = new CompoundTag();
+        tag.putDoubleArrayAsTagList("Pos", 1.5, 64, -2.25);
+        byte[] bytes = serialize(tag);
+        // the list elements are one level below the list, same as for lists of any other type
+        assertThrowsException(() -> new BigEndianNbtInputStream(new ByteArrayInputStream(bytes)).readTag(1),
+                MaxDepthReachedException.class);
+        assertThrowsNoException(() -> new BigEndianNbtInputStream(new ByteArrayInputStream(bytes)).readTag(2));
+        assertThrowsException(() -> new BigEndianNbtOutputStream(new ByteArrayOutputStream()).writeTag(tag, 1),
+                MaxDepthReachedException.class);
+        assertThrowsNoException(() -> new BigEndianNbtOutputStream(new ByteArrayOutputStream()).writeTag(tag, 2));
+    }
+}
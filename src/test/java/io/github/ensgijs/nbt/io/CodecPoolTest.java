@@ -0,0 +1,122 @@
+package io.github.ensgijs.nbt.io;
+
+import io.github.ensgijs.nbt.NbtTestCase;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+public class CodecPoolTest extends NbtTestCase {
+
+    private static CompoundTag sampleTag() {
+        CompoundTag tag = new CompoundTag();
+        tag.putString("name", "minecraft:stone");
+        tag.putIntArray("ints", new int[] {1, 2, 3, 4, 5, 6, 7, 8});
+        tag.putLongArray("longs", new long[512]);
+        return tag;
+    }
+
+    public void testZlibRoundTrip_reusesPooledObjects() throws IOException {
+        final CompoundTag tag = sampleTag();
+        // warm this thread's pools
+        BinaryNbtHelpers.deserializeBytes(BinaryNbtHelpers.serializeAsBytes(tag, CompressionType.ZLIB), CompressionType.ZLIB);
+
+        final CodecPool.Stats before = CodecPool.stats();
+        final int n = 20;
+        for (int i = 0; i < n; i++) {
+            byte[] bytes = BinaryNbtHelpers.serializeAsBytes(tag, CompressionType.ZLIB);
+            assertEquals(tag, BinaryNbtHelpers.deserializeBytes(bytes, CompressionType.ZLIB).getTag());
+        }
+        final CodecPool.Stats after = CodecPool.stats();
+        assertTrue(after.toString(), after.deflatersAcquired() - before.deflatersAcquired() >= n);
+        assertTrue(after.toString(), after.inflatersAcquired() - before.inflatersAcquired() >= n);
+        // other tests may run concurrently and create their own, but this thread shouldn't have needed new ones
+        assertTrue(after.toString(), after.deflatersCreated() - before.deflatersCreated() < n);
+        assertTrue(after.toString(), after.inflatersCreated() - before.inflatersCreated() < n);
+    }
+
+    public void testZlibWithLevel_roundTrips() throws IOException {
+        final CompoundTag tag = sampleTag();
+        for (int level : new int[] {Deflater.NO_COMPRESSION, Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION}) {
+            CompressionCodec codec = CompressionType.zlib(level);
+            byte[] bytes = BinaryNbtHelpers.serializeAsBytes(tag, codec);
+            assertEquals(tag, BinaryNbtHelpers.deserializeBytes(bytes, codec).getTag());
+            // level is independent of how the data is read back
+            assertEquals(tag, BinaryNbtHelpers.deserializeBytes(bytes, CompressionType.ZLIB).getTag());
+        }
+    }
+
+    public void testPooledStreams_singleByteAndBulkIo() throws IOException {
+        byte[] data = new byte[CodecPool.SCRATCH_SIZE * 3 + 17];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) (i * 31);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        OutputStream out = CompressionType.ZLIB.compress(baos);
+        out.write(data, 0, 10);
+        for (int i = 10; i < 100; i++) out.write(data[i]);
+        out.write(data, 100, data.length - 100);
+        CompressionType.ZLIB.finish(out);
+        assertThrowsException(() -> out.write(1), IOException.class);
+
+        InputStream in = CompressionType.ZLIB.decompress(new ByteArrayInputStream(baos.toByteArray()));
+        byte[] read = new byte[data.length];
+        for (int i = 0; i < 5; i++) read[i] = (byte) in.read();
+        int pos = 5;
+        while (pos < read.length) {
+            int r = in.read(read, pos, Math.min(CodecPool.SCRATCH_SIZE * 2, read.length - pos));
+            assertTrue(r > 0);
+            pos += r;
+        }
+        assertEquals(-1, in.read());
+        assertTrue(Arrays.equals(data, read));
+
+        CompressionType.ZLIB.release(in);
+        assertThrowsException(() -> { in.read(); }, IOException.class);
+        assertThrowsNoException(() -> CompressionType.ZLIB.release(in));
+    }
+
+    public void testBuffer_isReused() {
+        CodecPool.Buffer buffer = CodecPool.acquireBuffer();
+        buffer.write(42);
+        assertEquals(1, buffer.size());
+        assertEquals(42, buffer.array()[0]);
+        CodecPool.release(buffer);
+
+        CodecPool.Buffer again = CodecPool.acquireBuffer();
+        assertSame(buffer, again);
+        assertEquals(0, again.size());
+        CodecPool.release(again);
+    }
+
+    public void testBuffer_oversizedBuffersAreNotPooled() {
+        CodecPool.Buffer buffer = CodecPool.acquireBuffer();
+        buffer.write(new byte[CodecPool.MAX_POOLED_BUFFER_CAPACITY + 1], 0, CodecPool.MAX_POOLED_BUFFER_CAPACITY + 1);
+        CodecPool.release(buffer);
+        CodecPool.Buffer next = CodecPool.acquireBuffer();
+        assertNotSame(buffer, next);
+        CodecPool.release(next);
+    }
+
+    public void testArrayCodec_onePerThreadAndByteOrder() throws Exception {
+        PrimitiveArrayCodec big = CodecPool.arrayCodec(ByteOrder.BIG_ENDIAN);
+        PrimitiveArrayCodec little = CodecPool.arrayCodec(ByteOrder.LITTLE_ENDIAN);
+        assertNotSame(big, little);
+        // streams don't allocate their own
+        BinaryNbtHelpers.deserializeBytes(BinaryNbtHelpers.serializeAsBytes(sampleTag(), CompressionType.NONE), CompressionType.NONE);
+        assertSame(big, CodecPool.arrayCodec(ByteOrder.BIG_ENDIAN));
+        assertSame(little, CodecPool.arrayCodec(ByteOrder.LITTLE_ENDIAN));
+
+        final PrimitiveArrayCodec[] other = new PrimitiveArrayCodec[1];
+        Thread thread = new Thread(() -> other[0] = CodecPool.arrayCodec(ByteOrder.BIG_ENDIAN));
+        thread.start();
+        thread.join();
+        assertNotNull(other[0]);
+        assertNotSame(big, other[0]);
+    }
+}
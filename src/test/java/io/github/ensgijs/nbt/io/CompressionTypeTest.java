@@ -1,13 +1,111 @@
 package io.github.ensgijs.nbt.io;
 
-import junit.framework.TestCase;
+import io.github.ensgijs.nbt.NbtTestCase;
 
-public class CompressionTypeTest extends TestCase {
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+public class CompressionTypeTest extends NbtTestCase {
 
 	public void testGetFromID() {
 		assertEquals(CompressionType.NONE, CompressionType.getFromID(CompressionType.NONE.getID()));
 		assertEquals(CompressionType.GZIP, CompressionType.getFromID(CompressionType.GZIP.getID()));
 		assertEquals(CompressionType.ZLIB, CompressionType.getFromID(CompressionType.ZLIB.getID()));
+		assertEquals(CompressionType.UNCOMPRESSED, CompressionType.getFromID((byte) 3));
+		assertEquals(CompressionType.LZ4, CompressionType.getFromID((byte) 4));
 		assertNull(CompressionType.getFromID((byte) -1));
 	}
+
+	public void testCompressionCodec_builtInsAreRegistered() {
+		for (CompressionType type : CompressionType.values()) {
+			assertSame(type, CompressionCodec.getFromID(type.getID()));
+		}
+		assertNull(CompressionCodec.getFromID((byte) -1));
+	}
+
+	private static CompressionCodec codec(int id) {
+		return new CompressionCodec() {
+			@Override
+			public byte getID() {
+				return (byte) id;
+			}
+
+			@Override
+			public OutputStream compress(OutputStream out) {
+				return out;
+			}
+
+			@Override
+			public InputStream decompress(InputStream in) {
+				return in;
+			}
+		};
+	}
+
+	public void testCompressionCodec_registerCustom() {
+		CompressionCodec custom = codec(CompressionCodec.CUSTOM_ID);
+		try {
+			CompressionCodec.register(custom);
+			CompressionCodec.register(custom);  // re-registering the same instance is a no-op
+			assertSame(custom, CompressionCodec.getFromID(CompressionCodec.CUSTOM_ID));
+			assertTrue(CompressionCodec.registered().contains(custom));
+			assertThrowsIllegalArgumentException(() -> CompressionCodec.register(codec(CompressionCodec.CUSTOM_ID)));
+		} finally {
+			assertTrue(CompressionCodec.unregister(CompressionCodec.CUSTOM_ID));
+		}
+		assertNull(CompressionCodec.getFromID(CompressionCodec.CUSTOM_ID));
+		assertFalse(CompressionCodec.unregister(CompressionCodec.CUSTOM_ID));
+	}
+
+	public void testCompressionCodec_registerRejectsInvalid() {
+		assertThrowsIllegalArgumentException(() -> CompressionCodec.register(codec(2)));
+		assertThrowsIllegalArgumentException(() -> CompressionCodec.register(codec(128)));
+		assertThrowsIllegalArgumentException(() -> CompressionCodec.unregister(CompressionType.LZ4.getID()));
+		assertSame(CompressionType.ZLIB, CompressionCodec.getFromID((byte) 2));
+	}
+
+	private static byte[] roundTrip(CompressionCodec codec, byte[] data, ByteArrayOutputStream compressed) throws IOException {
+		OutputStream out = codec.compress(compressed);
+		out.write(data);
+		codec.finish(out);
+		InputStream in = CompressionCodec.getFromID(codec.getID()).decompress(new ByteArrayInputStream(compressed.toByteArray()));
+		return in.readAllBytes();
+	}
+
+	public void testRoundTrip_allTypes() throws IOException {
+		byte[] data = new byte[100_000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ((i * 7) % 13 + (i / 1000));
+		}
+		for (CompressionType type : CompressionType.values()) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			assertTrue(type.name(), Arrays.equals(data, roundTrip(type, data, compressed)));
+			if (type != CompressionType.NONE && type != CompressionType.UNCOMPRESSED) {
+				assertTrue(type.name(), compressed.size() < data.length);
+			}
+		}
+	}
+
+	public void testZlibLevel() throws IOException {
+		byte[] data = new byte[200_000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (Integer.bitCount(i) * 31 + (i % 251 == 0 ? i : 0));
+		}
+		ByteArrayOutputStream fast = new ByteArrayOutputStream();
+		ByteArrayOutputStream best = new ByteArrayOutputStream();
+		ByteArrayOutputStream none = new ByteArrayOutputStream();
+		assertTrue(Arrays.equals(data, roundTrip(CompressionType.zlib(Deflater.BEST_SPEED), data, fast)));
+		assertTrue(Arrays.equals(data, roundTrip(CompressionType.zlib(Deflater.BEST_COMPRESSION), data, best)));
+		assertTrue(Arrays.equals(data, roundTrip(CompressionType.zlib(Deflater.NO_COMPRESSION), data, none)));
+		assertTrue(best.size() <= fast.size());
+		assertTrue(none.size() > data.length);
+		assertEquals(CompressionType.ZLIB.getID(), CompressionType.zlib(5).getID());
+		assertThrowsIllegalArgumentException(() -> CompressionType.zlib(10));
+		assertThrowsIllegalArgumentException(() -> CompressionType.zlib(-2));
+	}
 }
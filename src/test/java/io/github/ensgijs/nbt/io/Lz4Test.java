@@ -0,0 +1,163 @@
+package io.github.ensgijs.nbt.io;
+
+import io.github.ensgijs.nbt.NbtTestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+public class Lz4Test extends NbtTestCase {
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] repetitive(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) ("minecraft:stone".charAt(i % 15) + (i / 997));
+        }
+        return data;
+    }
+
+    private static byte[] random(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    public void testXxHash32_referenceValues() {
+        assertEquals(0x02CC5D05, Lz4.xxHash32(new byte[0], 0, 0, 0));
+        assertEquals(0x550D7456, Lz4.xxHash32(ascii("a"), 0, 1, 0));
+        assertEquals(0x32D153FF, Lz4.xxHash32(ascii("abc"), 0, 3, 0));
+        byte[] data = ascii("Nobody inspects the spammish repetition");
+        assertEquals(0xE2293B2F, Lz4.xxHash32(data, 0, data.length, 0));
+        // offset is honored
+        byte[] padded = ascii("__abc");
+        assertEquals(0x32D153FF, Lz4.xxHash32(padded, 2, 3, 0));
+    }
+
+    public void testDecompress_handCraftedBlocks() throws IOException {
+        byte[] literalsOnly = {0x50, 'h', 'e', 'l', 'l', 'o'};
+        byte[] out = new byte[5];
+        assertEquals(5, Lz4.decompress(literalsOnly, 0, literalsOnly.length, out, 0, out.length));
+        assertTrue(Arrays.equals(ascii("hello"), out));
+
+        // literal 'a', overlapping match (offset 1, length 14), then 5 trailing literals
+        byte[] runOfA = {0x1A, 'a', 0x01, 0x00, 0x50, 'a', 'a', 'a', 'a', 'a'};
+        out = new byte[20];
+        assertEquals(20, Lz4.decompress(runOfA, 0, runOfA.length, out, 0, out.length));
+        assertTrue(Arrays.equals(ascii("a".repeat(20)), out));
+    }
+
+    public void testDecompress_malformedBlocksThrow() {
+        byte[] out = new byte[64];
+        // match offset of zero
+        assertThrowsException(() -> Lz4.decompress(new byte[] {0x10, 'a', 0x00, 0x00, 0x00}, 0, 5, out, 0, out.length), IOException.class);
+        // match offset reaches before the start of the output
+        assertThrowsException(() -> Lz4.decompress(new byte[] {0x10, 'a', 0x02, 0x00, 0x00}, 0, 5, out, 0, out.length), IOException.class);
+        // literals run past the end of the input
+        assertThrowsException(() -> Lz4.decompress(new byte[] {0x50, 'a', 'b'}, 0, 3, out, 0, out.length), IOException.class);
+        // output too small
+        assertThrowsException(() -> Lz4.decompress(new byte[] {0x50, 'h', 'e', 'l', 'l', 'o'}, 0, 6, out, 0, 4), IOException.class);
+        // empty input
+        assertThrowsException(() -> Lz4.decompress(new byte[0], 0, 0, out, 0, out.length), IOException.class);
+    }
+
+    private static void assertBlockRoundTrip(byte[] data) throws IOException {
+        byte[] compressed = new byte[Lz4.maxCompressedLength(data.length) + 3];
+        int compressedLen = Lz4.compress(data, 0, data.length, compressed, 3);
+        assertTrue(compressedLen <= Lz4.maxCompressedLength(data.length));
+        byte[] out = new byte[data.length];
+        assertEquals(data.length, Lz4.decompress(compressed, 3, compressedLen, out, 0, out.length));
+        assertTrue("length " + data.length, Arrays.equals(data, out));
+    }
+
+    public void testCompress_roundTrip() throws IOException {
+        for (int len = 0; len < 100; len++) {
+            assertBlockRoundTrip(repetitive(len));
+            assertBlockRoundTrip(random(len, len));
+        }
+        assertBlockRoundTrip(repetitive(70_000));
+        assertBlockRoundTrip(random(70_000, 42));
+        assertBlockRoundTrip(new byte[200_000]);
+    }
+
+    public void testCompress_compressesRepetitiveData() {
+        byte[] data = repetitive(64 * 1024);
+        byte[] compressed = new byte[Lz4.maxCompressedLength(data.length)];
+        assertTrue(Lz4.compress(data, 0, data.length, compressed, 0) < data.length / 4);
+    }
+
+    private static byte[] streamCompress(byte[] data, int blockSize, boolean byteAtATime) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Lz4BlockOutputStream out = new Lz4BlockOutputStream(baos, blockSize);
+        if (byteAtATime) {
+            for (byte b : data) out.write(b);
+        } else {
+            out.write(data);
+        }
+        out.close();
+        return baos.toByteArray();
+    }
+
+    public void testBlockStream_roundTrip() throws IOException {
+        for (byte[] data : new byte[][] {new byte[0], ascii("hello"), repetitive(200_000), random(150_000, 7)}) {
+            for (int blockSize : new int[] {64, 1 << 16}) {
+                byte[] compressed = streamCompress(data, blockSize, false);
+                assertTrue(Arrays.equals(compressed, streamCompress(data, blockSize, true)));
+                byte[] decompressed = new Lz4BlockInputStream(new ByteArrayInputStream(compressed)).readAllBytes();
+                assertTrue(Arrays.equals(data, decompressed));
+            }
+        }
+    }
+
+    public void testBlockStream_format() throws IOException {
+        byte[] compressed = streamCompress(ascii("hello"), Lz4BlockOutputStream.DEFAULT_BLOCK_SIZE, false);
+        // one raw (incompressible) block of 5 bytes followed by the empty end of stream block
+        assertEquals(21 + 5 + 21, compressed.length);
+        assertEquals("LZ4Block", new String(compressed, 0, 8, StandardCharsets.US_ASCII));
+        assertEquals(0x16, compressed[8]);  // raw method | block size exponent (64KB = 2^(10 + 6))
+        assertEquals(5, Lz4.readIntLE(compressed, 9));
+        assertEquals(5, Lz4.readIntLE(compressed, 13));
+        assertEquals(Lz4.xxHash32(ascii("hello"), 0, 5, 0x9747b28c) & 0xFFFFFFF, Lz4.readIntLE(compressed, 17));
+        assertEquals("hello", new String(compressed, 21, 5, StandardCharsets.US_ASCII));
+        assertEquals("LZ4Block", new String(compressed, 26, 8, StandardCharsets.US_ASCII));
+        assertEquals(0x16, compressed[34]);
+        for (int i = 35; i < compressed.length; i++) {
+            assertEquals(0, compressed[i]);
+        }
+
+        compressed = streamCompress(repetitive(1000), Lz4BlockOutputStream.DEFAULT_BLOCK_SIZE, false);
+        assertEquals(0x26, compressed[8]);  // lz4 method
+        assertEquals(1000, Lz4.readIntLE(compressed, 13));
+    }
+
+    public void testBlockStream_corruptionIsDetected() throws IOException {
+        final byte[] compressed = streamCompress(repetitive(10_000), Lz4BlockOutputStream.DEFAULT_BLOCK_SIZE, false);
+
+        byte[] badChecksum = compressed.clone();
+        badChecksum[17] ^= 1;
+        assertThrowsException(() -> new Lz4BlockInputStream(new ByteArrayInputStream(badChecksum)).readAllBytes(), IOException.class);
+
+        byte[] badMagic = compressed.clone();
+        badMagic[0] = 'X';
+        assertThrowsException(() -> new Lz4BlockInputStream(new ByteArrayInputStream(badMagic)).readAllBytes(), IOException.class);
+
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length - 21);
+        assertThrowsException(() -> new Lz4BlockInputStream(new ByteArrayInputStream(truncated)).readAllBytes(), EOFException.class);
+    }
+
+    public void testBlockStream_writeAfterFinishThrows() throws IOException {
+        Lz4BlockOutputStream out = new Lz4BlockOutputStream(new ByteArrayOutputStream());
+        out.write(1);
+        out.finish();
+        assertThrowsException(() -> out.write(2), IllegalStateException.class);
+        assertThrowsException(out::finish, IllegalStateException.class);
+        assertThrowsNoException(out::close);
+    }
+}
@@ -0,0 +1,177 @@
+package io.github.ensgijs.nbt.io;
+
+import io.github.ensgijs.nbt.NbtTestCase;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.io.RandomAccessMcaFile;
+import io.github.ensgijs.nbt.query.TagSelector;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.ListTag;
+import io.github.ensgijs.nbt.tag.Tag;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class NbtEventReaderTest extends NbtTestCase {
+
+    /** Records every event, optionally skipping compounds and lists whose name starts with "skip". */
+    private static class TraceHandler implements NbtEventHandler {
+        final StringBuilder sb = new StringBuilder();
+        final boolean skip;
+        String lastName;
+
+        TraceHandler(boolean skip) {
+            this.skip = skip;
+        }
+
+        @Override public void name(String name) { lastName = name; sb.append(name).append('='); }
+        @Override public boolean startCompound() {
+            if (skip && lastName != null && lastName.startsWith("skip")) {
+                sb.append("<skipped>;");
+                lastName = null;
+                return false;
+            }
+            sb.append('{');
+            return true;
+        }
+        @Override public void endCompound() { sb.append("};"); }
+        @Override public boolean startList(byte elementType, int length) {
+            if (skip && lastName != null && lastName.startsWith("skip")) {
+                sb.append("<skipped>;");
+                lastName = null;
+                return false;
+            }
+            sb.append('[').append(elementType).append('x').append(length).append(':');
+            return true;
+        }
+        @Override public void endList() { sb.append("];"); }
+        @Override public void byteValue(byte value) { sb.append(value).append("b;"); }
+        @Override public void shortValue(short value) { sb.append(value).append("s;"); }
+        @Override public void intValue(int value) { sb.append(value).append(';'); }
+        @Override public void longValue(long value) { sb.append(value).append("L;"); }
+        @Override public void floatValue(float value) { sb.append(value).append("f;"); }
+        @Override public void doubleValue(double value) { sb.append(value).append("d;"); }
+        @Override public void stringValue(String value) { sb.append('"').append(value).append("\";"); }
+        @Override public void byteArray(byte[] values, int length) { sb.append("B").append(Arrays.toString(Arrays.copyOf(values, length))).append(';'); }
+        @Override public void intArray(int[] values, int length) { sb.append("I").append(Arrays.toString(Arrays.copyOf(values, length))).append(';'); }
+        @Override public void longArray(long[] values, int length) { sb.append("L").append(Arrays.toString(Arrays.copyOf(values, length))).append(';'); }
+    }
+
+    private static CompoundTag sampleTag() {
+        CompoundTag tag = new CompoundTag();
+        tag.putByte("b", (byte) 1);
+        tag.putShort("s", (short) 2);
+        tag.putInt("i", 3);
+        tag.putLong("l", 4);
+        tag.putFloat("f", 5.5f);
+        tag.putDouble("d", 6.5);
+        tag.putString("str", "text");
+        tag.putByteArray("ba", new byte[] {1, 2});
+        tag.putIntArray("ia", new int[] {3, 4, 5});
+        tag.putLongArray("la", new long[] {6});
+        tag.putIntArray("ia2", new int[] {7});
+        CompoundTag skipped = tag.getOrCreateCompoundTag("skipCompound");
+        skipped.putString("x", "y");
+        skipped.putFloatArrayAsTagList("list", 1, 2, 3);
+        tag.putStringsAsTagList("skipList", Arrays.asList("a", "b"));
+        ListTag<CompoundTag> list = new ListTag<>(CompoundTag.class);
+        list.add(new CompoundTag());
+        list.get(0).putBoolean("z", true);
+        tag.put("list", list);
+        return tag;
+    }
+
+    private static final String EXPECTED_TRACE = "root={b=1b;s=2s;i=3;l=4L;f=5.5f;d=6.5d;str=\"text\";ba=B[1, 2];"
+            + "ia=I[3, 4, 5];la=L[6];ia2=I[7];skipCompound={x=\"y\";list=[5x3:1.0f;2.0f;3.0f;];};skipList=[8x2:\"a\";\"b\";];"
+            + "list=[10x1:{z=1b;};];};";
+
+    private static byte[] bigEndian(CompoundTag tag) throws IOException {
+        return BinaryNbtHelpers.serializeAsBytes(new NamedTag("root", tag), CompressionType.NONE);
+    }
+
+    private static byte[] littleEndian(CompoundTag tag) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new LittleEndianNbtOutputStream(baos).writeTag(new NamedTag("root", tag), Tag.DEFAULT_MAX_DEPTH);
+        return baos.toByteArray();
+    }
+
+    private static String trace(byte[] bytes, boolean bigEndian, boolean skip) throws IOException {
+        TraceHandler handler = new TraceHandler(skip);
+        if (bigEndian) {
+            new BigEndianNbtInputStream(new ByteArrayInputStream(bytes)).readEvents(handler, Tag.DEFAULT_MAX_DEPTH);
+        } else {
+            new LittleEndianNbtInputStream(new ByteArrayInputStream(bytes)).readEvents(handler, Tag.DEFAULT_MAX_DEPTH);
+        }
+        return handler.sb.toString();
+    }
+
+    public void testReadEvents_bigEndian() throws IOException {
+        assertEquals(EXPECTED_TRACE, trace(bigEndian(sampleTag()), true, false));
+    }
+
+    public void testReadEvents_littleEndian() throws IOException {
+        assertEquals(EXPECTED_TRACE, trace(littleEndian(sampleTag()), false, false));
+    }
+
+    public void testReadEvents_skip() throws IOException {
+        String expected = EXPECTED_TRACE
+                .replace("{x=\"y\";list=[5x3:1.0f;2.0f;3.0f;];};", "<skipped>;")
+                .replace("[8x2:\"a\";\"b\";];", "<skipped>;");
+        assertEquals(expected, trace(bigEndian(sampleTag()), true, true));
+        assertEquals(expected, trace(littleEndian(sampleTag()), false, true));
+    }
+
+    public void testReadEvents_consumesExactlyOneTag() throws IOException {
+        byte[] bytes = bigEndian(sampleTag());
+        ByteArrayInputStream in = new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length + 3));
+        new BigEndianNbtInputStream(in).readEvents(new NbtEventHandler() {}, Tag.DEFAULT_MAX_DEPTH);
+        assertEquals(3, in.available());
+    }
+
+    public void testReadEvents_maxDepth() throws IOException {
+        byte[] bytes = bigEndian(sampleTag());
+        assertThrowsException(() -> new BigEndianNbtInputStream(new ByteArrayInputStream(bytes))
+                .readEvents(new NbtEventHandler() {}, 2), MaxDepthReachedException.class);
+        // max depth still applies to skipped data
+        assertThrowsException(() -> new BigEndianNbtInputStream(new ByteArrayInputStream(bytes))
+                .readEvents(new TraceHandler(true), 2), MaxDepthReachedException.class);
+        assertThrowsNoException(() -> new BigEndianNbtInputStream(new ByteArrayInputStream(bytes))
+                .readEvents(new NbtEventHandler() {}, 3));
+    }
+
+    private static int countCompounds(Tag<?> tag) {
+        if (tag instanceof CompoundTag compound) {
+            int count = 1;
+            for (Tag<?> value : compound.values()) count += countCompounds(value);
+            return count;
+        }
+        if (tag instanceof ListTag<?> list) {
+            int count = 0;
+            for (Tag<?> value : list) count += countCompounds(value);
+            return count;
+        }
+        return 0;
+    }
+
+    public void testReadEvents_countsChunkData() throws IOException {
+        File file = copyResourceToTmp("1_20_4/region/r.-3.-3.mca");
+        CompoundTag chunk = null;
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "r")) {
+            for (int i = 0; chunk == null; i++) {
+                chunk = mca.readTag(i, TagSelector.ALL);
+            }
+        }
+        int[] counts = new int[1];
+        new BigEndianNbtInputStream(new ByteArrayInputStream(bigEndian(chunk))).readEvents(new NbtEventHandler() {
+            @Override
+            public boolean startCompound() {
+                counts[0]++;
+                return true;
+            }
+        }, Tag.DEFAULT_MAX_DEPTH);
+        assertTrue(counts[0] > 1);
+        assertEquals(countCompounds(chunk), counts[0]);
+    }
+}
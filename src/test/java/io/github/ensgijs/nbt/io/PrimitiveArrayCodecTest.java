@@ -0,0 +1,105 @@
+package io.github.ensgijs.nbt.io;
+
+import io.github.ensgijs.nbt.NbtTestCase;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.Tag;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+public class PrimitiveArrayCodecTest extends NbtTestCase {
+
+    private static final int[] SIZES = {0, 1, 7, PrimitiveArrayCodec.SCRATCH_SIZE / 8, PrimitiveArrayCodec.SCRATCH_SIZE / 4 + 3, 5000};
+
+    public void testWriteMatchesDataOutputStream() throws IOException {
+        Random rand = new Random(42);
+        PrimitiveArrayCodec codec = new PrimitiveArrayCodec(ByteOrder.BIG_ENDIAN);
+        for (int size : SIZES) {
+            long[] longs = rand.longs(size).toArray();
+            int[] ints = rand.ints(size).toArray();
+
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(expected);
+            for (long l : longs) dos.writeLong(l);
+            for (int i : ints) dos.writeInt(i);
+
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(actual);
+            codec.writeLongs(out, longs);
+            codec.writeInts(out, ints);
+            assertTrue(Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(actual.toByteArray()));
+            long[] longsRead = new long[size];
+            int[] intsRead = new int[size];
+            codec.readLongs(in, longsRead, size);
+            codec.readInts(in, intsRead, size);
+            assertTrue(Arrays.equals(longs, longsRead));
+            assertTrue(Arrays.equals(ints, intsRead));
+            assertEquals(0, in.available());
+        }
+    }
+
+    public void testReadShortsFloatsDoubles() throws IOException {
+        Random rand = new Random(3);
+        PrimitiveArrayCodec codec = new PrimitiveArrayCodec(ByteOrder.BIG_ENDIAN);
+        for (int size : SIZES) {
+            short[] shorts = new short[size];
+            float[] floats = new float[size];
+            double[] doubles = rand.doubles(size).toArray();
+            for (int i = 0; i < size; i++) {
+                shorts[i] = (short) rand.nextInt();
+                floats[i] = rand.nextFloat();
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(bytes);
+            for (short s : shorts) dos.writeShort(s);
+            for (float f : floats) dos.writeFloat(f);
+            for (double d : doubles) dos.writeDouble(d);
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+            short[] shortsRead = new short[size];
+            float[] floatsRead = new float[size];
+            double[] doublesRead = new double[size];
+            codec.readShorts(in, shortsRead, size);
+            codec.readFloats(in, floatsRead, size);
+            codec.readDoubles(in, doublesRead, size);
+            assertTrue(Arrays.equals(shorts, shortsRead));
+            assertTrue(Arrays.equals(floats, floatsRead));
+            assertTrue(Arrays.equals(doubles, doublesRead));
+            assertEquals(0, in.available());
+        }
+    }
+
+    public void testReadTruncated() {
+        PrimitiveArrayCodec codec = new PrimitiveArrayCodec(ByteOrder.BIG_ENDIAN);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(new byte[8 * 3 - 1]));
+        assertThrowsException(() -> codec.readLongs(in, new long[3], 3), EOFException.class);
+    }
+
+    public void testRoundTripBothByteOrders() throws IOException {
+        Random rand = new Random(7);
+        CompoundTag tag = new CompoundTag();
+        for (int size : SIZES) {
+            tag.putLongArray("l" + size, rand.longs(size).toArray());
+            tag.putIntArray("i" + size, rand.ints(size).toArray());
+        }
+        NamedTag named = new NamedTag("root", tag);
+
+        byte[] be = BinaryNbtHelpers.serializeAsBytes(named, CompressionType.NONE);
+        assertEquals(tag, new BigEndianNbtInputStream(new ByteArrayInputStream(be)).readTag(Tag.DEFAULT_MAX_DEPTH).getTag());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new LittleEndianNbtOutputStream(baos).writeTag(named, Tag.DEFAULT_MAX_DEPTH);
+        byte[] le = baos.toByteArray();
+        assertEquals(be.length, le.length);
+        assertEquals(tag, new LittleEndianNbtInputStream(new ByteArrayInputStream(le)).readTag(Tag.DEFAULT_MAX_DEPTH).getTag());
+    }
+}
@@ -0,0 +1,100 @@
+package io.github.ensgijs.nbt.io;
+
+import io.github.ensgijs.nbt.NbtTestCase;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.ListTag;
+import io.github.ensgijs.nbt.tag.Tag;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.charset.StandardCharsets;
+
+public class StringCacheTest extends NbtTestCase {
+
+    private static CompoundTag sampleTag() {
+        CompoundTag tag = new CompoundTag();
+        ListTag<CompoundTag> palette = new ListTag<>(CompoundTag.class);
+        for (int i = 0; i < 4; i++) {
+            CompoundTag entry = new CompoundTag();
+            entry.putString("Name", "minecraft:stone");
+            entry.getOrCreateCompoundTag("Properties").putString("facing", "north");
+            palette.add(entry);
+        }
+        tag.put("palette", palette);
+        tag.putString("unicode", "café \u0000 😀");
+        tag.putString("long", "x".repeat(StringCache.MAX_CACHED_LENGTH + 1));
+        return tag;
+    }
+
+    public void testCapacity() {
+        assertEquals(8, new StringCache(5).capacity());
+        assertEquals(1, new StringCache(1).capacity());
+        assertThrowsIllegalArgumentException(() -> new StringCache(0));
+    }
+
+    public void testLookup() {
+        StringCache cache = new StringCache(16);
+        byte[] bytes = "Name".getBytes(StandardCharsets.US_ASCII);
+        String first = cache.lookup(bytes, bytes.length);
+        assertEquals("Name", first);
+        assertSame(first, cache.lookup("Name".getBytes(StandardCharsets.US_ASCII), 4));
+        assertEquals(1, cache.size());
+        assertEquals("Nam", cache.lookup(bytes, 3));
+        assertNull(cache.lookup("café".getBytes(StandardCharsets.UTF_8), 5));
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    public void testDecodeModifiedUtf8MatchesDataInputStream() throws IOException {
+        for (String s : new String[] {"", "abc", "café", "\u0000", "😀", "€ÿ߿ࠀ"}) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            new DataOutputStream(baos).writeUTF(s);
+            byte[] encoded = baos.toByteArray();
+            byte[] payload = new byte[encoded.length - 2];
+            System.arraycopy(encoded, 2, payload, 0, payload.length);
+            assertEquals(s, StringCache.decodeModifiedUtf8(payload, payload.length));
+            assertEquals(s, new StringCache(4).readModifiedUtf8(
+                    new DataInputStream(new ByteArrayInputStream(encoded)), new byte[StringCache.MAX_CACHED_LENGTH]));
+        }
+        assertThrowsException(() -> StringCache.decodeModifiedUtf8(new byte[] {(byte) 0xC3}, 1), UTFDataFormatException.class);
+        assertThrowsException(() -> StringCache.decodeModifiedUtf8(new byte[] {(byte) 0xFF}, 1), UTFDataFormatException.class);
+    }
+
+    public void testBigEndianReadSharesStrings() throws IOException {
+        CompoundTag tag = sampleTag();
+        byte[] bytes = BinaryNbtHelpers.serializeAsBytes(new NamedTag("root", tag), CompressionType.NONE);
+        StringCache cache = new StringCache(64);
+        CompoundTag read = (CompoundTag) new BinaryNbtDeserializer(CompressionType.NONE).setStringCache(cache)
+                .fromStream(new ByteArrayInputStream(bytes)).getTag();
+        assertEquals(tag, read);
+        assertSharedStrings(read);
+
+        CompoundTag read2 = (CompoundTag) new BigEndianNbtInputStream(new ByteArrayInputStream(bytes))
+                .setStringCache(cache).readTag(Tag.DEFAULT_MAX_DEPTH).getTag();
+        assertSame(read.getCompoundList("palette").get(0).getString("Name"),
+                read2.getCompoundList("palette").get(0).getString("Name"));
+    }
+
+    public void testLittleEndianReadSharesStrings() throws IOException {
+        CompoundTag tag = sampleTag();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new LittleEndianNbtOutputStream(baos).writeTag(new NamedTag("root", tag), Tag.DEFAULT_MAX_DEPTH);
+        CompoundTag read = (CompoundTag) new LittleEndianNbtInputStream(new ByteArrayInputStream(baos.toByteArray()))
+                .setStringCache(new StringCache(64)).readTag(Tag.DEFAULT_MAX_DEPTH).getTag();
+        assertEquals(tag, read);
+        assertSharedStrings(read);
+    }
+
+    private static void assertSharedStrings(CompoundTag read) {
+        ListTag<CompoundTag> palette = read.getCompoundList("palette");
+        CompoundTag a = palette.get(0);
+        CompoundTag b = palette.get(3);
+        assertSame(a.getString("Name"), b.getString("Name"));
+        assertSame(a.keySet().iterator().next(), b.keySet().iterator().next());
+        assertSame(a.getCompoundTag("Properties").getString("facing"), b.getCompoundTag("Properties").getString("facing"));
+    }
+}
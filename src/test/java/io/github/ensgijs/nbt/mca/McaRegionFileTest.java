@@ -1,5 +1,7 @@
 package io.github.ensgijs.nbt.mca;
 
+import io.github.ensgijs.nbt.io.CompressionType;
+import io.github.ensgijs.nbt.mca.io.ExternalChunkFile;
 import io.github.ensgijs.nbt.mca.io.LoadFlags;
 import io.github.ensgijs.nbt.mca.io.McaFileHelpers;
 import io.github.ensgijs.nbt.mca.util.ChunkIterator;
@@ -9,6 +11,7 @@ import io.github.ensgijs.nbt.tag.ListTag;
 
 import java.io.*;
 import java.util.Objects;
+import java.util.Random;
 
 public class McaRegionFileTest extends McaTestCase {
 
@@ -628,4 +631,75 @@ public class McaRegionFileTest extends McaTestCase {
 		assertNull(chunk.getSection(maxY - 1));
 		assertNotNull(chunk.getSection(maxY - 2));
 	}
+
+	public void testInternStrings_matchesDefaultDecoding() {
+		File file = copyResourceToTmp("1_20_4/region/r.-3.-3.mca");
+		McaRegionFile expected = assertThrowsNoException(() -> McaFileHelpers.read(file, LoadFlags.LOAD_ALL_DATA));
+		McaRegionFile interned = assertThrowsNoException(() -> McaFileHelpers.read(file, LoadFlags.LOAD_ALL_DATA | LoadFlags.INTERN_STRINGS));
+		String status = null;
+		for (int i = 0; i < 1024; i++) {
+			if (expected.getChunk(i) == null) continue;
+			assertEquals(expected.getChunk(i).getHandle(), interned.getChunk(i).getHandle());
+			String s = interned.getChunk(i).getHandle().getString("Status");
+			if (status != null) assertSame(status, s);
+			status = s;
+		}
+		assertNotNull(status);
+	}
+
+	public void testLazyTagDecoding_matchesEagerDecoding() {
+		File file = copyResourceToTmp("1_20_4/region/r.-3.-3.mca");
+		McaRegionFile eager = assertThrowsNoException(() -> McaFileHelpers.read(file));
+		McaRegionFile lazy = assertThrowsNoException(() -> McaFileHelpers.read(file, LoadFlags.LOAD_ALL_DATA | LoadFlags.LAZY_TAG_DECODING));
+		McaRegionFile heightmapsOnly = assertThrowsNoException(() -> McaFileHelpers.read(file, LoadFlags.HEIGHTMAPS | LoadFlags.LAZY_TAG_DECODING));
+		int compared = 0;
+		for (int i = 0; i < 1024; i++) {
+			TerrainChunk expected = eager.getChunk(i);
+			if (expected == null) {
+				assertNull(lazy.getChunk(i));
+				continue;
+			}
+			assertEquals(expected.getHeightMaps(), heightmapsOnly.getChunk(i).getHeightMaps());
+			assertNull(heightmapsOnly.getChunk(i).getSection(0));
+			assertEquals(expected.getSection(0).getBlockStates().toCompoundTag(), lazy.getChunk(i).getSection(0).getBlockStates().toCompoundTag());
+			assertEquals(expected.updateHandle(), lazy.getChunk(i).updateHandle());
+			compared++;
+		}
+		assertTrue(compared > 0);
+	}
+
+	public void testWrite_oversizedChunkRoundTrip() {
+		McaRegionFile mcaFile = assertThrowsNoException(() -> McaFileHelpers.read(copyResourceToTmp("1_20_4/region/r.-3.-3.mca"), LoadFlags.RAW));
+		int index = 0;
+		while (mcaFile.getChunk(index) == null) index++;
+		TerrainChunk chunk = mcaFile.getChunk(index);
+		byte[] payload = new byte[1100 * 1024];
+		new Random(42).nextBytes(payload);  // random data doesn't compress
+		chunk.getHandle().putByteArray("Payload", payload);
+
+		File tmpFile = getNewTmpFile("oversized/region/r.-3.-3.mca");
+		int written = assertThrowsNoException(() -> McaFileHelpers.write(mcaFile, tmpFile));
+		File external = ExternalChunkFile.of(tmpFile.getParentFile(), chunk.getChunkX(), chunk.getChunkZ());
+		assertTrue(external.length() > 1024 * 1024);
+		assertTrue(tmpFile.length() < 1024 * 1024);
+
+		McaRegionFile again = assertThrowsNoException(() -> McaFileHelpers.read(tmpFile, LoadFlags.RAW));
+		int read = 0;
+		for (int i = 0; i < 1024; i++) {
+			if (mcaFile.getChunk(i) == null) {
+				assertNull(again.getChunk(i));
+				continue;
+			}
+			assertEquals(mcaFile.getChunk(i).getHandle(), again.getChunk(i).getHandle());
+			read++;
+		}
+		assertEquals(written, read);
+
+		// without an external chunk directory the chunk can't be written rather than being silently corrupted
+		assertThrowsException(() -> {
+			try (RandomAccessFile raf = new RandomAccessFile(getNewTmpFile("oversized/no_dir/r.-3.-3.mca"), "rw")) {
+				mcaFile.serialize(raf, CompressionType.ZLIB, false);
+			}
+		}, IOException.class);
+	}
 }
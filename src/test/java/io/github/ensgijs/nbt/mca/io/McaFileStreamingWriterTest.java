@@ -1,5 +1,6 @@
 package io.github.ensgijs.nbt.mca.io;
 
+import io.github.ensgijs.nbt.io.CompressionType;
 import io.github.ensgijs.nbt.mca.McaRegionFile;
 import io.github.ensgijs.nbt.mca.McaTestCase;
 import io.github.ensgijs.nbt.mca.TerrainChunk;
@@ -7,7 +8,14 @@ import io.github.ensgijs.nbt.util.IntPointXZ;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class McaFileStreamingWriterTest extends McaTestCase {
     public void testWriteTerrainChunk() throws IOException {
@@ -55,4 +63,161 @@ public class McaFileStreamingWriterTest extends McaTestCase {
         assertNotNull(mca.getChunk(5, 32 + 3));
         assertEquals(54321678, mca.getChunk(5, 32 + 3).getLastMCAUpdate());
     }
+
+    public void testWriteWithLz4Compression() throws IOException {
+        File file = getNewTmpFile("streaming_writer/region/r.0.0.mca");
+        McaFileStreamingWriter writer = new McaFileStreamingWriter(file);
+        assertEquals(CompressionType.ZLIB, writer.getCompression());
+        assertSame(writer, writer.setCompression(CompressionType.LZ4));
+
+        final TerrainChunk chunk = new TerrainChunk();
+        chunk.setLastMCAUpdate(12345678);
+        chunk.updateHandle(3, 4);
+        writer.write(chunk);
+        writer.close();
+
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "r")) {
+            final int index = McaRegionFile.getChunkIndex(3, 4);
+            assertEquals(CompressionType.LZ4.getID(), mca.readRaw(index)[0]);
+            TerrainChunk chunkIn = mca.read(index);
+            assertEquals(IntPointXZ.XZ(3, 4), chunkIn.getChunkXZ());
+            assertEquals(chunk.getHandle(), chunkIn.getHandle());
+        }
+    }
+
+    private List<TerrainChunk> readFixtureChunks() throws IOException {
+        List<TerrainChunk> chunks = new ArrayList<>();
+        McaFileChunkIterator<TerrainChunk> iter = McaFileChunkIterator.iterate(
+                getResourceFile("1_20_4/region/r.-3.-3.mca"), LoadFlags.LOAD_ALL_DATA, TerrainChunk::new);
+        while (iter.hasNext()) {
+            chunks.add(iter.next());
+        }
+        return chunks;
+    }
+
+    public void testPipelinedWriteMatchesSerialWrite() throws IOException {
+        List<TerrainChunk> chunks = readFixtureChunks();
+        assertTrue(chunks.size() > 1);
+        File serialFile = getNewTmpFile("streaming_writer/serial/r.-3.-3.mca");
+        try (McaFileStreamingWriter writer = new McaFileStreamingWriter(serialFile)) {
+            for (TerrainChunk chunk : chunks) {
+                writer.write(chunk);
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int maxInFlight : new int[] {1, 3, McaFileStreamingWriter.DEFAULT_MAX_IN_FLIGHT_CHUNKS}) {
+                File pipelinedFile = getNewTmpFile("streaming_writer/pipelined" + maxInFlight + "/r.-3.-3.mca");
+                McaFileStreamingWriter writer = new McaFileStreamingWriter(pipelinedFile)
+                        .setExecutor(executor)
+                        .setMaxInFlightChunks(maxInFlight);
+                assertSame(executor, writer.getExecutor());
+                for (TerrainChunk chunk : chunks) {
+                    writer.write(chunk);
+                }
+                writer.close();
+                assertTrue(Arrays.equals(Files.readAllBytes(serialFile.toPath()), Files.readAllBytes(pipelinedFile.toPath())));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testPipelinedWriteRejectsDuplicates() throws IOException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            File file = getNewTmpFile("streaming_writer/dupes/region/r.0.0.mca");
+            McaFileStreamingWriter writer = new McaFileStreamingWriter(file).setExecutor(executor);
+            final TerrainChunk chunk = new TerrainChunk();
+            chunk.setLastMCAUpdate(12345678);
+            chunk.updateHandle(1, 2);
+            writer.write(chunk);
+            final TerrainChunk dupe = new TerrainChunk();
+            dupe.updateHandle(1, 2);
+            assertThrowsException(() -> writer.write(dupe), IOException.class);
+            writer.flush();
+            writer.close();
+            assertThrowsException(() -> writer.write(dupe), IOException.class);
+
+            McaRegionFile mca = McaFileHelpers.readAuto(file);
+            assertEquals(12345678, mca.getChunk(1, 2).getLastMCAUpdate());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static TerrainChunk createChunk(int chunkX, int chunkZ, int payloadSize) {
+        final TerrainChunk chunk = new TerrainChunk();
+        chunk.setLastMCAUpdate(12345678);
+        chunk.updateHandle(chunkX, chunkZ);
+        byte[] payload = new byte[payloadSize];
+        new Random(chunkX * 31L + chunkZ).nextBytes(payload);  // random data doesn't compress
+        chunk.getHandle().putByteArray("Payload", payload);
+        return chunk;
+    }
+
+    public void testWriteOversizedChunk() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            byte[] expectedRegion = null;
+            for (ExecutorService exec : new ExecutorService[] {null, executor}) {
+                File file = getNewTmpFile("streaming_writer/oversized/" + (exec != null) + "/region/r.0.0.mca");
+                List<TerrainChunk> chunks = List.of(
+                        createChunk(0, 0, 100), createChunk(1, 0, 1100 * 1024), createChunk(2, 0, 100));
+                try (McaFileStreamingWriter writer = new McaFileStreamingWriter(file).setExecutor(exec)) {
+                    assertEquals(file.getAbsoluteFile().getParentFile(), writer.getExternalChunkDirectory());
+                    for (TerrainChunk chunk : chunks) {
+                        writer.write(chunk);
+                    }
+                }
+                // header + one sector per chunk, the oversized chunk only leaves a stub behind
+                assertEquals(5 * 4096, Files.size(file.toPath()));
+                File external = ExternalChunkFile.of(file.getParentFile(), 1, 0);
+                assertTrue(external.exists());
+                assertTrue(external.length() > 1024 * 1024);
+                byte[] region = Files.readAllBytes(file.toPath());
+                if (expectedRegion == null) {
+                    expectedRegion = region;
+                } else {
+                    assertTrue(Arrays.equals(expectedRegion, region));
+                }
+
+                try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "r")) {
+                    for (TerrainChunk chunk : chunks) {
+                        assertEquals(chunk.getHandle(), mca.read(chunk.getIndex()).getHandle());
+                    }
+                }
+                McaFileChunkIterator<TerrainChunk> iter = McaFileChunkIterator.iterate(
+                        file, LoadFlags.LOAD_ALL_DATA, TerrainChunk::new);
+                for (TerrainChunk chunk : chunks) {
+                    assertEquals(chunk.getHandle(), iter.next().getHandle());
+                }
+                assertFalse(iter.hasNext());
+                iter.close();
+                McaRegionFile mcaFile = McaFileHelpers.readAuto(file);
+                assertEquals(chunks.get(1).getHandle(), mcaFile.getChunk(1, 0).getHandle());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testWriteOversizedChunk_externalChunkDirectoryUnknown() throws IOException {
+        File file = getNewTmpFile("streaming_writer/oversized_no_dir/region/r.0.0.mca");
+        McaFileStreamingWriter writer = new McaFileStreamingWriter(new RandomAccessFile(file, "rw"));
+        assertNull(writer.getExternalChunkDirectory());
+        assertThrowsException(() -> writer.write(createChunk(1, 0, 1100 * 1024)), IOException.class);
+        // the oversized chunk is never written to the region file, only the header is there
+        assertEquals(2 * 4096, file.length());
+        writer.close();
+    }
+
+    public void testSetMaxInFlightChunks() throws IOException {
+        File file = getNewTmpFile("streaming_writer/args/r.0.0.mca");
+        McaFileStreamingWriter writer = new McaFileStreamingWriter(file);
+        assertEquals(McaFileStreamingWriter.DEFAULT_MAX_IN_FLIGHT_CHUNKS, writer.getMaxInFlightChunks());
+        assertThrowsIllegalArgumentException(() -> writer.setMaxInFlightChunks(0));
+        writer.close();
+    }
 }
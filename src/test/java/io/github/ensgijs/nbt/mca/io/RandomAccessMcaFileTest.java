@@ -1,20 +1,32 @@
 package io.github.ensgijs.nbt.mca.io;
 
+import io.github.ensgijs.nbt.io.CompressionType;
 import io.github.ensgijs.nbt.io.TextNbtParser;
 import io.github.ensgijs.nbt.mca.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertArrayEquals;
 
 import io.github.ensgijs.nbt.mca.io.RandomAccessMcaFile.SectorManager;
 import io.github.ensgijs.nbt.mca.io.RandomAccessMcaFile.SectorManager.SectorBlock;
 import io.github.ensgijs.nbt.util.IntPointXZ;
 import io.github.ensgijs.nbt.mca.util.PalettizedCuboid;
+import io.github.ensgijs.nbt.query.TagSelector;
 import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.ListTag;
 
 public class RandomAccessMcaFileTest extends McaTestCase {
 
@@ -31,60 +43,60 @@ public class RandomAccessMcaFileTest extends McaTestCase {
         sm.sync(sectorTable);
 
         assertEquals(19, sm.appendAtSector);
-        assertEquals(2, sm.freeSectors.size());
-        assertEquals(new SectorBlock(6, 3), sm.freeSectors.get(0));
-        assertEquals(new SectorBlock(13, 5), sm.freeSectors.get(1));
+        assertEquals(2, sm.freeBlockCount());
+        assertEquals(new SectorBlock(6, 3), sm.freeSectors().get(0));
+        assertEquals(new SectorBlock(13, 5), sm.freeSectors().get(1));
 
         // take from first free block
         assertEquals(new SectorBlock(6, 1), sm.allocate(1));
-        assertEquals(2, sm.freeSectors.size());
-        assertEquals(new SectorBlock(7, 2), sm.freeSectors.get(0));
-        assertEquals(new SectorBlock(13, 5), sm.freeSectors.get(1));
+        assertEquals(2, sm.freeBlockCount());
+        assertEquals(new SectorBlock(7, 2), sm.freeSectors().get(0));
+        assertEquals(new SectorBlock(13, 5), sm.freeSectors().get(1));
         assertEquals(19, sm.appendAtSector);
 
         // take from second free block
         assertEquals(new SectorBlock(13, 4), sm.allocate(4));
-        assertEquals(2, sm.freeSectors.size());
-        assertEquals(new SectorBlock(7, 2), sm.freeSectors.get(0));
-        assertEquals(new SectorBlock(17, 1), sm.freeSectors.get(1));
+        assertEquals(2, sm.freeBlockCount());
+        assertEquals(new SectorBlock(7, 2), sm.freeSectors().get(0));
+        assertEquals(new SectorBlock(17, 1), sm.freeSectors().get(1));
         assertEquals(19, sm.appendAtSector);
 
         // no free block big enough - take off the end
         assertEquals(new SectorBlock(19, 4), sm.allocate(4));
-        assertEquals(2, sm.freeSectors.size());
-        assertEquals(new SectorBlock(7, 2), sm.freeSectors.get(0));
-        assertEquals(new SectorBlock(17, 1), sm.freeSectors.get(1));
+        assertEquals(2, sm.freeBlockCount());
+        assertEquals(new SectorBlock(7, 2), sm.freeSectors().get(0));
+        assertEquals(new SectorBlock(17, 1), sm.freeSectors().get(1));
         assertEquals(23, sm.appendAtSector);
 
         // release and merge into second free block
         sm.release(13, 4);
-        assertEquals(2, sm.freeSectors.size());
-        assertEquals(new SectorBlock(7, 2), sm.freeSectors.get(0));
-        assertEquals(new SectorBlock(13, 5), sm.freeSectors.get(1));
+        assertEquals(2, sm.freeBlockCount());
+        assertEquals(new SectorBlock(7, 2), sm.freeSectors().get(0));
+        assertEquals(new SectorBlock(13, 5), sm.freeSectors().get(1));
         assertEquals(23, sm.appendAtSector);
 
         // release and merge into second free block case 2
         sm.release(18, 1);
-        assertEquals(2, sm.freeSectors.size());
-        assertEquals(new SectorBlock(7, 2), sm.freeSectors.get(0));
-        assertEquals(new SectorBlock(13, 6), sm.freeSectors.get(1));
+        assertEquals(2, sm.freeBlockCount());
+        assertEquals(new SectorBlock(7, 2), sm.freeSectors().get(0));
+        assertEquals(new SectorBlock(13, 6), sm.freeSectors().get(1));
         assertEquals(23, sm.appendAtSector);
 
         // release last block which touches the current appendAtSector
         sm.release(19, 4);
         assertEquals(13, sm.appendAtSector);
-        assertEquals(1, sm.freeSectors.size());
-        assertEquals(new SectorBlock(7, 2), sm.freeSectors.get(0));
+        assertEquals(1, sm.freeBlockCount());
+        assertEquals(new SectorBlock(7, 2), sm.freeSectors().get(0));
 
         // taking the last free sector should be safe too
         assertEquals(new SectorBlock(7, 1), sm.allocate(1));
         assertEquals(new SectorBlock(8, 1), sm.allocate(1));
-        assertEquals(0, sm.freeSectors.size());
+        assertEquals(0, sm.freeBlockCount());
         assertEquals(13, sm.appendAtSector);
 
         // allocating with no free sectors also works
         assertEquals(new SectorBlock(13, 1), sm.allocate(1));
-        assertEquals(0, sm.freeSectors.size());
+        assertEquals(0, sm.freeBlockCount());
         assertEquals(14, sm.appendAtSector);
 
 
@@ -92,20 +104,99 @@ public class RandomAccessMcaFileTest extends McaTestCase {
         sectorTable = new int[1024];
         sectorTable[547] = new SectorBlock(5, 1).pack();
         sm.sync(sectorTable);
-        assertEquals(1, sm.freeSectors.size());
-        assertEquals(new SectorBlock(2, 3), sm.freeSectors.get(0));
+        assertEquals(1, sm.freeBlockCount());
+        assertEquals(new SectorBlock(2, 3), sm.freeSectors().get(0));
         assertEquals(6, sm.appendAtSector);
 
 
         // release between free sectors
-        sm.freeSectors.clear();
-        sm.freeSectors.add(new SectorBlock(2, 1));
-        sm.freeSectors.add(new SectorBlock(20, 1));
+        sm.clear();
         sm.appendAtSector = 42;
+        sm.release(2, 1);
+        sm.release(20, 1);
         sm.release(10, 2);
 
-        assertEquals(3, sm.freeSectors.size());
-        assertEquals(new SectorBlock(10, 2), sm.freeSectors.get(1));
+        assertEquals(3, sm.freeBlockCount());
+        assertEquals(new SectorBlock(10, 2), sm.freeSectors().get(1));
+    }
+
+    public void testSectorManager_allocatesBestFit() throws IOException {
+        SectorManager sm = new SectorManager();
+        int[] sectorTable = new int[1024];
+        sectorTable[0] = new SectorBlock(6, 1).pack();
+        sectorTable[1] = new SectorBlock(9, 1).pack();
+        sectorTable[2] = new SectorBlock(12, 1).pack();
+        sm.sync(sectorTable);
+        assertEquals(List.of(new SectorBlock(2, 4), new SectorBlock(7, 2), new SectorBlock(10, 2)), sm.freeSectors());
+
+        // the smallest block which fits wins, ties go to the lowest start
+        assertEquals(new SectorBlock(7, 2), sm.allocate(2));
+        assertEquals(new SectorBlock(10, 1), sm.allocate(1));
+        assertEquals(List.of(new SectorBlock(2, 4), new SectorBlock(11, 1)), sm.freeSectors());
+        assertEquals(new SectorBlock(2, 3), sm.allocate(3));
+        assertEquals(new SectorBlock(13, 2), sm.allocate(2));
+        assertEquals(15, sm.appendAtSector);
+        assertEquals(2, sm.freeSectorCount());
+    }
+
+    public void testSectorManager_releaseCoalescesWithBothNeighbors() throws IOException {
+        SectorManager sm = new SectorManager();
+        int[] sectorTable = new int[1024];
+        sectorTable[0] = new SectorBlock(4, 2).pack();
+        sectorTable[1] = new SectorBlock(8, 1).pack();
+        sm.sync(sectorTable);
+        assertEquals(List.of(new SectorBlock(2, 2), new SectorBlock(6, 2)), sm.freeSectors());
+        sm.release(4, 2);
+        assertEquals(List.of(new SectorBlock(2, 6)), sm.freeSectors());
+        assertEquals(9, sm.appendAtSector);
+        // coalescing with the end of the file releases everything
+        sm.release(8, 1);
+        assertEquals(0, sm.freeBlockCount());
+        assertEquals(2, sm.appendAtSector);
+    }
+
+    public void testSectorManager_extend() throws IOException {
+        SectorManager sm = new SectorManager();
+        int[] sectorTable = new int[1024];
+        sectorTable[0] = new SectorBlock(2, 1).pack();
+        sectorTable[1] = new SectorBlock(6, 2).pack();
+        sm.sync(sectorTable);
+        assertEquals(List.of(new SectorBlock(3, 3)), sm.freeSectors());
+
+        SectorBlock sb = new SectorBlock(2, 1);
+        assertFalse(sm.extend(sb, 5));
+        assertEquals(new SectorBlock(2, 1), sb);
+        assertTrue(sm.extend(sb, 3));
+        assertEquals(new SectorBlock(2, 3), sb);
+        assertEquals(List.of(new SectorBlock(5, 1)), sm.freeSectors());
+
+        // the last block in the file can always grow
+        sb = new SectorBlock(6, 2);
+        assertTrue(sm.extend(sb, 10));
+        assertEquals(new SectorBlock(6, 10), sb);
+        assertEquals(16, sm.appendAtSector);
+    }
+
+    public void testSectorManager_allocateBeforeAndAt() throws IOException {
+        SectorManager sm = new SectorManager();
+        int[] sectorTable = new int[1024];
+        sectorTable[0] = new SectorBlock(4, 1).pack();
+        sectorTable[1] = new SectorBlock(8, 1).pack();
+        sm.sync(sectorTable);
+        assertEquals(List.of(new SectorBlock(2, 2), new SectorBlock(5, 3)), sm.freeSectors());
+        assertEquals(new SectorBlock(2, 2), sm.firstFree());
+
+        assertNull(sm.allocateBefore(3, 5));
+        assertNull(sm.allocateBefore(4, 100));
+        assertEquals(new SectorBlock(5, 3), sm.allocateBefore(3, 6));
+        assertEquals(9, sm.appendAtSector);
+
+        assertNull(sm.allocateAt(3, 1));
+        assertNull(sm.allocateAt(2, 3));
+        assertEquals(new SectorBlock(2, 1), sm.allocateAt(2, 1));
+        assertEquals(new SectorBlock(9, 2), sm.allocateAt(9, 2));
+        assertEquals(11, sm.appendAtSector);
+        assertEquals(List.of(new SectorBlock(3, 1)), sm.freeSectors());
     }
 
     public void testSectorManager_scan_throwsWhenGivenWrongSizedArray() {
@@ -270,6 +361,262 @@ public class RandomAccessMcaFileTest extends McaTestCase {
         poiMca.close();
     }
 
+    public void testReadRaw_matchesRead() throws IOException {
+        File file = super.copyResourceToTmp("1_20_4/poi/r.-3.-3.mca");
+        var poiMca = new RandomAccessMcaFile<>(PoiChunk.class, file, "r");
+        final int index = McaFileBase.getChunkIndex(19, 12);
+        byte[] raw = poiMca.readRaw(index);
+        assertNotNull(raw);
+        assertNull(poiMca.readRaw(0));
+        assertThrowsException(() -> poiMca.readRaw(1024), IndexOutOfBoundsException.class);
+
+        PoiChunk chunk = new PoiChunk();
+        IntPointXZ xz = poiMca.indexToAbsoluteXZ(index);
+        chunk.deserialize(new ByteArrayInputStream(raw), LoadFlags.LOAD_ALL_DATA,
+                poiMca.getChunkTimestamp(index), xz.getX(), xz.getZ());
+        assertEquals(poiMca.read(index).getHandle(), chunk.getHandle());
+        poiMca.close();
+    }
+
+    public void testReadTag_selectsRequestedData() throws IOException {
+        File file = super.copyResourceToTmp("1_20_4/region/r.-3.-3.mca");
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "r")) {
+            assertThrowsException(() -> mca.readTag(1024, TagSelector.ALL), IndexOutOfBoundsException.class);
+            assertThrowsException(() -> mca.readTag(0, null), IllegalArgumentException.class);
+            int compared = 0;
+            for (int i = 0; i < 1024; i++) {
+                TerrainChunk chunk = mca.read(i);
+                CompoundTag selected = mca.readTag(i, TagSelector.of("DataVersion", "Status", "sections.Y"));
+                if (chunk == null) {
+                    assertNull(selected);
+                    continue;
+                }
+                assertEquals(Set.of("DataVersion", "Status", "sections"), selected.keySet());
+                assertEquals(chunk.getDataVersion(), selected.getInt("DataVersion"));
+                assertEquals(chunk.getHandle().getString("Status"), selected.getString("Status"));
+                ListTag<CompoundTag> sections = selected.getCompoundList("sections");
+                assertEquals(chunk.getHandle().getListTag("sections").size(), sections.size());
+                for (CompoundTag section : sections) {
+                    assertEquals(Set.of("Y"), section.keySet());
+                }
+                assertEquals(chunk.getHandle(), mca.readTag(i, TagSelector.ALL));
+                compared++;
+            }
+            assertTrue(compared > 0);
+        }
+    }
+
+    public void testMemoryMapped_readMatchesUnmapped() throws IOException {
+        File file = super.copyResourceToTmp("1_20_4/region/r.-3.-3.mca");
+        try (var mapped = new RandomAccessMcaFile<>(TerrainChunk.class, file, "r").setMemoryMapped(true);
+             var unmapped = new RandomAccessMcaFile<>(TerrainChunk.class, file, "r")) {
+            assertTrue(mapped.isMemoryMapped());
+            int count = 0;
+            for (int i = 0; i < 1024; i++) {
+                assertEquals(unmapped.getChunkTimestamp(i), mapped.getChunkTimestamp(i));
+                TerrainChunk expected = unmapped.read(i);
+                TerrainChunk actual = mapped.read(i);
+                if (expected == null) {
+                    assertNull(actual);
+                    assertNull(mapped.readRaw(i));
+                } else {
+                    assertEquals(expected.getHandle(), actual.getHandle());
+                    assertEquals(expected.getChunkXZ(), actual.getChunkXZ());
+                    assertTrue(Arrays.equals(unmapped.readRaw(i), mapped.readRaw(i)));
+                    count++;
+                }
+            }
+            assertTrue(count > 0);
+        }
+    }
+
+    public void testConcurrentReadsWithSerializedWrites() throws Exception {
+        File file = super.copyResourceToTmp("1_20_4/region/r.-3.-3.mca");
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "rw")) {
+            mca.setLoadFlags(LoadFlags.RAW)
+                    .setAutoUpdateHandelOnWrite(false)
+                    .setAlwaysUpdateChunkLastUpdatedTimestamp(false);
+            final Map<Integer, CompoundTag> expected = new HashMap<>();
+            for (int i = 0; i < 1024; i++) {
+                TerrainChunk chunk = mca.read(i);
+                if (chunk != null) expected.put(i, chunk.getHandle());
+            }
+            assertFalse(expected.isEmpty());
+            final List<Integer> indexes = new ArrayList<>(expected.keySet());
+
+            ExecutorService exec = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 7; t++) {
+                    final int seed = t;
+                    futures.add(exec.submit(() -> {
+                        List<Integer> order = new ArrayList<>(indexes);
+                        Collections.shuffle(order, new Random(seed));
+                        for (int i : order) {
+                            assertEquals(expected.get(i), mca.read(i).getHandle());
+                        }
+                        return null;
+                    }));
+                }
+                // rewriting chunks moves them around in the file while the readers are busy
+                futures.add(exec.submit(() -> {
+                    for (int i : indexes) {
+                        mca.write(mca.read(i));
+                    }
+                    return null;
+                }));
+                for (Future<?> f : futures) {
+                    f.get();
+                }
+            } finally {
+                exec.shutdown();
+            }
+            for (int i : indexes) {
+                assertEquals(expected.get(i), mca.read(i).getHandle());
+            }
+        }
+    }
+
+    public void testWrite_configurableCompression() throws IOException {
+        File file = super.copyResourceToTmp("1_20_4/region/r.-3.-3.mca");
+        final Map<Integer, CompoundTag> expected = new HashMap<>();
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "rw")) {
+            assertEquals(CompressionType.ZLIB, mca.getCompression());
+            mca.setLoadFlags(LoadFlags.RAW)
+                    .setAutoUpdateHandelOnWrite(false)
+                    .setAlwaysUpdateChunkLastUpdatedTimestamp(false)
+                    .setCompression(CompressionType.LZ4);
+            for (int i = 0; i < 1024; i++) {
+                TerrainChunk chunk = mca.read(i);
+                if (chunk == null) continue;
+                expected.put(i, chunk.getHandle());
+                mca.write(chunk);
+                assertEquals(CompressionType.LZ4.getID(), mca.readRaw(i)[0]);
+            }
+            mca.setCompression(CompressionType.zlib(Deflater.BEST_COMPRESSION));
+            int zlibIndex = expected.keySet().iterator().next();
+            mca.write(mca.read(zlibIndex));
+            assertEquals(CompressionType.ZLIB.getID(), mca.readRaw(zlibIndex)[0]);
+        }
+        assertFalse(expected.isEmpty());
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "r")) {
+            mca.setLoadFlags(LoadFlags.RAW);
+            for (var entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), mca.read(entry.getKey()).getHandle());
+            }
+        }
+    }
+
+    public void testWrite_uncompressedChunks() throws IOException {
+        File file = super.copyResourceToTmp("1_20_4/region/r.-3.-3.mca");
+        final Map<Integer, CompoundTag> expected = new HashMap<>();
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "rw")) {
+            mca.setLoadFlags(LoadFlags.RAW)
+                    .setAutoUpdateHandelOnWrite(false)
+                    .setAlwaysUpdateChunkLastUpdatedTimestamp(false)
+                    .setCompression(CompressionType.UNCOMPRESSED);
+            for (int i = 0; i < 1024; i++) {
+                TerrainChunk chunk = mca.read(i);
+                if (chunk == null) continue;
+                expected.put(i, chunk.getHandle());
+                mca.write(chunk);
+                assertEquals(3, mca.readRaw(i)[0]);
+            }
+        }
+        assertFalse(expected.isEmpty());
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "r")) {
+            mca.setLoadFlags(LoadFlags.RAW);
+            for (var entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), mca.read(entry.getKey()).getHandle());
+                assertEquals(entry.getValue().get("DataVersion"),
+                        mca.readTag(entry.getKey(), TagSelector.of("DataVersion")).get("DataVersion"));
+            }
+        }
+    }
+
+    public void testWrite_oversizedChunkStoredExternally() throws IOException {
+        File file = super.copyResourceToTmp("1_20_4/region/r.-3.-3.mca");
+        byte[] payload = new byte[1100 * 1024];
+        new Random(42).nextBytes(payload);  // random data doesn't compress
+        final int index;
+        final IntPointXZ xz;
+        final CompoundTag expected;
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "rw")) {
+            assertEquals(file.getAbsoluteFile().getParentFile(), mca.getExternalChunkDirectory());
+            mca.setLoadFlags(LoadFlags.RAW).setAutoUpdateHandelOnWrite(false).setAlwaysUpdateChunkLastUpdatedTimestamp(false);
+            int i = 0;
+            while (!mca.hasChunk(i)) i++;
+            index = i;
+            xz = mca.indexToAbsoluteXZ(index);
+            TerrainChunk chunk = mca.read(index);
+            chunk.getHandle().putByteArray("Payload", payload);
+            expected = chunk.getHandle();
+            mca.write(chunk);
+            assertEquals(1, mca.chunkSectors[index] & 0xFF);
+            assertEquals(CompressionType.ZLIB.getID(), mca.readRaw(index)[0]);
+            assertEquals(expected, mca.read(index).getHandle());
+        }
+        File external = ExternalChunkFile.of(file.getParentFile(), xz.getX(), xz.getZ());
+        assertTrue(external.length() > 1024 * 1024);
+
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "r").setMemoryMapped(true)) {
+            mca.setLoadFlags(LoadFlags.RAW);
+            assertEquals(expected, mca.read(index).getHandle());
+            assertEquals(payload.length, mca.readTag(index, TagSelector.of("Payload")).getByteArray("Payload").length);
+            byte[] raw = mca.readRaw(index);
+            TerrainChunk chunk = new TerrainChunk();
+            chunk.deserialize(new ByteArrayInputStream(raw), LoadFlags.RAW, 0, xz.getX(), xz.getZ());
+            assertEquals(expected, chunk.getHandle());
+        }
+        McaRegionFile mcaFile = McaFileHelpers.readAuto(file);
+        assertEquals(expected, mcaFile.getChunk(index).getHandle());
+
+        // opened from a RandomAccessFile the directory is unknown
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, new RandomAccessFile(file, "r"), IntPointXZ.XZ(-3, -3), "r")) {
+            assertNull(mca.getExternalChunkDirectory());
+            assertThrowsException(() -> mca.read(index), IOException.class);
+            assertSame(mca, mca.setExternalChunkDirectory(file.getParentFile()));
+            assertEquals(expected, mca.setLoadFlags(LoadFlags.RAW).read(index).getHandle());
+        }
+
+        // once the chunk fits in the mca file again the external file is removed
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "rw")) {
+            mca.setLoadFlags(LoadFlags.RAW).setAutoUpdateHandelOnWrite(false).setAlwaysUpdateChunkLastUpdatedTimestamp(false);
+            TerrainChunk chunk = mca.read(index);
+            chunk.getHandle().remove("Payload");
+            mca.write(chunk);
+            assertFalse(external.exists());
+            assertFalse(chunk.getHandle().containsKey("Payload"));
+            assertEquals(chunk.getHandle(), mca.read(index).getHandle());
+
+            chunk.getHandle().putByteArray("Payload", payload);
+            mca.write(chunk);
+            assertTrue(external.exists());
+            assertTrue(mca.removeChunk(index));
+            assertFalse(external.exists());
+        }
+    }
+
+    public void testMemoryMapped_requiresReadOnly() throws IOException {
+        File file = super.copyResourceToTmp("1_20_4/region/r.-3.-3.mca");
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "rw")) {
+            assertThrowsException(() -> mca.setMemoryMapped(true), IllegalStateException.class);
+            assertFalse(mca.isMemoryMapped());
+        }
+    }
+
+    public void testMemoryMapped_chunkSectorPointsOutsideFile_throwsEOF() throws IOException {
+        File file = getNewTmpFile("r.0.0.mca");
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(4096 * 2);
+        raf.writeInt(0x0201);
+        raf.close();
+
+        var poiMca = new RandomAccessMcaFile<>(PoiChunk.class, file, "r").setMemoryMapped(true);
+        assertThrowsException(() -> poiMca.read(0), EOFException.class);
+        assertThrowsNoException(poiMca::close);
+    }
+
     public void testRead_chunkSectorPointsOutsideFile_throwsEOF() throws IOException {
         File file = getNewTmpFile("r.0.0.mca");
         RandomAccessFile raf = new RandomAccessFile(file, "rw");
@@ -349,7 +696,7 @@ public class RandomAccessMcaFileTest extends McaTestCase {
         }
         terrainMca.write(chunk);
         assertEquals(0x0201, terrainMca.chunkSectors[index]);
-        assertEquals(SectorBlock.unpack(0x0301), terrainMca.sectorManager.freeSectors.getFirst());
+        assertEquals(SectorBlock.unpack(0x0301), terrainMca.sectorManager.freeSectors().get(0));
         terrainMca.close();
     }
 
@@ -369,10 +716,469 @@ public class RandomAccessMcaFileTest extends McaTestCase {
         chunk.getSection(8).setBlockStates(bigSection);
         terrainMca.write(chunk);
         assertEquals(0x0C0A, terrainMca.chunkSectors[index]);
-        assertEquals(SectorBlock.unpack(0x0202), terrainMca.sectorManager.freeSectors.getFirst());
+        assertEquals(SectorBlock.unpack(0x0202), terrainMca.sectorManager.freeSectors().get(0));
+        terrainMca.close();
+    }
+
+    public void testWrite_growthSlack() throws IOException {
+        File file = super.copyResourceToTmp("1_20_4/region/r.-3.-3.mca");
+        var terrainMca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "rw");
+        assertEquals(0, terrainMca.getGrowthSlackSectors());
+        assertThrowsIllegalArgumentException(() -> terrainMca.setGrowthSlackSectors(-1));
+        assertThrowsIllegalArgumentException(() -> terrainMca.setGrowthSlackSectors(256));
+        assertSame(terrainMca, terrainMca.setGrowthSlackSectors(4));
+        terrainMca.touch();
+        final int index = McaFileBase.getChunkIndex(5, 9);
+        assertEquals(0x0202, terrainMca.chunkSectors[index]);
+        TerrainChunk chunk = terrainMca.read(index);
+        PalettizedCuboid<CompoundTag> bigSection = new PalettizedCuboid<>(16, TextNbtParser.parseInline("{Name: \"minecraft:air\"}"));
+        for (int i = 0; i < 16 * 16 * 16; i++) {
+            bigSection.set(i, TextNbtParser.parseInline("{Name: \"minecraft:random_garbage_" + String.format("%d%X", i, -i) + "\"}"));
+        }
+        chunk.getSection(8).setBlockStates(bigSection);
+        terrainMca.write(chunk);
+        // 10 sectors needed plus 4 slack
+        assertEquals(0x0C0E, terrainMca.chunkSectors[index]);
+        assertEquals(0x1A * 4096L, file.length());
+        // growing into the slack doesn't relocate the chunk
+        chunk.getSection(9).setBlockStates(bigSection.clone());
+        terrainMca.write(chunk);
+        assertEquals(0x0C, terrainMca.chunkSectors[index] >> 8);
+        assertTrue((terrainMca.chunkSectors[index] & 0xFF) >= 0x0E);
+        TerrainChunk chunkIn = terrainMca.read(index);
+        assertEquals(chunk.getHandle(), chunkIn.getHandle());
         terrainMca.close();
     }
 
+    /** Writes 32 single sector chunks then removes every other one. */
+    private Map<Integer, CompoundTag> createFragmentedFile(File file) throws IOException {
+        Map<Integer, CompoundTag> remaining = new HashMap<>();
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "rw")) {
+            for (int x = 0; x < 32; x++) {
+                TerrainChunk chunk = new TerrainChunk();
+                chunk.updateHandle(x, 0);
+                mca.write(chunk);
+            }
+            for (int x = 0; x < 32; x++) {
+                if (x % 2 == 0) {
+                    assertTrue(mca.removeChunk(x));
+                } else {
+                    remaining.put(x, mca.read(x).getHandle());
+                }
+            }
+        }
+        return remaining;
+    }
+
+    public void testOptimizeFileIncrementally() throws IOException {
+        File expectedFile = getNewTmpFile("optimized/region/r.0.0.mca");
+        createFragmentedFile(expectedFile);
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, expectedFile, "rw")) {
+            mca.optimizeFile();
+        }
+
+        File file = getNewTmpFile("incremental/region/r.0.0.mca");
+        final Map<Integer, CompoundTag> remaining = createFragmentedFile(file);
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "rw")) {
+            assertThrowsException(() -> mca.optimizeFileIncrementally(0), IllegalArgumentException.class);
+            // chunks occupy sectors 2 through 33 and every other one of them has been freed
+            assertEquals(16.0 / 32, mca.getFragmentationRatio(), 1e-9);
+
+            int calls = 0;
+            long length = file.length();
+            int moved;
+            while ((moved = mca.optimizeFileIncrementally(3)) > 0) {
+                calls++;
+                assertTrue(moved <= 3);
+                // the header on disk is consistent after every call
+                try (var reader = new RandomAccessMcaFile<>(TerrainChunk.class, file, "r")) {
+                    for (var entry : remaining.entrySet()) {
+                        assertEquals(entry.getValue(), reader.read(entry.getKey()).getHandle());
+                    }
+                }
+                assertTrue(file.length() <= length);
+                length = file.length();
+            }
+            assertTrue(calls > 1);
+            assertEquals(0.0, mca.getFragmentationRatio());
+            assertEquals(expectedFile.length(), file.length());
+            for (var entry : remaining.entrySet()) {
+                assertEquals(entry.getValue(), mca.read(entry.getKey()).getHandle());
+            }
+        }
+    }
+
+    public void testOptimizeFileFor() throws IOException {
+        File file = getNewTmpFile("incremental/region/r.0.0.mca");
+        final Map<Integer, CompoundTag> remaining = createFragmentedFile(file);
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "rw")) {
+            assertTrue(mca.getFragmentationRatio() > 0);
+            assertTrue(mca.optimizeFileFor(1, TimeUnit.MINUTES) > 0);
+            assertEquals(0.0, mca.getFragmentationRatio());
+            assertEquals(0, mca.optimizeFileFor(1, TimeUnit.MINUTES));
+            for (var entry : remaining.entrySet()) {
+                assertEquals(entry.getValue(), mca.read(entry.getKey()).getHandle());
+            }
+        }
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "r")) {
+            assertThrowsException(() -> mca.optimizeFileFor(1, TimeUnit.SECONDS), IOException.class);
+            assertEquals(0.0, mca.getFragmentationRatio());
+        }
+    }
+
+    public void testMcaJournal_roundTrip() throws IOException {
+        File file = getNewTmpFile("journal/r.0.0.mca.journal");
+        int[] sectors = new int[1024];
+        int[] timestamps = new int[1024];
+        sectors[3] = new SectorBlock(7, 2).pack();
+        timestamps[3] = 1234;
+        timestamps[1023] = 42;
+        BitSet changed = new BitSet();
+        changed.set(3);
+        changed.set(1023);
+        BitSet pendingExternal = new BitSet();
+        pendingExternal.set(1023);
+        McaJournal.write(file, changed, sectors, timestamps, pendingExternal);
+        McaJournal.Contents contents = McaJournal.read(file);
+        assertArrayEquals(new int[] {3, sectors[3], 1234, 1023, 0, 42}, contents.entries());
+        assertArrayEquals(new int[] {1023}, contents.pendingExternalChunks());
+        McaJournal.write(file, changed, sectors, timestamps, new BitSet());
+        assertEquals(0, McaJournal.read(file).pendingExternalChunks().length);
+
+        // torn write
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        assertNull(McaJournal.read(file));
+        // corrupt entry
+        McaJournal.write(file, changed, sectors, timestamps, pendingExternal);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(12);
+            raf.writeInt(0x0BAD);
+        }
+        assertNull(McaJournal.read(file));
+        assertTrue(file.delete());
+        assertNull(McaJournal.read(file));
+    }
+
+    public void testJournaled_readOnlyThrows() throws IOException {
+        File file = copyResourceToTmp("1_20_4/region/r.-3.-3.mca");
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "r")) {
+            assertThrowsException(() -> mca.setJournaled(true), IllegalStateException.class);
+            assertFalse(mca.isJournaled());
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, raf, IntPointXZ.XZ(-3, -3), "rw")) {
+            assertNull(mca.getJournalFile());
+            assertThrowsException(() -> mca.setJournaled(true), IllegalStateException.class);
+            mca.setJournalFile(new File(file.getPath() + ".wal"));
+            assertSame(mca, mca.setJournaled(true));
+            assertTrue(mca.isJournaled());
+        }
+    }
+
+    /** Gives chunk x,0 of the given file a new, larger, handle. */
+    private CompoundTag rewriteChunk(RandomAccessMcaFile<TerrainChunk> mca, int x) throws IOException {
+        TerrainChunk chunk = mca.read(x);
+        chunk.getHandle().putString("journal_test", "x".repeat(5000 + x));
+        chunk.getHandle().putLong("journal_test_noise", new Random(x).nextLong());
+        mca.write(chunk);
+        return mca.read(x).getHandle();
+    }
+
+    public void testJournaled_headerOnDiskOnlyChangesOnCommit() throws IOException {
+        File file = getNewTmpFile("journaled/region/r.0.0.mca");
+        final Map<Integer, CompoundTag> committed = createFragmentedFile(file);
+        final Map<Integer, CompoundTag> expected = new HashMap<>(committed);
+        final File journalFile = new File(file.getPath() + ".journal");
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "rw")) {
+            mca.setJournaled(true);
+            assertEquals(journalFile, mca.getJournalFile());
+            for (int x = 1; x < 32; x += 4) {
+                expected.put(x, rewriteChunk(mca, x));
+            }
+            assertTrue(mca.removeChunk(3));
+            expected.remove(3);
+
+            // nothing written so far touched the data the header on disk refers to
+            try (var reader = new RandomAccessMcaFile<>(TerrainChunk.class, file, "r")) {
+                for (var entry : committed.entrySet()) {
+                    assertEquals(entry.getValue(), reader.read(entry.getKey()).getHandle());
+                }
+            }
+            mca.flush();
+            assertFalse(journalFile.exists());
+            try (var reader = new RandomAccessMcaFile<>(TerrainChunk.class, file, "r")) {
+                for (int x = 0; x < 32; x++) {
+                    if (expected.containsKey(x)) {
+                        assertEquals(expected.get(x), reader.read(x).getHandle());
+                    } else {
+                        assertFalse(reader.hasChunk(x));
+                    }
+                }
+            }
+        }
+        assertFalse(journalFile.exists());
+    }
+
+    public void testJournaled_optimizeFile() throws IOException {
+        File expectedFile = getNewTmpFile("optimized/region/r.0.0.mca");
+        createFragmentedFile(expectedFile);
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, expectedFile, "rw")) {
+            mca.optimizeFile();
+        }
+
+        File file = getNewTmpFile("journaled/region/r.0.0.mca");
+        final Map<Integer, CompoundTag> remaining = createFragmentedFile(file);
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "rw")) {
+            mca.setJournaled(true);
+            assertEquals(file.length() - expectedFile.length(), mca.optimizeFile());
+            assertEquals(0.0, mca.getFragmentationRatio());
+            assertEquals(expectedFile.length(), file.length());
+            for (var entry : remaining.entrySet()) {
+                assertEquals(entry.getValue(), mca.read(entry.getKey()).getHandle());
+            }
+        }
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "r")) {
+            for (var entry : remaining.entrySet()) {
+                assertEquals(entry.getValue(), mca.read(entry.getKey()).getHandle());
+            }
+        }
+    }
+
+    /**
+     * Simulates dying after the journal made it to disk but before the header was updated.
+     * @return the handles expected once the journal is replayed.
+     */
+    private Map<Integer, CompoundTag> crashAfterJournalWrite(File file) throws IOException {
+        final Map<Integer, CompoundTag> expected = createFragmentedFile(file);
+        var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "rw");
+        mca.setJournaled(true);
+        BitSet changed = new BitSet();
+        for (int x = 1; x < 32; x += 2) {
+            expected.put(x, rewriteChunk(mca, x));
+            changed.set(x);
+        }
+        McaJournal.write(mca.getJournalFile(), changed, mca.chunkSectors, mca.chunkTimestamps, new BitSet());
+        // abandon the file without committing
+        mca.raf.close();
+        return expected;
+    }
+
+    public void testJournaled_recoversCommittedJournal() throws IOException {
+        File file = getNewTmpFile("journaled/region/r.0.0.mca");
+        final Map<Integer, CompoundTag> expected = crashAfterJournalWrite(file);
+        final File journalFile = new File(file.getPath() + ".journal");
+        assertTrue(journalFile.exists());
+
+        // read-only access sees the journaled changes but leaves recovery to the next writer
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "r")) {
+            for (var entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), mca.read(entry.getKey()).getHandle());
+            }
+        }
+        assertTrue(journalFile.exists());
+
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "rw")) {
+            mca.touch();
+            assertFalse(journalFile.exists());
+            for (var entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), mca.read(entry.getKey()).getHandle());
+            }
+        }
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "r")) {
+            for (var entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), mca.read(entry.getKey()).getHandle());
+            }
+        }
+    }
+
+    public void testJournaled_discardsTornJournal() throws IOException {
+        File file = getNewTmpFile("journaled/region/r.0.0.mca");
+        File originalFile = getNewTmpFile("original/region/r.0.0.mca");
+        final Map<Integer, CompoundTag> original = createFragmentedFile(originalFile);
+        crashAfterJournalWrite(file);
+        final File journalFile = new File(file.getPath() + ".journal");
+        try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        try (var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "rw")) {
+            mca.touch();
+            assertFalse(journalFile.exists());
+            // the previous commit is still in effect
+            for (var entry : original.entrySet()) {
+                assertEquals(entry.getValue(), mca.read(entry.getKey()).getHandle());
+            }
+        }
+    }
+
+    /** Writes chunk 0,0 with a payload too large for the mca file. */
+    private CompoundTag writeOversizedChunk(RandomAccessMcaFile<TerrainChunk> mca, long seed) throws IOException {
+        byte[] payload = new byte[1100 * 1024];
+        new Random(seed).nextBytes(payload);  // random data doesn't compress
+        TerrainChunk chunk = new TerrainChunk();
+        chunk.updateHandle(0, 0);
+        chunk.getHandle().putByteArray("Payload", payload);
+        chunk.setLastMCAUpdate(1000 + (int) seed);
+        mca.write(chunk);
+        assertEquals(1, mca.chunkSectors[0] & 0xFF);
+        return chunk.getHandle();
+    }
+
+    private static RandomAccessMcaFile<TerrainChunk> openRaw(File file, String mode) throws IOException {
+        var mca = new RandomAccessMcaFile<>(TerrainChunk.class, file, mode);
+        mca.setLoadFlags(LoadFlags.RAW).setAutoUpdateHandelOnWrite(false).setAlwaysUpdateChunkLastUpdatedTimestamp(false);
+        return mca;
+    }
+
+    public void testJournaled_oversizedChunkRewrite() throws IOException {
+        File file = getNewTmpFile("journaled_external/region/r.0.0.mca");
+        final File external = ExternalChunkFile.of(file.getParentFile(), 0, 0);
+        final File pending = ExternalChunkFile.pendingOf(file.getParentFile(), 0, 0);
+        final File journalFile = new File(file.getPath() + ".journal");
+        final CompoundTag committed;
+        try (var mca = openRaw(file, "rw")) {
+            committed = writeOversizedChunk(mca, 1);
+        }
+        final byte[] committedExternal = Files.readAllBytes(external.toPath());
+
+        // crash before commit - the previous commit is in effect
+        var mca = openRaw(file, "rw");
+        mca.setJournaled(true);
+        final CompoundTag rewritten = writeOversizedChunk(mca, 2);
+        assertTrue(pending.exists());
+        assertTrue(Arrays.equals(committedExternal, Files.readAllBytes(external.toPath())));
+        assertEquals(rewritten, mca.read(0).getHandle());
+        assertEquals(rewritten.get("Payload"), mca.readTag(0, TagSelector.of("Payload")).get("Payload"));
+        try (var reader = openRaw(file, "r")) {
+            assertEquals(committed, reader.read(0).getHandle());
+        }
+        mca.raf.close();
+        try (var reader = openRaw(file, "rw")) {
+            assertEquals(committed, reader.read(0).getHandle());
+        }
+
+        // crash after the journal made it to disk - the journaled rewrite is in effect
+        mca = openRaw(file, "rw");
+        mca.setJournaled(true);
+        final CompoundTag rewrittenAgain = writeOversizedChunk(mca, 3);
+        BitSet changed = new BitSet();
+        changed.set(0);
+        McaJournal.write(journalFile, changed, mca.chunkSectors, mca.chunkTimestamps, changed);
+        mca.raf.close();
+        assertTrue(Arrays.equals(committedExternal, Files.readAllBytes(external.toPath())));
+        try (var reader = openRaw(file, "r")) {
+            assertEquals(rewrittenAgain, reader.read(0).getHandle());
+            TerrainChunk chunk = new TerrainChunk();
+            chunk.deserialize(new ByteArrayInputStream(reader.readRaw(0)), LoadFlags.RAW, 0, 0, 0);
+            assertEquals(rewrittenAgain, chunk.getHandle());
+        }
+        assertTrue(journalFile.exists());
+        try (var reader = openRaw(file, "rw")) {
+            assertEquals(rewrittenAgain, reader.read(0).getHandle());
+        }
+        assertFalse(journalFile.exists());
+        assertFalse(pending.exists());
+        try (var reader = openRaw(file, "r")) {
+            assertEquals(rewrittenAgain, reader.read(0).getHandle());
+        }
+
+        // committed normally
+        try (var writer = openRaw(file, "rw")) {
+            writer.setJournaled(true);
+            final CompoundTag last = writeOversizedChunk(writer, 4);
+            writer.flush();
+            assertFalse(pending.exists());
+            assertFalse(journalFile.exists());
+            assertEquals(last, writer.read(0).getHandle());
+            try (var reader = openRaw(file, "r")) {
+                assertEquals(last, reader.read(0).getHandle());
+            }
+        }
+    }
+
+    public void testJournaled_oversizedChunkRewriteTornJournal() throws IOException {
+        File file = getNewTmpFile("journaled_external/region/r.0.0.mca");
+        final File pending = ExternalChunkFile.pendingOf(file.getParentFile(), 0, 0);
+        final File journalFile = new File(file.getPath() + ".journal");
+        final CompoundTag committed;
+        try (var mca = openRaw(file, "rw")) {
+            committed = writeOversizedChunk(mca, 1);
+        }
+        var mca = openRaw(file, "rw");
+        mca.setJournaled(true);
+        writeOversizedChunk(mca, 2);
+        BitSet changed = new BitSet();
+        changed.set(0);
+        McaJournal.write(journalFile, changed, mca.chunkSectors, mca.chunkTimestamps, changed);
+        mca.raf.close();
+        try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        try (var reader = openRaw(file, "rw")) {
+            assertEquals(committed, reader.read(0).getHandle());
+        }
+        assertFalse(journalFile.exists());
+        assertFalse(pending.exists());
+    }
+
+    public void testJournaled_oversizedChunkNoLongerOversizedBeforeCommit() throws IOException {
+        File file = getNewTmpFile("journaled_external/region/r.0.0.mca");
+        final File external = ExternalChunkFile.of(file.getParentFile(), 0, 0);
+        final File pending = ExternalChunkFile.pendingOf(file.getParentFile(), 0, 0);
+        try (var mca = openRaw(file, "rw")) {
+            writeOversizedChunk(mca, 1);
+        }
+        try (var mca = openRaw(file, "rw")) {
+            mca.setJournaled(true);
+            writeOversizedChunk(mca, 2);
+            assertTrue(pending.exists());
+            TerrainChunk chunk = mca.read(0);
+            chunk.getHandle().remove("Payload");
+            mca.write(chunk);
+            assertFalse(pending.exists());
+            // still referenced by the header on disk
+            assertTrue(external.exists());
+            mca.flush();
+            assertFalse(external.exists());
+            assertEquals(chunk.getHandle(), mca.read(0).getHandle());
+
+            writeOversizedChunk(mca, 3);
+            assertTrue(mca.removeChunk(0));
+            assertFalse(pending.exists());
+        }
+        assertFalse(external.exists());
+    }
+
+    public void testRead_concurrentWriteMovingOversizedChunkInline() throws Exception {
+        File file = getNewTmpFile("external_concurrent/region/r.0.0.mca");
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        try (var mca = openRaw(file, "rw")) {
+            final CompoundTag oversized = writeOversizedChunk(mca, 1);
+            final TerrainChunk inline = new TerrainChunk();
+            inline.updateHandle(0, 0);
+            // every write of the chunk inline deletes the external file straight away
+            Future<?> writer = exec.submit(() -> {
+                for (int i = 0; i < 20; i++) {
+                    mca.write(inline);
+                    writeOversizedChunk(mca, 1);
+                }
+                return null;
+            });
+            while (!writer.isDone()) {
+                CompoundTag tag = mca.read(0).getHandle();
+                assertTrue(tag.equals(oversized) || tag.equals(inline.getHandle()));
+                assertNotNull(mca.readRaw(0));
+                assertNotNull(mca.readTag(0, TagSelector.of("DataVersion")));
+            }
+            writer.get();
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
     public void testReadOnly_writeThrows() throws IOException {
         File file = super.copyResourceToTmp("1_20_4/region/r.-3.-3.mca");
         RandomAccessFile raf = new RandomAccessFile(file, "rw");
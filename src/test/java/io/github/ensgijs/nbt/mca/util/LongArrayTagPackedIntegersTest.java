@@ -4,8 +4,10 @@ import io.github.ensgijs.nbt.NbtTestCase;
 import io.github.ensgijs.nbt.mca.DataVersion;
 import io.github.ensgijs.nbt.tag.LongArrayTag;
 
+import java.util.Arrays;
 import java.util.ListIterator;
 import java.util.NoSuchElementException;
+import java.util.Random;
 
 import static io.github.ensgijs.nbt.mca.util.LongArrayTagPackedIntegers.PackingStrategy.NO_SPLIT_VALUES_ACROSS_LONGS;
 import static io.github.ensgijs.nbt.mca.util.LongArrayTagPackedIntegers.PackingStrategy.SPLIT_VALUES_ACROSS_LONGS;
@@ -808,6 +810,190 @@ public class LongArrayTagPackedIntegersTest extends NbtTestCase {
           """, packed.toString2dGrid() + "\n");
     }
 
+    private void assertRemapAndCompactMatchesRemapThenCompact(LongArrayTagPackedIntegers.PackingStrategy packingStrategy, int valueOffset) {
+        int[] values = new Random(7).ints(4096, valueOffset, valueOffset + 300).toArray();
+        int[] remapTable = new int[300];
+        for (int i = 0; i < remapTable.length; i++) {
+            remapTable[i] = i % 3 == 0 ? -1 : i / 3;
+        }
+        for (int i = 0; i < values.length; i++) {
+            if ((values[i] - valueOffset) % 3 == 0) values[i]++;
+        }
+        LongArrayTagPackedIntegers expected = LongArrayTagPackedIntegers.builder()
+                .packingStrategy(packingStrategy)
+                .length(4096)
+                .valueOffset(valueOffset)
+                .minBitsPerValue(4)
+                .build(values);
+        LongArrayTagPackedIntegers actual = expected.clone();
+        assertEquals(9, actual.getBitsPerValue());
+
+        final int offset = valueOffset;
+        expected.remap(v -> remapTable[v - offset] + offset);
+        expected.compact();
+        assertSame(actual.getHandle(), actual.remapAndCompact(remapTable));
+        assertEquals(7, actual.getBitsPerValue());
+        assertEquals(expected.getBitsPerValue(), actual.getBitsPerValue());
+        assertArrayEquals(expected.longs(), actual.longs());
+        assertSame(actual.getHandle().getValue(), actual.longs());
+    }
+
+    public void testRemapAndCompact_noSplitAcrossLongs() {
+        assertRemapAndCompactMatchesRemapThenCompact(NO_SPLIT_VALUES_ACROSS_LONGS, 0);
+        assertRemapAndCompactMatchesRemapThenCompact(NO_SPLIT_VALUES_ACROSS_LONGS, -64);
+    }
+
+    public void testRemapAndCompact_splitAcrossLongs() {
+        assertRemapAndCompactMatchesRemapThenCompact(SPLIT_VALUES_ACROSS_LONGS, 0);
+        assertRemapAndCompactMatchesRemapThenCompact(SPLIT_VALUES_ACROSS_LONGS, -64);
+    }
+
+    public void testRemapAndCompact_obeysMinBitsPerValue() {
+        LongArrayTagPackedIntegers packed = LongArrayTagPackedIntegers.builder()
+                .minBitsPerValue(4)
+                .build(new int[] {0, 1, 2, 3});
+        packed.remapAndCompact(new int[] {0, 0, 0, 0});
+        assertEquals(4, packed.getBitsPerValue());
+        assertTrue(packed.allMatch(0));
+    }
+
+    public void testRemapAndCompact_throwsIfValueHasNoMapping() {
+        LongArrayTagPackedIntegers packed = LongArrayTagPackedIntegers.builder()
+                .minBitsPerValue(2)
+                .build(new int[] {0, 1, 2, 3});
+        assertThrows(IllegalArgumentException.class, () -> packed.remapAndCompact(new int[] {0, -1, 1, 2}));
+        assertThrows(IllegalArgumentException.class, () -> packed.remapAndCompact(new int[] {0, 1, 2}));
+        assertThrows(IllegalArgumentException.class, () -> packed.remapAndCompact(null));
+    }
+
+    private static int randomRawValue(Random random, int bits) {
+        // leaves headroom for the small value offsets used below
+        return random.nextInt((int) Math.min(1L << bits, Integer.MAX_VALUE - 8));
+    }
+
+    private LongArrayTagPackedIntegers randomPacked(LongArrayTagPackedIntegers.PackingStrategy packingStrategy, int bits, int valueOffset, Random random) {
+        LongArrayTagPackedIntegers packed = LongArrayTagPackedIntegers.builder()
+                .packingStrategy(packingStrategy)
+                .length(1000)
+                .valueOffset(valueOffset)
+                .minBitsPerValue(bits)
+                .build();
+        for (int i = 0; i < packed.length; i++) {
+            packed.set(i, valueOffset + randomRawValue(random, bits));
+        }
+        assertEquals(bits, packed.getBitsPerValue());
+        return packed;
+    }
+
+    public void testUnpackAll_matchesGet() {
+        Random random = new Random(11);
+        for (var strategy : LongArrayTagPackedIntegers.PackingStrategy.values()) {
+            for (int bits = 1; bits < 32; bits++) {
+                LongArrayTagPackedIntegers packed = randomPacked(strategy, bits, -7, random);
+                int[] values = packed.unpackAll(new int[packed.length]);
+                for (int i = 0; i < packed.length; i++) {
+                    assertEquals(strategy + " bits " + bits + " index " + i, packed.get(i), values[i]);
+                }
+            }
+        }
+    }
+
+    public void testUnpackRange() {
+        Random random = new Random(12);
+        for (var strategy : LongArrayTagPackedIntegers.PackingStrategy.values()) {
+            for (int bits : new int[] {1, 4, 5, 9, 15, 31}) {
+                LongArrayTagPackedIntegers packed = randomPacked(strategy, bits, 0, random);
+                int[] values = new int[packed.length + 5];
+                Arrays.fill(values, -1);
+                packed.unpackRange(13, 400, values, 5);
+                for (int i = 0; i < values.length; i++) {
+                    int expected = i >= 5 && i < 5 + 387 ? packed.get(i - 5 + 13) : -1;
+                    assertEquals(strategy + " bits " + bits + " index " + i, expected, values[i]);
+                }
+            }
+        }
+    }
+
+    public void testPackRange_matchesSet() {
+        Random random = new Random(13);
+        for (var strategy : LongArrayTagPackedIntegers.PackingStrategy.values()) {
+            for (int bits = 1; bits < 32; bits++) {
+                LongArrayTagPackedIntegers expected = randomPacked(strategy, bits, 3, random);
+                LongArrayTagPackedIntegers actual = expected.clone();
+                int[] src = new int[500];
+                for (int i = 0; i < src.length; i++) {
+                    src[i] = 3 + randomRawValue(random, bits);
+                }
+                for (int i = 0; i < 400; i++) {
+                    expected.set(i + 101, src[i + 7]);
+                }
+                actual.packRange(101, 501, src, 7);
+                assertArrayEquals(strategy + " bits " + bits, expected.longs(), actual.longs());
+            }
+        }
+    }
+
+    public void testPackAll_growsButNeverShrinks() {
+        for (var strategy : LongArrayTagPackedIntegers.PackingStrategy.values()) {
+            LongArrayTagPackedIntegers packed = LongArrayTagPackedIntegers.builder()
+                    .packingStrategy(strategy)
+                    .length(64)
+                    .minBitsPerValue(2)
+                    .initializeForStoring(255)
+                    .build();
+            assertEquals(8, packed.getBitsPerValue());
+            int[] values = new int[64];
+            Arrays.fill(values, 1);
+            packed.packAll(values);
+            assertEquals(8, packed.getBitsPerValue());
+            assertTrue(packed.allMatch(1));
+
+            values[42] = 1000;
+            packed.packAll(values);
+            assertEquals(10, packed.getBitsPerValue());
+            assertArrayEquals(values, packed.toArray());
+            assertSame(packed.getHandle().getValue(), packed.longs());
+        }
+    }
+
+    public void testPackRange_throwsAppropriately() {
+        LongArrayTagPackedIntegers packed = LongArrayTagPackedIntegers.builder()
+                .length(64)
+                .valueOffset(-1)
+                .minBitsPerValue(4)
+                .build();
+        assertThrows(IllegalArgumentException.class, () -> packed.packRange(0, 2, new int[] {0, -2}, 0));
+        assertThrows(IllegalArgumentException.class, () -> packed.packRange(0, 2, new int[] {0}, 0));
+        assertThrows(IllegalArgumentException.class, () -> packed.packRange(0, 2, null, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> packed.packRange(60, 65, new int[5], 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> packed.unpackRange(-1, 5, new int[6], 0));
+        assertThrows(IllegalArgumentException.class, () -> packed.unpackRange(0, 5, new int[6], 2));
+        assertTrue(packed.allMatch(-1));
+    }
+
+    public void testForEachInt() {
+        Random random = new Random(14);
+        for (var strategy : LongArrayTagPackedIntegers.PackingStrategy.values()) {
+            // length is deliberately not a multiple of the internal decode chunk size
+            LongArrayTagPackedIntegers packed = randomPacked(strategy, 9, -64, random);
+            int[] expected = packed.toArray();
+
+            int[] values = new int[packed.length];
+            int[] cursor = new int[1];
+            packed.forEachInt(v -> values[cursor[0]++] = v);
+            assertEquals(packed.length, cursor[0]);
+            assertArrayEquals(expected, values);
+
+            int[] indexedValues = new int[packed.length];
+            packed.forEachInt((index, v) -> indexedValues[index] = v);
+            assertArrayEquals(expected, indexedValues);
+
+            int threshold = expected[17];
+            assertEquals(Arrays.stream(expected).filter(v -> v >= threshold).count(), packed.count(v -> v >= threshold));
+            assertEquals(Arrays.stream(expected).filter(v -> v == threshold).count(), packed.count(threshold));
+        }
+    }
+
     public void testCompact_noSplitAcrossLongs() {
         LongArrayTagPackedIntegers packed = LongArrayTagPackedIntegers.builder()
                 .packingStrategy(NO_SPLIT_VALUES_ACROSS_LONGS)
@@ -0,0 +1,120 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.ChunkBase;
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.io.LoadFlags;
+import io.github.ensgijs.nbt.mca.io.McaFileChunkIterator;
+import io.github.ensgijs.nbt.util.IntPointXZ;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class McaWorldScannerTest extends McaTestCase {
+
+    private int countChunks(File worldDir, String... mcaTypes) throws IOException {
+        int count = 0;
+        for (File file : new McaWorldScanner(worldDir).setMcaTypes(mcaTypes).listMcaFiles()) {
+            try (McaFileChunkIterator<?> iter = McaFileChunkIterator.iterate(file, LoadFlags.RAW)) {
+                while (iter.hasNext()) {
+                    iter.next();
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    public void testConstructor_missingDirectoryThrows() {
+        assertThrowsException(() -> new McaWorldScanner(new File(getNewTmpDirectory(), "nope")), FileNotFoundException.class);
+    }
+
+    public void testListMcaFiles() throws IOException {
+        File worldDir = getResourceFile("1_20_4");
+        McaWorldScanner scanner = new McaWorldScanner(worldDir);
+        assertEquals(1, scanner.listMcaFiles().size());
+        assertEquals("r.-3.-3.mca", scanner.listMcaFiles().get(0).getName());
+        scanner.setMcaTypes("region", "poi", "entities", "not_a_thing");
+        assertEquals(3, scanner.listMcaFiles().size());
+        assertEquals("poi", scanner.listMcaFiles().get(1).getParentFile().getName());
+    }
+
+    public void testScan_visitsEveryTerrainChunkOnce() throws IOException {
+        File worldDir = getResourceFile("1_20_4");
+        final int expected = countChunks(worldDir, "region");
+        assertTrue(expected > 0);
+        Set<IntPointXZ> seen = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        McaWorldScanner.ScanStats stats = new McaWorldScanner(worldDir)
+                .setParallelism(4)
+                .setLoadFlags(LoadFlags.HEIGHTMAPS)
+                .scan((TerrainChunk chunk) -> {
+                    assertNotNull(chunk.getHeightMap("WORLD_SURFACE"));
+                    if (!seen.add(chunk.getChunkXZ())) duplicates.incrementAndGet();
+                });
+        assertEquals(0, duplicates.get());
+        assertEquals(expected, seen.size());
+        assertEquals(expected, stats.chunksVisited());
+        assertEquals(1, stats.regionsScanned());
+        assertTrue(stats.bytesRead() > 0);
+        assertTrue(stats.chunksPerSecond() > 0);
+        assertTrue(stats.bytesPerSecond() > 0);
+    }
+
+    public void testScan_allMcaTypes_tinyInFlightBudget() throws IOException {
+        File worldDir = getResourceFile("1_20_4");
+        final int expected = countChunks(worldDir, "region", "poi", "entities");
+        AtomicInteger visited = new AtomicInteger();
+        Set<String> types = ConcurrentHashMap.newKeySet();
+        McaWorldScanner.ScanStats stats = new McaWorldScanner(worldDir)
+                .setMcaTypes("region", "poi", "entities")
+                .setParallelism(2)
+                .setMaxInFlightBytes(1)
+                .setLoadFlags(LoadFlags.RAW)
+                .scan((ChunkBase chunk) -> {
+                    visited.incrementAndGet();
+                    types.add(chunk.getMcaType());
+                });
+        assertEquals(expected, visited.get());
+        assertEquals(expected, stats.chunksVisited());
+        assertEquals(3, stats.regionsScanned());
+        assertEquals(Set.of("region", "poi", "entities"), types);
+    }
+
+    public void testScan_userProvidedExecutorIsNotShutDown() throws IOException {
+        File worldDir = getResourceFile("1_20_4");
+        ExecutorService exec = Executors.newFixedThreadPool(3);
+        try {
+            McaWorldScanner.ScanStats stats = new McaWorldScanner(worldDir)
+                    .setExecutor(exec)
+                    .setLoadFlags(LoadFlags.RAW)
+                    .scan(chunk -> {});
+            assertEquals(countChunks(worldDir, "region"), stats.chunksVisited());
+            assertFalse(exec.isShutdown());
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    public void testScan_visitorExceptionIsRethrown() throws IOException {
+        File worldDir = getResourceFile("1_20_4");
+        McaWorldScanner scanner = new McaWorldScanner(worldDir).setLoadFlags(LoadFlags.RAW);
+        assertThrowsException(() -> scanner.scan(chunk -> {
+            throw new IOException("boom");
+        }), IOException.class);
+        assertThrowsException(() -> scanner.scan(chunk -> {
+            throw new IllegalStateException("boom");
+        }), IllegalStateException.class);
+    }
+
+    public void testScan_unknownMcaTypeThrows() throws IOException {
+        McaWorldScanner scanner = new McaWorldScanner(getResourceFile("1_20_4")).setMcaTypes("not_a_thing");
+        assertThrowsException(() -> scanner.scan(chunk -> {}), IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,90 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.TerrainSectionBase;
+import io.github.ensgijs.nbt.mca.io.LoadFlags;
+import io.github.ensgijs.nbt.mca.io.McaFileChunkIterator;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.StringTag;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+public class PaletteCensusTest extends McaTestCase {
+
+    private PaletteCensus<CompoundTag, String> censusOfRegion() throws IOException {
+        try (McaFileChunkIterator<TerrainChunk> iter = McaFileChunkIterator.iterate(
+                getResourceFile("1_20_4/region/r.-3.-3.mca"), LoadFlags.BLOCK_STATES)) {
+            return PaletteCensus.blockNames().addAll(iter);
+        }
+    }
+
+    public void testAdd_cuboid() {
+        PalettizedCuboid<StringTag> cuboid = new PalettizedCuboid<>(4, new StringTag("plains"));
+        cuboid.set(5, new StringTag("river"));
+        cuboid.set(6, new StringTag("desert"));
+        cuboid.set(6, new StringTag("river"));
+        PaletteCensus<StringTag, String> census = PaletteCensus.biomes().add(cuboid).add(cuboid);
+        assertEquals(128, census.total());
+        assertEquals(2, census.size());
+        assertEquals(124, census.get("plains"));
+        assertEquals(4, census.get("river"));
+        assertEquals(0, census.get("desert"));
+        assertEquals(List.of("plains", "river"), List.copyOf(census.toMap().keySet()));
+    }
+
+    public void testAdd_chunkMatchesPerBlockCount() throws IOException {
+        TerrainChunk chunk;
+        try (McaFileChunkIterator<TerrainChunk> iter = McaFileChunkIterator.iterate(
+                getResourceFile("1_20_4/region/r.-3.-3.mca"), LoadFlags.BLOCK_STATES)) {
+            chunk = iter.next();
+        }
+        Map<String, Long> expected = new HashMap<>();
+        for (TerrainSectionBase section : chunk) {
+            if (section.getBlockStates() == null) continue;
+            for (CompoundTag state : section.getBlockStates()) {
+                expected.merge(state.getString("Name"), 1L, Long::sum);
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, PaletteCensus.blockNames().add(chunk).toMap());
+    }
+
+    public void testAddAll_skipsNullChunks() {
+        List<TerrainChunk> chunks = new ArrayList<>();
+        chunks.add(null);
+        Iterator<TerrainChunk> iter = chunks.iterator();
+        assertEquals(0, PaletteCensus.blockNames().addAll(iter).total());
+    }
+
+    public void testMerge() throws IOException {
+        PaletteCensus<CompoundTag, String> region = censusOfRegion();
+        PaletteCensus<CompoundTag, String> merged = region.newEmpty().merge(region).merge(region);
+        assertEquals(region.size(), merged.size());
+        assertEquals(region.total() * 2, merged.total());
+        for (String key : region.keySet()) {
+            assertEquals(region.get(key) * 2, merged.get(key));
+        }
+    }
+
+    public void testScan_matchesRegionIteration() throws IOException {
+        File worldDir = getResourceFile("1_20_4");
+        PaletteCensus<CompoundTag, String> expected = censusOfRegion();
+        assertTrue(expected.total() > 0);
+        assertEquals(0, expected.total() % 4096);
+
+        PaletteCensus<CompoundTag, String> actual = PaletteCensus.blockNames();
+        McaWorldScanner.ScanStats stats = actual.scan(new McaWorldScanner(worldDir)
+                .setParallelism(4)
+                .setLoadFlags(LoadFlags.BLOCK_STATES | LoadFlags.RELEASE_CHUNK_DATA_TAG));
+        assertTrue(stats.chunksVisited() > 0);
+        assertEquals(expected.toMap(), actual.toMap());
+        assertEquals(expected.total(), actual.total());
+    }
+}
@@ -0,0 +1,99 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.TerrainSectionBase;
+import io.github.ensgijs.nbt.mca.io.LoadFlags;
+import io.github.ensgijs.nbt.mca.io.McaFileChunkIterator;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.StringTag;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+public class PaletteInternerTest extends McaTestCase {
+
+    public void testIntern() {
+        PaletteInterner<StringTag> interner = new PaletteInterner<>();
+        StringTag first = new StringTag("stone");
+        assertSame(first, interner.intern(first));
+        assertTrue(first.isFrozen());
+        assertThrowsException(() -> first.setValue("dirt"), UnsupportedOperationException.class);
+        assertSame(first, interner.intern(new StringTag("stone")));
+        assertNotSame(first, interner.intern(new StringTag("dirt")));
+        assertEquals(2, interner.size());
+        interner.clear();
+        assertEquals(0, interner.size());
+        assertThrowsIllegalArgumentException(() -> interner.intern(null));
+    }
+
+    public void testPalettizedCuboidIntern_sharesEqualEntries() {
+        PaletteInterner<StringTag> interner = new PaletteInterner<>();
+        PalettizedCuboid<StringTag> a = new PalettizedCuboid<>(4, new StringTag("plains"));
+        a.set(3, new StringTag("river"));
+        PalettizedCuboid<StringTag> b = new PalettizedCuboid<>(4, new StringTag("river"));
+        b.set(7, new StringTag("plains"));
+        a.intern(interner);
+        b.intern(interner);
+        assertEquals(2, interner.size());
+        assertSame(a.palette.get(0), b.palette.get(1));
+        assertSame(a.palette.get(1), b.palette.get(0));
+        // interning changes nothing observable
+        assertEquals(new StringTag("river"), a.get(3));
+        assertEquals(63, a.countIf(new StringTag("plains")::equals));
+        assertEquals(a.palette.get(0), a.toCompoundTag().getListTag("palette").get(0));
+    }
+
+    public void testPalettizedCuboidIntern_copyOnWrite() {
+        PaletteInterner<StringTag> interner = new PaletteInterner<>();
+        PalettizedCuboid<StringTag> a = new PalettizedCuboid<>(4, new StringTag("plains")).intern(interner);
+        PalettizedCuboid<StringTag> b = new PalettizedCuboid<>(4, new StringTag("plains")).intern(interner);
+        assertSame(a.palette.get(0), b.palette.get(0));
+
+        // writes and copies never touch shared entries
+        a.get(0).setValue("desert");
+        a.set(1, new StringTag("river"));
+        a.replace(new StringTag("plains"), new StringTag("forest"));
+        assertEquals(new StringTag("plains"), interner.intern(new StringTag("plains")));
+
+        // handing out references detaches from the shared instances
+        b.getByRef(0).setValue("ocean");
+        assertNotSame(b.palette.get(0), interner.intern(new StringTag("plains")));
+        assertEquals(new StringTag("plains"), interner.intern(new StringTag("plains")));
+        assertEquals(64, b.countIf(new StringTag("ocean")::equals));
+
+        PalettizedCuboid<StringTag> c = new PalettizedCuboid<>(4, new StringTag("plains")).intern(interner);
+        c.iterator().next().setValue("ocean");
+        assertEquals(new StringTag("plains"), interner.intern(new StringTag("plains")));
+
+        PalettizedCuboid<StringTag> d = new PalettizedCuboid<>(4, new StringTag("plains")).intern(interner);
+        d.toArrayByRef()[0].setValue("ocean");
+        assertEquals(new StringTag("plains"), interner.intern(new StringTag("plains")));
+        // palette lookups still work after detaching
+        d.set(0, new StringTag("ocean"));
+        assertEquals(1, d.paletteSize());
+    }
+
+    public void testLoadFlag_internsSectionPalettes() throws IOException {
+        Map<CompoundTag, Boolean> distinctInstances = new IdentityHashMap<>();
+        int sections = 0;
+        try (McaFileChunkIterator<TerrainChunk> iter = McaFileChunkIterator.iterate(
+                getResourceFile("1_20_4/region/r.-3.-3.mca"), LoadFlags.BLOCK_STATES | LoadFlags.INTERN_PALETTES)) {
+            for (int i = 0; i < 4 && iter.hasNext(); i++) {
+                for (TerrainSectionBase section : iter.next()) {
+                    if (section.getBlockStates() == null) continue;
+                    sections++;
+                    for (CompoundTag entry : section.getBlockStates().palette) {
+                        distinctInstances.put(entry, true);
+                    }
+                }
+            }
+        }
+        assertTrue(sections > 4);
+        assertTrue(PaletteInterner.BLOCK_STATES.size() >= distinctInstances.size());
+        for (CompoundTag entry : distinctInstances.keySet()) {
+            assertSame(entry, PaletteInterner.BLOCK_STATES.intern(entry.clone()));
+        }
+    }
+}
@@ -9,9 +9,12 @@ import io.github.ensgijs.nbt.NbtTestCase;
 import io.github.ensgijs.nbt.util.IntPointXYZ;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import static org.junit.Assert.assertArrayEquals;
@@ -157,10 +160,10 @@ public class PalettizedCuboidTest extends NbtTestCase {
         tags[7] = stoneTag;
         PalettizedCuboid<StringTag> cuboid = new PalettizedCuboid<>(tags);
 
-        assertEquals(0, cuboid.countIf(new StringTag("lava")::equals));  // exercises shortcut case
-        assertEquals(1, cuboid.countIf(airTag::equals));  // exercises singleton case
-        assertEquals(7, cuboid.countIf(e -> !e.equals(airTag)));  // exercises hashset case
-        assertEquals(4, cuboid.countIf(e -> e.getValue().charAt(0) <= 'c'));  // exercises array list case (4 cuz air)
+        assertEquals(0, cuboid.countIf(new StringTag("lava")::equals));  // exercises nothing matched case
+        assertEquals(1, cuboid.countIf(airTag::equals));
+        assertEquals(7, cuboid.countIf(e -> !e.equals(airTag)));
+        assertEquals(4, cuboid.countIf(e -> e.getValue().charAt(0) <= 'c'));  // 4 cuz air
 
         assertThrowsException(() -> cuboid.countIf(e -> {e.setValue("boom"); return false;}),
                 PalettizedCuboid.PaletteCorruptedException.class);
@@ -169,6 +172,101 @@ public class PalettizedCuboidTest extends NbtTestCase {
                 ConcurrentModificationException.class);
     }
 
+    public void testCountIf_evaluatesFilterOncePerPaletteEntry() {
+        PalettizedCuboid<StringTag> cuboid = new PalettizedCuboid<>(16, new StringTag("stone"));
+        for (int i = 0; i < cuboid.size(); i += 3) {
+            cuboid.set(i, new StringTag(i % 2 == 0 ? "iron_ore" : "coal_ore"));
+        }
+        int[] calls = new int[1];
+        assertEquals(1366, cuboid.countIf(e -> {
+            calls[0]++;
+            return e.getValue().endsWith("_ore");
+        }));
+        assertEquals(cuboid.paletteSize(), calls[0]);
+    }
+
+    public void testTestPalette() {
+        PalettizedCuboid<StringTag> cuboid = new PalettizedCuboid<>(2, new StringTag("air"));
+        cuboid.set(0, new StringTag("stone"));
+        cuboid.set(1, new StringTag("dirt"));
+        cuboid.replace(new StringTag("dirt"), new StringTag("air"));  // leaves an unused palette slot
+        boolean[] matches = cuboid.testPalette(e -> !e.getValue().equals("air"));
+        assertEquals(cuboid.paletteSize(), matches.length);
+        assertEquals(1, cuboid.countIf(e -> !e.getValue().equals("air")));
+        int matched = 0;
+        for (int i = 0; i < matches.length; i++) {
+            if (matches[i]) {
+                matched++;
+                assertEquals(new StringTag("stone"), cuboid.palette.get(i));
+            }
+        }
+        assertEquals(1, matched);
+        assertTrue(Arrays.equals(new boolean[cuboid.paletteSize()], cuboid.testPalette(e -> false)));
+
+        assertThrowsException(() -> cuboid.testPalette(e -> {e.setValue("boom"); return false;}),
+                PalettizedCuboid.PaletteCorruptedException.class);
+    }
+
+    public void testForEachPaletteId() {
+        StringTag[] tags = new StringTag[2 * 2 * 2];
+        Arrays.fill(tags, new StringTag("air"));
+        tags[3] = new StringTag("stone");
+        tags[5] = new StringTag("dirt");
+        PalettizedCuboid<StringTag> cuboid = new PalettizedCuboid<>(tags);
+
+        int[] ids = new int[8];
+        int[] cursor = new int[1];
+        cuboid.forEachPaletteId(id -> ids[cursor[0]++] = id);
+        assertEquals(8, cursor[0]);
+        assertArrayEquals(cuboid.packedData.toArray(), ids);
+
+        int[] indexedIds = new int[8];
+        Arrays.fill(indexedIds, -1);
+        cuboid.forEachPaletteId((index, id) -> indexedIds[index] = id);
+        assertArrayEquals(ids, indexedIds);
+        for (int i = 0; i < tags.length; i++) {
+            assertEquals(tags[i], cuboid.palette.get(indexedIds[i]));
+        }
+    }
+
+    public void testForEachMatching() {
+        PalettizedCuboid<StringTag> cuboid = new PalettizedCuboid<>(4, new StringTag("stone"));
+        cuboid.set(1, 2, 3, new StringTag("diamond_ore"));
+        cuboid.set(3, 0, 0, new StringTag("iron_ore"));
+        cuboid.set(0, 3, 1, new StringTag("diamond_ore"));
+        List<Integer> found = new ArrayList<>();
+        cuboid.forEachMatching(e -> e.getValue().equals("diamond_ore"), found::add);
+        assertEquals(List.of(cuboid.indexOf(0, 3, 1), cuboid.indexOf(1, 2, 3)).stream().sorted().toList(), found);
+
+        found.clear();
+        cuboid.forEachMatching(e -> e.getValue().equals("lava"), found::add);
+        assertTrue(found.isEmpty());
+    }
+
+    public void testHistogram() {
+        StringTag airTag = new StringTag("air");
+        PalettizedCuboid<StringTag> cuboid = new PalettizedCuboid<>(4, airTag);
+        cuboid.set(0, new StringTag("stone"));
+        cuboid.set(1, new StringTag("stone"));
+        cuboid.set(2, new StringTag("dirt"));
+        cuboid.set(2, new StringTag("lava"));  // leaves dirt in the palette, unused
+
+        int[] idCounts = cuboid.paletteIdHistogram();
+        assertEquals(cuboid.paletteSize(), idCounts.length);
+        assertEquals(64, Arrays.stream(idCounts).sum());
+
+        Map<StringTag, Integer> histogram = cuboid.histogram();
+        assertEquals(3, histogram.size());
+        assertEquals(61, (int) histogram.get(airTag));
+        assertEquals(2, (int) histogram.get(new StringTag("stone")));
+        assertEquals(1, (int) histogram.get(new StringTag("lava")));
+        assertFalse(histogram.containsKey(new StringTag("dirt")));
+
+        // keys are copies
+        histogram.keySet().forEach(k -> k.setValue("changed"));
+        assertEquals(61, cuboid.countIf(airTag::equals));
+    }
+
     public void testToArray() {
         StringTag bedrockTag = new StringTag("bedrock");
         StringTag airTag = new StringTag("air");
@@ -419,6 +517,24 @@ public class PalettizedCuboidTest extends NbtTestCase {
         assertSame(cuboid.palette.get(0), cuboid.getByRef(10, 11, 12));
     }
 
+    public void testSet_findsPaletteEntryModifiedByRef() {
+        PalettizedCuboid<StringTag> cuboid = new PalettizedCuboid<>(2, new StringTag("air"));
+        cuboid.set(1, new StringTag("stone"));  // builds the palette lookup
+        assertEquals(2, cuboid.paletteSize());
+        cuboid.getByRef(0).setValue("x");
+        cuboid.set(1, new StringTag("x"));
+        assertEquals(2, cuboid.paletteSize());
+        assertEquals(8, cuboid.countIf(new StringTag("x")::equals));
+
+        cuboid.toArrayByRef()[0].setValue("y");
+        cuboid.set(1, new StringTag("y"));
+        assertEquals(2, cuboid.paletteSize());
+
+        cuboid.iterator().next().setValue("z");
+        cuboid.set(1, new StringTag("z"));
+        assertEquals(2, cuboid.paletteSize());
+    }
+
     public void testSet() {
         StringTag airTag = new StringTag("air");
         StringTag stoneTag = new StringTag("stone");
@@ -444,6 +560,59 @@ public class PalettizedCuboidTest extends NbtTestCase {
         assertThrowsException(() -> cuboid.set(8, new StringTag("bam")), IndexOutOfBoundsException.class);
     }
 
+    public void testSet_reusesPaletteEntries() {
+        PalettizedCuboid<StringTag> cuboid = new PalettizedCuboid<>(4, new StringTag("air"));
+        for (int i = 0; i < cuboid.size(); i++) {
+            cuboid.set(i, new StringTag("v" + (i % 5)));
+        }
+        assertEquals(6, cuboid.paletteSize());
+        for (int i = 0; i < cuboid.size(); i++) {
+            assertEquals("v" + (i % 5), cuboid.getByRef(i).getValue());
+        }
+
+        // palette modified through the handle, behind the cuboids back
+        cuboid.palette.set(1, new StringTag("changed"));
+        cuboid.set(0, new StringTag("v0"));
+        assertEquals(7, cuboid.paletteSize());
+        assertEquals("v0", cuboid.getByRef(0).getValue());
+        cuboid.set(1, new StringTag("changed"));
+        assertEquals(7, cuboid.paletteSize());
+        assertSame(cuboid.palette.get(1), cuboid.getByRef(1));
+    }
+
+    public void testSet_doesNotReuseEmptyValueSentinel() {
+        PalettizedCuboid<CompoundTag> cuboid = new PalettizedCuboid<>(2, new CompoundTag());
+        CompoundTag stone = new CompoundTag();
+        stone.putString("Name", "stone");
+        assertTrue(cuboid.replace(new CompoundTag(), stone));
+        cuboid.set(0, new CompoundTag());
+        assertEquals(new CompoundTag(), cuboid.get(0));
+        assertEquals(stone, cuboid.get(1));
+        cuboid.toCompoundTag();
+        assertEquals(new CompoundTag(), cuboid.get(0));
+        assertEquals(stone, cuboid.get(1));
+    }
+
+    public void testSetAll() {
+        StringTag airTag = new StringTag("air");
+        StringTag lavaTag = new StringTag("lava");
+        PalettizedCuboid<StringTag> cuboid = new PalettizedCuboid<>(2, airTag);
+        cuboid.setAll(new int[] {1, 3, 5}, lavaTag);
+        assertEquals(2, cuboid.paletteSize());
+        assertEquals(3, cuboid.countIf(lavaTag::equals));
+        assertEquals(lavaTag, cuboid.get(5));
+        assertNotSame(lavaTag, cuboid.getByRef(5));
+        assertSame(cuboid.getByRef(1), cuboid.getByRef(3));
+
+        cuboid.setAll(new int[0], new StringTag("unused"));
+        assertEquals(2, cuboid.paletteSize());
+        assertThrowsException(() -> cuboid.setAll(new int[] {0, 8}, airTag), IndexOutOfBoundsException.class);
+        assertEquals(lavaTag, cuboid.get(1));
+        assertEquals(airTag, cuboid.get(0));
+        assertThrowsIllegalArgumentException(() -> cuboid.setAll(null, airTag));
+        assertThrowsIllegalArgumentException(() -> cuboid.setAll(new int[] {0}, null));
+    }
+
     public void testSetRange_fullVolume_isTheSameAsFill() {
         StringTag airTag = new StringTag("air");
         StringTag lavaTag = new StringTag("lava");
@@ -632,6 +801,70 @@ public class PalettizedCuboidTest extends NbtTestCase {
     }
 
 
+    public void testToCompoundTag_skipsOptimizingUntouchedCuboid() {
+        PalettizedCuboid<StringTag> cuboid = new PalettizedCuboid<>(4, new StringTag("desert"));
+        cuboid.set(0, 0, 0, new StringTag("beach"));
+        cuboid.set(1, 0, 0, new StringTag("river"));
+        CompoundTag serializedTag = cuboid.toCompoundTag();
+        // leave an entry in the palette which nothing refers to
+        serializedTag.getListTag("palette").asTypedList(StringTag.class).add(new StringTag("unused"));
+        long[] serializedData = serializedTag.getLongArray("data").clone();
+
+        PalettizedCuboid<StringTag> loaded = PalettizedCuboid.fromCompoundTag(serializedTag, 4);
+        assertFalse(loaded.optimizePalette());
+        assertEquals(4, loaded.paletteSize());
+        assertSame(serializedTag, loaded.toCompoundTag());
+        assertEquals(4, serializedTag.getListTag("palette").size());
+        assertTrue(Arrays.equals(serializedData, serializedTag.getLongArray("data")));
+        assertEquals(4, loaded.clone().paletteSize());
+
+        loaded.set(1, 0, 0, new StringTag("desert"));
+        CompoundTag reserializedTag = loaded.toCompoundTag();
+        assertEquals(2, reserializedTag.getListTag("palette").size());
+        assertEquals(new StringTag("desert"), reserializedTag.getListTag("palette").get(0));
+        assertEquals(new StringTag("beach"), reserializedTag.getListTag("palette").get(1));
+        assertFalse(loaded.optimizePalette());
+        assertEquals(new StringTag("beach"), loaded.get(0));
+        assertEquals(63, loaded.countIf(e -> e.getValue().equals("desert")));
+    }
+
+    public void testToCompoundTag_optimizesAfterRangeSetOfExistingPaletteEntry() {
+        PalettizedCuboid<StringTag> cuboid = new PalettizedCuboid<>(4, new StringTag("air"));
+        cuboid.set(1, 1, 1, new StringTag("stone"), 2, 2, 2);
+        PalettizedCuboid<StringTag> loaded = PalettizedCuboid.fromCompoundTag(cuboid.toCompoundTag(), 4);
+        assertEquals(2, loaded.paletteSize());
+
+        // air is already in the palette so the range set doesn't add to it
+        loaded.set(1, 1, 1, new StringTag("air"), 2, 2, 2);
+        CompoundTag tag = loaded.toCompoundTag();
+        assertEquals(1, tag.getListTag("palette").size());
+        assertEquals(new StringTag("air"), tag.getListTag("palette").get(0));
+        assertFalse(tag.containsKey("data"));
+
+        // same for the XZ plane fill path
+        loaded = PalettizedCuboid.fromCompoundTag(cuboid.toCompoundTag(), 4);
+        loaded.set(0, 1, 0, new StringTag("air"), 3, 2, 3);
+        tag = loaded.toCompoundTag();
+        assertEquals(1, tag.getListTag("palette").size());
+        assertFalse(tag.containsKey("data"));
+    }
+
+    public void testOptimizePalette_remapsAfterRemovingLeadingEntries() {
+        StringTag airTag = new StringTag("air");
+        PalettizedCuboid<StringTag> cuboid = new PalettizedCuboid<>(16, airTag);
+        for (int i = 0; i < cuboid.size(); i++) {
+            cuboid.set(i, new StringTag("block_" + (i % 20)));
+        }
+        assertEquals(21, cuboid.paletteSize());
+        cuboid.replace(new StringTag("block_0"), new StringTag("block_19"));
+        assertTrue(cuboid.optimizePalette());
+        assertEquals(19, cuboid.paletteSize());
+        assertEquals(5, cuboid.packedData.getBitsPerValue());
+        for (int i = 0; i < cuboid.size(); i++) {
+            assertEquals(new StringTag("block_" + (i % 20 == 0 ? 19 : i % 20)), cuboid.get(i));
+        }
+    }
+
     public void testToCompoundTag_singleElement() {
         PalettizedCuboid<StringTag> cuboid = new PalettizedCuboid<>(4, new StringTag("dripstone_caves"));
         CompoundTag tag = cuboid.toCompoundTag();
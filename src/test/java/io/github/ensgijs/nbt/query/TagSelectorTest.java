@@ -0,0 +1,46 @@
+package io.github.ensgijs.nbt.query;
+
+import io.github.ensgijs.nbt.NbtTestCase;
+
+public class TagSelectorTest extends NbtTestCase {
+
+    public void testOf_buildsTree() {
+        TagSelector selector = TagSelector.of("DataVersion", "Heightmaps.WORLD_SURFACE", "sections[1].biomes");
+        assertFalse(selector.selectsAll());
+        assertTrue(selector.key("DataVersion").selectsAll());
+        assertNull(selector.key("Status"));
+        assertFalse(selector.key("Heightmaps").selectsAll());
+        assertTrue(selector.key("Heightmaps").key("WORLD_SURFACE").selectsAll());
+        assertNull(selector.key("Heightmaps").key("OCEAN_FLOOR"));
+        assertNull(selector.key("sections").index(0));
+        assertTrue(selector.key("sections").index(1).key("biomes").selectsAll());
+        assertNull(selector.key("sections").index(1).key("block_states"));
+        assertEquals("{DataVersion:*,Heightmaps:{WORLD_SURFACE:*},sections:{[1]:{biomes:*}}}", selector.toString());
+    }
+
+    public void testOf_wholeSubtreeWins() {
+        TagSelector selector = TagSelector.of("Heightmaps.WORLD_SURFACE", "Heightmaps", "Heightmaps.OCEAN_FLOOR");
+        assertTrue(selector.key("Heightmaps").selectsAll());
+        assertSame(TagSelector.ALL, selector.key("Heightmaps").key("anything"));
+        assertSame(TagSelector.ALL, selector.key("Heightmaps").index(7));
+
+        assertTrue(TagSelector.of("").selectsAll());
+        assertTrue(TagSelector.of("a", ".").selectsAll());
+    }
+
+    public void testOf_namesApplyToEveryListElement() {
+        TagSelector sections = TagSelector.of("sections.Y", "sections[2].block_states", "sections[3]").key("sections");
+        assertTrue(sections.index(0).key("Y").selectsAll());
+        assertNull(sections.index(0).key("block_states"));
+        assertTrue(sections.index(2).key("Y").selectsAll());
+        assertTrue(sections.index(2).key("block_states").selectsAll());
+        assertTrue(sections.index(3).selectsAll());
+        assertTrue(sections.index(99).key("Y").selectsAll());
+    }
+
+    public void testOf_rejectsBadInput() {
+        assertThrowsIllegalArgumentException(() -> TagSelector.of("a..b"));
+        assertThrowsIllegalArgumentException(() -> TagSelector.of((String[]) null));
+        assertThrowsIllegalArgumentException(() -> TagSelector.of((NbtPath) null));
+    }
+}
@@ -0,0 +1,100 @@
+package io.github.ensgijs.nbt.tag;
+
+import io.github.ensgijs.nbt.NbtTestCase;
+
+import java.util.*;
+
+public class CompactTagMapTest extends NbtTestCase {
+
+	/** Applies every operation to both a CompactTagMap and a LinkedHashMap and asserts they agree. */
+	public void testBehavesLikeLinkedHashMap() {
+		Random rand = new Random(7);
+		CompactTagMap compact = new CompactTagMap();
+		LinkedHashMap<String, Tag<?>> expected = new LinkedHashMap<>();
+		for (int step = 0; step < 5000; step++) {
+			String key = "k" + rand.nextInt(CompactTagMap.MAX_COMPACT_SIZE * 2 + 4);
+			switch (rand.nextInt(step % 500 < 400 ? 3 : 5)) {
+				case 0, 1 -> {
+					IntTag value = new IntTag(step);
+					assertEquals(expected.put(key, value), compact.put(key, value));
+				}
+				case 2 -> assertEquals(expected.get(key), compact.get(key));
+				case 3 -> assertEquals(expected.remove(key), compact.remove(key));
+				default -> {
+					if (rand.nextInt(50) == 0) {
+						expected.clear();
+						compact.clear();
+					}
+				}
+			}
+			assertEquals(expected.size(), compact.size());
+			assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(compact.keySet()));
+			assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(compact.values()));
+		}
+		assertEquals(expected, compact);
+		assertEquals(expected.hashCode(), compact.hashCode());
+	}
+
+	public void testSwitchesToLargeBeyondCompactSize() {
+		CompactTagMap map = new CompactTagMap();
+		for (int i = 0; i < CompactTagMap.MAX_COMPACT_SIZE; i++) {
+			map.put("k" + i, new IntTag(i));
+		}
+		assertFalse(map.isLarge());
+		map.put("k0", new IntTag(-1));
+		assertFalse(map.isLarge());
+		map.put("extra", new IntTag(99));
+		assertTrue(map.isLarge());
+		assertEquals(CompactTagMap.MAX_COMPACT_SIZE + 1, map.size());
+		assertEquals(new IntTag(-1), map.get("k0"));
+		assertEquals("k0", map.keySet().iterator().next());
+		map.clear();
+		assertFalse(map.isLarge());
+		assertTrue(map.isEmpty());
+	}
+
+	public void testIteratorRemoveAndSetValue() {
+		CompactTagMap map = new CompactTagMap(3);
+		map.put("a", new IntTag(1));
+		map.put("b", new IntTag(2));
+		map.put("c", new IntTag(3));
+		Iterator<Map.Entry<String, Tag<?>>> iter = map.entrySet().iterator();
+		assertEquals("a", iter.next().getKey());
+		assertEquals("b", iter.next().getKey());
+		iter.remove();
+		assertThrowsException(iter::remove, IllegalStateException.class);
+		Map.Entry<String, Tag<?>> c = iter.next();
+		assertFalse(iter.hasNext());
+		c.setValue(new IntTag(30));
+		assertEquals(new IntTag(30), map.get("c"));
+		assertEquals(Arrays.asList("a", "c"), new ArrayList<>(map.keySet()));
+
+		Iterator<Map.Entry<String, Tag<?>>> iter2 = map.entrySet().iterator();
+		iter2.next();
+		map.put("d", new IntTag(4));
+		assertThrowsException(iter2::next, ConcurrentModificationException.class);
+	}
+
+	public void testRejectsNulls() {
+		CompactTagMap map = new CompactTagMap();
+		assertThrowsException(() -> map.put(null, new IntTag(1)), NullPointerException.class);
+		assertThrowsException(() -> map.put("a", null), NullPointerException.class);
+		assertNull(map.get(null));
+		assertFalse(map.containsKey(null));
+	}
+
+	public void testCompoundTagUsesCompactMap() {
+		CompoundTag ct = new CompoundTag();
+		ct.putString("Name", "minecraft:stone");
+		assertTrue(ct.getValue() instanceof CompactTagMap);
+		assertTrue(new CompoundTag(CompactTagMap.MAX_COMPACT_SIZE).getValue() instanceof CompactTagMap);
+		assertTrue(new CompoundTag(CompactTagMap.MAX_COMPACT_SIZE + 1).getValue() instanceof LinkedHashMap);
+		for (int i = 0; i < 20; i++) {
+			ct.putInt("i" + i, i);
+		}
+		assertEquals(21, ct.size());
+		assertEquals(ct, ct.clone());
+		ct.freeze();
+		assertThrowsException(() -> ct.iterator().next().setTag(new IntTag(1)), UnsupportedOperationException.class);
+	}
+}
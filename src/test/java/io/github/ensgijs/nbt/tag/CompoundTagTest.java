@@ -136,6 +136,51 @@ public class CompoundTagTest extends NbtTestCase {
 		assertNotEquals(t.hashCode(), t2.hashCode());
 	}
 
+	public void testFreeze() {
+		CompoundTag ct = createCompoundTag();
+		ct.put("nested", createCompoundTag());
+		final int hash = ct.hashCode();
+		assertFalse(ct.isFrozen());
+		assertSame(ct, ct.freeze());
+		assertTrue(ct.isFrozen());
+		assertTrue(ct.getCompoundTag("nested").isFrozen());
+		assertTrue(ct.getListTag("list").isFrozen());
+		assertTrue(ct.get("str").isFrozen());
+		assertEquals(hash, ct.hashCode());
+
+		assertThrowsException(() -> ct.putString("x", "y"), UnsupportedOperationException.class);
+		assertThrowsException(() -> ct.remove("b"), UnsupportedOperationException.class);
+		assertThrowsException(ct::clear, UnsupportedOperationException.class);
+		assertThrowsException(() -> ct.getCompoundTag("nested").putInt("x", 1), UnsupportedOperationException.class);
+		assertThrowsException(() -> ct.getStringTag("str").setValue("bar"), UnsupportedOperationException.class);
+		assertThrowsException(() -> ct.getListTag("list").asByteTagList().addByte((byte) 1), UnsupportedOperationException.class);
+		assertThrowsException(() -> ct.iterator().next().setTag(new IntTag(1)), UnsupportedOperationException.class);
+		assertEquals(createCompoundTag().getByte("b"), ct.getByte("b"));
+
+		// clones are mutable
+		CompoundTag copy = ct.clone();
+		assertFalse(copy.isFrozen());
+		assertFalse(copy.getCompoundTag("nested").isFrozen());
+		assertEquals(ct, copy);
+		copy.putString("str", "bar");
+		assertEquals("foo", ct.getString("str"));
+	}
+
+	public void testFreeze_equals() {
+		CompoundTag a = createCompoundTag();
+		CompoundTag b = createCompoundTag();
+		a.freeze();
+		b.freeze();
+		CompoundTag different = createCompoundTag();
+		different.putString("str", "bar");
+		different.freeze();
+		assertEquals(a, b);
+		assertEquals(a, createCompoundTag());
+		assertEquals(createCompoundTag(), a);
+		assertNotEquals(a, different);
+		assertNotEquals(different, createCompoundTag());
+	}
+
 	public void testClone() {
 		CompoundTag ct = createCompoundTag();
 		CompoundTag cl = ct.clone();
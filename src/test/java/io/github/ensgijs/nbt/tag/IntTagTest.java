@@ -19,6 +19,15 @@ public class IntTagTest extends NbtTestCase {
 		assertEquals(123, t.asInt());
 	}
 
+	public void testFreeze() {
+		IntTag t = new IntTag(42);
+		t.freeze();
+		assertThrowsException(() -> t.setValue(7), UnsupportedOperationException.class);
+		assertEquals(42, t.asInt());
+		assertEquals(new IntTag(42).hashCode(), t.hashCode());
+		assertEquals(new IntTag(42), t);
+	}
+
 	public void testStringConversion() {
 		IntTag t = new IntTag(Integer.MAX_VALUE);
 		assertEquals(Integer.MAX_VALUE, t.asInt());
@@ -102,6 +102,35 @@ public class ListTagTest extends NbtTestCase {
 		assertEquals(ls.hashCode(), ls2.hashCode());
 	}
 
+	public void testFreeze() {
+		ListTag<IntTag> li = new ListTag<>(IntTag.class);
+		li.addInt(1);
+		li.addInt(2);
+		final int hash = li.hashCode();
+		li.freeze();
+		assertTrue(li.isFrozen());
+		assertTrue(li.get(0).isFrozen());
+		assertEquals(hash, li.hashCode());
+		assertThrowsException(() -> li.addInt(3), UnsupportedOperationException.class);
+		assertThrowsException(() -> li.set(0, new IntTag(3)), UnsupportedOperationException.class);
+		assertThrowsException(() -> li.remove(0), UnsupportedOperationException.class);
+		assertThrowsException(() -> li.get(0).setValue(5), UnsupportedOperationException.class);
+		assertThrowsException(() -> li.sort(Comparator.comparingInt(IntTag::asInt)), UnsupportedOperationException.class);
+		assertEquals(2, li.size());
+
+		ListTag<?> empty = ListTag.createUnchecked(EndTag.class);
+		empty.freeze();
+		assertThrowsException(() -> ((ListTag<IntTag>) empty).addInt(3), UnsupportedOperationException.class);
+		assertEquals(EndTag.class, empty.getTypeClass());
+		empty.asListTagList();
+		assertEquals(EndTag.class, empty.getTypeClass());
+
+		ListTag<IntTag> copy = li.clone();
+		assertFalse(copy.isFrozen());
+		copy.addInt(3);
+		assertEquals(3, copy.size());
+	}
+
 	public void testClone() {
 		ListTag<IntTag> i = new ListTag<>(IntTag.class);
 		ListTag<IntTag> c = i.clone();
@@ -0,0 +1,106 @@
+package io.github.ensgijs.nbt.tag;
+
+import io.github.ensgijs.nbt.NbtTestCase;
+
+import java.util.*;
+
+import static org.junit.Assert.assertNotEquals;
+
+public class PrimitiveTagListTest extends NbtTestCase {
+
+	private static PrimitiveTagList<?> backing(ListTag<?> list) {
+		return (PrimitiveTagList<?>) list.getValue();
+	}
+
+	public void testPrimitiveAccessDoesNotCreateTags() {
+		ListTag<DoubleTag> pos = ListTag.wrap(new double[] {1.5, -64, 3.25});
+		assertEquals(DoubleTag.class, pos.getTypeClass());
+		assertEquals(3, pos.size());
+		assertEquals(1.5, pos.getDouble(0));
+		assertEquals(-64f, pos.getFloat(1));
+		assertEquals(-64, pos.getInt(1));
+		assertEquals(3L, pos.getLong(2));
+		assertEquals(0, backing(pos).materializedCount());
+		assertEquals(pos.hashCode(), ListTag.ofDoubles(Arrays.asList(1.5, -64d, 3.25)).hashCode());
+		assertEquals(0, backing(pos).materializedCount());
+		assertEquals(pos, ListTag.wrap(new double[] {1.5, -64, 3.25}));
+		assertEquals(0, backing(pos).materializedCount());
+		assertEquals(new DoubleTag(-64), pos.get(1));
+		assertEquals(1, backing(pos).materializedCount());
+	}
+
+	public void testAccessorsMatchNumberTag() {
+		double[] doubles = {0, -0.0, 1e20, -1e20, 3.7, -3.7, Double.NaN, 300, -129};
+		float[] floats = new float[doubles.length];
+		long[] longs = {0, -1, Long.MAX_VALUE, Long.MIN_VALUE, 1L << 40, 300, -129, 255, 65536};
+		for (int i = 0; i < doubles.length; i++) floats[i] = (float) doubles[i];
+		List<ListTag<?>> lists = List.of(ListTag.wrap(doubles), ListTag.wrap(floats), ListTag.wrap(longs),
+				ListTag.wrap(new int[] {0, -1, 300, -129, Integer.MAX_VALUE}),
+				ListTag.wrap(new short[] {0, -1, 300, -129, Short.MIN_VALUE}),
+				ListTag.wrap(new byte[] {0, -1, 127, -128}));
+		for (ListTag<?> list : lists) {
+			for (int i = 0; i < list.size(); i++) {
+				NumberTag<?> expected = (NumberTag<?>) list.clone().get(i);
+				assertEquals(expected.asLong(), list.getLong(i));
+				assertEquals(expected.asInt(), list.getInt(i));
+				assertEquals(expected.asShort(), list.getShort(i));
+				assertEquals(expected.asByte(), list.getByte(i));
+				assertEquals(Float.floatToIntBits(expected.asFloat()), Float.floatToIntBits(list.getFloat(i)));
+				assertEquals(Double.doubleToLongBits(expected.asDouble()), Double.doubleToLongBits(list.getDouble(i)));
+			}
+			assertEquals(0, backing(list).materializedCount());
+		}
+	}
+
+	public void testModifyingElementTagIsVisible() {
+		ListTag<IntTag> list = ListTag.wrap(new int[] {1, 2, 3});
+		list.get(1).setValue(20);
+		assertEquals(20, list.getInt(1));
+		list.set(2, new IntTag(30));
+		assertEquals(30, list.getInt(2));
+		assertEquals(ListTag.ofInts(Arrays.asList(1, 20, 30)), list);
+		assertEquals(ListTag.ofInts(Arrays.asList(1, 20, 30)).hashCode(), list.hashCode());
+		assertNotEquals(ListTag.wrap(new int[] {1, 2, 3}), list);
+	}
+
+	public void testStructuralModification() {
+		int[] values = {1, 2, 3};
+		ListTag<IntTag> list = ListTag.wrap(values);
+		list.addInt(4);
+		list.remove(0);
+		assertEquals(Arrays.asList(new IntTag(2), new IntTag(3), new IntTag(4)), new ArrayList<>(list));
+		assertEquals(4, list.getInt(2));
+		assertThrowsException(() -> list.addLong(5), IllegalArgumentException.class);
+		list.clear();
+		assertTrue(list.isEmpty());
+		assertEquals(IntTag.class, list.getTypeClass());
+		// the wrapped array is left alone once the list no longer uses it
+		assertTrue(Arrays.equals(new int[] {1, 2, 3}, values));
+	}
+
+	public void testClone() {
+		ListTag<FloatTag> list = ListTag.wrap(new float[] {1, 2});
+		list.get(0).setValue(10f);
+		ListTag<FloatTag> copy = list.clone();
+		assertEquals(list, copy);
+		assertTrue(copy.getValue() instanceof PrimitiveTagList);
+		copy.get(0).setValue(100f);
+		copy.get(1).setValue(200f);
+		assertEquals(10f, list.getFloat(0));
+		assertEquals(2f, list.getFloat(1));
+	}
+
+	public void testFreeze() {
+		ListTag<ShortTag> list = ListTag.wrap(new short[] {1, 2});
+		list.freeze();
+		assertEquals(2, list.getShort(1));
+		assertThrowsException(() -> list.get(0).setValue((short) 5), UnsupportedOperationException.class);
+		assertThrowsException(() -> list.addShort((short) 5), UnsupportedOperationException.class);
+	}
+
+	public void testIndexOutOfBounds() {
+		ListTag<LongTag> list = ListTag.wrap(new long[] {1});
+		assertThrowsException(() -> list.getLong(1), IndexOutOfBoundsException.class);
+		assertThrowsException(() -> list.get(-1), IndexOutOfBoundsException.class);
+	}
+}